@@ -0,0 +1,77 @@
+#extension GL_EXT_texture_array : enable
+#import "Common/ShaderLib/BlinnPhongLighting.glsllib"
+#import "Common/ShaderLib/Lighting.glsllib"
+
+varying vec2 texCoord;
+varying float texLayer;
+
+varying vec3 AmbientSum;
+varying vec4 DiffuseSum;
+varying vec3 SpecularSum;
+
+uniform vec4 g_LightDirection;
+varying vec3 vViewDir;
+varying vec4 vLightDir;
+varying vec3 lightVec;
+
+#ifdef DIFFUSEMAP
+  uniform sampler2DArray m_DiffuseMap;
+#endif
+
+#ifdef NORMALMAP
+  uniform sampler2DArray m_NormalMap;
+#else
+  varying vec3 vNormal;
+#endif
+
+uniform float m_Shininess;
+
+void main(){
+    vec3 layerTexCoord = vec3(texCoord, texLayer);
+
+    #ifdef DIFFUSEMAP
+      vec4 diffuseColor = texture2DArray(m_DiffuseMap, layerTexCoord);
+    #else
+      vec4 diffuseColor = vec4(1.0);
+    #endif
+
+    float alpha = DiffuseSum.a * diffuseColor.a;
+
+    // ***********************
+    // Read from textures
+    // ***********************
+    #ifdef NORMALMAP
+      vec4 normalHeight = texture2DArray(m_NormalMap, layerTexCoord);
+      //Note the -2.0 and -1.0. We invert the green channel of the normal map,
+      //as it's complient with normal maps generated with blender.
+      vec3 normal = normalize((normalHeight.xyz * vec3(2.0,-2.0,2.0) - vec3(1.0,-1.0,1.0)));
+    #else
+      vec3 normal = normalize(vNormal);
+    #endif
+
+    vec4 lightDir = vLightDir;
+    lightDir.xyz = normalize(lightDir.xyz);
+    vec3 viewDir = normalize(vViewDir);
+    float spotFallOff = 1.0;
+
+    #if __VERSION__ >= 110
+     // allow use of control flow
+     if(g_LightDirection.w != 0.0){
+    #endif
+       spotFallOff =  computeSpotFalloff(g_LightDirection, lightVec);
+    #if __VERSION__ >= 110
+       if(spotFallOff <= 0.0){
+           gl_FragColor.rgb = AmbientSum * diffuseColor.rgb;
+           gl_FragColor.a   = alpha;
+           return;
+       }
+      }
+    #endif
+
+    vec2 light = computeLighting(normal, viewDir, lightDir.xyz, lightDir.w * spotFallOff, m_Shininess);
+
+    gl_FragColor.rgb =  AmbientSum     * diffuseColor.rgb  +
+                        DiffuseSum.rgb * diffuseColor.rgb  * vec3(light.x) +
+                        SpecularSum    * vec3(light.y);
+    gl_FragColor.a = alpha;
+}
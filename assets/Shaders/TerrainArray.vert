@@ -0,0 +1,75 @@
+#import "Common/ShaderLib/Instancing.glsllib"
+#import "Common/ShaderLib/Lighting.glsllib"
+
+uniform vec4 g_LightColor;
+uniform vec4 g_LightPosition;
+uniform vec4 g_AmbientLightColor;
+
+// The texture array layer is in the z
+varying vec2 texCoord;
+varying float texLayer;
+
+varying vec3 AmbientSum;
+varying vec4 DiffuseSum;
+varying vec3 SpecularSum;
+
+attribute vec3 inPosition;
+attribute vec3 inTexCoord;
+attribute vec3 inNormal;
+
+varying vec3 lightVec;
+
+#ifdef VERTEX_COLOR
+  attribute vec4 inColor;
+#endif
+
+attribute vec4 inTangent;
+
+#ifndef NORMALMAP
+  varying vec3 vNormal;
+#endif
+varying vec3 vViewDir;
+varying vec4 vLightDir;
+
+void main(){
+   vec4 modelSpacePos = vec4(inPosition, 1.0);
+   vec3 modelSpaceNorm = inNormal;
+
+   gl_Position = TransformWorldViewProjection(modelSpacePos);
+   texCoord = inTexCoord.xy;
+   texLayer = inTexCoord.z;
+
+   vec3 wvPosition = TransformWorldView(modelSpacePos).xyz;
+   vec3 wvNormal  = normalize(TransformNormal(modelSpaceNorm));
+   vec3 viewDir = normalize(-wvPosition);
+
+   vec4 wvLightPos = (g_ViewMatrix * vec4(g_LightPosition.xyz,clamp(g_LightColor.w,0.0,1.0)));
+   wvLightPos.w = g_LightPosition.w;
+   vec4 lightColor = g_LightColor;
+
+   #ifdef NORMALMAP
+     vec3 wvTangent = normalize(TransformNormal(inTangent.xyz));
+     vec3 wvBinormal = cross(wvNormal, wvTangent);
+     mat3 tbnMat = mat3(wvTangent, wvBinormal * inTangent.w,wvNormal);
+
+     vViewDir  = -wvPosition * tbnMat;
+     lightComputeDir(wvPosition, lightColor.w, wvLightPos, vLightDir, lightVec);
+     vLightDir.xyz = (vLightDir.xyz * tbnMat).xyz;
+   #else
+     vNormal = wvNormal;
+     vViewDir = viewDir;
+     lightComputeDir(wvPosition, lightColor.w, wvLightPos, vLightDir, lightVec);
+   #endif
+
+   // Defaults: Ambient and diffuse are white, specular is black.
+   AmbientSum  = g_AmbientLightColor.rgb;
+   DiffuseSum  =  vec4(lightColor.rgb, 1.0);
+   SpecularSum = vec3(0.0);
+
+   #ifdef VERTEX_COLOR
+     // The tinted tiles use the vertex color as the ambient material color
+     if(inColor.a > 0.5){
+        AmbientSum *= inColor.rgb;
+     }
+   #endif
+}
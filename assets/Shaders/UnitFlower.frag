@@ -0,0 +1,49 @@
+uniform sampler2D m_AtlasMap;
+uniform float m_AtlasSize;
+
+varying vec2 texCoord;
+varying vec4 layers;
+varying vec4 color;
+
+// The flower is 64x64 pixels, the progress is drawn as a pie in the middle
+const float FLOWER_SIZE = 64.0;
+const float PROGRESS_RADIUS = 10.0;
+const vec4 PROGRESS_COLOR = vec4(0.0, 0.0, 0.0, 100.0 / 255.0);
+
+vec4 sampleLayer(float index){
+    if (index < 0.0) {
+        return vec4(0.0);
+    }
+
+    // Keep off the cell edges so that the neighbours don't bleed in
+    vec2 cell = vec2(mod(index, m_AtlasSize), floor(index / m_AtlasSize));
+    vec2 uv = clamp(texCoord, 0.5 / FLOWER_SIZE, 1.0 - 0.5 / FLOWER_SIZE);
+    return texture2D(m_AtlasMap, (cell + uv) / m_AtlasSize);
+}
+
+vec4 blend(vec4 dst, vec4 src){
+    float alpha = src.a + dst.a * (1.0 - src.a);
+    if (alpha <= 0.0) {
+        return vec4(0.0);
+    }
+    return vec4((src.rgb * src.a + dst.rgb * dst.a * (1.0 - src.a)) / alpha, alpha);
+}
+
+void main(){
+    vec4 result = sampleLayer(layers.x);
+    result = blend(result, sampleLayer(layers.y));
+    result = blend(result, sampleLayer(layers.z));
+
+    // Progress, the unfinished part is shaded counterclockwise starting from the top
+    if (layers.w >= 0.0) {
+        vec2 p = texCoord * FLOWER_SIZE - FLOWER_SIZE / 2.0;
+        if (dot(p, p) <= PROGRESS_RADIUS * PROGRESS_RADIUS) {
+            float angle = mod(degrees(atan(-p.y, p.x)) - 90.0 + 720.0, 360.0);
+            if (angle < 360.0 * (1.0 - layers.w)) {
+                result = blend(result, PROGRESS_COLOR);
+            }
+        }
+    }
+
+    gl_FragColor = result * color;
+}
@@ -0,0 +1,19 @@
+uniform mat4 g_WorldViewProjectionMatrix;
+
+attribute vec3 inPosition;
+attribute vec2 inTexCoord;
+// Atlas indices of the health ring, center icon and objective icon + the progress
+attribute vec4 inTexCoord2;
+// Owner color
+attribute vec4 inColor;
+
+varying vec2 texCoord;
+varying vec4 layers;
+varying vec4 color;
+
+void main(){
+    texCoord = inTexCoord;
+    layers = inTexCoord2;
+    color = inColor;
+    gl_Position = g_WorldViewProjectionMatrix * vec4(inPosition, 1.0);
+}
@@ -52,6 +52,8 @@ import toniarts.openkeeper.setup.IFrameClosingBehavior;
 import toniarts.openkeeper.tools.convert.AssetsConverter;
 import toniarts.openkeeper.tools.convert.ConversionUtils;
 import toniarts.openkeeper.tools.convert.map.Player;
+import toniarts.openkeeper.tools.convert.textures.enginetextures.EngineTextureLoader;
+import toniarts.openkeeper.tools.convert.textures.enginetextures.EngineTexturesAssetLocator;
 import toniarts.openkeeper.tools.modelviewer.SoundsLoader;
 import toniarts.openkeeper.utils.PathUtils;
 import toniarts.openkeeper.utils.SettingUtils;
@@ -309,6 +311,10 @@ public class Main extends SimpleApplication {
         // Distribution locator
         getAssetManager().registerLocator(AssetsConverter.getAssetsFolder(), FileLocator.class);
 
+        // The engine textures that are not converted, straight from the original game
+        getAssetManager().registerLocator(getDkIIFolder() + PathUtils.DKII_TEXTURE_CACHE_FOLDER + "EngineTextures.dat", EngineTexturesAssetLocator.class);
+        getAssetManager().registerLoader(EngineTextureLoader.class, EngineTextureLoader.FILE_EXTENSION);
+
         // Init nifty while in render thread so it will get initialized before it is updated, otherwise we might hit a rare race-condition
         Nifty nifty = getNifty();
 
@@ -36,25 +36,53 @@ import com.jme3.animation.AnimControl;
 import com.jme3.animation.ClonableTrack;
 import com.jme3.animation.Track;
 import com.jme3.export.*;
+import com.jme3.material.Material;
+import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.*;
 import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.texture.image.ColorSpace;
 import com.jme3.util.BufferUtils;
 import com.jme3.util.TempVars;
 import com.jme3.util.clone.Cloner;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 
 /**
- * A single track of pose animation associated with a certain mesh.
+ * A single track of pose animation associated with a certain mesh.<br>
+ * The frames can be baked to morph frames. If the target geometry has a
+ * material supporting morphing (MatDefs/LightingMorph.j3md), the frames are
+ * blended in the vertex shader and only the frame and weight uniforms change
+ * per frame. Otherwise the poses are applied to the position buffer on the
+ * CPU.
  */
 public final class PoseTrack implements Track, ClonableTrack {
 
+    public static final String MATERIAL_PARAM_MORPH_MAP = "MorphMap";
+    public static final String MATERIAL_PARAM_MORPH_MAP_SIZE = "MorphMapSize";
+    public static final String MATERIAL_PARAM_MORPH_FRAME = "MorphFrame";
+    public static final String MATERIAL_PARAM_MORPH_WEIGHT = "MorphWeight";
+
+    /**
+     * Vertex buffer holding the vertex indices for looking up the morph map
+     */
+    public static final Type MORPH_INDEX_BUFFER = Type.TexCoord8;
+
+    /**
+     * Maximum morph map dimension, larger tracks are left to the CPU
+     */
+    private static final int MAX_MORPH_MAP_SIZE = 4096;
+
     private int targetMeshIndex;
     private PoseTrack.PoseFrame[] frames;
     private float[] times;
+    private MorphFrames morphFrames;
 
     public static class PoseFrame implements Savable, Cloneable {
 
@@ -114,6 +142,73 @@ public final class PoseTrack implements Track, ClonableTrack {
         }
     }
 
+    /**
+     * The frames baked to complete vertex positions, a row of vertices per
+     * frame. Shared by all the clones, and so is the texture created from
+     * them.
+     */
+    public static class MorphFrames implements Savable {
+
+        private float[] positions;
+        private int vertexCount;
+        private int frameCount;
+        private Texture2D texture;
+
+        public MorphFrames(float[] positions, int vertexCount, int frameCount) {
+            this.positions = positions;
+            this.vertexCount = vertexCount;
+            this.frameCount = frameCount;
+        }
+
+        /**
+         * Serialization-only. Do not use.
+         */
+        public MorphFrames() {
+        }
+
+        /**
+         * Get the morph map texture, the texture is created on first use
+         *
+         * @return the morph map, vertices on x-axis and frames on y-axis
+         */
+        public synchronized Texture2D getTexture() {
+            if (texture == null) {
+                ByteBuffer data = BufferUtils.createByteBuffer(positions.length * 4);
+                data.asFloatBuffer().put(positions);
+                Image image = new Image(Image.Format.RGB32F, vertexCount, frameCount, data, ColorSpace.Linear);
+                texture = new Texture2D(image);
+                texture.setMinFilter(Texture.MinFilter.NearestNoMipMaps);
+                texture.setMagFilter(Texture.MagFilter.Nearest);
+                texture.setWrap(Texture.WrapMode.EdgeClamp);
+            }
+            return texture;
+        }
+
+        public int getVertexCount() {
+            return vertexCount;
+        }
+
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        @Override
+        public void write(JmeExporter e) throws IOException {
+            OutputCapsule out = e.getCapsule(this);
+            out.write(positions, "positions", null);
+            out.write(vertexCount, "vertexCount", 0);
+            out.write(frameCount, "frameCount", 0);
+        }
+
+        @Override
+        public void read(JmeImporter i) throws IOException {
+            InputCapsule in = i.getCapsule(this);
+            positions = in.readFloatArray("positions", null);
+            vertexCount = in.readInt("vertexCount", 0);
+            frameCount = in.readInt("frameCount", 0);
+        }
+    }
+
     public PoseTrack(int targetMeshIndex, float[] times, PoseTrack.PoseFrame[] frames) {
         this.targetMeshIndex = targetMeshIndex;
         this.times = times;
@@ -134,6 +229,7 @@ public final class PoseTrack implements Track, ClonableTrack {
     @Override
     public Track cloneForSpatial(Spatial spatial) {
         PoseTrack track = new PoseTrack(targetMeshIndex, times, frames);
+        track.morphFrames = morphFrames;
         return track;
     }
 
@@ -142,18 +238,48 @@ public final class PoseTrack implements Track, ClonableTrack {
 
     }
 
-    private void applyFrame(Mesh target, int frameIndex) {
+    /**
+     * Bakes the frames to complete vertex positions for the GPU morphing. Does
+     * nothing if the track is too large to fit a texture.
+     *
+     * @param bindPose the bind pose positions of the target mesh
+     */
+    public void bakeMorphFrames(FloatBuffer bindPose) {
+        int vertexCount = bindPose.limit() / 3;
+        if (vertexCount > MAX_MORPH_MAP_SIZE || frames.length > MAX_MORPH_MAP_SIZE) {
+            return;
+        }
+
+        int rowLength = vertexCount * 3;
+        float[] positions = new float[rowLength * frames.length];
+        for (int frameIndex = 0; frameIndex < frames.length; frameIndex++) {
+            bindPose.clear();
+            bindPose.get(positions, frameIndex * rowLength, rowLength);
+            applyFrame(FloatBuffer.wrap(positions, frameIndex * rowLength, rowLength).slice(), frameIndex);
+        }
+        bindPose.clear();
+
+        morphFrames = new MorphFrames(positions, vertexCount, frames.length);
+    }
+
+    /**
+     * Get the baked morph frames
+     *
+     * @return the morph frames, or null if the track is not baked
+     */
+    @Nullable
+    public MorphFrames getMorphFrames() {
+        return morphFrames;
+    }
+
+    private void applyFrame(FloatBuffer vertexBuffer, int frameIndex) {
         PoseFrame frame = frames[frameIndex];
-        VertexBuffer pb = target.getBuffer(Type.Position);
         for (int i = 0; i < frame.poses.length / 2; i++) {
 
             // Poses come in pairs of two [startPose] + [endPose], weight tells us how close we are to the end
             // The pose pair must have the same vertices in the same order
-            applyPose(frame.poses[i * 2], frame.poses[i * 2 + 1], frame.weights[i], (FloatBuffer) pb.getData());
+            applyPose(frame.poses[i * 2], frame.poses[i * 2 + 1], frame.weights[i], vertexBuffer);
         }
-
-        // force to re-upload data to gpu
-        pb.updateData(pb.getData());
     }
 
     /**
@@ -164,8 +290,8 @@ public final class PoseTrack implements Track, ClonableTrack {
      * @param weight       weight on which to apply the interpolation
      * @param vertexBuffer the vertex buffer
      */
-    private void applyPose(@Nullable Pose startPose, Pose endPose, float weight, FloatBuffer vertexBuffer) {
-        if (startPose == null) {
+    private void applyPose(@Nullable Pose startPose, @Nullable Pose endPose, float weight, FloatBuffer vertexBuffer) {
+        if (startPose == null || endPose == null) {
             // FIXME should we skip if null?
             return;
         }
@@ -192,9 +318,21 @@ public final class PoseTrack implements Track, ClonableTrack {
                         AnimChannel channel, TempVars vars) {
         Spatial spat = control.getSpatial();
         Geometry geom = findGeom(spat);
-        Mesh target = geom.getMesh();
 
+        // Blend the frames on the GPU if we can
+        Material material = geom.getMaterial();
+        if (morphFrames != null && material.getMaterialDef().getMaterialParam(MATERIAL_PARAM_MORPH_MAP) != null
+                && geom.getMesh().getBuffer(MORPH_INDEX_BUFFER) != null) {
+            setMorphTime(time, material);
+            return;
+        }
+
+        // A shared mesh without the bind pose is immutable, only the GPU can animate it
+        Mesh target = geom.getMesh();
         VertexBuffer bindPos = target.getBuffer(Type.BindPosePosition);
+        if (bindPos == null) {
+            return;
+        }
         VertexBuffer pos = target.getBuffer(Type.Position);
         FloatBuffer pb = (FloatBuffer) pos.getData();
         FloatBuffer bpb = (FloatBuffer) bindPos.getData();
@@ -203,20 +341,63 @@ public final class PoseTrack implements Track, ClonableTrack {
         pb.put(bpb).clear();
 
         if (time < times[0]) {
-            applyFrame(target, 0);
+            applyFrame(pb, 0);
         } else if (time > times[times.length - 1]) {
-            applyFrame(target, times.length - 1);
+            applyFrame(pb, times.length - 1);
         } else {
-            int startFrame = 0;
-            for (int i = 0; i < times.length; i++) {
-                if (times[i] < time) {
-                    startFrame = i;
-                }
+            int endFrame = getStartFrame(time) + 1;
+            applyFrame(pb, endFrame);
+        }
+
+        // force to re-upload data to gpu
+        pos.updateData(pb);
+    }
+
+    /**
+     * Sets the frame and the weight to the morphing material, the frame is
+     * blended with the following one by the weight
+     *
+     * @param time the animation time
+     * @param material the morphing material
+     */
+    private void setMorphTime(float time, Material material) {
+        if (material.getParam(MATERIAL_PARAM_MORPH_MAP) == null) {
+            material.setTexture(MATERIAL_PARAM_MORPH_MAP, morphFrames.getTexture());
+            material.setVector2(MATERIAL_PARAM_MORPH_MAP_SIZE, new Vector2f(morphFrames.getVertexCount(), morphFrames.getFrameCount()));
+        }
+
+        int frame;
+        float weight = 0;
+        if (time < times[0]) {
+            frame = 0;
+        } else if (time > times[times.length - 1]) {
+            frame = times.length - 1;
+        } else {
+            frame = getStartFrame(time);
+            if (frame + 1 < times.length) {
+                weight = Math.min(1f, (time - times[frame]) / (times[frame + 1] - times[frame]));
             }
+        }
+        material.setFloat(MATERIAL_PARAM_MORPH_FRAME, frame);
+        material.setFloat(MATERIAL_PARAM_MORPH_WEIGHT, weight);
+    }
 
-            int endFrame = startFrame + 1;
-            applyFrame(target, endFrame);
+    /**
+     * Get the last frame starting before the given time
+     *
+     * @param time the animation time
+     * @return the frame index
+     */
+    private int getStartFrame(float time) {
+        int startFrame = 0;
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] < time) {
+                startFrame = i;
+            } else {
+                break;
+            }
         }
+        return startFrame;
     }
 
     public Geometry findGeom(Spatial spatial) {
@@ -277,6 +458,7 @@ public final class PoseTrack implements Track, ClonableTrack {
         PoseTrack poseTrack = (PoseTrack) o;
         this.times = poseTrack.times;
         this.frames = poseTrack.frames;
+        this.morphFrames = poseTrack.morphFrames;
     }
 
     @Override
@@ -285,6 +467,7 @@ public final class PoseTrack implements Track, ClonableTrack {
         out.write(targetMeshIndex, "meshIndex", 0);
         out.write(frames, "frames", null);
         out.write(times, "times", null);
+        out.write(morphFrames, "morphFrames", null);
     }
 
     @Override
@@ -298,5 +481,6 @@ public final class PoseTrack implements Track, ClonableTrack {
             frames = new PoseTrack.PoseFrame[readSavableArray.length];
             System.arraycopy(readSavableArray, 0, frames, 0, readSavableArray.length);
         }
+        morphFrames = (MorphFrames) in.readSavable("morphFrames", null);
     }
 }
@@ -23,7 +23,6 @@ import com.jme3.audio.AudioData;
 import com.jme3.audio.AudioKey;
 import com.jme3.audio.AudioStream;
 import com.jme3.util.BufferUtils;
-import org.jetbrains.annotations.NotNull;
 import toniarts.openkeeper.audio.plugins.decoder.*;
 
 import java.io.ByteArrayOutputStream;
@@ -33,7 +32,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Plays MPx files, not MP3s though
+ * Plays MPx files, not MP3s though<br>
+ * Streamed audio is decoded in the background, see {@link MP2Stream}
  *
  * @author Toni Helenius <helenius.toni@gmail.com>
  */
@@ -48,67 +48,6 @@ public class MP2Loader implements AssetLoader {
 
     private static final Logger LOGGER = Logger.getLogger(MP2Loader.class.getName());
 
-    /**
-     * Masks the real input stream to decode the MP2<br>
-     * The last read repeats a bit, that is a known issue:
-     * http://hub.jmonkeyengine.org/forum/topic/streaming-audio-with-audionode-plays-ending-wrongly/
-     */
-    private static class MPxStream extends InputStream {
-
-        private final Decoder decoder;
-        private final InputStream inputStream;
-
-        public MPxStream(InputStream inputStream, Decoder decoder) {
-            this.decoder = decoder;
-            this.inputStream = inputStream;
-        }
-
-        /**
-         * Reads up the audio source to len bytes of data from the decoded audio
-         * stream into an array of bytes. If the argument b is
-         * <code>null</code>, -1 is returned.
-         *
-         * @param b the buffer into which the data is read
-         * @param i the start offset of the data
-         * @param j the maximum number of bytes read
-         * @return the total number of bytes read into, or -1 is there is no
-         * more data because the end of the stream has been reached.
-         * @throws IOException if an input or output error occurs
-         */
-        @Override
-        public int read(@NotNull byte[] b, int i, int j) throws IOException {
-            if (decoder == null) {
-                return -1;
-            }
-            return decoder.read(b, i, j);
-        }
-
-        /**
-         * Reads up to a specified maximum number of bytes of data from the
-         * decoded audio stream, putting them into the given byte array. If the
-         * argument b is null, -1 is returned.
-         *
-         * @param b the buffer into which the data is read
-         * @return the total number of bytes read into the buffer, or -1 if
-         * there is no more data because the end of the stream has been reached
-         * @throws IOException if an input or output error occurs
-         */
-        @Override
-        public int read(@NotNull byte[] b) throws IOException {
-            return read(b, 0, b.length);
-        }
-
-        @Override
-        public int read() {
-            return -1;
-        }
-
-        @Override
-        public void close() throws IOException {
-            inputStream.close();
-        }
-    }
-
     private void readDataChunkForBuffer(Decoder decoder) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         byte[] buffer = new byte[8192];
@@ -119,11 +58,15 @@ public class MP2Loader implements AssetLoader {
         audioBuffer.updateData(BufferUtils.createByteBuffer(baos.toByteArray()));
     }
 
-    private void readDataChunkForStream(InputStream inputStream, Decoder decoder) {
-        audioStream.updateData(new MPxStream(inputStream, decoder), 0);
+    private void readDataChunkForStream(AssetInfo assetInfo, InputStream inputStream, Decoder decoder, MediaInformation info) {
+        long microseconds = (long) info.get(MediaInformation.L_MICROSECONDS);
+        audioStream.updateData(new MP2Stream(assetInfo, inputStream, decoder,
+                (int) info.get(AudioInformation.I_CHANNEL_NUMBER),
+                (int) info.get(AudioInformation.I_SAMPLE_RATE)),
+                microseconds > 0 ? microseconds / 1000000f : 0);
     }
 
-    private AudioData load(InputStream inputStream, boolean stream) throws IOException {
+    private AudioData load(AssetInfo assetInfo, InputStream inputStream, boolean stream) throws IOException {
 
         readStream = stream;
         if (readStream) {
@@ -146,7 +89,7 @@ public class MP2Loader implements AssetLoader {
 
             // Read the file
             if (readStream) {
-                readDataChunkForStream(inputStream, decoder);
+                readDataChunkForStream(assetInfo, inputStream, decoder, info);
             } else {
                 readDataChunkForBuffer(decoder);
             }
@@ -163,7 +106,7 @@ public class MP2Loader implements AssetLoader {
         InputStream inputStream = null;
         try {
             inputStream = info.openStream();
-            data = load(inputStream, ((AudioKey) info.getKey()).isStream());
+            data = load(info, inputStream, ((AudioKey) info.getKey()).isStream());
             if (data instanceof AudioStream) {
                 inputStream = null;
             }
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.audio.plugins;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.audio.SeekableStream;
+import org.jetbrains.annotations.NotNull;
+import toniarts.openkeeper.audio.plugins.decoder.Decoder;
+import toniarts.openkeeper.audio.plugins.decoder.MpxReader;
+import toniarts.openkeeper.audio.plugins.decoder.UnsupportedMediaException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the decoded PCM data of an MPx file. The decoding is done in the
+ * background, in chunks, always keeping a small window of decoded audio ahead
+ * of the player. So the player never waits for the decoder and the whole
+ * track is never in memory at once.<br>
+ * The first window of the track is kept, so that rewinding to the start, i.e.
+ * looping, continues playing without a gap while the decoder starts over.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class MP2Stream extends InputStream implements SeekableStream {
+
+    /**
+     * 16 kB is roughly 0.1 seconds of 44.1 kHz 16 bit stereo
+     */
+    private static final int CHUNK_SIZE = 16384;
+    private static final int PREFETCH_CHUNKS = 16;
+    private static final ExecutorService DECODER_POOL = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "MP2Decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Logger LOGGER = Logger.getLogger(MP2Stream.class.getName());
+
+    private final AssetInfo assetInfo;
+    private final int bytesPerSecond;
+    private final int frameSize;
+
+    /**
+     * Guards the decoder, the decoder is only used by one decoding task at a
+     * time. Always acquired before the {@link #lock}
+     */
+    private final Object decoderLock = new Object();
+    private InputStream source;
+    private Decoder decoder;
+    private long skipBytes;
+
+    /**
+     * Guards the decoded chunks and the state shared with the player
+     */
+    private final Object lock = new Object();
+    private final Queue<byte[]> chunks = new ArrayDeque<>(PREFETCH_CHUNKS);
+    private final List<byte[]> head = new ArrayList<>(PREFETCH_CHUNKS);
+    private int headSize;
+    private boolean headComplete;
+    private boolean recordingHead = true;
+    private byte[] current;
+    private int position;
+    private int generation;
+    private boolean decoding;
+    private boolean endOfStream;
+    private boolean closed;
+    private IOException failure;
+
+    /**
+     * Creates a new stream and starts decoding it right away
+     *
+     * @param assetInfo the asset to reopen the file from when rewinding
+     * @param source the opened file
+     * @param decoder the decoder reading the opened file
+     * @param channels number of channels
+     * @param sampleRate the sample rate
+     */
+    public MP2Stream(AssetInfo assetInfo, InputStream source, Decoder decoder, int channels, int sampleRate) {
+        this.assetInfo = assetInfo;
+        this.source = source;
+        this.decoder = decoder;
+        this.frameSize = channels * 2;
+        this.bytesPerSecond = sampleRate * frameSize;
+
+        synchronized (lock) {
+            requestDecoding();
+        }
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        synchronized (lock) {
+            while (current == null || position == current.length) {
+                current = chunks.poll();
+                position = 0;
+                if (current != null) {
+                    break;
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                if (endOfStream || closed) {
+                    return -1;
+                }
+
+                // Underrun, wait for the decoder
+                requestDecoding();
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the decoder!", e);
+                }
+            }
+
+            int length = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, length);
+            position += length;
+            requestDecoding();
+
+            return length;
+        }
+    }
+
+    @Override
+    public int read(@NotNull byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    /**
+     * Rewinds the stream to the given time. Rewinding to the start plays the
+     * kept first window while the decoder catches up, other positions are
+     * reached by decoding from the start.
+     *
+     * @param time the time in seconds
+     */
+    @Override
+    public void setTime(float time) {
+        long offset = Math.max(0, (long) (time * bytesPerSecond) / frameSize * frameSize);
+        synchronized (decoderLock) {
+            closeDecoder();
+
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+
+                // Invalidate the running decoding
+                generation++;
+                decoding = false;
+                failure = null;
+                recordingHead = false;
+                current = null;
+                chunks.clear();
+                if (offset == 0 && !head.isEmpty()) {
+                    chunks.addAll(head);
+                    skipBytes = headSize;
+                    endOfStream = headComplete;
+                } else {
+                    skipBytes = offset;
+                    endOfStream = false;
+                }
+                requestDecoding();
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (decoderLock) {
+            synchronized (lock) {
+                closed = true;
+                generation++;
+                chunks.clear();
+                head.clear();
+                current = null;
+                lock.notifyAll();
+            }
+            closeDecoder();
+        }
+    }
+
+    private void requestDecoding() {
+        if (!decoding && !endOfStream && !closed && failure == null && chunks.size() < PREFETCH_CHUNKS) {
+            decoding = true;
+            int decodingGeneration = generation;
+            DECODER_POOL.execute(() -> decode(decodingGeneration));
+        }
+    }
+
+    private void decode(int decodingGeneration) {
+        try {
+            while (true) {
+                synchronized (decoderLock) {
+                    synchronized (lock) {
+                        if (decodingGeneration != generation) {
+                            return;
+                        }
+                        if (chunks.size() >= PREFETCH_CHUNKS) {
+                            decoding = false;
+                            return;
+                        }
+                    }
+
+                    byte[] chunk = readChunk();
+
+                    synchronized (lock) {
+                        if (decodingGeneration != generation) {
+                            return;
+                        }
+                        if (chunk == null) {
+                            endOfStream = true;
+                            decoding = false;
+                            if (recordingHead) {
+                                headComplete = true;
+                                recordingHead = false;
+                            }
+                            lock.notifyAll();
+                            closeDecoder();
+                            return;
+                        }
+
+                        if (recordingHead) {
+                            head.add(chunk);
+                            headSize += chunk.length;
+                            recordingHead = head.size() < PREFETCH_CHUNKS;
+                        }
+                        chunks.add(chunk);
+                        lock.notifyAll();
+                    }
+                }
+            }
+        } catch (IOException | UnsupportedMediaException | RuntimeException e) {
+            synchronized (lock) {
+                if (decodingGeneration != generation) {
+                    return;
+                }
+                LOGGER.log(Level.SEVERE, "Failed to decode " + assetInfo.getKey() + "!", e);
+                failure = e instanceof IOException ? (IOException) e : new IOException("Failed to decode " + assetInfo.getKey() + "!", e);
+                decoding = false;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Decodes the next chunk, opening the file again if needed
+     *
+     * @return the chunk or {@code null} if the end of the file was reached
+     */
+    private byte[] readChunk() throws IOException, UnsupportedMediaException {
+        if (decoder == null) {
+            source = assetInfo.openStream();
+            MpxReader reader = new MpxReader();
+            reader.readInformation(source, true);
+            decoder = reader.getDecoder(source, true);
+        }
+
+        byte[] chunk = new byte[CHUNK_SIZE];
+
+        // Skip the already played part
+        while (skipBytes > 0) {
+            int length = decoder.read(chunk, 0, (int) Math.min(skipBytes, CHUNK_SIZE));
+            if (length < 0) {
+                return null;
+            }
+            skipBytes -= length;
+        }
+
+        int size = 0;
+        while (size < CHUNK_SIZE) {
+            int length = decoder.read(chunk, size, CHUNK_SIZE - size);
+            if (length < 0) {
+                break;
+            }
+            size += length;
+        }
+        if (size == 0) {
+            return null;
+        }
+
+        return size < CHUNK_SIZE ? Arrays.copyOf(chunk, size) : chunk;
+    }
+
+    private void closeDecoder() {
+        if (decoder != null) {
+            decoder.close();
+            decoder = null;
+        }
+        if (source != null) {
+            try {
+                source.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to close " + assetInfo.getKey() + "!", e);
+            }
+            source = null;
+        }
+    }
+}
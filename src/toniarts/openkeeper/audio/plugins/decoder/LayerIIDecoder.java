@@ -45,6 +45,15 @@ class LayerIIDecoder extends LayerIDecoder {
     private final static int[] STEPPING = {
             3, 5, 7, 9, 15, 31, 63, 127, 255, 511, 1023, 2047, 4095, 8191, 16383, 32767, 65535
     };
+    // 1 / 2^(n - 1), multiplying with a power of two reciprocal is exact and faster than dividing
+    private final static double[] RECIPROCAL = new double[17];
+
+    static {
+        for (int n = 1; n < RECIPROCAL.length; n++) {
+            RECIPROCAL[n] = 1.0 / (1 << n - 1);
+        }
+    }
+
     // [tableGroup][subbandgroup][value]
     private final static byte[][] NBAL = {
             {
@@ -249,12 +258,12 @@ class LayerIIDecoder extends LayerIDecoder {
                         }
 
                         for (scf = 0; scf < 3; scf++) {
-                            f = (sam[scf][sb] - (1 << x - 1)) / (double) (1 << x - 1);
+                            f = (sam[scf][sb] - (1 << x - 1)) * RECIPROCAL[x];
                             sam[scf][sb] = (f + F[index]) * E[index];
                         }
                     } else {
                         for (scf = 0; scf < 3; scf++) {
-                            f = (get(k) - (1 << k - 1)) / (double) (1 << k - 1);
+                            f = (get(k) - (1 << k - 1)) * RECIPROCAL[k];
                             sam[scf][sb] = (f + F[index]) * E[index];
                         }
                     }
@@ -285,12 +294,12 @@ class LayerIIDecoder extends LayerIDecoder {
                             k /= steps;
                         }
                         for (scf = 0; scf < 3; scf++) {
-                            f = (sam1[scf][sb] - (1 << x - 1)) / (double) (1 << x - 1);
+                            f = (sam1[scf][sb] - (1 << x - 1)) * RECIPROCAL[x];
                             sam1[scf][sb] = (f + F[index]) * E[index];
                         }
                     } else {
                         for (scf = 0; scf < 3; scf++) {
-                            f = (get(k) - (1 << k - 1)) / (double) (1 << k - 1);
+                            f = (get(k) - (1 << k - 1)) * RECIPROCAL[k];
                             sam1[scf][sb] = (f + F[index]) * E[index];
                         }
                     }
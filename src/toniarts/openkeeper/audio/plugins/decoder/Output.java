@@ -22,6 +22,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * The
@@ -66,6 +68,7 @@ abstract class Output extends Initializer {
     int counter;
     private float[] frameBufferZeroValues;
     private byte[] buffer, zeroBuffer;
+    private ByteBuffer pcmBuffer;
     private final int obuffersize;
     private final int frameBufferAnalyzerSize;
     private int readPos, size;
@@ -271,6 +274,7 @@ abstract class Output extends Initializer {
         if (buffer == null) {
             buffer = new byte[obuffersize * outputChannels];
             zeroBuffer = new byte[buffer.length];
+            pcmBuffer = ByteBuffer.wrap(buffer).order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
             flush = 0;
         }
         if (framesMinusOne > 0 && info.lame) {
@@ -385,6 +389,7 @@ abstract class Output extends Initializer {
         frameBufferZeroValues = null;
         buffer = null;
         zeroBuffer = null;
+        pcmBuffer = null;
         pointer = null;
     }
 
@@ -469,56 +474,50 @@ abstract class Output extends Initializer {
         }
     }
 
-    final void setBuffer(double f, double s, int i, int channelNumber) {
-        if (f > 1) {
-            f = 1;
-        }
-        if (f < -1) {
-            f = -1;
-        }
-
-        if (s > 1) {
-            s = 1;
-        }
-        if (s < -1) {
-            s = -1;
-        }
+    /**
+     * Writes the synthesized samples of a subband block of one channel to the
+     * output buffer
+     *
+     * @param pcm the synthesized samples, one per subband
+     * @param samples the subband samples, for the analyzer
+     * @param channelNumber the channel
+     */
+    final void setBuffer(double[] pcm, double[] samples, int channelNumber) {
+        int p = pointer[channelNumber];
+        int step = outputChannels << 1;
+
+        for (int i = 0; i < SBLIMIT; i++) {
+            double f = pcm[i];
+            if (f > 1) {
+                f = 1;
+            } else if (f < -1) {
+                f = -1;
+            }
 
-        if (frequencyMode) {
-            subbandValues[channelNumber][i] += s;
-        } else {
-            int index = counter >>> (SHIFT_LEVEL - 2 + outputChannels);
+            if (frequencyMode) {
+                double s = samples[i];
+                if (s > 1) {
+                    s = 1;
+                } else if (s < -1) {
+                    s = -1;
+                }
+                subbandValues[channelNumber][i] += s;
+            } else {
+                int index = counter >>> (SHIFT_LEVEL - 2 + outputChannels);
 
-            if (frameBufferValues[channelNumber].length <= index) {
-                index--;
+                if (frameBufferValues[channelNumber].length <= index) {
+                    index--;
+                }
+                frameBufferValues[channelNumber][index] = (float) f;
             }
-            frameBufferValues[channelNumber][index] = (float) f;
-        }
-
-        f *= 32767;
 
-        short w = (short) f;
-        // one short with little-endian order to 2 bytes in big-endian order!!
+            pcmBuffer.putShort(p, (short) (f * 32767));
+            p += step;
 
-        byte b1;
-        byte b2;
-        if (bigEndian) {
-            b1 = (byte) (w >>> 8);
-            b2 = (byte) w;
-        } else {
-            b1 = (byte) w;
-            b2 = (byte) (w >>> 8);
+            counter++;
         }
 
-        int p = pointer[channelNumber];
-
-        buffer[p] = b1;
-        buffer[p + 1] = b2;
-
-        p += outputChannels << 1;
         pointer[channelNumber] = p;
-
-        counter++;
     }
 
     private void flush() {
@@ -0,0 +1,393 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game;
+
+import toniarts.openkeeper.tools.convert.AssetsConverter;
+import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.conversion.ConversionManifest;
+import toniarts.openkeeper.tools.convert.map.GameLevel;
+import toniarts.openkeeper.tools.convert.map.KwdFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A persisted catalog of the maps in the maps folder. Holds the map info
+ * needed for the map selection, so that the maps don't need to be read every
+ * time. On refresh, only the new and changed map files are read.<br>
+ * Thread safe.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class MapCatalog {
+
+    private static final String MAP_CATALOG_FILENAME = "MapCatalog.properties";
+    private static final int VERSION = 2;
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_FOLDER = "folder";
+    private static final String KEY_HASH = ".hash";
+    private static final Logger LOGGER = Logger.getLogger(MapCatalog.class.getName());
+
+    private final String dkIIFolder;
+    private final Path mapsFolder;
+    private final Map<String, MapInfo> maps = new HashMap<>();
+
+    private MapCatalog(String dkIIFolder, String mapsFolder) {
+        this.dkIIFolder = dkIIFolder;
+        this.mapsFolder = Paths.get(dkIIFolder + mapsFolder);
+    }
+
+    /**
+     * Loads up the map catalog, as it was on the last refresh
+     *
+     * @param dkIIFolder the Dungeon Keeper II folder
+     * @param mapsFolder the maps folder, relative to the Dungeon Keeper II
+     * folder
+     * @return the map catalog, empty if never refreshed
+     */
+    public static MapCatalog load(String dkIIFolder, String mapsFolder) {
+        MapCatalog catalog = new MapCatalog(dkIIFolder, mapsFolder);
+        File file = getFile();
+        if (!file.exists()) {
+            return catalog;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(file.toPath())) {
+            properties.load(is);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to load the map catalog!", ex);
+            return catalog;
+        }
+
+        if (!Integer.toString(VERSION).equals(properties.getProperty(KEY_VERSION))
+                || !catalog.mapsFolder.toString().equals(properties.getProperty(KEY_FOLDER))) {
+            return catalog;
+        }
+        for (String key : properties.stringPropertyNames()) {
+            if (key.endsWith(KEY_HASH)) {
+                String fileName = key.substring(0, key.length() - KEY_HASH.length());
+                try {
+                    catalog.maps.put(fileName, new MapInfo(fileName, properties));
+                } catch (RuntimeException ex) {
+                    LOGGER.log(Level.WARNING, "Broken map catalog entry " + fileName + "!", ex);
+                }
+            }
+        }
+
+        return catalog;
+    }
+
+    /**
+     * Updates the catalog to match the maps folder. Reads the new and changed
+     * maps, and removes the deleted ones. Saves the catalog if anything has
+     * changed.
+     *
+     * @return true if the catalog changed
+     */
+    public synchronized boolean refresh() {
+        List<Path> files = new ArrayList<>();
+        DirectoryStream.Filter<Path> filter = (Path entry) -> entry.getFileName().toString().toLowerCase().endsWith(".kwd") && !Files.isDirectory(entry);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(mapsFolder, filter)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to list the maps!", ex);
+            return false;
+        }
+
+        // Only the new and changed files need to be read, in parallel
+        Map<String, MapInfo> current = getMapsByFile();
+        List<MapInfo> refreshed = new ArrayList<>(files.size());
+        files.parallelStream().map(file -> {
+            MapInfo mapInfo = current.get(file.getFileName().toString());
+            File f = file.toFile();
+            if (mapInfo != null && mapInfo.size == f.length() && mapInfo.lastModified == f.lastModified()) {
+                return mapInfo;
+            }
+            return readMapInfo(f, mapInfo);
+        }).forEachOrdered(mapInfo -> {
+            if (mapInfo != null) {
+                refreshed.add(mapInfo);
+            }
+        });
+
+        // See if anything changed
+        boolean changed = refreshed.size() != current.size();
+        for (MapInfo mapInfo : refreshed) {
+            if (current.get(mapInfo.fileName) != mapInfo) {
+                changed = true;
+                break;
+            }
+        }
+        if (changed) {
+            synchronized (maps) {
+                maps.clear();
+                for (MapInfo mapInfo : refreshed) {
+                    maps.put(mapInfo.fileName, mapInfo);
+                }
+            }
+            save();
+        }
+
+        return changed;
+    }
+
+    private MapInfo readMapInfo(File file, MapInfo oldMapInfo) {
+        try {
+
+            // Maybe just touched
+            String hash = ConversionManifest.hash(Files.readAllBytes(file.toPath()));
+            if (oldMapInfo != null && oldMapInfo.hash.equals(hash)) {
+                return new MapInfo(oldMapInfo, file.length(), file.lastModified());
+            }
+
+            KwdFile kwd = new KwdFile(dkIIFolder, file, false);
+            return new MapInfo(file, hash, kwd);
+        } catch (Exception ex) {
+            LOGGER.log(Level.WARNING, "Failed to read the map " + file + "!", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the catalog
+     */
+    public void save() {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_VERSION, Integer.toString(VERSION));
+        properties.setProperty(KEY_FOLDER, mapsFolder.toString());
+        for (MapInfo mapInfo : getMaps()) {
+            mapInfo.write(properties);
+        }
+
+        // Write to a temporary file first, so that an interruption doesn't leave us with a broken catalog
+        Path file = getFile().toPath();
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tempFile)) {
+                properties.store(os, "Map catalog");
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Failed to save the map catalog!", ex);
+        }
+    }
+
+    /**
+     * Is the catalog empty, i.e. never refreshed or no maps
+     *
+     * @return true if there are no maps
+     */
+    public boolean isEmpty() {
+        synchronized (maps) {
+            return maps.isEmpty();
+        }
+    }
+
+    /**
+     * Get the maps in the catalog
+     *
+     * @return the maps, in no particular order
+     */
+    public Collection<MapInfo> getMaps() {
+        synchronized (maps) {
+            return new ArrayList<>(maps.values());
+        }
+    }
+
+    private Map<String, MapInfo> getMapsByFile() {
+        synchronized (maps) {
+            return new HashMap<>(maps);
+        }
+    }
+
+    public String getDkIIFolder() {
+        return dkIIFolder;
+    }
+
+    private static File getFile() {
+        return new File(AssetsConverter.getCurrentFolder().concat(MAP_CATALOG_FILENAME));
+    }
+
+    /**
+     * The map info needed by the map selection. Immutable.
+     */
+    public static final class MapInfo {
+
+        private final String fileName;
+        private final String file;
+        private final String hash;
+        private final long size;
+        private final long lastModified;
+        private final String name;
+        private final String levelName;
+        private final int playerCount;
+        private final int width;
+        private final int height;
+        private final boolean skirmish;
+        private final boolean multiplayer;
+        private final boolean myPetDungeon;
+        private final String thumbnail;
+
+        private MapInfo(File file, String hash, KwdFile kwd) {
+            this.fileName = file.getName();
+            this.file = file.getPath();
+            this.hash = hash;
+            this.size = file.length();
+            this.lastModified = file.lastModified();
+            this.name = kwd.getGameLevel().getName();
+            this.levelName = kwd.getGameLevel().getLevelName();
+            this.playerCount = kwd.getGameLevel().getPlayerCount();
+            this.width = kwd.getMapWidth();
+            this.height = kwd.getMapHeight();
+            this.skirmish = kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_SKIRMISH_LEVEL);
+            this.multiplayer = kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_MULTIPLAYER_LEVEL);
+            this.myPetDungeon = kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_MY_PET_DUNGEON_LEVEL);
+            this.thumbnail = AssetsConverter.MAP_THUMBNAILS_FOLDER + "/" + ConversionUtils.stripFileName(name) + ".png";
+        }
+
+        private MapInfo(MapInfo mapInfo, long size, long lastModified) {
+            this.fileName = mapInfo.fileName;
+            this.file = mapInfo.file;
+            this.hash = mapInfo.hash;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.name = mapInfo.name;
+            this.levelName = mapInfo.levelName;
+            this.playerCount = mapInfo.playerCount;
+            this.width = mapInfo.width;
+            this.height = mapInfo.height;
+            this.skirmish = mapInfo.skirmish;
+            this.multiplayer = mapInfo.multiplayer;
+            this.myPetDungeon = mapInfo.myPetDungeon;
+            this.thumbnail = mapInfo.thumbnail;
+        }
+
+        private MapInfo(String fileName, Properties properties) {
+            this.fileName = fileName;
+            this.file = getProperty(properties, "file");
+            this.hash = getProperty(properties, "hash");
+            this.size = Long.parseLong(getProperty(properties, "size"));
+            this.lastModified = Long.parseLong(getProperty(properties, "lastModified"));
+            this.name = getProperty(properties, "name");
+            this.levelName = getProperty(properties, "levelName");
+            this.playerCount = Integer.parseInt(getProperty(properties, "playerCount"));
+            this.width = Integer.parseInt(getProperty(properties, "width"));
+            this.height = Integer.parseInt(getProperty(properties, "height"));
+            this.skirmish = Boolean.parseBoolean(getProperty(properties, "skirmish"));
+            this.multiplayer = Boolean.parseBoolean(getProperty(properties, "multiplayer"));
+            this.myPetDungeon = Boolean.parseBoolean(getProperty(properties, "myPetDungeon"));
+            this.thumbnail = getProperty(properties, "thumbnail");
+        }
+
+        private String getProperty(Properties properties, String key) {
+            String value = properties.getProperty(fileName + "." + key);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing " + key + "!");
+            }
+            return value;
+        }
+
+        private void write(Properties properties) {
+            properties.setProperty(fileName + ".file", file);
+            properties.setProperty(fileName + KEY_HASH, hash);
+            properties.setProperty(fileName + ".size", Long.toString(size));
+            properties.setProperty(fileName + ".lastModified", Long.toString(lastModified));
+            properties.setProperty(fileName + ".name", name);
+            properties.setProperty(fileName + ".levelName", levelName);
+            properties.setProperty(fileName + ".playerCount", Integer.toString(playerCount));
+            properties.setProperty(fileName + ".width", Integer.toString(width));
+            properties.setProperty(fileName + ".height", Integer.toString(height));
+            properties.setProperty(fileName + ".skirmish", Boolean.toString(skirmish));
+            properties.setProperty(fileName + ".multiplayer", Boolean.toString(multiplayer));
+            properties.setProperty(fileName + ".myPetDungeon", Boolean.toString(myPetDungeon));
+            properties.setProperty(fileName + ".thumbnail", thumbnail);
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public File getFile() {
+            return new File(file);
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLevelName() {
+            return levelName;
+        }
+
+        public int getPlayerCount() {
+            return playerCount;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public boolean isSkirmish() {
+            return skirmish;
+        }
+
+        public boolean isMultiplayer() {
+            return multiplayer;
+        }
+
+        public boolean isMyPetDungeon() {
+            return myPetDungeon;
+        }
+
+        /**
+         * Get the map thumbnail asset key. The thumbnail might not have been
+         * generated yet.
+         *
+         * @return the thumbnail asset key
+         */
+        public String getThumbnail() {
+            return thumbnail;
+        }
+    }
+
+}
@@ -18,32 +18,29 @@ package toniarts.openkeeper.game;
 
 import com.jme3.math.FastMath;
 import toniarts.openkeeper.Main;
-import toniarts.openkeeper.tools.convert.map.GameLevel;
 import toniarts.openkeeper.tools.convert.map.KwdFile;
 import toniarts.openkeeper.utils.PathUtils;
 
-import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Map;
 
 /**
- * Class isolate map selection
+ * Class isolate map selection. The maps are listed from the map catalog, the
+ * catalog is refreshed in the background.
  *
  * @author ArchDemon
  */
 public class MapSelector {
 
-    private final List<GameMapContainer> skirmishMaps = new ArrayList<>();
-    private final List<GameMapContainer> multiplayerMaps = new ArrayList<>();
-    private final List<GameMapContainer> mpdMaps = new ArrayList<>();
+    private final MapCatalog catalog;
+    private final Map<String, GameMapContainer> mapsByFile = new HashMap<>();
+    private volatile List<GameMapContainer> skirmishMaps = Collections.emptyList();
+    private volatile List<GameMapContainer> multiplayerMaps = Collections.emptyList();
+    private volatile List<GameMapContainer> mpdMaps = Collections.emptyList();
     private GameMapContainer map;
     private boolean skirmish;
     private boolean mpd;
@@ -51,32 +48,61 @@ public class MapSelector {
     public MapSelector() {
 
         // Get the maps
-        DirectoryStream.Filter<Path> filter = (Path entry) -> entry.getFileName().toString().toLowerCase().endsWith(".kwd") && !Files.isDirectory(entry);
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(Main.getDkIIFolder() + PathUtils.DKII_MAPS_FOLDER), filter)) {
-            for (Path file : stream) {
-
-                // Read the map
-                KwdFile kwd = new KwdFile(Main.getDkIIFolder(), file.toFile(), false);
-                GameMapContainer gameMapContainer = new GameMapContainer(kwd, kwd.getGameLevel().getName());
-                if (kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_SKIRMISH_LEVEL)) {
-                    skirmishMaps.add(gameMapContainer);
-                }
-                if (kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_MULTIPLAYER_LEVEL)) {
-                    multiplayerMaps.add(gameMapContainer);
-                }
-                if (kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_MY_PET_DUNGEON_LEVEL)) {
-                    mpdMaps.add(gameMapContainer);
+        catalog = MapCatalog.load(Main.getDkIIFolder(), PathUtils.DKII_MAPS_FOLDER);
+        if (catalog.isEmpty()) {
+
+            // Nothing known of the maps, we need to read them now
+            catalog.refresh();
+            updateMaps();
+        } else {
+
+            // Use the maps we know of and look for the changes in the background
+            updateMaps();
+            Thread thread = new Thread(() -> {
+                if (catalog.refresh()) {
+                    updateMaps();
                 }
+            }, "MapCatalogRefresh");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private synchronized void updateMaps() {
+        List<GameMapContainer> skirmishMapList = new ArrayList<>();
+        List<GameMapContainer> multiplayerMapList = new ArrayList<>();
+        List<GameMapContainer> mpdMapList = new ArrayList<>();
+        Map<String, GameMapContainer> containers = new HashMap<>();
+        for (MapCatalog.MapInfo mapInfo : catalog.getMaps()) {
+
+            // Keep the already opened maps if not changed
+            GameMapContainer gameMapContainer = mapsByFile.get(mapInfo.getFileName());
+            if (gameMapContainer == null || !gameMapContainer.getMapInfo().getHash().equals(mapInfo.getHash())) {
+                gameMapContainer = new GameMapContainer(mapInfo, catalog.getDkIIFolder());
+            }
+            containers.put(mapInfo.getFileName(), gameMapContainer);
+
+            if (mapInfo.isSkirmish()) {
+                skirmishMapList.add(gameMapContainer);
+            }
+            if (mapInfo.isMultiplayer()) {
+                multiplayerMapList.add(gameMapContainer);
+            }
+            if (mapInfo.isMyPetDungeon()) {
+                mpdMapList.add(gameMapContainer);
             }
-        } catch (IOException ex) {
-            Logger.getLogger(MapSelector.class.getName()).log(Level.SEVERE, "Failed to load the maps!", ex);
         }
+        mapsByFile.clear();
+        mapsByFile.putAll(containers);
 
         // Sort them
-        Comparator c = new MapComparator();
-        skirmishMaps.sort(c);
-        multiplayerMaps.sort(c);
-        mpdMaps.sort(c);
+        Comparator<GameMapContainer> c = new MapComparator();
+        skirmishMapList.sort(c);
+        multiplayerMapList.sort(c);
+        mpdMapList.sort(c);
+        skirmishMaps = Collections.unmodifiableList(skirmishMapList);
+        multiplayerMaps = Collections.unmodifiableList(multiplayerMapList);
+        mpdMaps = Collections.unmodifiableList(mpdMapList);
     }
 
     public void random() {
@@ -109,8 +135,14 @@ public class MapSelector {
         return map;
     }
 
-    public void selectMap(int index) {
-        map = getMaps().get(index);
+    /**
+     * Select a map. The map lists are replaced when the catalog is refreshed,
+     * so the map is selected as such, not by its index in the list
+     *
+     * @param map the map to select
+     */
+    public void selectMap(GameMapContainer map) {
+        this.map = map;
     }
 
     public List<GameMapContainer> getMaps() {
@@ -154,9 +186,10 @@ public class MapSelector {
      * @return the map, or {@code null} if not found
      */
     public GameMapContainer getMap(String map) {
-        int index = Collections.binarySearch(getMaps(), new GameMapContainer(null, map), new MapComparator());
+        List<GameMapContainer> maps = getMaps();
+        int index = Collections.binarySearch(maps, new GameMapContainer(map), new MapComparator());
         if (index >= 0) {
-            this.map = getMaps().get(index);
+            this.map = maps.get(index);
             return this.map;
         }
         return null;
@@ -175,22 +208,45 @@ public class MapSelector {
     }
 
     /**
-     * Small container class that holds the actual map data and the name
+     * Small container class that holds the map info and the actual map data,
+     * read on demand
      */
     public static class GameMapContainer {
 
-        private final KwdFile map;
+        private final MapCatalog.MapInfo mapInfo;
+        private final String dkIIFolder;
         private final String mapName;
+        private KwdFile map;
 
-        public GameMapContainer(KwdFile map, String mapName) {
-            this.map = map;
+        private GameMapContainer(MapCatalog.MapInfo mapInfo, String dkIIFolder) {
+            this.mapInfo = mapInfo;
+            this.dkIIFolder = dkIIFolder;
+            this.mapName = mapInfo.getName();
+        }
+
+        private GameMapContainer(String mapName) {
+            this.mapInfo = null;
+            this.dkIIFolder = null;
             this.mapName = mapName;
         }
 
-        public KwdFile getMap() {
+        /**
+         * Get the map, only the general info is read on the first call. The
+         * rest is loaded on demand.
+         *
+         * @return the map
+         */
+        public synchronized KwdFile getMap() {
+            if (map == null && mapInfo != null) {
+                map = new KwdFile(dkIIFolder, mapInfo.getFile(), false);
+            }
             return map;
         }
 
+        public MapCatalog.MapInfo getMapInfo() {
+            return mapInfo;
+        }
+
         public String getMapName() {
             return mapName;
         }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.component;
+
+import com.simsilica.es.EntityComponent;
+
+import java.util.List;
+
+/**
+ * Registry of all the concrete entity components we use in the game. The order
+ * is significant, the network serializer registrations and save games rely on
+ * it, so only append to the end of the list.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public final class ComponentTypes {
+
+    public static final List<Class<? extends EntityComponent>> ALL = List.of(
+            AttackTarget.class,
+            ChickenAi.class,
+            ChickenGenerator.class,
+            CreatureAi.class,
+            CreatureComponent.class,
+            CreatureEfficiency.class,
+            CreatureExperience.class,
+            CreatureFall.class,
+            CreatureHunger.class,
+            CreatureImprisoned.class,
+            CreatureMeleeAttack.class,
+            CreatureMood.class,
+            CreatureRecuperating.class,
+            CreatureSleep.class,
+            CreatureTortured.class,
+            CreatureViewState.class,
+            Death.class,
+            Decay.class,
+            DoorComponent.class,
+            DoorViewState.class,
+            Fearless.class,
+            FollowTarget.class,
+            Food.class,
+            Gold.class,
+            HauledBy.class,
+            Health.class,
+            InHand.class,
+            Interaction.class,
+            Mobile.class,
+            Navigation.class,
+            ObjectComponent.class,
+            ObjectViewState.class,
+            Objective.class,
+            Owner.class,
+            Party.class,
+            Placeable.class,
+            PlayerObjective.class,
+            PortalGem.class,
+            Position.class,
+            RoomStorage.class,
+            Senses.class,
+            Slapped.class,
+            Spellbook.class,
+            TaskComponent.class,
+            Threat.class,
+            TrapComponent.class,
+            TrapViewState.class,
+            Trigger.class
+    );
+
+    private ComponentTypes() {
+        // Nope
+    }
+
+}
@@ -51,6 +51,8 @@ public class GameConsole {
     private enum ParameterCommands {
         ADD_GOLD,
         ADD_MANA,
+        LOAD_GAME,
+        SAVE_GAME,
         SPAWN_CREATURE,
         SPAWN_IMPS
     }
@@ -181,6 +183,22 @@ public class GameConsole {
                         console.outputError("First parameter must be a number!");
                     }
                     break;
+                case SAVE_GAME:
+                    stateManager.getState(PlayerState.class).saveGame(args[1]).whenComplete((file, ex) -> {
+                        stateManager.getApplication().enqueue(() -> {
+                            if (ex != null) {
+                                console.outputError("Failed to save the game: " + ex.getMessage());
+                            } else {
+                                console.output("Game saved to " + file);
+                            }
+                        });
+                    });
+                    break;
+                case LOAD_GAME:
+                    if (!stateManager.getState(PlayerState.class).loadGame(args[1])) {
+                        console.outputError("Save " + args[1] + " doesn't exist");
+                    }
+                    break;
                 case SPAWN_IMPS:
                     try {
                         int amount = Integer.parseInt(args[1]);
@@ -77,7 +77,8 @@ public class CreaturesController implements ICreaturesController {
     private static final Logger LOGGER = Logger.getLogger(CreaturesController.class.getName());
 
     /**
-     * Load creatures from a KWD file straight (new game)
+     * Load creatures from a KWD file straight (new game) or use the creatures
+     * restored from a save (loaded game)
      *
      * @param kwdFile the KWD file
      * @param entityData the entity controller
@@ -86,9 +87,10 @@ public class CreaturesController implements ICreaturesController {
      * @param gameController
      * @param mapController
      * @param levelInfo
+     * @param newGame whether to load the creatures from the KWD file
      */
     public CreaturesController(KwdFile kwdFile, EntityData entityData, Map<Variable.MiscVariable.MiscType, Variable.MiscVariable> gameSettings, IGameTimer gameTimer,
-            IGameController gameController, IMapController mapController, ILevelInfo levelInfo) {
+            IGameController gameController, IMapController mapController, ILevelInfo levelInfo, boolean newGame) {
         this.kwdFile = kwdFile;
         this.entityData = entityData;
         this.gameSettings = gameSettings;
@@ -98,7 +100,9 @@ public class CreaturesController implements ICreaturesController {
         this.levelInfo = levelInfo;
 
         // Load creatures
-        loadCreatures();
+        if (newGame) {
+            loadCreatures();
+        }
     }
 
     private void loadCreatures() {
@@ -323,7 +327,7 @@ public class CreaturesController implements ICreaturesController {
 
         // Find all the living creatures of the wanted player
         EntitySet entities = entityData.getEntities(new FieldFilter<>(Owner.class, "ownerId", playerId), Owner.class, CreatureComponent.class, Health.class);
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             levelUpCreature(entity.getId(), level, 0);
         }
     }
@@ -55,16 +55,18 @@ public class DoorsController implements IDoorsController {
     }
 
     /**
-     * Load doors from a KWD file straight (new game)
+     * Load doors from a KWD file straight (new game) or use the doors restored
+     * from a save (loaded game)
      *
      * @param kwdFile the KWD file
      * @param entityData the entity controller
      * @param gameSettings the game settings
      * @param mapController the map controller
      * @param gameController
+     * @param newGame whether to load the doors from the KWD file
      */
     public DoorsController(KwdFile kwdFile, EntityData entityData, Map<Variable.MiscVariable.MiscType, Variable.MiscVariable> gameSettings,
-            IMapController mapController, IGameController gameController) {
+            IMapController mapController, IGameController gameController, boolean newGame) {
         this.kwdFile = kwdFile;
         this.entityData = entityData;
         this.gameSettings = gameSettings;
@@ -72,7 +74,9 @@ public class DoorsController implements IDoorsController {
         this.gameController = gameController;
 
         // Load doors
-        loadDoors();
+        if (newGame) {
+            loadDoors();
+        }
     }
 
     private void loadDoors() {
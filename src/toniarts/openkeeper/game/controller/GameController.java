@@ -16,15 +16,27 @@
  */
 package toniarts.openkeeper.game.controller;
 
-import com.badlogic.gdx.ai.GdxAI;
+import com.badlogic.gdx.ai.DefaultTimepiece;
+import com.badlogic.gdx.ai.Timepiece;
 import com.jme3.util.SafeArrayList;
 import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
 import toniarts.openkeeper.Main;
+import toniarts.openkeeper.game.controller.player.PlayerDoorControl;
 import toniarts.openkeeper.game.controller.player.PlayerResearchControl;
+import toniarts.openkeeper.game.controller.player.PlayerRoomControl;
+import toniarts.openkeeper.game.controller.player.PlayerSpellControl;
+import toniarts.openkeeper.game.controller.player.PlayerTrapControl;
+import toniarts.openkeeper.game.controller.room.IRoomController;
 import toniarts.openkeeper.game.data.*;
+import toniarts.openkeeper.game.component.ComponentTypes;
 import toniarts.openkeeper.game.logic.*;
 import toniarts.openkeeper.game.navigation.INavigationService;
 import toniarts.openkeeper.game.navigation.NavigationService;
+import toniarts.openkeeper.game.save.EntitySnapshot;
+import toniarts.openkeeper.game.save.SaveGame;
+import toniarts.openkeeper.game.save.SaveGameWriter;
+import toniarts.openkeeper.game.state.CheatState;
 import toniarts.openkeeper.game.state.session.PlayerService;
 import toniarts.openkeeper.game.task.ITaskManager;
 import toniarts.openkeeper.game.task.TaskManager;
@@ -39,10 +51,13 @@ import toniarts.openkeeper.tools.convert.ConversionUtils;
 import toniarts.openkeeper.tools.convert.map.*;
 import toniarts.openkeeper.utils.GameLoop;
 import toniarts.openkeeper.utils.PathUtils;
+import toniarts.openkeeper.utils.Utils;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -67,6 +82,8 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
     private final PlayerService playerService;
 
     private GameLoop gameLogicLoop;
+    private long gameLogicUpdateRate;
+    private volatile boolean steppedGame = false;
     private GameLoop steeringCalculatorLoop;
     private GameLoop gameAnimationLoop;
     private GameLogicManager gameAnimationThread;
@@ -91,6 +108,14 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
     private GameResult gameResult = null;
     private Float timeLimit = null;
     private TaskManager taskManager;
+    private final SaveGameWriter saveGameWriter = new SaveGameWriter();
+    private Long lockstepRandomSeed = null;
+    private Random random;
+    private final Timepiece timepiece = new DefaultTimepiece();
+    private volatile boolean paused = false;
+    private LockstepCommandQueue lockstepCommandQueue;
+    private StateChecksumSystem stateChecksumSystem;
+    private final Queue<SaveRequest> saveRequests = new ConcurrentLinkedQueue<>();
 
     private static final Logger LOGGER = Logger.getLogger(GameController.class.getName());
 
@@ -154,8 +179,116 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
         }
     }
 
+    /**
+     * Enables the deterministic lockstep simulation. Must be set before
+     * creating the game. In lockstep mode all the systems run in the single
+     * game logic loop with a fixed time step, the player commands are
+     * executed on scheduled ticks and a state checksum is calculated every
+     * {@link StateChecksumSystem#DEFAULT_INTERVAL} seconds.
+     *
+     * @param randomSeed the random seed, all the peers must use the same
+     */
+    public void setLockstep(long randomSeed) {
+        this.lockstepRandomSeed = randomSeed;
+    }
+
+    public boolean isLockstep() {
+        return lockstepRandomSeed != null;
+    }
+
     public void createNewGame() {
 
+        // Seed the random before anything random happens
+        if (isLockstep()) {
+            random = new Random(lockstepRandomSeed);
+        }
+        bindToThread();
+        try {
+            loadNewGame();
+        } finally {
+            unbindFromThread();
+        }
+    }
+
+    /**
+     * Creates the game from a save game instead of starting the level from
+     * the beginning. The players given to the controller are replaced with
+     * the saved ones.
+     *
+     * @param saveGame the save game to continue
+     * @throws IOException if the saved game objects can't be read
+     */
+    public void loadGame(SaveGame saveGame) throws IOException {
+        if (isLockstep()) {
+            random = new Random(lockstepRandomSeed);
+        }
+        bindToThread();
+        try {
+            loadSavedGame(saveGame);
+        } finally {
+            unbindFromThread();
+        }
+    }
+
+    private void loadNewGame() {
+        loadLevel();
+
+        // The players
+        setupPlayers(true);
+
+        // Action points
+        loadActionPoints();
+
+        // The world
+        gameWorldController = new GameWorldController(kwdFile, entityData, gameSettings, players, playerControllers, this);
+        gameWorldController.createNewGame(this, this);
+
+        // Trigger data
+        for (short i = 0; i < LEVEL_FLAG_MAX_COUNT; i++) {
+            flags.add(i, 0);
+        }
+
+        for (byte i = 0; i < LEVEL_TIMER_MAX_COUNT; i++) {
+            timers.add(i, new GameTimer());
+        }
+
+        createGameSystems();
+    }
+
+    private void loadSavedGame(SaveGame saveGame) throws IOException {
+        loadLevel();
+
+        // The players, as they were
+        players.clear();
+        for (Keeper keeper : saveGame.getPlayers()) {
+            players.put(keeper.getId(), keeper);
+        }
+        setupPlayers(false);
+
+        // Action points
+        loadActionPoints();
+
+        // The world
+        gameWorldController = new GameWorldController(kwdFile, entityData, gameSettings, players, playerControllers, this);
+        gameWorldController.loadGame(this, this, saveGame.getMapData(), saveGame.getEntities());
+
+        // Trigger data
+        for (int flag : saveGame.getFlags()) {
+            flags.add(flag);
+        }
+        timers.addAll(saveGame.getTimers());
+        levelScore = saveGame.getLevelScore();
+        timeLimit = saveGame.getTimeLimit();
+
+        createGameSystems();
+
+        // Continue the game time from where it was
+        gameLogicThread.setTicks(saveGame.getTicks());
+        gameLogicThread.setGameTime(saveGame.getGameTime());
+    }
+
+    private void loadLevel() {
+
         // Load the level data
         try {
             if (level != null) {
@@ -170,17 +303,9 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
             LOGGER.log(Level.SEVERE, "Failed to load the map file!", ex);
             throw new RuntimeException(level, ex);
         }
+    }
 
-        // The players
-        setupPlayers();
-
-        // Action points
-        loadActionPoints();
-
-        // The world
-        gameWorldController = new GameWorldController(kwdFile, entityData, gameSettings, players, playerControllers, this);
-        gameWorldController.createNewGame(this, this);
-
+    private void createGameSystems() {
         positionSystem = new PositionSystem(gameWorldController.getMapController(), entityData, gameWorldController.getCreaturesController(), gameWorldController.getDoorsController(), gameWorldController.getObjectsController());
 
         // Navigation
@@ -197,23 +322,26 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
         actionPointController = new ActionPointTriggerLogicController(this, this, this, gameWorldController.getMapController(), gameWorldController.getCreaturesController(), positionSystem);
         playerTriggerLogicController = new PlayerTriggerLogicController(this, this, this, gameWorldController.getMapController(), gameWorldController.getCreaturesController(), playerService);
 
-        // Trigger data
-        for (short i = 0; i < LEVEL_FLAG_MAX_COUNT; i++) {
-            flags.add(i, 0);
-        }
-
-        for (byte i = 0; i < LEVEL_TIMER_MAX_COUNT; i++) {
-            timers.add(i, new GameTimer());
-        }
-
         int triggerId = kwdFile.getGameLevel().getTriggerId();
         if (triggerId != 0) {
             triggerControl = new TriggerControl(this, this, this, gameWorldController.getMapController(), gameWorldController.getCreaturesController(), triggerId);
         }
 
         // Create the game loops ready to start
+        // Animation systems
+        IGameLogicUpdatable dungeonHeartConstruction = new DungeonHeartConstruction(entityData, getLevelVariable(Variable.MiscVariable.MiscType.TIME_BEFORE_DUNGEON_HEART_CONSTRUCTION_BEGINS));
+        IGameLogicUpdatable creatureFallSystem = new CreatureFallSystem(entityData);
+
+        // Steering
+        IGameLogicUpdatable movementSystem = new MovementSystem(entityData);
+
         // Game logic
-        gameLogicThread = new GameLogicManager(positionSystem,
+        List<IGameLogicUpdatable> gameLogicUpdatables = new ArrayList<>();
+        if (isLockstep()) {
+            lockstepCommandQueue = new LockstepCommandQueue();
+            gameLogicUpdatables.add(lockstepCommandQueue);
+        }
+        gameLogicUpdatables.addAll(Arrays.asList(positionSystem,
                 gameWorldController.getMapController(),
                 new DecaySystem(entityData),
                 new CreatureExperienceSystem(entityData, kwdFile, gameSettings, gameWorldController.getCreaturesController()),
@@ -235,26 +363,220 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
                 new DoorViewSystem(entityData, positionSystem),
                 new LooseObjectSystem(entityData, gameWorldController.getMapController(), playerControllers, positionSystem),
                 new HaulingSystem(entityData),
-                taskManager);
-        gameLogicLoop = new GameLoop(gameLogicThread, 1000000000 / kwdFile.getGameLevel().getTicksPerSec(), "GameLogic");
+                taskManager));
+        gameLogicUpdateRate = 1000000000 / kwdFile.getGameLevel().getTicksPerSec();
+        if (isLockstep()) {
+
+            // Everything in the same thread so that the order is always the same, animation and steering sub stepped to keep them smooth
+            int subSteps = (int) Math.max(1, gameLogicUpdateRate / GameLoop.INTERVAL_FPS_60);
+            gameLogicUpdatables.add(new SubSteppedUpdatable(subSteps, dungeonHeartConstruction, creatureFallSystem, movementSystem));
+            stateChecksumSystem = new StateChecksumSystem(entityData, players.values(),
+                    StateChecksumSystem.DEFAULT_INTERVAL * kwdFile.getGameLevel().getTicksPerSec());
+            gameLogicUpdatables.add(stateChecksumSystem);
+        }
+        gameLogicThread = new GameLogicManager(gameLogicUpdatables.toArray(new IGameLogicUpdatable[0]));
+        gameLogicLoop = new GameLoop(gameLogicThread, gameLogicUpdateRate, "GameLogic");
+        gameLogicLoop.setFixedTimeStep(isLockstep());
 
-        // Animation systems
-        gameAnimationThread = new GameLogicManager(new DungeonHeartConstruction(entityData, getLevelVariable(Variable.MiscVariable.MiscType.TIME_BEFORE_DUNGEON_HEART_CONSTRUCTION_BEGINS)), new CreatureFallSystem(entityData));
-        gameAnimationLoop = new GameLoop(gameAnimationThread, GameLoop.INTERVAL_FPS_60, "GameAnimation");
+        if (!isLockstep()) {
 
-        // Steering
-        steeringCalculatorLoop = new GameLoop(new GameLogicManager(new MovementSystem(entityData)), GameLoop.INTERVAL_FPS_60, "SteeringCalculator");
+            // Animation systems
+            gameAnimationThread = new GameLogicManager(dungeonHeartConstruction, creatureFallSystem);
+            gameAnimationLoop = new GameLoop(gameAnimationThread, GameLoop.INTERVAL_FPS_60, "GameAnimation");
+
+            // Steering
+            steeringCalculatorLoop = new GameLoop(new GameLogicManager(movementSystem), GameLoop.INTERVAL_FPS_60, "SteeringCalculator");
+        }
     }
 
     public void startGame() {
 
         // Game logic thread & movement
         gameLogicLoop.start();
-        gameAnimationLoop.start();
-        steeringCalculatorLoop.start();
+        if (gameAnimationLoop != null) {
+            gameAnimationLoop.start();
+        }
+        if (steeringCalculatorLoop != null) {
+            steeringCalculatorLoop.start();
+        }
     }
 
-    private void setupPlayers() {
+    /**
+     * Starts the game without the game loop threads. The game advances only
+     * by calling {@link #step()}, as fast as the caller wants. Used for
+     * re-simulating replays headless. Requires the lockstep mode since only
+     * then all the systems are run by the game logic.
+     */
+    public void startSteppedGame() {
+        if (!isLockstep()) {
+            throw new IllegalStateException("Stepping the game requires the lockstep mode!");
+        }
+
+        gameLogicLoop = null;
+        steppedGame = true;
+        bindToThread();
+        try {
+            gameLogicThread.start();
+        } finally {
+            unbindFromThread();
+        }
+    }
+
+    /**
+     * Binds the random and the AI time of this game to the calling thread,
+     * several games can be run in the same process
+     */
+    private void bindToThread() {
+        Utils.setThreadRandom(random);
+        Utils.setThreadTimepiece(timepiece);
+    }
+
+    private static void unbindFromThread() {
+        Utils.setThreadRandom(null);
+        Utils.setThreadTimepiece(null);
+    }
+
+    /**
+     * Advances the stepped game by one game logic tick in the calling thread.
+     * The pending save requests are processed before the tick, while the
+     * game is paused only them.
+     * The game can be stepped from different threads, as long as not
+     * concurrently.
+     *
+     * @see #startSteppedGame()
+     */
+    public void step() {
+        bindToThread();
+        try {
+
+            // Between the ticks, all the systems run in this thread so nothing is modifying the state
+            processSaveRequests();
+            if (!paused) {
+                gameLogicThread.processTick(gameLogicUpdateRate);
+            }
+        } finally {
+            unbindFromThread();
+        }
+    }
+
+    /**
+     * Get the length of a single game logic tick
+     *
+     * @return the game logic tick length in nanoseconds
+     */
+    public long getGameLogicUpdateRate() {
+        return gameLogicUpdateRate;
+    }
+
+    /**
+     * Executes a player command. In lockstep mode the command is scheduled
+     * to be run on a future tick, otherwise it is run right away.
+     *
+     * @param playerId the player issuing the command
+     * @param command the command
+     * @param data the command encoded for the other lockstep peers, can be
+     * {@code null} if there are none
+     */
+    public void executePlayerCommand(short playerId, Runnable command, byte[] data) {
+        if (lockstepCommandQueue != null) {
+            lockstepCommandQueue.schedule(playerId, command, data);
+        } else {
+
+            // Not in the middle of a game logic tick
+            List<GameLoop> lockedLoops = lockGameLoops();
+            try {
+                command.run();
+            } finally {
+                unlockGameLoops(lockedLoops);
+            }
+        }
+    }
+
+    /**
+     * Triggers a cheat for a player
+     *
+     * @param cheat the cheat
+     * @param playerId the player
+     */
+    public void triggerCheat(CheatState.CheatType cheat, short playerId) {
+        switch (cheat) {
+            case LEVEL_MAX: {
+                gameWorldController.getCreaturesController().levelUpCreatures(playerId, Utils.MAX_CREATURE_LEVEL);
+                break;
+            }
+            case MANA: {
+                getPlayerController(playerId).getManaControl().addMana(100000);
+                break;
+            }
+            case MONEY: {
+                gameWorldController.addGold(playerId, 100000);
+                break;
+            }
+            case REMOVE_FOW: {
+                // TODO:
+                break;
+            }
+            case UNLOCK_ROOMS: {
+                PlayerRoomControl playerRoomControl = getPlayerController(playerId).getRoomControl();
+                for (Room room : kwdFile.getRooms()) {
+                    playerRoomControl.setTypeAvailable(room, true);
+                }
+                break;
+            }
+            case UNLOCK_DOORS_TRAPS: {
+                PlayerDoorControl playerDoorControl = getPlayerController(playerId).getDoorControl();
+                for (Door door : kwdFile.getDoors()) {
+                    playerDoorControl.setTypeAvailable(door, true);
+                }
+
+                PlayerTrapControl playerTrapControl = getPlayerController(playerId).getTrapControl();
+                for (Trap trap : kwdFile.getTraps()) {
+                    playerTrapControl.setTypeAvailable(trap, true);
+                }
+                break;
+            }
+            case UNLOCK_SPELLS: {
+                PlayerSpellControl playerSpellControl = getPlayerController(playerId).getSpellControl();
+                for (KeeperSpell keeperSpell : kwdFile.getKeeperSpells()) {
+                    playerSpellControl.setTypeAvailable(keeperSpell, true);
+                    playerSpellControl.setSpellDiscovered(keeperSpell, true);
+                }
+                break;
+            }
+            case WIN_LEVEL: {
+                endGame(playerId, true);
+                break;
+            }
+            default:
+                LOGGER.log(Level.INFO, "Cheat {0} not implemented!", cheat);
+        }
+    }
+
+    /**
+     * Get the lockstep command queue
+     *
+     * @return the command queue, {@code null} if not in lockstep mode
+     */
+    public LockstepCommandQueue getLockstepCommandQueue() {
+        return lockstepCommandQueue;
+    }
+
+    /**
+     * Get the state checksum system for desync detection
+     *
+     * @return the checksum system, {@code null} if not in lockstep mode
+     */
+    public StateChecksumSystem getStateChecksumSystem() {
+        return stateChecksumSystem;
+    }
+
+    /**
+     * Creates the player controllers
+     *
+     * @param newGame whether to set up the players from the level, the saved
+     * players already have their availabilities and research
+     */
+    private void setupPlayers(boolean newGame) {
 
         // Setup players
         boolean addMissingPlayers = players.isEmpty(); // Add all if none is given (campaign...)
@@ -274,14 +596,20 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
                 playerControllers.put(entry.getKey(), playerController);
 
                 // Spells are all available for research unless otherwise stated
-                for (KeeperSpell spell : kwdFile.getKeeperSpells()) {
-                    if (spell.getBonusRTime() != 0) {
-                        playerController.getSpellControl().setTypeAvailable(spell, true, false);
+                if (newGame) {
+                    for (KeeperSpell spell : kwdFile.getKeeperSpells()) {
+                        if (spell.getBonusRTime() != 0) {
+                            playerController.getSpellControl().setTypeAvailable(spell, true, false);
+                        }
                     }
                 }
             }
         }
 
+        if (!newGame) {
+            return;
+        }
+
         // Set player availabilities
         // TODO: the player customized game settings
         for (Variable.Availability availability : kwdFile.getAvailabilities()) {
@@ -358,6 +686,7 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
 
     @Override
     public void pauseGame() {
+        paused = true;
         if (steeringCalculatorLoop != null) {
             steeringCalculatorLoop.pause();
         }
@@ -372,6 +701,7 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
 
     @Override
     public void resumeGame() {
+        paused = false;
         if (gameLogicLoop != null) {
             gameLogicLoop.resume();
         }
@@ -384,11 +714,85 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
         playerService.setGamePaused(false);
     }
 
+    /**
+     * Saves the game. The game state is captured between the game logic
+     * ticks, with all the game loops holding so that nothing modifies the
+     * entities meanwhile. The save is written to the disk in the background,
+     * so this stalls the game only for the capture.
+     *
+     * @param file the file to save to
+     * @return future completed when the save is written
+     */
+    public CompletableFuture<File> saveGame(File file) {
+        SaveRequest request = new SaveRequest(file);
+        if (steppedGame) {
+
+            // Whoever steps the game processes the request before the next tick
+            saveRequests.add(request);
+        } else {
+            List<GameLoop> lockedLoops = lockGameLoops();
+            try {
+                request.process();
+            } finally {
+                unlockGameLoops(lockedLoops);
+            }
+        }
+
+        return request.result;
+    }
+
+    /**
+     * Holds all the game loops between their ticks. The game logic loop is
+     * locked first, always in the same order.
+     *
+     * @return the locked loops
+     */
+    private List<GameLoop> lockGameLoops() {
+        List<GameLoop> lockedLoops = new ArrayList<>(3);
+        for (GameLoop loop : Arrays.asList(gameLogicLoop, gameAnimationLoop, steeringCalculatorLoop)) {
+            if (loop != null) {
+                loop.lockTicks();
+                lockedLoops.add(loop);
+            }
+        }
+
+        return lockedLoops;
+    }
+
+    private static void unlockGameLoops(List<GameLoop> lockedLoops) {
+        for (int i = lockedLoops.size() - 1; i >= 0; i--) {
+            lockedLoops.get(i).unlockTicks();
+        }
+    }
+
+    /**
+     * Captures the current game state as a save game. Must be called between
+     * the game logic ticks, while nothing else is modifying the game state.
+     *
+     * @return the save game ready to be written
+     * @throws IOException if serializing the game objects fails
+     */
+    public SaveGame createSaveGame() throws IOException {
+
+        // The rooms rebuild their furniture on load
+        Set<EntityId> roomFurniture = new HashSet<>();
+        for (IRoomController room : gameWorldController.getMapController().getRoomControllers()) {
+            roomFurniture.addAll(room.getFloorFurniture());
+            roomFurniture.addAll(room.getWallFurniture());
+            roomFurniture.addAll(room.getPillars());
+        }
+
+        return SaveGame.create(kwdFile.getGameLevel().getName(), getGameTime(),
+                gameLogicThread != null ? gameLogicThread.getTicks() : 0, levelScore, timeLimit, flags,
+                timers.getArray(), players.values(), gameWorldController.getMapController().getMapData(),
+                EntitySnapshot.capture(entityData, ComponentTypes.ALL, roomFurniture));
+    }
+
     @Override
     public void processTick(float tpf, double gameTime) {
 
         // Update time for AI
-        GdxAI.getTimepiece().update(tpf);
+        timepiece.update(tpf);
 
         // Time limit is a special timer, it just ticks towards 0 if it is set
         if (timeLimit != null) {
@@ -614,6 +1018,21 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
             gameLogicLoop.stop();
             gameLogicLoop = null;
         }
+        if (steppedGame) {
+            gameLogicThread.stop();
+            steppedGame = false;
+        }
+
+        // Let the saves in progress finish
+        processSaveRequests();
+        saveGameWriter.close();
+    }
+
+    private void processSaveRequests() {
+        SaveRequest saveRequest;
+        while ((saveRequest = saveRequests.poll()) != null) {
+            saveRequest.process();
+        }
     }
 
     @Override
@@ -624,6 +1043,10 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
     @Override
     public void start() {
 
+        // Game logic loop has a thread of its own, bind our random and AI time to it
+        if (!steppedGame) {
+            bindToThread();
+        }
     }
 
     @Override
@@ -651,4 +1074,33 @@ public class GameController implements IGameLogicUpdatable, AutoCloseable, IGame
         return positionSystem;
     }
 
+    /**
+     * Pending save game request
+     */
+    private class SaveRequest {
+
+        private final File file;
+        private final CompletableFuture<File> result = new CompletableFuture<>();
+
+        public SaveRequest(File file) {
+            this.file = file;
+        }
+
+        public void process() {
+            try {
+                SaveGame saveGame = createSaveGame();
+                saveGameWriter.write(saveGame, file).whenComplete((savedFile, ex) -> {
+                    if (ex != null) {
+                        result.completeExceptionally(ex);
+                    } else {
+                        result.complete(savedFile);
+                    }
+                });
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to capture the game state!", ex);
+                result.completeExceptionally(ex);
+            }
+        }
+    }
+
 }
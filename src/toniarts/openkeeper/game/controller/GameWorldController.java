@@ -33,7 +33,9 @@ import toniarts.openkeeper.game.controller.room.storage.IRoomObjectControl;
 import toniarts.openkeeper.game.controller.room.storage.RoomGoldControl;
 import toniarts.openkeeper.game.data.Keeper;
 import toniarts.openkeeper.game.listener.PlayerActionListener;
+import toniarts.openkeeper.game.map.MapData;
 import toniarts.openkeeper.game.map.MapTile;
+import toniarts.openkeeper.game.save.EntitySnapshot;
 import toniarts.openkeeper.tools.convert.map.*;
 import toniarts.openkeeper.utils.WorldUtils;
 
@@ -82,36 +84,76 @@ public class GameWorldController implements IGameWorldController, IPlayerActions
     public void createNewGame(IGameController gameController, ILevelInfo levelInfo) {
 
         // Load objects
-        objectsController = new ObjectsController(kwdFile, entityData, gameSettings, gameTimer, gameController);
+        objectsController = new ObjectsController(kwdFile, entityData, gameSettings, gameTimer, gameController, true);
 
         // Load the map
         mapController = new MapController(kwdFile, objectsController, gameSettings, gameTimer);
 
         // Load creatures
-        creaturesController = new CreaturesController(kwdFile, entityData, gameSettings, gameTimer, gameController, mapController, levelInfo);
+        creaturesController = new CreaturesController(kwdFile, entityData, gameSettings, gameTimer, gameController, mapController, levelInfo, true);
 
         // Load the doors
-        doorsController = new DoorsController(kwdFile, entityData, gameSettings, mapController, gameController);
+        doorsController = new DoorsController(kwdFile, entityData, gameSettings, mapController, gameController, true);
 
         // Load the traps
-        trapsController = new TrapsController(kwdFile, entityData, gameSettings, gameController);
+        trapsController = new TrapsController(kwdFile, entityData, gameSettings, gameController, true);
 
         // Setup player stuff
         initPlayerMoney();
         initPlayerRooms();
     }
 
-    private void initPlayerMoney() {
+    /**
+     * Loads a saved game world. The rooms are rebuilt from the saved map,
+     * with their furniture, and the rest of the entities are restored from
+     * the save
+     *
+     * @param gameController the game controller
+     * @param levelInfo the level info
+     * @param mapData the saved map
+     * @param entities the saved entities, without the room furniture
+     */
+    public void loadGame(IGameController gameController, ILevelInfo levelInfo, MapData mapData, EntitySnapshot entities) {
 
-        // The max money$$$
-        for (IRoomController room : mapController.getRoomControllers()) {
-            if (room.canStoreGold()) {
-                IPlayerController playerController = playerControllers.get(room.getRoomInstance().getOwnerId());
-                if (playerController != null) {
-                    playerController.getGoldControl().setGoldMax(playerController.getGoldControl().getGoldMax() + room.getObjectControl(ObjectType.GOLD).getMaxCapacity());
-                }
+        // The objects, without loading any
+        objectsController = new ObjectsController(kwdFile, entityData, gameSettings, gameTimer, gameController, false);
+
+        // The map, the rooms construct their furniture
+        mapController = new MapController(mapData, kwdFile, objectsController, gameSettings, gameTimer);
+
+        // Rest of the things, without loading any
+        creaturesController = new CreaturesController(kwdFile, entityData, gameSettings, gameTimer, gameController, mapController, levelInfo, false);
+        doorsController = new DoorsController(kwdFile, entityData, gameSettings, mapController, gameController, false);
+        trapsController = new TrapsController(kwdFile, entityData, gameSettings, gameController, false);
+
+        // Restore the entities and put the stored items back to the rooms
+        entities.restore(entityData, new HashMap<>());
+        restoreRoomStorage();
+
+        // Setup player stuff, the gold itself is already with the players
+        initPlayerGoldMax();
+        initPlayerRooms();
+    }
+
+    private void restoreRoomStorage() {
+        List<EntityId> storedItems = new ArrayList<>(entityData.findEntities(null, RoomStorage.class, Position.class));
+        Collections.sort(storedItems);
+        for (EntityId entityId : storedItems) {
+            ObjectType objectType = entityData.getComponent(entityId, RoomStorage.class).objectType;
+            Point p = WorldUtils.vectorToPoint(entityData.getComponent(entityId, Position.class).position);
+            IRoomController room = mapController.getRoomControllerByCoordinates(p);
+            if (room != null && room.hasObjectControl(objectType)) {
+                room.getObjectControl(objectType).restoreItem(entityId, p);
+            } else {
+
+                // The room is gone, the item is just lying around
+                entityData.removeComponent(entityId, RoomStorage.class);
             }
         }
+    }
+
+    private void initPlayerMoney() {
+        initPlayerGoldMax();
 
         // Set up the money$$$
         for (Keeper keeper : players.values()) {
@@ -122,6 +164,19 @@ public class GameWorldController implements IGameWorldController, IPlayerActions
         }
     }
 
+    private void initPlayerGoldMax() {
+
+        // The max money$$$
+        for (IRoomController room : mapController.getRoomControllers()) {
+            if (room.canStoreGold()) {
+                IPlayerController playerController = playerControllers.get(room.getRoomInstance().getOwnerId());
+                if (playerController != null) {
+                    playerController.getGoldControl().setGoldMax(playerController.getGoldControl().getGoldMax() + room.getObjectControl(ObjectType.GOLD).getMaxCapacity());
+                }
+            }
+        }
+    }
+
     private void initPlayerRooms() {
 
         // Add the initial creatures and add the listeners
@@ -393,7 +448,7 @@ public class GameWorldController implements IGameWorldController, IPlayerActions
     public void sell(Vector2f start, Vector2f end, short playerId) {
         List<MapTile> soldTiles = new ArrayList<>();
         Set<Point> updatableTiles = new HashSet<>();
-        Set<RoomInstance> soldInstances = new HashSet<>();
+        Set<RoomInstance> soldInstances = new LinkedHashSet<>();
         List<Point> roomCoordinates = new ArrayList<>();
         List<Map.Entry<Point, Integer>> moneyToReturnByPoint = new ArrayList<>();
         for (int x = (int) Math.max(0, start.x); x < Math.min(kwdFile.getMap().getWidth(), end.x + 1); x++) {
@@ -453,7 +508,7 @@ public class GameWorldController implements IGameWorldController, IPlayerActions
         mapController.updateRooms(updatableTiles.toArray(new Point[0]));
 
         // See if any of the rooms survived
-        Set<RoomInstance> newInstances = new HashSet<>();
+        Set<RoomInstance> newInstances = new LinkedHashSet<>();
         for (Point p : roomCoordinates) {
             RoomInstance instance = mapController.getRoomCoordinates().get(p);
             if (instance != null && !newInstances.contains(instance)) {
@@ -50,7 +50,7 @@ public final class MapController extends Container implements Savable, IMapContr
     private IObjectsController objectsController;
     private Map<Variable.MiscVariable.MiscType, Variable.MiscVariable> gameSettings;
     private final Map<Point, RoomInstance> roomCoordinates = new HashMap<>();
-    private final Map<RoomInstance, IRoomController> roomControllers = new HashMap<>();
+    private final Map<RoomInstance, IRoomController> roomControllers = new LinkedHashMap<>(); // In creation order, the same on every peer
     private final SafeArrayList<MapListener> mapListeners = new SafeArrayList<>(MapListener.class);
     private final Map<Short, SafeArrayList<RoomListener>> roomListeners = new HashMap<>();
 
@@ -79,17 +79,25 @@ public final class MapController extends Container implements Savable, IMapContr
     }
 
     /**
-     * Instantiate a map controller from map data (loaded game)
+     * Instantiate a map controller from map data (loaded game). The rooms are
+     * rebuilt from the map, with their furniture
      *
-     * @param mapData      the map data
-     * @param kwdFile      the KWD file
-     * @param gameSettings the game settings
+     * @param mapData           the map data
+     * @param kwdFile           the KWD file
+     * @param objectsController objects controller
+     * @param gameSettings      the game settings
+     * @param gameTimer         the game timer
      */
-    public MapController(MapData mapData, KwdFile kwdFile, Map<Variable.MiscVariable.MiscType, Variable.MiscVariable> gameSettings, IGameTimer gameTimer) {
+    public MapController(MapData mapData, KwdFile kwdFile, IObjectsController objectsController,
+            Map<Variable.MiscVariable.MiscType, Variable.MiscVariable> gameSettings, IGameTimer gameTimer) {
         this.mapData = mapData;
         this.kwdFile = kwdFile;
+        this.objectsController = objectsController;
         this.gameSettings = gameSettings;
         this.gameTimer = gameTimer;
+
+        // Load rooms
+        loadRooms();
     }
 
     public MapController(MapData mapData, KwdFile kwdFile) {
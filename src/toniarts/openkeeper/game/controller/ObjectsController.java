@@ -89,16 +89,18 @@ public class ObjectsController implements IObjectsController {
     }
 
     /**
-     * Load objects from a KWD file straight (new game)
+     * Load objects from a KWD file straight (new game) or use the objects
+     * restored from a save (loaded game)
      *
      * @param kwdFile the KWD file
      * @param entityData the entity controller
      * @param gameSettings the game settings
      * @param gameTimer
      * @param gameController
+     * @param newGame whether to load the objects from the KWD file
      */
     public ObjectsController(KwdFile kwdFile, EntityData entityData, Map<Variable.MiscVariable.MiscType, Variable.MiscVariable> gameSettings,
-            IGameTimer gameTimer, IGameController gameController) {
+            IGameTimer gameTimer, IGameController gameController, boolean newGame) {
         this.kwdFile = kwdFile;
         this.entityData = entityData;
         this.gameSettings = gameSettings;
@@ -106,7 +108,9 @@ public class ObjectsController implements IObjectsController {
         this.gameController = gameController;
 
         // Load objects
-        loadObjects();
+        if (newGame) {
+            loadObjects();
+        }
     }
 
     private void loadObjects() {
@@ -54,22 +54,26 @@ public class TrapsController implements ITrapsController {
     }
 
     /**
-     * Load trap from a KWD file straight (new game)
+     * Load trap from a KWD file straight (new game) or use the traps restored
+     * from a save (loaded game)
      *
      * @param kwdFile the KWD file
      * @param entityData the entity controller
      * @param gameSettings the game settings
      * @param gameController
+     * @param newGame whether to load the traps from the KWD file
      */
     public TrapsController(KwdFile kwdFile, EntityData entityData, Map<Variable.MiscVariable.MiscType, Variable.MiscVariable> gameSettings,
-            IGameController gameController) {
+            IGameController gameController, boolean newGame) {
         this.kwdFile = kwdFile;
         this.entityData = entityData;
         this.gameSettings = gameSettings;
         this.gameController = gameController;
 
         // Load traps
-        loadTraps();
+        if (newGame) {
+            loadTraps();
+        }
     }
 
     private void loadTraps() {
@@ -19,7 +19,6 @@ package toniarts.openkeeper.game.controller.creature;
 import com.badlogic.gdx.ai.fsm.DefaultStateMachine;
 import com.badlogic.gdx.ai.fsm.StateMachine;
 import com.badlogic.gdx.ai.pfa.GraphPath;
-import com.jme3.math.FastMath;
 import com.jme3.math.Vector2f;
 import com.jme3.math.Vector3f;
 import com.simsilica.es.EntityData;
@@ -40,6 +39,7 @@ import toniarts.openkeeper.game.navigation.steering.SteeringUtils;
 import toniarts.openkeeper.game.task.ITaskManager;
 import toniarts.openkeeper.game.task.Task;
 import toniarts.openkeeper.tools.convert.map.*;
+import toniarts.openkeeper.utils.Utils;
 import toniarts.openkeeper.utils.WorldUtils;
 
 import java.awt.*;
@@ -341,7 +341,7 @@ public class CreatureController extends EntityController implements ICreatureCon
         for (Creature.JobPreference item : items) {
             completeWeight += item.getChance();
         }
-        double r = FastMath.rand.nextDouble() * completeWeight;
+        double r = Utils.getRandom().nextDouble() * completeWeight;
         double countWeight = 0.0;
         for (Creature.JobPreference item : items) {
             countWeight += item.getChance();
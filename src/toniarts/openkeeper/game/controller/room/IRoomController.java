@@ -81,6 +81,13 @@ public interface IRoomController {
      */
     Set<EntityId> getWallFurniture();
 
+    /**
+     * Get the pillar IDs
+     *
+     * @return pillars
+     */
+    Set<EntityId> getPillars();
+
     boolean canStoreGold();
 
     boolean hasObjectControl(AbstractRoomController.ObjectType objectType);
@@ -71,6 +71,11 @@ public abstract class AbstractRoomObjectControl<V> implements IRoomObjectControl
         return objectsByCoordinate.get(p);
     }
 
+    @Override
+    public void restoreItem(EntityId entityId, Point p) {
+        objectsByCoordinate.computeIfAbsent(p, k -> new ArrayList<>(getObjectsPerTile())).add(entityId);
+    }
+
     /**
      * Get the max capacity of the room
      *
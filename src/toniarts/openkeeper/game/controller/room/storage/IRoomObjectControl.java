@@ -39,6 +39,16 @@ public interface IRoomObjectControl<V> {
      */
     V addItem(V value, Point p);
 
+    /**
+     * Puts back an item that was stored in the room when the game was saved.
+     * The item already has all its components, only the room bookkeeping is
+     * restored
+     *
+     * @param entityId the stored item
+     * @param p the point the item is stored at
+     */
+    void restoreItem(EntityId entityId, Point p);
+
     /**
      * When the room gets destroyed, controls need to be destroyed
      */
@@ -64,6 +64,12 @@ public abstract class RoomFoodControl extends AbstractRoomObjectControl<EntityId
         return entity;
     }
 
+    @Override
+    public void restoreItem(EntityId entityId, Point p) {
+        super.restoreItem(entityId, p);
+        chickens++;
+    }
+
     @Override
     public void destroy() {
 
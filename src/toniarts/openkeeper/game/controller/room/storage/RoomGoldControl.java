@@ -102,6 +102,15 @@ public abstract class RoomGoldControl extends AbstractRoomObjectControl<Integer>
         return sum;
     }
 
+    @Override
+    public void restoreItem(EntityId entityId, Point p) {
+        super.restoreItem(entityId, p);
+        Gold goldPile = objectsController.getEntityData().getComponent(entityId, Gold.class);
+        if (goldPile != null) {
+            storedGold += goldPile.gold;
+        }
+    }
+
     @Override
     public int getCurrentCapacity() {
         return storedGold;
@@ -57,6 +57,11 @@ public abstract class RoomPrisonerControl extends AbstractRoomObjectControl<Enti
         return creature;
     }
 
+    @Override
+    public void restoreItem(EntityId entityId, Point p) {
+        // Only tagged, not kept on the tiles
+    }
+
     @Override
     public void destroy() {
         // TODO: The prisoners are released!
@@ -62,6 +62,11 @@ public abstract class RoomResearcherControl extends AbstractRoomObjectControl<En
         return researcher;
     }
 
+    @Override
+    public void restoreItem(EntityId entityId, Point p) {
+        // Only tagged, not kept on the tiles
+    }
+
     @Override
     public void destroy() {
 
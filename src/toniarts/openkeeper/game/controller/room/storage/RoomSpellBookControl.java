@@ -96,6 +96,12 @@ public abstract class RoomSpellBookControl extends AbstractRoomObjectControl<Ent
         return null;
     }
 
+    @Override
+    public void restoreItem(EntityId entityId, Point p) {
+        super.restoreItem(entityId, p);
+        storedSpellBooks++;
+    }
+
     @Override
     public void destroy() {
 
@@ -62,6 +62,11 @@ public abstract class RoomTortureeControl extends AbstractRoomObjectControl<Enti
         return torturee;
     }
 
+    @Override
+    public void restoreItem(EntityId entityId, Point p) {
+        // Only tagged, not kept on the tiles
+    }
+
     @Override
     public void destroy() {
 
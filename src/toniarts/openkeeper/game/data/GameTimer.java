@@ -28,6 +28,17 @@ public final class GameTimer {
     public GameTimer() {
     }
 
+    /**
+     * Restores a timer to a given state, i.e. from a saved game
+     *
+     * @param time the elapsed time
+     * @param active whether the timer is active
+     */
+    public GameTimer(float time, boolean active) {
+        this.time = time;
+        this.active = active;
+    }
+
     /**
      * Activates and resets the timer
      */
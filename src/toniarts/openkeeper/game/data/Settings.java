@@ -71,6 +71,10 @@ public class Settings {
         SSAO_INTENSITY(Float.class, 3.92f, SettingCategory.GRAPHICS),
         SSAO_SCALE(Float.class, 0.33f, SettingCategory.GRAPHICS),
         SSAO_BIAS(Float.class, 0.1f, SettingCategory.GRAPHICS),
+        GPU_MORPH_ANIMATION(Boolean.class, true, SettingCategory.GRAPHICS),
+        MERGED_TERRAIN_MESHES(Boolean.class, true, SettingCategory.GRAPHICS),
+        ENTITY_INSTANCING(Boolean.class, true, SettingCategory.GRAPHICS),
+        ASSET_CACHE_SIZE(Integer.class, 768, SettingCategory.GRAPHICS), // In megabytes
         // Controls
         CAMERA_ZOOM_IN(Integer.class, KeyInput.KEY_LCONTROL, KeyInput.KEY_W, SettingCategory.CONTROLS, 124),
         CAMERA_ZOOM_OUT(Integer.class, KeyInput.KEY_LCONTROL, KeyInput.KEY_S, SettingCategory.CONTROLS, 125),
@@ -155,6 +159,8 @@ public class Settings {
         // Screen recorder
         RECORDER_QUALITY(Float.class, 0.8f, SettingCategory.MISCELLANEOUS),
         RECORDER_FPS(Integer.class, 60, SettingCategory.MISCELLANEOUS),
+        // Match replays, replays need the deterministic lockstep simulation so enabling this also runs the local games in lockstep
+        RECORD_REPLAYS(Boolean.class, false, SettingCategory.MISCELLANEOUS),
         // Cursor
         USE_CURSORS(Boolean.class, true, SettingCategory.MISCELLANEOUS),
         // Multiplayer settings
@@ -28,6 +28,7 @@ import toniarts.openkeeper.game.component.Position;
 import toniarts.openkeeper.game.controller.IObjectsController;
 import toniarts.openkeeper.game.controller.chicken.ChickenState;
 import toniarts.openkeeper.game.controller.chicken.IChickenController;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -83,7 +84,7 @@ public class ChickenAiSystem implements IGameLogicUpdatable {
     }
 
     private void processViewEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             ChickenAi chickenAi = entity.get(ChickenAi.class);
             ObjectViewState objectViewState = entity.get(ObjectViewState.class);
             ObjectViewState.GameObjectAnimState animState = getAnimStateFromAiState(chickenAi.getChickenState());
@@ -109,7 +110,7 @@ public class ChickenAiSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             IChickenController chickenController = objectsController.createChickenController(entity.getId());
             int index = Collections.binarySearch(chickenControllers, chickenController);
             chickenControllers.add(~index, chickenController);
@@ -118,7 +119,7 @@ public class ChickenAiSystem implements IGameLogicUpdatable {
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             IChickenController chickenController = chickenControllersByEntityId.remove(entity.getId());
             if (chickenController != null) {
                 int index = Collections.binarySearch(chickenControllers, chickenController);
@@ -181,7 +181,7 @@ public class ChickenSpawnSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Position position = entity.get(Position.class);
             Point p = WorldUtils.vectorToPoint(position.position);
             IRoomController roomController = mapController.getRoomControllerByCoordinates(p);
@@ -200,7 +200,7 @@ public class ChickenSpawnSystem implements IGameLogicUpdatable {
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             IChickenGenerator chickenGenerator = roomsByFreerangeChickenGenerators.remove(entity.getId());
             if (chickenGenerator != null) {
                 freerangeChickenGeneratorsByRoom.get(chickenGenerator).remove(entity.getId());
@@ -209,7 +209,7 @@ public class ChickenSpawnSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedChickenEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Owner owner = entity.get(Owner.class);
             Set<EntityId> chickens = freeRangeChickensByPlayer.get(owner.ownerId);
             if (chickens == null) {
@@ -222,14 +222,14 @@ public class ChickenSpawnSystem implements IGameLogicUpdatable {
     }
 
     private void processDeletedChickenEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             short ownerId = freeRangeChickenOwners.remove(entity.getId());
             freeRangeChickensByPlayer.get(ownerId).remove(entity.getId());
         }
     }
 
     private void processChangedChickenEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Owner owner = entity.get(Owner.class);
             short previousOwner = freeRangeChickenOwners.get(entity.getId());
             if (previousOwner != owner.ownerId) {
@@ -24,6 +24,7 @@ import com.simsilica.es.EntitySet;
 import toniarts.openkeeper.game.component.CreatureAi;
 import toniarts.openkeeper.game.controller.ICreaturesController;
 import toniarts.openkeeper.game.controller.creature.ICreatureController;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -71,7 +72,7 @@ public class CreatureAiSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             ICreatureController creatureController = creaturesController.createController(entity.getId());
             int index = Collections.binarySearch(creatureControllers, creatureController);
             creatureControllers.add(~index, creatureController);
@@ -80,7 +81,7 @@ public class CreatureAiSystem implements IGameLogicUpdatable {
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             ICreatureController creatureController = creatureControllersByEntityId.remove(entity.getId());
             if (creatureController != null) {
                 int index = Collections.binarySearch(creatureControllers, creatureController);
@@ -117,14 +117,14 @@ public class CreatureExperienceSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(entityIds, entity.getId());
             entityIds.add(~index, entity.getId());
         }
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(entityIds, entity.getId());
             entityIds.remove(index);
             timeWorkingByEntityId.remove(entity.getId());
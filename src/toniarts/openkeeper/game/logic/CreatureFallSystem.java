@@ -24,6 +24,7 @@ import toniarts.openkeeper.game.component.CreatureComponent;
 import toniarts.openkeeper.game.component.CreatureFall;
 import toniarts.openkeeper.game.component.Position;
 import toniarts.openkeeper.game.controller.creature.CreatureState;
+import toniarts.openkeeper.utils.Utils;
 import toniarts.openkeeper.world.MapLoader;
 
 /**
@@ -51,7 +52,7 @@ public class CreatureFallSystem implements IGameLogicUpdatable {
         fallEntities.applyChanges();
 
         // Process ticks
-        for (Entity entity : fallEntities) {
+        for (Entity entity : Utils.sortedById(fallEntities)) {
             Position position = entity.get(Position.class);
             Position newPosition = new Position(position.rotation, position.position);
             newPosition.position.y = Math.max(newPosition.position.y - tpf * GRAVITY, MapLoader.FLOOR_HEIGHT);
@@ -24,6 +24,7 @@ import toniarts.openkeeper.game.component.CreatureImprisoned;
 import toniarts.openkeeper.game.component.Health;
 import toniarts.openkeeper.game.component.Position;
 import toniarts.openkeeper.tools.convert.map.Variable;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Map;
 
@@ -54,7 +55,7 @@ public class CreatureImprisonSystem implements IGameLogicUpdatable {
         imprisonedEntities.applyChanges();
 
         // Process ticks
-        for (Entity entity : imprisonedEntities) {
+        for (Entity entity : Utils.sortedById(imprisonedEntities)) {
             Health health = entity.get(Health.class);
 
             // TODO: Join the Skeleton army!!
@@ -23,6 +23,7 @@ import toniarts.openkeeper.game.component.CreatureComponent;
 import toniarts.openkeeper.game.component.CreatureRecuperating;
 import toniarts.openkeeper.game.component.Health;
 import toniarts.openkeeper.tools.convert.map.Variable;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Map;
 
@@ -54,7 +55,7 @@ public class CreatureRecuperatingSystem implements IGameLogicUpdatable {
         recuperatingEntities.applyChanges();
 
         // Process ticks
-        for (Entity entity : recuperatingEntities) {
+        for (Entity entity : Utils.sortedById(recuperatingEntities)) {
             Health health = entity.get(Health.class);
             if (health.health == health.maxHealth) {
                 entityData.removeComponent(entity.getId(), CreatureRecuperating.class);
@@ -22,6 +22,7 @@ import com.simsilica.es.EntitySet;
 import toniarts.openkeeper.game.component.*;
 import toniarts.openkeeper.game.controller.ILevelInfo;
 import toniarts.openkeeper.tools.convert.map.Variable;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Map;
 
@@ -52,7 +53,7 @@ public class CreatureTorturingSystem implements IGameLogicUpdatable {
         torturedEntities.applyChanges();
 
         // Process ticks
-        for (Entity entity : torturedEntities) {
+        for (Entity entity : Utils.sortedById(torturedEntities)) {
             Health health = entity.get(Health.class);
 
             // TODO: Join the persuading player army!!
@@ -25,6 +25,7 @@ import toniarts.openkeeper.game.component.*;
 import toniarts.openkeeper.game.controller.creature.CreatureState;
 import toniarts.openkeeper.game.task.TaskType;
 import toniarts.openkeeper.tools.convert.map.Creature;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Collections;
 import java.util.Set;
@@ -93,14 +94,14 @@ public class CreatureViewSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(creatureEntities, entity.getId());
             creatureEntities.add(~index, entity.getId());
         }
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(creatureEntities, entity.getId());
             creatureEntities.remove(index);
         }
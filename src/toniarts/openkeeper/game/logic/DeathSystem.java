@@ -23,6 +23,7 @@ import com.simsilica.es.EntityId;
 import com.simsilica.es.EntitySet;
 import toniarts.openkeeper.game.component.Death;
 import toniarts.openkeeper.tools.convert.map.Variable;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Collections;
 import java.util.Map;
@@ -79,7 +80,7 @@ public class DeathSystem implements IGameLogicUpdatable {
 
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(entityIds, entity.getId());
             entityIds.add(~index, entity.getId());
             entityPositionLookup.getEntityController(entity.getId()).removePossession();
@@ -87,7 +88,7 @@ public class DeathSystem implements IGameLogicUpdatable {
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(entityIds, entity.getId());
             entityIds.remove(index);
         }
@@ -24,6 +24,7 @@ import com.simsilica.es.EntitySet;
 import toniarts.openkeeper.game.component.Decay;
 import toniarts.openkeeper.game.component.Health;
 import toniarts.openkeeper.game.component.Position;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Collections;
 import java.util.Set;
@@ -59,7 +60,7 @@ public class DecaySystem implements IGameLogicUpdatable {
         }
 
         // Decay stuff
-        for (Entity entity : decayEntities) {
+        for (Entity entity : Utils.sortedById(decayEntities)) {
             Decay decay = entity.get(Decay.class);
             if (gameTime - decay.startTime >= decay.duration) {
 
@@ -82,14 +83,14 @@ public class DecaySystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(entityIds, entity.getId());
             entityIds.add(~index, entity.getId());
         }
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(entityIds, entity.getId());
             entityIds.remove(index);
         }
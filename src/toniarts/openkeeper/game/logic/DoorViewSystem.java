@@ -24,6 +24,7 @@ import com.simsilica.es.EntitySet;
 import com.simsilica.es.filter.AndFilter;
 import com.simsilica.es.filter.FieldFilter;
 import toniarts.openkeeper.game.component.*;
+import toniarts.openkeeper.utils.Utils;
 import toniarts.openkeeper.utils.WorldUtils;
 
 import java.util.Collections;
@@ -100,14 +101,14 @@ public class DoorViewSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(doorEntityIds, entity.getId());
             doorEntityIds.add(~index, entity.getId());
         }
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(doorEntityIds, entity.getId());
             doorEntityIds.remove(index);
         }
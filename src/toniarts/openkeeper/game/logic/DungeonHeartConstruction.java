@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 /**
  * Constructs dungeon hearts (deals with the animation)
@@ -52,7 +53,7 @@ public class DungeonHeartConstruction implements IGameLogicUpdatable {
         this.entityData = entityData;
         this.delay = delay;
 
-        dungeonHeartPlugs = entityData.findEntities(new FieldFilter(ObjectComponent.class, "objectId", FiveByFiveRotatedController.OBJECT_PLUG_ID), ObjectComponent.class, Position.class, Owner.class);
+        dungeonHeartPlugs = new TreeSet<>(entityData.findEntities(new FieldFilter(ObjectComponent.class, "objectId", FiveByFiveRotatedController.OBJECT_PLUG_ID), ObjectComponent.class, Position.class, Owner.class));
         dungeonHeartPlugPieces = new HashMap<>();
         for (EntityId entityId : dungeonHeartPlugs) {
             dungeonHeartPlugPieces.put(entityId, new HashSet<>());
@@ -86,6 +86,15 @@ public class GameLogicManager implements IGameLoopManager {
         return timeElapsed;
     }
 
+    /**
+     * Set the elapsed game time, for continuing a saved game
+     *
+     * @param gameTime the game time, in seconds
+     */
+    public void setGameTime(double gameTime) {
+        this.timeElapsed = gameTime;
+    }
+
     /**
      * Get the amount of game ticks ticked over
      *
@@ -22,6 +22,7 @@ import com.simsilica.es.EntityData;
 import com.simsilica.es.EntitySet;
 import toniarts.openkeeper.game.component.HauledBy;
 import toniarts.openkeeper.game.component.Position;
+import toniarts.openkeeper.utils.Utils;
 
 /**
  * Manages hauled entities. Basically moves them as their hauler moves.
@@ -46,7 +47,7 @@ public class HaulingSystem implements IGameLogicUpdatable {
         hauledEntities.applyChanges();
 
         // Process ticks
-        for (Entity entity : hauledEntities) {
+        for (Entity entity : Utils.sortedById(hauledEntities)) {
             HauledBy hauledBy = entity.get(HauledBy.class);
             Position position = entity.get(Position.class);
             Position haulerPosition = entityData.getComponent(hauledBy.entityId, Position.class);
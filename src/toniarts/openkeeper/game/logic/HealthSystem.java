@@ -28,6 +28,7 @@ import toniarts.openkeeper.game.map.MapTile;
 import toniarts.openkeeper.tools.convert.map.Creature;
 import toniarts.openkeeper.tools.convert.map.KwdFile;
 import toniarts.openkeeper.tools.convert.map.Variable;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -140,14 +141,14 @@ public class HealthSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(entityIds, entity.getId());
             entityIds.add(~index, entity.getId());
         }
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(entityIds, entity.getId());
             entityIds.remove(index);
             timeOnOwnLandByEntityId.remove(entity.getId());
@@ -156,7 +157,7 @@ public class HealthSystem implements IGameLogicUpdatable {
     }
 
     private void processChangedEntities(Set<Entity> entities, double gameTime) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
 
             // If the health is changed (either by us or damage)...
             // Reset the health regen counter
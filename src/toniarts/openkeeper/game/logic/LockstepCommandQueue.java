@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.logic;
+
+import com.jme3.util.SafeArrayList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Player command queue for lockstep simulation. In lockstep mode the player
+ * actions are not executed immediately when they arrive, but scheduled to a
+ * future tick. All the peers then execute the same commands at the same tick
+ * in the same order, so the simulation stays identical without replicating
+ * the game state.<br>
+ * The commands of a tick are executed in the order of player ID and the
+ * sequence number given by the issuing player.<br>
+ * The peer that schedules the commands seals the ticks as it processes them.
+ * Once a tick is sealed, no more commands can be scheduled to it, so the
+ * other peers can safely process it.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class LockstepCommandQueue implements IGameLogicUpdatable {
+
+    /**
+     * Listener for the scheduled commands, for sending them to the other
+     * peers
+     */
+    public interface LockstepCommandListener {
+
+        /**
+         * Called from the game logic thread after a tick has been processed.
+         * The listener receives all the commands scheduled since the previous
+         * call, in the scheduling order. No more commands are going to be
+         * scheduled to the sealed tick or the ticks before it.
+         *
+         * @param sealedTick the last tick the commands are now final for
+         * @param commands the newly scheduled commands
+         */
+        void onTickSealed(long sealedTick, List<Command> commands);
+
+    }
+
+    /**
+     * How many ticks in the future local commands are scheduled to, gives the
+     * network time to deliver the commands to the other peers
+     */
+    public static final int DEFAULT_INPUT_DELAY = 2;
+
+    private final int inputDelay;
+    private final PriorityBlockingQueue<Command> commands = new PriorityBlockingQueue<>(16,
+            Comparator.comparingLong(Command::getTick).thenComparingInt(Command::getPlayerId).thenComparingInt(Command::getSequence));
+    private final Map<Short, AtomicInteger> sequencesByPlayer = new ConcurrentHashMap<>(4);
+    private final SafeArrayList<LockstepCommandListener> listeners = new SafeArrayList<>(LockstepCommandListener.class);
+    private final Object scheduleLock = new Object();
+    private List<Command> unsealedCommands = new ArrayList<>();
+    private volatile long tick = 0;
+
+    private static final Logger LOGGER = Logger.getLogger(LockstepCommandQueue.class.getName());
+
+    public LockstepCommandQueue() {
+        this(DEFAULT_INPUT_DELAY);
+    }
+
+    public LockstepCommandQueue(int inputDelay) {
+        this.inputDelay = inputDelay;
+    }
+
+    /**
+     * Schedule a locally issued command
+     *
+     * @param playerId the player issuing the command
+     * @param action the command
+     * @param data the command encoded for the other peers, can be
+     * {@code null} if the command is not sent anywhere
+     * @return the tick the command is going to be executed on
+     */
+    public long schedule(short playerId, Runnable action, byte[] data) {
+        synchronized (scheduleLock) {
+            long executionTick = tick + inputDelay;
+            int sequence = sequencesByPlayer.computeIfAbsent(playerId, (id) -> new AtomicInteger()).getAndIncrement();
+            Command command = new Command(executionTick, playerId, sequence, action, data);
+            commands.add(command);
+            unsealedCommands.add(command);
+
+            return executionTick;
+        }
+    }
+
+    /**
+     * Schedule a command to a specific tick, i.e. command received from
+     * another peer
+     *
+     * @param executionTick the tick to execute the command on
+     * @param playerId the player issuing the command
+     * @param sequence the command sequence number of the player
+     * @param action the command
+     */
+    public void schedule(long executionTick, short playerId, int sequence, Runnable action) {
+        if (executionTick < tick) {
+            LOGGER.log(Level.SEVERE, "Command from player {0} arrived late for tick {1}, current tick is {2}! The simulation will desync!", new Object[]{playerId, executionTick, tick});
+        }
+        commands.add(new Command(executionTick, playerId, sequence, action, null));
+    }
+
+    /**
+     * Get the tick that is going to be processed next
+     *
+     * @return the current tick
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public int getInputDelay() {
+        return inputDelay;
+    }
+
+    @Override
+    public void processTick(float tpf, double gameTime) {
+        Command command;
+        while ((command = commands.peek()) != null && command.getTick() <= tick) {
+            commands.poll();
+            try {
+                command.getAction().run();
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Failed to execute command from player " + command.getPlayerId() + "!", e);
+            }
+        }
+
+        // Advance and seal, whatever is scheduled after this lands after the sealed tick
+        long sealedTick;
+        List<Command> sealedCommands;
+        synchronized (scheduleLock) {
+            tick++;
+            sealedTick = tick - 1 + inputDelay;
+            if (unsealedCommands.isEmpty()) {
+                sealedCommands = Collections.emptyList();
+            } else {
+                sealedCommands = unsealedCommands;
+                unsealedCommands = new ArrayList<>();
+            }
+        }
+        for (LockstepCommandListener listener : listeners.getArray()) {
+            listener.onTickSealed(sealedTick, sealedCommands);
+        }
+    }
+
+    public void addListener(LockstepCommandListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(LockstepCommandListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() {
+        commands.clear();
+    }
+
+    /**
+     * A scheduled command
+     */
+    public static final class Command {
+
+        private final long tick;
+        private final short playerId;
+        private final int sequence;
+        private final Runnable action;
+        private final byte[] data;
+
+        private Command(long tick, short playerId, int sequence, Runnable action, byte[] data) {
+            this.tick = tick;
+            this.playerId = playerId;
+            this.sequence = sequence;
+            this.action = action;
+            this.data = data;
+        }
+
+        public long getTick() {
+            return tick;
+        }
+
+        public short getPlayerId() {
+            return playerId;
+        }
+
+        public int getSequence() {
+            return sequence;
+        }
+
+        private Runnable getAction() {
+            return action;
+        }
+
+        /**
+         * The command encoded for the other peers
+         *
+         * @return the encoded command, {@code null} if the command is not
+         * sent to the other peers
+         */
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+}
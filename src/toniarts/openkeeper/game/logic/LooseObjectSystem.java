@@ -29,6 +29,7 @@ import toniarts.openkeeper.game.controller.room.AbstractRoomController;
 import toniarts.openkeeper.game.controller.room.IRoomController;
 import toniarts.openkeeper.game.map.MapTile;
 import toniarts.openkeeper.tools.convert.map.Player;
+import toniarts.openkeeper.utils.Utils;
 
 import java.awt.*;
 import java.util.Collections;
@@ -119,14 +120,14 @@ public class LooseObjectSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(looseObjectEntityIds, entity.getId());
             looseObjectEntityIds.add(~index, entity.getId());
         }
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             int index = Collections.binarySearch(looseObjectEntityIds, entity.getId());
             looseObjectEntityIds.remove(index);
         }
@@ -27,6 +27,7 @@ import toniarts.openkeeper.game.component.Mobile;
 import toniarts.openkeeper.game.component.Navigation;
 import toniarts.openkeeper.game.component.Position;
 import toniarts.openkeeper.game.navigation.steering.*;
+import toniarts.openkeeper.utils.Utils;
 
 import java.awt.*;
 import java.util.Collections;
@@ -99,7 +100,7 @@ public class MovementSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> addedEntities) {
-        for (Entity entity : addedEntities) {
+        for (Entity entity : Utils.sortedById(addedEntities)) {
             addEntity(entity);
         }
     }
@@ -127,7 +128,7 @@ public class MovementSystem implements IGameLogicUpdatable {
     }
 
     private void processDeletedEntities(Set<Entity> removedEntities) {
-        for (Entity entity : removedEntities) {
+        for (Entity entity : Utils.sortedById(removedEntities)) {
             deleteEntity(entity);
         }
     }
@@ -146,7 +147,7 @@ public class MovementSystem implements IGameLogicUpdatable {
     }
 
     private void processChangedEntities(Set<Entity> changedEntities) {
-        for (Entity entity : changedEntities) {
+        for (Entity entity : Utils.sortedById(changedEntities)) {
 
             // Dirty trick to try to see if the navigation has changed
             Navigation navigation = entity.get(Navigation.class);
@@ -26,6 +26,7 @@ import toniarts.openkeeper.game.component.Owner;
 import toniarts.openkeeper.game.controller.IPlayerController;
 import toniarts.openkeeper.game.controller.player.PlayerCreatureControl;
 import toniarts.openkeeper.tools.convert.map.KwdFile;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -68,7 +69,7 @@ public class PlayerCreatureSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             short ownerId = entity.get(Owner.class).ownerId;
             short creatureId = entity.get(CreatureComponent.class).creatureId;
             ownerIdsByEntityId.put(entity.getId(), ownerId);
@@ -80,7 +81,7 @@ public class PlayerCreatureSystem implements IGameLogicUpdatable {
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             short ownerId = ownerIdsByEntityId.remove(entity.getId());
             short creatureId = creatureIdsByEntityId.remove(entity.getId());
             if (creatureControls.containsKey(ownerId)) {
@@ -90,7 +91,7 @@ public class PlayerCreatureSystem implements IGameLogicUpdatable {
     }
 
     private void processChangedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             short newOwnerId = entity.get(Owner.class).ownerId;
             short newCreatureId = entity.get(CreatureComponent.class).creatureId;
             short oldOwnerId = ownerIdsByEntityId.put(entity.getId(), newOwnerId);
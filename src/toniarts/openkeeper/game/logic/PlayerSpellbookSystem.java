@@ -29,6 +29,7 @@ import toniarts.openkeeper.game.controller.player.AbstractResearchablePlayerCont
 import toniarts.openkeeper.game.controller.room.AbstractRoomController;
 import toniarts.openkeeper.game.data.IIndexable;
 import toniarts.openkeeper.tools.convert.map.KwdFile;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Collection;
 import java.util.HashMap;
@@ -72,7 +73,7 @@ public class PlayerSpellbookSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Spellbook spellbook = entity.get(Spellbook.class);
             short ownerId = entity.get(Owner.class).ownerId;
             ownersByEntityId.put(entity.getId(), ownerId);
@@ -84,7 +85,7 @@ public class PlayerSpellbookSystem implements IGameLogicUpdatable {
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Spellbook spellbook = entity.get(Spellbook.class);
             short ownerId = entity.get(Owner.class).ownerId;
             ownersByEntityId.remove(entity.getId());
@@ -96,7 +97,7 @@ public class PlayerSpellbookSystem implements IGameLogicUpdatable {
     }
 
     private void processChangedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Spellbook spellbook = entity.get(Spellbook.class);
             short newOwnerId = entity.get(Owner.class).ownerId;
             short oldOwnerId = ownersByEntityId.put(entity.getId(), newOwnerId);
@@ -31,6 +31,7 @@ import toniarts.openkeeper.game.controller.entity.EntityController;
 import toniarts.openkeeper.game.controller.entity.IEntityController;
 import toniarts.openkeeper.game.map.MapTile;
 import toniarts.openkeeper.tools.convert.map.Terrain;
+import toniarts.openkeeper.utils.Utils;
 import toniarts.openkeeper.utils.WorldUtils;
 
 import java.awt.*;
@@ -85,7 +86,7 @@ public class PositionSystem implements IGameLogicUpdatable, IEntityPositionLooku
     private void processChangedEntities(Set<Entity> entities) {
 
         // Update
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Point p = WorldUtils.vectorToPoint(entity.get(Position.class).position);
             MapTile currentMapTile = mapController.getMapData().getTile(p);
 
@@ -109,7 +110,7 @@ public class PositionSystem implements IGameLogicUpdatable, IEntityPositionLooku
     private void addEntityToTile(MapTile mapTile, Entity entity) {
         Set<EntityId> entitiesInTile = entitiesByMapTile.get(mapTile);
         if (entitiesInTile == null) {
-            entitiesInTile = new HashSet<>();
+            entitiesInTile = new TreeSet<>();
         }
         entitiesInTile.add(entity.getId());
         entitiesByMapTile.put(mapTile, entitiesInTile);
@@ -118,7 +119,7 @@ public class PositionSystem implements IGameLogicUpdatable, IEntityPositionLooku
         if (isObstacle(entityData, entity.getId())) {
             Set<EntityId> obstaclesInTile = entitiesByMapTile.get(mapTile);
             if (obstaclesInTile == null) {
-                obstaclesInTile = new HashSet<>();
+                obstaclesInTile = new TreeSet<>();
             }
             obstaclesInTile.add(entity.getId());
             obstaclesByMapTile.put(mapTile, obstaclesInTile);
@@ -128,7 +129,7 @@ public class PositionSystem implements IGameLogicUpdatable, IEntityPositionLooku
     private void processDeletedEntities(Set<Entity> entities) {
 
         // Remove
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             MapTile mapTile = mapTilesByEntities.remove(entity.getId());
             entitiesByMapTile.get(mapTile).remove(entity.getId());
             if (obstaclesByMapTile.containsKey(mapTile)) {
@@ -140,7 +141,7 @@ public class PositionSystem implements IGameLogicUpdatable, IEntityPositionLooku
     private void processAddedEntities(Set<Entity> entities) {
 
         // Add
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Point p = WorldUtils.vectorToPoint(entity.get(Position.class).position);
             MapTile mapTile = mapController.getMapData().getTile(p);
             mapTilesByEntities.put(entity.getId(), mapTile);
@@ -300,7 +301,7 @@ public class PositionSystem implements IGameLogicUpdatable, IEntityPositionLooku
         }
 
         return sensedEntitiesByEntity.computeIfAbsent(entityId, (id) -> {
-            Set<EntityId> sensedEntities = new HashSet<>();
+            Set<EntityId> sensedEntities = new TreeSet<>();
 
             // Get creatures we sense
             MapTile tile = getEntityLocation(id);
@@ -26,11 +26,13 @@ import toniarts.openkeeper.game.controller.player.PlayerStatsControl;
 import toniarts.openkeeper.tools.convert.map.Creature;
 import toniarts.openkeeper.tools.convert.map.KwdFile;
 import toniarts.openkeeper.tools.convert.map.Variable;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Manages slapping of entities, the added effects etc
@@ -45,7 +47,7 @@ public class SlapSystem implements IGameLogicUpdatable {
     private final EntityData entityData;
     private final int maxSlapDuration;
     private final Map<Short, PlayerStatsControl> statControls = new HashMap<>(4);
-    private final Map<EntityId, Double> slapStartTimesByEntityId = new HashMap<>();
+    private final Map<EntityId, Double> slapStartTimesByEntityId = new TreeMap<>();
 
     private final static int EFFICIENCY_BONUS = 10;
 
@@ -94,7 +96,7 @@ public class SlapSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedCreatureEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             double startTime = entity.get(Slapped.class).startTime;
             short creatureId = entity.get(CreatureComponent.class).creatureId;
             short ownerId = entity.get(Owner.class).ownerId;
@@ -113,7 +115,7 @@ public class SlapSystem implements IGameLogicUpdatable {
     }
 
     private void processAddedObjectEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             double startTime = entity.get(Slapped.class).startTime;
             Interaction interaction = entity.get(Interaction.class);
 
@@ -160,7 +162,7 @@ public class SlapSystem implements IGameLogicUpdatable {
     }
 
     private void processDeletedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             slapStartTimesByEntityId.remove(entity.getId());
             CreatureEfficiency efficiency = entityData.getComponent(entity.getId(), CreatureEfficiency.class);
             if (efficiency != null) {
@@ -170,7 +172,7 @@ public class SlapSystem implements IGameLogicUpdatable {
     }
 
     private void processChangedEntities(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             double startTime = entity.get(Slapped.class).startTime;
 
             if (slapStartTimesByEntityId.get(entity.getId()) != startTime) {
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.logic;
+
+import com.jme3.util.SafeArrayList;
+import com.simsilica.es.EntityData;
+import toniarts.openkeeper.game.component.ComponentTypes;
+import toniarts.openkeeper.game.data.Keeper;
+import toniarts.openkeeper.game.save.EntitySnapshot;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Calculates a checksum of the game state after the game ticks. In lockstep
+ * simulation the peers compare these to detect desyncs. The checksum covers
+ * the entities and the player resources.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class StateChecksumSystem implements IGameLogicUpdatable {
+
+    /**
+     * Listener for the state checksums
+     */
+    public interface StateChecksumListener {
+
+        void onStateChecksum(long tick, long checksum);
+
+    }
+
+    /**
+     * Default checksum interval, in seconds of game time. Capturing the state
+     * is too heavy to be done every tick
+     */
+    public static final int DEFAULT_INTERVAL = 1;
+
+    private final EntityData entityData;
+    private final Collection<Keeper> players;
+    private final int interval;
+    private final SafeArrayList<StateChecksumListener> listeners = new SafeArrayList<>(StateChecksumListener.class);
+    private long tick = 0;
+
+    private static final Logger LOGGER = Logger.getLogger(StateChecksumSystem.class.getName());
+
+    /**
+     * Creates a checksum system
+     *
+     * @param entityData the entity data
+     * @param players the players
+     * @param interval calculate the checksum every nth tick
+     */
+    public StateChecksumSystem(EntityData entityData, Collection<Keeper> players, int interval) {
+        this.entityData = entityData;
+        this.players = players;
+        this.interval = Math.max(1, interval);
+    }
+
+    @Override
+    public void processTick(float tpf, double gameTime) {
+        if (tick % interval == 0 && !listeners.isEmpty()) {
+            try {
+                long checksum = calculateChecksum(entityData, players);
+                for (StateChecksumListener listener : listeners.getArray()) {
+                    listener.onStateChecksum(tick, checksum);
+                }
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to calculate the state checksum!", ex);
+            }
+        }
+        tick++;
+    }
+
+    /**
+     * Calculates the checksum of the given game state
+     *
+     * @param entityData the entity data
+     * @param players the players
+     * @return the checksum
+     * @throws IOException may fail
+     */
+    public static long calculateChecksum(EntityData entityData, Collection<Keeper> players) throws IOException {
+        CheckedOutputStream checksum = new CheckedOutputStream(OutputStream.nullOutputStream(), new CRC32());
+        try (DataOutputStream out = new DataOutputStream(checksum)) {
+            for (Keeper keeper : players) {
+                out.writeShort(keeper.getId());
+                out.writeInt(keeper.getGold());
+                out.writeInt(keeper.getMana());
+            }
+            EntitySnapshot.capture(entityData, ComponentTypes.ALL).write(out);
+        }
+
+        return checksum.getChecksum().getValue();
+    }
+
+    public void addListener(StateChecksumListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(StateChecksumListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void start() {
+
+    }
+
+    @Override
+    public void stop() {
+
+    }
+
+}
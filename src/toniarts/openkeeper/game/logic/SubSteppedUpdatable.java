@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.logic;
+
+/**
+ * Runs the wrapped updatables several times per tick with equally divided time
+ * steps. Allows running systems that need a high update rate, like steering, in
+ * a slower loop deterministically.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class SubSteppedUpdatable implements IGameLogicUpdatable {
+
+    private final int subSteps;
+    private final IGameLogicUpdatable[] updatables;
+
+    public SubSteppedUpdatable(int subSteps, IGameLogicUpdatable... updatables) {
+        this.subSteps = subSteps;
+        this.updatables = updatables;
+    }
+
+    @Override
+    public void start() {
+        for (IGameLogicUpdatable updatable : updatables) {
+            updatable.start();
+        }
+    }
+
+    @Override
+    public void processTick(float tpf, double gameTime) {
+        float subTpf = tpf / subSteps;
+        for (int i = 0; i < subSteps; i++) {
+            double subGameTime = gameTime + (double) subTpf * i;
+            for (IGameLogicUpdatable updatable : updatables) {
+                updatable.processTick(subTpf, subGameTime);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        for (IGameLogicUpdatable updatable : updatables) {
+            updatable.stop();
+        }
+    }
+
+}
@@ -96,6 +96,27 @@ public class MapData implements Savable, Iterable<MapTile> {
         return null;
     }
 
+    /**
+     * Copies an area of the map. The copy has the same dimensions, but the
+     * tiles outside the area are left out, and seen as out of bounds
+     *
+     * @param area the area to copy
+     * @return copy of the area
+     */
+    public MapData copy(Rectangle area) {
+        MapData mapData = new MapData();
+        mapData.width = width;
+        mapData.height = height;
+        mapData.tiles = new MapTile[width][height];
+        for (int y = Math.max(0, area.y); y < Math.min(height, area.y + area.height); y++) {
+            for (int x = Math.max(0, area.x); x < Math.min(width, area.x + area.width); x++) {
+                mapData.tiles[x][y] = new MapTile(tiles[x][y]);
+            }
+        }
+
+        return mapData;
+    }
+
     public void setTiles(List<MapTile> mapTiles) {
         for (MapTile mapTile : mapTiles) {
             tiles[mapTile.getX()][mapTile.getY()] = mapTile;
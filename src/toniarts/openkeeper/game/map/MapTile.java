@@ -17,10 +17,10 @@
 package toniarts.openkeeper.game.map;
 
 import com.jme3.export.*;
-import com.jme3.math.FastMath;
 import toniarts.openkeeper.tools.convert.map.Terrain;
 import toniarts.openkeeper.tools.convert.map.Tile;
 import toniarts.openkeeper.tools.convert.map.Tile.BridgeTerrainType;
+import toniarts.openkeeper.utils.Utils;
 
 import java.awt.*;
 import java.io.IOException;
@@ -75,6 +75,27 @@ public class MapTile implements Savable {
         setAttributesFromTerrain(this, terrain);
     }
 
+    /**
+     * Copies the tile
+     *
+     * @param tile the tile to copy
+     */
+    public MapTile(MapTile tile) {
+        this.selection = tile.selection != null ? new HashMap<>(tile.selection) : null;
+        this.flashing = tile.flashing != null ? new HashMap<>(tile.flashing) : null;
+        this.randomTextureIndex = tile.randomTextureIndex;
+        this.health = tile.health;
+        this.maxHealth = tile.maxHealth;
+        this.gold = tile.gold;
+        this.manaGain = tile.manaGain;
+        this.destroyed = tile.destroyed;
+        this.ownerId = tile.ownerId;
+        this.terrainId = tile.terrainId;
+        this.bridgeTerrainType = tile.bridgeTerrainType;
+        this.p = tile.p;
+        this.index = tile.index;
+    }
+
     public static void setAttributesFromTerrain(MapTile tile, Terrain terrain) {
         tile.health = terrain.getStartingHealth();
         tile.maxHealth = terrain.getMaxHealth();
@@ -84,7 +105,7 @@ public class MapTile implements Savable {
         // Randomize the texture index, the terrain can change for sure but the changed types have no random textures
         // But for the principle, let it be here
         if (terrain.getFlags().contains(Terrain.TerrainFlag.RANDOM_TEXTURE)) {
-            tile.randomTextureIndex = FastMath.nextRandomInt(0, terrain.getTextureFrames() - 1);
+            tile.randomTextureIndex = Utils.getRandom().nextInt(terrain.getTextureFrames());
         }
     }
 
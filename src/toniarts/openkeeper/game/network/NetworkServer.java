@@ -27,6 +27,7 @@ import com.jme3.network.serializing.serializers.FieldSerializer;
 import com.jme3.network.service.HostedService;
 import com.jme3.network.service.rmi.RmiHostedService;
 import com.jme3.network.service.rpc.RpcHostedService;
+import com.simsilica.es.EntityComponent;
 import com.simsilica.es.base.DefaultEntityData;
 import com.simsilica.es.server.EntityDataHostedService;
 import com.simsilica.ethereal.EtherealHost;
@@ -73,7 +74,11 @@ public class NetworkServer {
         this.port = port;
     }
 
-    private static void initialize() {
+    /**
+     * Registers the network serializers, these are global so with several
+     * servers in the same process only the first one does this
+     */
+    private static synchronized void initialize() {
         if (!initialized) {
             initialized = true;
 
@@ -104,54 +109,9 @@ public class NetworkServer {
             Serializer.registerClass(ResearchableType.class, new EnumSerializer());
 
             // Our entity components
-            Serializer.registerClass(AttackTarget.class, new FieldSerializer());
-            Serializer.registerClass(ChickenAi.class, new FieldSerializer());
-            Serializer.registerClass(ChickenGenerator.class, new FieldSerializer());
-            Serializer.registerClass(CreatureAi.class, new FieldSerializer());
-            Serializer.registerClass(CreatureComponent.class, new FieldSerializer());
-            Serializer.registerClass(CreatureEfficiency.class, new FieldSerializer());
-            Serializer.registerClass(CreatureExperience.class, new FieldSerializer());
-            Serializer.registerClass(CreatureFall.class, new FieldSerializer());
-            Serializer.registerClass(CreatureHunger.class, new FieldSerializer());
-            Serializer.registerClass(CreatureImprisoned.class, new FieldSerializer());
-            Serializer.registerClass(CreatureMeleeAttack.class, new FieldSerializer());
-            Serializer.registerClass(CreatureMood.class, new FieldSerializer());
-            Serializer.registerClass(CreatureRecuperating.class, new FieldSerializer());
-            Serializer.registerClass(CreatureSleep.class, new FieldSerializer());
-            Serializer.registerClass(CreatureTortured.class, new FieldSerializer());
-            Serializer.registerClass(CreatureViewState.class, new FieldSerializer());
-            Serializer.registerClass(Death.class, new FieldSerializer());
-            Serializer.registerClass(Decay.class, new FieldSerializer());
-            Serializer.registerClass(DoorComponent.class, new FieldSerializer());
-            Serializer.registerClass(DoorViewState.class, new FieldSerializer());
-            Serializer.registerClass(Fearless.class, new FieldSerializer());
-            Serializer.registerClass(FollowTarget.class, new FieldSerializer());
-            Serializer.registerClass(Food.class, new FieldSerializer());
-            Serializer.registerClass(Gold.class, new FieldSerializer());
-            Serializer.registerClass(HauledBy.class, new FieldSerializer());
-            Serializer.registerClass(Health.class, new FieldSerializer());
-            Serializer.registerClass(InHand.class, new FieldSerializer());
-            Serializer.registerClass(Interaction.class, new FieldSerializer());
-            Serializer.registerClass(Mobile.class, new FieldSerializer());
-            Serializer.registerClass(Navigation.class, new FieldSerializer());
-            Serializer.registerClass(ObjectComponent.class, new FieldSerializer());
-            Serializer.registerClass(ObjectViewState.class, new FieldSerializer());
-            Serializer.registerClass(Objective.class, new FieldSerializer());
-            Serializer.registerClass(Owner.class, new FieldSerializer());
-            Serializer.registerClass(Party.class, new FieldSerializer());
-            Serializer.registerClass(Placeable.class, new FieldSerializer());
-            Serializer.registerClass(PlayerObjective.class, new FieldSerializer());
-            Serializer.registerClass(PortalGem.class, new FieldSerializer());
-            Serializer.registerClass(Position.class, new FieldSerializer());
-            Serializer.registerClass(RoomStorage.class, new FieldSerializer());
-            Serializer.registerClass(Senses.class, new FieldSerializer());
-            Serializer.registerClass(Slapped.class, new FieldSerializer());
-            Serializer.registerClass(Spellbook.class, new FieldSerializer());
-            Serializer.registerClass(TaskComponent.class, new FieldSerializer());
-            Serializer.registerClass(Threat.class, new FieldSerializer());
-            Serializer.registerClass(TrapComponent.class, new FieldSerializer());
-            Serializer.registerClass(TrapViewState.class, new FieldSerializer());
-            Serializer.registerClass(Trigger.class, new FieldSerializer());
+            for (Class<? extends EntityComponent> type : ComponentTypes.ALL) {
+                Serializer.registerClass(type, new FieldSerializer());
+            }
         }
     }
 
@@ -44,6 +44,7 @@ import toniarts.openkeeper.game.state.session.GameSessionListener;
 import toniarts.openkeeper.tools.convert.map.TriggerAction;
 
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.logging.Level;
@@ -102,6 +103,12 @@ public class GameClientService extends AbstractClientService
         s.getService(StreamingClientService.class).addListener(GameHostedService.MessageType.GAME_DATA.ordinal(), (StreamedMessageListener<GameData>) (GameData data) -> {
 
             LOGGER.log(Level.FINEST, "onGameDataLoaded({0})", new Object[]{data});
+            if (data.getRandomSeed() != null) {
+                List<Keeper> lockstepPlayers = data.getLockstepPlayers() != null ? new ArrayList<>(data.getLockstepPlayers()) : null;
+                for (GameSessionListener l : listeners.getArray()) {
+                    l.onLockstepSetup(data.getRandomSeed(), lockstepPlayers);
+                }
+            }
             for (GameSessionListener l : listeners.getArray()) {
                 l.onGameDataLoaded(data.getPlayers(), data.getMapData());
             }
@@ -213,6 +220,11 @@ public class GameClientService extends AbstractClientService
         getDelegate().triggerCheat(cheat);
     }
 
+    @Override
+    public void reportStateChecksum(long tick, long checksum) {
+        getDelegate().reportStateChecksum(tick, checksum);
+    }
+
     private class ClientMessageListener implements MessageListener<Client> {
 
         public ClientMessageListener() {
@@ -246,6 +258,26 @@ public class GameClientService extends AbstractClientService
 //            }
         }
 
+        @Override
+        public void onLockstepSetup(long randomSeed, List<Keeper> players) {
+
+            // This is dealt with streaming, along with the game data
+        }
+
+        @Override
+        public void onLockstepCommand(long tick, short playerId, int sequence, byte[] command) {
+            for (GameSessionListener l : listeners.getArray()) {
+                l.onLockstepCommand(tick, playerId, sequence, command);
+            }
+        }
+
+        @Override
+        public void onLockstepTickSealed(long tick) {
+            for (GameSessionListener l : listeners.getArray()) {
+                l.onLockstepTickSealed(tick);
+            }
+        }
+
         @Override
         public void onGameStarted() {
             LOGGER.log(Level.FINEST, "onGameStarted()");
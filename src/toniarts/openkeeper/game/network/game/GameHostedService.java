@@ -86,6 +86,8 @@ public class GameHostedService extends AbstractHostedConnectionService implement
     private final SafeArrayList<GameSessionServiceListener> serverListeners = new SafeArrayList<>(GameSessionServiceListener.class);
     private RmiHostedService rmiService;
     private ScheduledExecutorService entityUpdater;
+    private Long lockstepRandomSeed;
+    private List<Keeper> lockstepPlayers;
 
     /**
      * Creates a new lobby service that will use the default reliable channel
@@ -202,7 +204,12 @@ public class GameHostedService extends AbstractHostedConnectionService implement
             try {
 
                 // Data is too big, stream the data
-                getServiceManager().getService(StreamingHostedService.class).sendData(MessageType.GAME_DATA.ordinal(), new GameData(new ArrayList<>(players), mapData), null);
+                GameData gameData = new GameData(new ArrayList<>(players), mapData);
+                if (lockstepRandomSeed != null) {
+                    gameData.setRandomSeed(lockstepRandomSeed);
+                    gameData.setLockstepPlayers(lockstepPlayers);
+                }
+                getServiceManager().getService(StreamingHostedService.class).sendData(MessageType.GAME_DATA.ordinal(), gameData, null);
             } catch (IOException ex) {
                 LOGGER.log(Level.SEVERE, "Failed to send the game data to clients!", ex);
             }
@@ -217,11 +224,36 @@ public class GameHostedService extends AbstractHostedConnectionService implement
             gameSession.onGameStarted();
         }
 
+        // In lockstep the clients run the simulation themselves, only the commands are sent
+        if (lockstepRandomSeed != null) {
+            return;
+        }
+
         // Hmm, for now this, update the entities
         entityUpdater = Executors.newSingleThreadScheduledExecutor((Runnable r) -> new Thread(r, "EntityDataUpdater"));
         entityUpdater.scheduleAtFixedRate(() -> getServiceManager().getService(EntityDataHostedService.class).sendUpdates(), 0, GameLoop.INTERVAL_FPS_60, TimeUnit.NANOSECONDS);
     }
 
+    @Override
+    public void setLockstep(long randomSeed, List<Keeper> players) {
+        this.lockstepRandomSeed = randomSeed;
+        this.lockstepPlayers = players;
+    }
+
+    @Override
+    public void sendLockstepCommand(long tick, short playerId, int sequence, byte[] command) {
+        for (GameSessionImpl gameSession : players.values()) {
+            gameSession.onLockstepCommand(tick, playerId, sequence, command);
+        }
+    }
+
+    @Override
+    public void sealLockstepTick(long tick) {
+        for (GameSessionImpl gameSession : players.values()) {
+            gameSession.onLockstepTickSealed(tick);
+        }
+    }
+
     @Override
     public void updateTiles(List<MapTile> updatedTiles) {
         for (GameSessionImpl gameSession : players.values()) {
@@ -480,6 +512,22 @@ public class GameHostedService extends AbstractHostedConnectionService implement
             // We send this as a streamed message, to all, super big
         }
 
+        @Override
+        public void onLockstepSetup(long randomSeed, List<Keeper> players) {
+
+            // Sent along with the game data
+        }
+
+        @Override
+        public void onLockstepCommand(long tick, short playerId, int sequence, byte[] command) {
+            getCallback().onLockstepCommand(tick, playerId, sequence, command);
+        }
+
+        @Override
+        public void onLockstepTickSealed(long tick) {
+            getCallback().onLockstepTickSealed(tick);
+        }
+
         @Override
         public void onGameStarted() {
             getCallback().onGameStarted();
@@ -602,6 +650,13 @@ public class GameHostedService extends AbstractHostedConnectionService implement
             }
         }
 
+        @Override
+        public void reportStateChecksum(long tick, long checksum) {
+            for (GameSessionServiceListener listener : serverListeners.getArray()) {
+                listener.onStateChecksum(tick, checksum, clientInfo.getKeeper().getId());
+            }
+        }
+
         @Override
         public EntityData getEntityData() {
             return null; // Cached on client...
@@ -21,6 +21,7 @@ import com.jme3.network.service.AbstractHostedConnectionService;
 import com.jme3.network.service.HostedServiceManager;
 import com.jme3.network.service.rmi.RmiHostedService;
 import com.jme3.network.service.rmi.RmiRegistry;
+import com.jme3.util.SafeArrayList;
 import com.simsilica.es.server.EntityDataHostedService;
 import com.simsilica.ethereal.EtherealHost;
 import com.simsilica.ethereal.NetworkStateListener;
@@ -55,6 +56,7 @@ public class LobbyHostedService extends AbstractHostedConnectionService implemen
 
     private final Object playerLock = new Object();
     private final Map<ClientInfo, AbstractLobbySessionImpl> players = new ConcurrentHashMap<>(4, 0.75f, 5);
+    private final SafeArrayList<LobbySessionListener> serverListeners = new SafeArrayList<>(LobbySessionListener.class);
     private String mapName;
     private boolean gameStarted = false;
 
@@ -177,6 +179,9 @@ public class LobbyHostedService extends AbstractHostedConnectionService implemen
                     lobby.onMapChanged(mapName);
                 }
             }
+            for (LobbySessionListener listener : serverListeners.getArray()) {
+                listener.onMapChanged(mapName);
+            }
             notifyPlayersChange();
         }
     }
@@ -287,6 +292,9 @@ public class LobbyHostedService extends AbstractHostedConnectionService implemen
         for (AbstractLobbySessionImpl lobby : players.values()) {
             lobby.onPlayerListChanged(playerList);
         }
+        for (LobbySessionListener listener : serverListeners.getArray()) {
+            listener.onPlayerListChanged(playerList);
+        }
     }
 
     @Override
@@ -298,6 +306,24 @@ public class LobbyHostedService extends AbstractHostedConnectionService implemen
         for (AbstractLobbySessionImpl lobby : this.players.values()) {
             lobby.onGameStarted(mapName, playerList);
         }
+        for (LobbySessionListener listener : serverListeners.getArray()) {
+            listener.onGameStarted(mapName, playerList);
+        }
+    }
+
+    /**
+     * Listen to the lobby on the server side. Allows running the lobby
+     * without any of the players hosting the game, i.e. on a dedicated
+     * server.
+     *
+     * @param l the listener
+     */
+    public void addLobbySessionListener(LobbySessionListener l) {
+        serverListeners.add(l);
+    }
+
+    public void removeLobbySessionListener(LobbySessionListener l) {
+        serverListeners.remove(l);
     }
 
     private List<ClientInfo> getPlayers() {
@@ -379,9 +405,7 @@ public class LobbyHostedService extends AbstractHostedConnectionService implemen
             }
 
             getClientInfo().setReady(ready);
-            for (AbstractLobbySessionImpl lobby : players.values()) {
-                lobby.onPlayerListChanged(getPlayers());
-            }
+            notifyPlayersChange();
         }
 
         @Override
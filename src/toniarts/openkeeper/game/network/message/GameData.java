@@ -30,6 +30,8 @@ public class GameData {
 
     private Collection<Keeper> players;
     private MapData mapData;
+    private Long randomSeed;
+    private Collection<Keeper> lockstepPlayers;
 
     public GameData() {
     }
@@ -55,4 +57,32 @@ public class GameData {
         this.players = players;
     }
 
+    /**
+     * The lockstep random seed
+     *
+     * @return the random seed, {@code null} if the game is not in lockstep
+     * mode
+     */
+    public Long getRandomSeed() {
+        return randomSeed;
+    }
+
+    public void setRandomSeed(Long randomSeed) {
+        this.randomSeed = randomSeed;
+    }
+
+    /**
+     * The players as they were before the game was created, for setting up
+     * the lockstep simulation
+     *
+     * @return the players, {@code null} if the level decides the players
+     */
+    public Collection<Keeper> getLockstepPlayers() {
+        return lockstepPlayers;
+    }
+
+    public void setLockstepPlayers(Collection<Keeper> lockstepPlayers) {
+        this.lockstepPlayers = lockstepPlayers;
+    }
+
 }
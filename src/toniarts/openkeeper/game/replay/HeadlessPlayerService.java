@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.replay;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+import toniarts.openkeeper.game.state.session.PlayerService;
+import toniarts.openkeeper.tools.convert.map.TriggerAction;
+
+/**
+ * Player service for a game without any clients. The game logic can call the
+ * player UI as usual, nobody is just listening.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class HeadlessPlayerService implements PlayerService {
+
+    @Override
+    public void setWidescreen(boolean enable, short playerId) {
+
+    }
+
+    @Override
+    public void playSpeech(int speechId, boolean showText, boolean introduction, int pathId, short playerId) {
+
+    }
+
+    @Override
+    public boolean isInTransition() {
+        return false;
+    }
+
+    @Override
+    public void doTransition(short pathId, Vector3f start, short playerId) {
+
+    }
+
+    @Override
+    public void flashButton(TriggerAction.MakeType buttonType, short targetId, TriggerAction.ButtonType targetButtonType, boolean enabled, int time, short playerId) {
+
+    }
+
+    @Override
+    public void rotateViewAroundPoint(Vector3f point, boolean relative, int angle, int time, short playerId) {
+
+    }
+
+    @Override
+    public void showMessage(int textId, short playerId) {
+
+    }
+
+    @Override
+    public void zoomViewToPoint(Vector3f point, short playerId) {
+
+    }
+
+    @Override
+    public void zoomViewToEntity(EntityId entityId, short playerId) {
+
+    }
+
+    @Override
+    public void setGamePaused(boolean paused) {
+
+    }
+
+    @Override
+    public void showUnitFlower(EntityId entityId, int interval, short playerId) {
+
+    }
+
+}
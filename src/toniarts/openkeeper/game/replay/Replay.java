@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.replay;
+
+import com.jme3.export.binary.BinaryImporter;
+import toniarts.openkeeper.game.data.Keeper;
+import toniarts.openkeeper.game.save.SaveGame;
+import toniarts.openkeeper.game.server.PlayerCommandCodec;
+import toniarts.openkeeper.game.state.session.GameSessionServiceListener;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A recorded match. The replay consists of the initial setup (level, players
+ * and the random seed), the player commands stamped with the game tick they
+ * were executed on and periodic keyframes. The commands are encoded with the
+ * {@link PlayerCommandCodec}, like between the lockstep peers. Since the
+ * lockstep simulation is deterministic, the match can be re-simulated from
+ * these. The keyframes hold
+ * a state checksum for verifying the re-simulation and a full save game for
+ * inspecting the state.<br>
+ * The file is a GZIP compressed stream of records written by the
+ * {@link ReplayRecorder}.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public final class Replay {
+
+    public static final String REPLAY_EXTENSION = ".okr";
+
+    static final int MAGIC = 0x4F4B5250; // OKRP
+    static final int VERSION = 2;
+
+    // Record types
+    static final byte COMMAND = 1;
+    static final byte KEYFRAME = 100;
+    static final byte END = 101;
+
+    private final String levelName;
+    private final long randomSeed;
+    private final int ticksPerSec;
+    private final List<Keeper> players;
+    private final List<Command> commands;
+    private final NavigableMap<Long, Keyframe> keyframes;
+    private final long endTick;
+
+    private static final Logger LOGGER = Logger.getLogger(Replay.class.getName());
+
+    private Replay(String levelName, long randomSeed, int ticksPerSec, List<Keeper> players, List<Command> commands,
+            NavigableMap<Long, Keyframe> keyframes, long endTick) {
+        this.levelName = levelName;
+        this.randomSeed = randomSeed;
+        this.ticksPerSec = ticksPerSec;
+        this.players = players;
+        this.commands = commands;
+        this.keyframes = keyframes;
+        this.endTick = endTick;
+    }
+
+    /**
+     * Reads a replay file. A replay that was cut short, i.e. by a crash, is
+     * read up to the last complete record.
+     *
+     * @param file the replay file
+     * @return the replay
+     * @throws IOException may fail, also if the file is not a replay or from
+     * an incompatible version
+     */
+    public static Replay load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a replay!");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported replay version " + version + "!");
+            }
+
+            // Header
+            String levelName = in.readUTF();
+            long randomSeed = in.readLong();
+            int ticksPerSec = in.readInt();
+            int playerCount = in.readInt();
+            List<Keeper> players = null;
+            if (playerCount >= 0) {
+                players = new ArrayList<>(playerCount);
+                for (int i = 0; i < playerCount; i++) {
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    players.add((Keeper) BinaryImporter.getInstance().load(data));
+                }
+            }
+
+            // Records
+            List<Command> commands = new ArrayList<>();
+            NavigableMap<Long, Keyframe> keyframes = new TreeMap<>();
+            long endTick = -1;
+            try {
+                while (endTick < 0) {
+                    byte type = in.readByte();
+                    switch (type) {
+                        case KEYFRAME: {
+                            long tick = in.readLong();
+                            long checksum = in.readLong();
+                            keyframes.put(tick, new Keyframe(tick, checksum, SaveGame.read(in)));
+                            break;
+                        }
+                        case END: {
+                            endTick = in.readLong();
+                            break;
+                        }
+                        case COMMAND: {
+                            long tick = in.readLong();
+                            byte[] data = new byte[in.readInt()];
+                            in.readFully(data);
+                            commands.add(new Command(tick, PlayerCommandCodec.decode(data)));
+                            break;
+                        }
+                        default:
+                            throw new IOException("Unknown replay record type " + type + "!");
+                    }
+                }
+            } catch (EOFException e) {
+                LOGGER.log(Level.WARNING, "Replay {0} is incomplete, the recording was not finished!", file);
+                endTick = commands.isEmpty() ? 0 : commands.get(commands.size() - 1).getTick();
+                if (!keyframes.isEmpty()) {
+                    endTick = Math.max(endTick, keyframes.lastKey());
+                }
+            }
+
+            return new Replay(levelName, randomSeed, ticksPerSec, players, commands, keyframes, endTick);
+        }
+    }
+
+    /**
+     * The level (KWD file) name
+     *
+     * @return the level name
+     */
+    public String getLevelName() {
+        return levelName;
+    }
+
+    public long getRandomSeed() {
+        return randomSeed;
+    }
+
+    public int getTicksPerSec() {
+        return ticksPerSec;
+    }
+
+    /**
+     * The players as they were when the match started
+     *
+     * @return the players, {@code null} if the level decided the players
+     */
+    public List<Keeper> getPlayers() {
+        return players;
+    }
+
+    /**
+     * The player commands in the execution order
+     *
+     * @return the commands
+     */
+    public List<Command> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    public NavigableMap<Long, Keyframe> getKeyframes() {
+        return Collections.unmodifiableNavigableMap(keyframes);
+    }
+
+    /**
+     * The last tick of the match
+     *
+     * @return the end tick
+     */
+    public long getEndTick() {
+        return endTick;
+    }
+
+    /**
+     * A recorded player command
+     */
+    public static final class Command {
+
+        private final long tick;
+        private final PlayerCommandCodec.PlayerCommand command;
+
+        private Command(long tick, PlayerCommandCodec.PlayerCommand command) {
+            this.tick = tick;
+            this.command = command;
+        }
+
+        public long getTick() {
+            return tick;
+        }
+
+        public short getPlayerId() {
+            return command.getPlayerId();
+        }
+
+        /**
+         * Replays the command as the original client request
+         *
+         * @param listener the listener to receive the request
+         */
+        public void dispatch(GameSessionServiceListener listener) {
+            command.dispatch(listener);
+        }
+    }
+
+    /**
+     * A recorded game state
+     */
+    public static final class Keyframe {
+
+        private final long tick;
+        private final long checksum;
+        private final SaveGame saveGame;
+
+        private Keyframe(long tick, long checksum, SaveGame saveGame) {
+            this.tick = tick;
+            this.checksum = checksum;
+            this.saveGame = saveGame;
+        }
+
+        public long getTick() {
+            return tick;
+        }
+
+        public long getChecksum() {
+            return checksum;
+        }
+
+        public SaveGame getSaveGame() {
+            return saveGame;
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.replay;
+
+import com.simsilica.es.EntityData;
+import com.simsilica.es.base.DefaultEntityData;
+import toniarts.openkeeper.Main;
+import toniarts.openkeeper.game.controller.GameController;
+import toniarts.openkeeper.game.logic.LockstepCommandQueue;
+import toniarts.openkeeper.game.server.PlayerCommandExecutor;
+import toniarts.openkeeper.game.state.session.GameSessionServiceListener;
+import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.map.KwdFile;
+import toniarts.openkeeper.utils.PathUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Re-simulates a recorded match headless, without any rendering or clients,
+ * as fast as the game logic runs. The state checksums are compared against the
+ * recorded keyframes to detect if the simulation diverged from the recording.
+ * The tick times are measured, so the player can be used to benchmark the
+ * game logic on real matches and to reproduce tick overruns.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class ReplayPlayer {
+
+    private final Replay replay;
+    private final KwdFile kwdFile;
+
+    private static final Logger LOGGER = Logger.getLogger(ReplayPlayer.class.getName());
+
+    /**
+     * Create a replay player
+     *
+     * @param replay the replay to play
+     * @param kwdFile the level the replay was recorded on
+     */
+    public ReplayPlayer(Replay replay, KwdFile kwdFile) {
+        this.replay = replay;
+        this.kwdFile = kwdFile;
+    }
+
+    /**
+     * Create a replay player, the level is loaded from the DK II folder
+     *
+     * @param replay the replay to play
+     */
+    public ReplayPlayer(Replay replay) {
+        this(replay, new KwdFile(Main.getDkIIFolder(),
+                new File(ConversionUtils.getRealFileName(Main.getDkIIFolder(), PathUtils.DKII_MAPS_FOLDER + replay.getLevelName() + ".kwd"))));
+    }
+
+    /**
+     * Plays the replay through, blocks until done
+     *
+     * @return the statistics of the re-simulation
+     */
+    public ReplayResult play() {
+        kwdFile.load();
+        if (kwdFile.getGameLevel().getTicksPerSec() != replay.getTicksPerSec()) {
+            LOGGER.log(Level.WARNING, "Replay was recorded with {0} ticks per second, the level now has {1}!",
+                    new Object[]{replay.getTicksPerSec(), kwdFile.getGameLevel().getTicksPerSec()});
+        }
+
+        EntityData entityData = new DefaultEntityData();
+        GameController gameController = new GameController(kwdFile, replay.getPlayers(), entityData,
+                kwdFile.getVariables(), new HeadlessPlayerService());
+        gameController.setLockstep(replay.getRandomSeed());
+        gameController.createNewGame();
+
+        // Schedule all the commands to their original ticks, the sequence keeps the recorded order
+        GameSessionServiceListener commandExecutor = new PlayerCommandExecutor(gameController);
+        LockstepCommandQueue commandQueue = gameController.getLockstepCommandQueue();
+        int sequence = 0;
+        for (Replay.Command command : replay.getCommands()) {
+            commandQueue.schedule(command.getTick(), command.getPlayerId(), sequence++, () -> command.dispatch(commandExecutor));
+        }
+
+        // Verify the state against the keyframes
+        ReplayResult result = new ReplayResult(gameController.getGameLogicUpdateRate());
+        gameController.getStateChecksumSystem().addListener((tick, checksum) -> {
+            Replay.Keyframe keyframe = replay.getKeyframes().get(tick);
+            if (keyframe != null) {
+                result.keyframesVerified++;
+                if (keyframe.getChecksum() != checksum && result.desyncTick < 0) {
+                    result.desyncTick = tick;
+                    LOGGER.log(Level.SEVERE, "Replay desynced at tick {0}!", tick);
+                }
+            }
+        });
+
+        // Run as fast as we can
+        gameController.startSteppedGame();
+        try {
+            for (long tick = 0; tick <= replay.getEndTick(); tick++) {
+                long start = System.nanoTime();
+                gameController.step();
+                result.addTick(tick, System.nanoTime() - start);
+            }
+        } finally {
+            gameController.close();
+            entityData.close();
+        }
+
+        LOGGER.log(Level.INFO, "Replay played: {0}", result);
+        return result;
+    }
+
+    /**
+     * Plays a replay headless
+     *
+     * @param args the replay file
+     * @throws IOException if the replay can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: ReplayPlayer <replay file>");
+            return;
+        }
+
+        ReplayResult result = new ReplayPlayer(Replay.load(new File(args[0]))).play();
+        System.out.println(result);
+        if (result.getDesyncTick() >= 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Statistics of a replay re-simulation
+     */
+    public static class ReplayResult {
+
+        private final long tickBudget;
+        private long ticks = 0;
+        private long totalTime = 0;
+        private long maxTickTime = 0;
+        private long maxTick = -1;
+        private long overrunTicks = 0;
+        private int keyframesVerified = 0;
+        private long desyncTick = -1;
+
+        private ReplayResult(long tickBudget) {
+            this.tickBudget = tickBudget;
+        }
+
+        private void addTick(long tick, long time) {
+            ticks++;
+            totalTime += time;
+            if (time > maxTickTime) {
+                maxTickTime = time;
+                maxTick = tick;
+            }
+            if (time > tickBudget) {
+                overrunTicks++;
+                LOGGER.log(Level.FINE, "Tick {0} overran, took {1} ms!", new Object[]{tick, TimeUnit.NANOSECONDS.toMillis(time)});
+            }
+        }
+
+        public long getTicks() {
+            return ticks;
+        }
+
+        /**
+         * Total simulation time
+         *
+         * @return the time in nanoseconds
+         */
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        /**
+         * Longest tick time
+         *
+         * @return the time in nanoseconds
+         */
+        public long getMaxTickTime() {
+            return maxTickTime;
+        }
+
+        /**
+         * The tick that took the longest
+         *
+         * @return the tick
+         */
+        public long getMaxTick() {
+            return maxTick;
+        }
+
+        /**
+         * Number of ticks that took longer than the tick length, these would
+         * have caused stutter in a real game
+         *
+         * @return the overrun tick count
+         */
+        public long getOverrunTicks() {
+            return overrunTicks;
+        }
+
+        public int getKeyframesVerified() {
+            return keyframesVerified;
+        }
+
+        /**
+         * The first tick where the simulation differed from the recording
+         *
+         * @return the tick, or -1 if the simulation matched the recording
+         */
+        public long getDesyncTick() {
+            return desyncTick;
+        }
+
+        @Override
+        public String toString() {
+            return "ReplayResult{" + "ticks=" + ticks + ", totalTime=" + TimeUnit.NANOSECONDS.toMillis(totalTime)
+                    + " ms, averageTickTime=" + (ticks > 0 ? TimeUnit.NANOSECONDS.toMicros(totalTime / ticks) : 0)
+                    + " us, maxTickTime=" + TimeUnit.NANOSECONDS.toMillis(maxTickTime) + " ms, maxTick=" + maxTick
+                    + ", overrunTicks=" + overrunTicks + ", keyframesVerified=" + keyframesVerified
+                    + ", desyncTick=" + desyncTick + '}';
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.replay;
+
+import com.jme3.export.binary.BinaryExporter;
+import toniarts.openkeeper.game.controller.GameController;
+import toniarts.openkeeper.game.data.Keeper;
+import toniarts.openkeeper.game.logic.StateChecksumSystem;
+import toniarts.openkeeper.game.save.SaveGame;
+import toniarts.openkeeper.game.server.PlayerCommandCodec;
+import toniarts.openkeeper.tools.convert.map.KwdFile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records a lockstep match to a replay file. The player commands are recorded
+ * with the tick they are executed on, so {@link #onCommand(byte[])} must be
+ * called from the game logic thread when the commands are actually executed,
+ * not when the client requests arrive. Every now and then a keyframe with the
+ * state checksum and a full save game is recorded.<br>
+ * The records are compressed and written in a background thread.
+ *
+ * @see Replay
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class ReplayRecorder implements StateChecksumSystem.StateChecksumListener, AutoCloseable {
+
+    /**
+     * Default keyframe interval, in seconds of game time. Must be a multiple
+     * of the {@link StateChecksumSystem#DEFAULT_INTERVAL} since the keyframes
+     * are only recorded on the ticks the checksum is calculated on
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 60;
+
+    private final GameController gameController;
+    private final int keyframeInterval;
+    private final DataOutputStream out;
+    private final ExecutorService executorService;
+
+    private static final Logger LOGGER = Logger.getLogger(ReplayRecorder.class.getName());
+
+    /**
+     * Starts a new replay recording. Must be created before the game is
+     * created so that the players are recorded in their initial state.
+     *
+     * @param file the file to record to
+     * @param kwdFile the level
+     * @param randomSeed the lockstep random seed
+     * @param players the players participating, can be {@code null}
+     * @param gameController the game controller, in lockstep mode
+     * @param keyframeInterval keyframe interval in ticks
+     * @throws IOException if the file can't be written
+     */
+    public ReplayRecorder(File file, KwdFile kwdFile, long randomSeed, List<Keeper> players,
+            GameController gameController, int keyframeInterval) throws IOException {
+        this.gameController = gameController;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+
+        file.getParentFile().mkdirs();
+        out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))));
+        executorService = Executors.newSingleThreadExecutor((Runnable r) -> {
+            Thread t = new Thread(r, "ReplayWriter");
+            t.setDaemon(true);
+            return t;
+        });
+
+        // Header
+        out.writeInt(Replay.MAGIC);
+        out.writeInt(Replay.VERSION);
+        out.writeUTF(kwdFile.getGameLevel().getName());
+        out.writeLong(randomSeed);
+        out.writeInt(kwdFile.getGameLevel().getTicksPerSec());
+        out.writeInt(players != null ? players.size() : -1);
+        if (players != null) {
+            for (Keeper keeper : players) {
+                try (ByteArrayOutputStream data = new ByteArrayOutputStream()) {
+                    BinaryExporter.getInstance().save(keeper, data);
+                    out.writeInt(data.size());
+                    data.writeTo(out);
+                }
+            }
+        }
+    }
+
+    private long getTick() {
+        return gameController.getLockstepCommandQueue().getTick();
+    }
+
+    /**
+     * Records an executed player command
+     *
+     * @param command the command encoded with the {@link PlayerCommandCodec}
+     */
+    public void onCommand(byte[] command) {
+        long tick = getTick();
+        executorService.submit(() -> {
+            try {
+                out.writeByte(Replay.COMMAND);
+                out.writeLong(tick);
+                out.writeInt(command.length);
+                out.write(command);
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to write the replay!", ex);
+            }
+        });
+    }
+
+    @Override
+    public void onStateChecksum(long tick, long checksum) {
+        if (tick % keyframeInterval != 0) {
+            return;
+        }
+
+        try {
+            SaveGame saveGame = gameController.createSaveGame();
+            executorService.submit(() -> {
+                try {
+                    out.writeByte(Replay.KEYFRAME);
+                    out.writeLong(tick);
+                    out.writeLong(checksum);
+                    saveGame.write(out);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.SEVERE, "Failed to write the replay keyframe!", ex);
+                }
+            });
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to capture the replay keyframe!", ex);
+        }
+    }
+
+    /**
+     * Finishes the recording. The game should be stopped before this.
+     */
+    @Override
+    public void close() {
+        long endTick = Math.max(0, getTick() - 1);
+        executorService.submit(() -> {
+            try {
+                out.writeByte(Replay.END);
+                out.writeLong(endTick);
+                out.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to finish the replay!", ex);
+            }
+        });
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.log(Level.WARNING, "Replay writer did not finish in time!");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,649 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.save;
+
+import com.badlogic.gdx.math.Vector2;
+import com.jme3.math.Vector2f;
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityComponent;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+
+import java.awt.Point;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A point in time copy of the entity data. The components are immutable by
+ * contract so taking the snapshot only copies references, it is cheap enough
+ * to do between the game logic ticks. The actual encoding can then happen in
+ * any thread.<br>
+ * The binary layout is columnar: first a component type table, then an entity
+ * table and then for each component type a table of rows with one bulk array
+ * per component field.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public final class EntitySnapshot {
+
+    private static final byte FIELD_BOOLEAN = 'Z';
+    private static final byte FIELD_BYTE = 'B';
+    private static final byte FIELD_SHORT = 'S';
+    private static final byte FIELD_INT = 'I';
+    private static final byte FIELD_LONG = 'J';
+    private static final byte FIELD_FLOAT = 'F';
+    private static final byte FIELD_DOUBLE = 'D';
+    private static final byte FIELD_ENUM = 'E';
+    private static final byte FIELD_ENTITY_ID = 'L';
+    private static final byte FIELD_OBJECT = 'O';
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_BOOLEAN = 1;
+    private static final byte VALUE_BYTE = 2;
+    private static final byte VALUE_SHORT = 3;
+    private static final byte VALUE_INT = 4;
+    private static final byte VALUE_LONG = 5;
+    private static final byte VALUE_FLOAT = 6;
+    private static final byte VALUE_DOUBLE = 7;
+    private static final byte VALUE_STRING = 8;
+    private static final byte VALUE_ENUM = 9;
+    private static final byte VALUE_ENTITY_ID = 10;
+    private static final byte VALUE_VECTOR3F = 11;
+    private static final byte VALUE_VECTOR2F = 12;
+    private static final byte VALUE_VECTOR2 = 13;
+    private static final byte VALUE_POINT = 14;
+    private static final byte VALUE_LIST = 15;
+    private static final byte VALUE_SET = 16;
+
+    private static final long NULL_ENTITY = Long.MIN_VALUE;
+    private static final Map<Class<?>, Field[]> FIELD_CACHE = new ConcurrentHashMap<>();
+    private static final Logger LOGGER = Logger.getLogger(EntitySnapshot.class.getName());
+
+    private final Map<Class<? extends EntityComponent>, Map<EntityId, EntityComponent>> components;
+
+    private EntitySnapshot(Map<Class<? extends EntityComponent>, Map<EntityId, EntityComponent>> components) {
+        this.components = components;
+    }
+
+    /**
+     * Takes a snapshot of the given entity data. Must be called from the
+     * thread that modifies the entities (the game logic thread) to get a
+     * consistent view.
+     *
+     * @param entityData the entity data
+     * @param types the component types to include
+     * @return snapshot of the entities
+     */
+    public static EntitySnapshot capture(EntityData entityData, Collection<Class<? extends EntityComponent>> types) {
+        return capture(entityData, types, Collections.emptySet());
+    }
+
+    /**
+     * Takes a snapshot of the given entity data, leaving out the given
+     * entities. Must be called from the thread that modifies the entities
+     * (the game logic thread) to get a consistent view.
+     *
+     * @param entityData the entity data
+     * @param types the component types to include
+     * @param excludedEntities the entities that are recreated some other way
+     * on load, like the room furniture
+     * @return snapshot of the entities
+     */
+    public static EntitySnapshot capture(EntityData entityData, Collection<Class<? extends EntityComponent>> types,
+            Set<EntityId> excludedEntities) {
+        Map<Class<? extends EntityComponent>, Map<EntityId, EntityComponent>> components = new LinkedHashMap<>(types.size());
+        for (Class<? extends EntityComponent> type : types) {
+            Set<EntityId> entities = entityData.findEntities(null, type);
+            if (entities.isEmpty()) {
+                continue;
+            }
+
+            Map<EntityId, EntityComponent> rows = new HashMap<>(entities.size());
+            for (EntityId entityId : entities) {
+                if (excludedEntities.contains(entityId)) {
+                    continue;
+                }
+                EntityComponent component = entityData.getComponent(entityId, type);
+                if (component != null) {
+                    rows.put(entityId, component);
+                }
+            }
+            if (!rows.isEmpty()) {
+                components.put(type, rows);
+            }
+        }
+
+        return new EntitySnapshot(components);
+    }
+
+    /**
+     * Restores the snapshot to the given entity data. New entity IDs are
+     * generated and all the entity references inside the components are
+     * remapped to them. Only meant for snapshots read from a file, the
+     * components are remapped in place.
+     *
+     * @param entityData the entity data to restore to
+     * @param oldToNewIds mapping from the IDs in the snapshot to the new
+     * entities, filled by this method
+     */
+    public void restore(EntityData entityData, Map<EntityId, EntityId> oldToNewIds) {
+        for (Map<EntityId, EntityComponent> rows : components.values()) {
+            for (EntityId entityId : rows.keySet()) {
+                oldToNewIds.computeIfAbsent(entityId, (id) -> entityData.createEntity());
+            }
+        }
+
+        for (Map<EntityId, EntityComponent> rows : components.values()) {
+            for (Map.Entry<EntityId, EntityComponent> row : rows.entrySet()) {
+                entityData.setComponent(oldToNewIds.get(row.getKey()), remapEntityIds(row.getValue(), oldToNewIds));
+            }
+        }
+    }
+
+    /**
+     * Get the number of distinct entities in the snapshot
+     *
+     * @return entity count
+     */
+    public int getEntityCount() {
+        return getEntityTable().length;
+    }
+
+    private long[] getEntityTable() {
+        return components.values().stream()
+                .flatMap(rows -> rows.keySet().stream())
+                .mapToLong(EntityId::getId)
+                .distinct()
+                .sorted()
+                .toArray();
+    }
+
+    public void write(DataOutput out) throws IOException {
+
+        // Component type table
+        out.writeShort(components.size());
+        for (Class<? extends EntityComponent> type : components.keySet()) {
+            out.writeUTF(type.getName());
+        }
+
+        // Entity table
+        long[] entities = getEntityTable();
+        out.writeInt(entities.length);
+        for (long id : entities) {
+            out.writeLong(id);
+        }
+
+        // Component tables
+        for (Map.Entry<Class<? extends EntityComponent>, Map<EntityId, EntityComponent>> entry : components.entrySet()) {
+            writeComponentTable(out, entry.getKey(), entry.getValue(), entities);
+        }
+    }
+
+    private static void writeComponentTable(DataOutput out, Class<? extends EntityComponent> type,
+            Map<EntityId, EntityComponent> rows, long[] entities) throws IOException {
+        List<Map.Entry<EntityId, EntityComponent>> sortedRows = new ArrayList<>(rows.entrySet());
+        sortedRows.sort(Comparator.comparingLong(e -> e.getKey().getId()));
+
+        // Row -> entity table indices
+        out.writeInt(sortedRows.size());
+        for (Map.Entry<EntityId, EntityComponent> row : sortedRows) {
+            out.writeInt(Arrays.binarySearch(entities, row.getKey().getId()));
+        }
+
+        // Field descriptors
+        Field[] fields = getFields(type);
+        out.writeShort(fields.length);
+        for (Field field : fields) {
+            out.writeUTF(field.getName());
+            out.writeByte(getFieldType(field.getType()));
+        }
+
+        // Field columns
+        try {
+            for (Field field : fields) {
+                byte fieldType = getFieldType(field.getType());
+                for (Map.Entry<EntityId, EntityComponent> row : sortedRows) {
+                    writeField(out, fieldType, field, row.getValue());
+                }
+            }
+        } catch (IllegalAccessException ex) {
+            throw new IOException("Failed to write component " + type + "!", ex);
+        }
+    }
+
+    public static EntitySnapshot read(DataInput in) throws IOException {
+
+        // Component type table
+        int typeCount = in.readShort();
+        List<Class<? extends EntityComponent>> types = new ArrayList<>(typeCount);
+        for (int i = 0; i < typeCount; i++) {
+            String className = in.readUTF();
+            try {
+                types.add(Class.forName(className).asSubclass(EntityComponent.class));
+            } catch (ClassNotFoundException | ClassCastException ex) {
+                LOGGER.log(Level.WARNING, "Unknown component type {0}, skipping it!", className);
+                types.add(null);
+            }
+        }
+
+        // Entity table
+        EntityId[] entities = new EntityId[in.readInt()];
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = new EntityId(in.readLong());
+        }
+
+        // Component tables
+        Map<Class<? extends EntityComponent>, Map<EntityId, EntityComponent>> components = new LinkedHashMap<>(typeCount);
+        for (Class<? extends EntityComponent> type : types) {
+            Map<EntityId, EntityComponent> rows = readComponentTable(in, type, entities);
+            if (type != null) {
+                components.put(type, rows);
+            }
+        }
+
+        return new EntitySnapshot(components);
+    }
+
+    private static Map<EntityId, EntityComponent> readComponentTable(DataInput in, Class<? extends EntityComponent> type,
+            EntityId[] entities) throws IOException {
+        EntityComponent[] values = new EntityComponent[in.readInt()];
+        EntityId[] rowEntities = new EntityId[values.length];
+        for (int i = 0; i < values.length; i++) {
+            rowEntities[i] = entities[in.readInt()];
+        }
+
+        try {
+            if (type != null) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = type.getDeclaredConstructor().newInstance();
+                }
+            }
+
+            // Field descriptors, the fields are matched by name, missing fields are just skipped
+            int fieldCount = in.readShort();
+            Field[] fields = new Field[fieldCount];
+            byte[] fieldTypes = new byte[fieldCount];
+            for (int i = 0; i < fieldCount; i++) {
+                String name = in.readUTF();
+                fieldTypes[i] = in.readByte();
+                if (type != null) {
+                    fields[i] = findField(type, name, fieldTypes[i]);
+                }
+            }
+
+            // Field columns
+            for (int i = 0; i < fieldCount; i++) {
+                for (EntityComponent value : values) {
+                    readField(in, fieldTypes[i], fields[i], value);
+                }
+            }
+        } catch (ReflectiveOperationException ex) {
+            throw new IOException("Failed to read component " + type + "!", ex);
+        }
+
+        Map<EntityId, EntityComponent> rows = new HashMap<>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            rows.put(rowEntities[i], values[i]);
+        }
+
+        return rows;
+    }
+
+    private static Field[] getFields(Class<?> type) {
+        return FIELD_CACHE.computeIfAbsent(type, (t) -> {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = t; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            fields.sort(Comparator.comparing(Field::getName));
+
+            return fields.toArray(new Field[0]);
+        });
+    }
+
+    private static Field findField(Class<?> type, String name, byte fieldType) {
+        for (Field field : getFields(type)) {
+            if (field.getName().equals(name) && getFieldType(field.getType()) == fieldType) {
+                return field;
+            }
+        }
+        LOGGER.log(Level.WARNING, "Field {0} not found from {1}, skipping it!", new Object[]{name, type});
+
+        return null;
+    }
+
+    private static byte getFieldType(Class<?> type) {
+        if (type == boolean.class) {
+            return FIELD_BOOLEAN;
+        } else if (type == byte.class) {
+            return FIELD_BYTE;
+        } else if (type == short.class) {
+            return FIELD_SHORT;
+        } else if (type == int.class) {
+            return FIELD_INT;
+        } else if (type == long.class) {
+            return FIELD_LONG;
+        } else if (type == float.class) {
+            return FIELD_FLOAT;
+        } else if (type == double.class) {
+            return FIELD_DOUBLE;
+        } else if (type.isEnum()) {
+            return FIELD_ENUM;
+        } else if (type == EntityId.class) {
+            return FIELD_ENTITY_ID;
+        }
+        return FIELD_OBJECT;
+    }
+
+    private static void writeField(DataOutput out, byte fieldType, Field field, Object instance) throws IOException, IllegalAccessException {
+        switch (fieldType) {
+            case FIELD_BOOLEAN:
+                out.writeBoolean(field.getBoolean(instance));
+                break;
+            case FIELD_BYTE:
+                out.writeByte(field.getByte(instance));
+                break;
+            case FIELD_SHORT:
+                out.writeShort(field.getShort(instance));
+                break;
+            case FIELD_INT:
+                out.writeInt(field.getInt(instance));
+                break;
+            case FIELD_LONG:
+                out.writeLong(field.getLong(instance));
+                break;
+            case FIELD_FLOAT:
+                out.writeFloat(field.getFloat(instance));
+                break;
+            case FIELD_DOUBLE:
+                out.writeDouble(field.getDouble(instance));
+                break;
+            case FIELD_ENUM: {
+                Enum<?> value = (Enum<?>) field.get(instance);
+                out.writeShort(value != null ? value.ordinal() : -1);
+                break;
+            }
+            case FIELD_ENTITY_ID: {
+                EntityId value = (EntityId) field.get(instance);
+                out.writeLong(value != null ? value.getId() : NULL_ENTITY);
+                break;
+            }
+            default:
+                writeValue(out, field.get(instance));
+        }
+    }
+
+    private static void readField(DataInput in, byte fieldType, Field field, Object instance) throws IOException, IllegalAccessException {
+        Object value;
+        switch (fieldType) {
+            case FIELD_BOOLEAN:
+                value = in.readBoolean();
+                break;
+            case FIELD_BYTE:
+                value = in.readByte();
+                break;
+            case FIELD_SHORT:
+                value = in.readShort();
+                break;
+            case FIELD_INT:
+                value = in.readInt();
+                break;
+            case FIELD_LONG:
+                value = in.readLong();
+                break;
+            case FIELD_FLOAT:
+                value = in.readFloat();
+                break;
+            case FIELD_DOUBLE:
+                value = in.readDouble();
+                break;
+            case FIELD_ENUM: {
+                int ordinal = in.readShort();
+                value = (ordinal >= 0 && field != null ? field.getType().getEnumConstants()[ordinal] : null);
+                break;
+            }
+            case FIELD_ENTITY_ID: {
+                long id = in.readLong();
+                value = (id != NULL_ENTITY ? new EntityId(id) : null);
+                break;
+            }
+            default:
+                value = readValue(in);
+        }
+
+        if (field != null && instance != null) {
+            field.set(instance, value);
+        }
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(VALUE_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(VALUE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(VALUE_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(VALUE_SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(VALUE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(VALUE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(VALUE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(VALUE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(VALUE_STRING);
+            out.writeUTF((String) value);
+        } else if (value instanceof Enum) {
+            out.writeByte(VALUE_ENUM);
+            out.writeUTF(((Enum<?>) value).getDeclaringClass().getName());
+            out.writeUTF(((Enum<?>) value).name());
+        } else if (value instanceof EntityId) {
+            out.writeByte(VALUE_ENTITY_ID);
+            out.writeLong(((EntityId) value).getId());
+        } else if (value instanceof Vector3f) {
+            Vector3f v = (Vector3f) value;
+            out.writeByte(VALUE_VECTOR3F);
+            out.writeFloat(v.x);
+            out.writeFloat(v.y);
+            out.writeFloat(v.z);
+        } else if (value instanceof Vector2f) {
+            Vector2f v = (Vector2f) value;
+            out.writeByte(VALUE_VECTOR2F);
+            out.writeFloat(v.x);
+            out.writeFloat(v.y);
+        } else if (value instanceof Vector2) {
+            Vector2 v = (Vector2) value;
+            out.writeByte(VALUE_VECTOR2);
+            out.writeFloat(v.x);
+            out.writeFloat(v.y);
+        } else if (value instanceof Point) {
+            Point p = (Point) value;
+            out.writeByte(VALUE_POINT);
+            out.writeInt(p.x);
+            out.writeInt(p.y);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(VALUE_LIST);
+            out.writeInt(list.size());
+            for (Object item : list) {
+                writeValue(out, item);
+            }
+        } else if (value instanceof Set) {
+            Set<?> set = (Set<?>) value;
+            out.writeByte(VALUE_SET);
+            out.writeInt(set.size());
+            for (Object item : set) {
+                writeValue(out, item);
+            }
+        } else {
+            throw new IOException("Unsupported value type " + value.getClass() + "!");
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object readValue(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_BOOLEAN:
+                return in.readBoolean();
+            case VALUE_BYTE:
+                return in.readByte();
+            case VALUE_SHORT:
+                return in.readShort();
+            case VALUE_INT:
+                return in.readInt();
+            case VALUE_LONG:
+                return in.readLong();
+            case VALUE_FLOAT:
+                return in.readFloat();
+            case VALUE_DOUBLE:
+                return in.readDouble();
+            case VALUE_STRING:
+                return in.readUTF();
+            case VALUE_ENUM: {
+                String className = in.readUTF();
+                String name = in.readUTF();
+                try {
+                    return Enum.valueOf((Class<? extends Enum>) Class.forName(className), name);
+                } catch (ClassNotFoundException | IllegalArgumentException ex) {
+                    LOGGER.log(Level.WARNING, "Unknown enum constant {0}.{1}!", new Object[]{className, name});
+                    return null;
+                }
+            }
+            case VALUE_ENTITY_ID:
+                return new EntityId(in.readLong());
+            case VALUE_VECTOR3F:
+                return new Vector3f(in.readFloat(), in.readFloat(), in.readFloat());
+            case VALUE_VECTOR2F:
+                return new Vector2f(in.readFloat(), in.readFloat());
+            case VALUE_VECTOR2:
+                return new Vector2(in.readFloat(), in.readFloat());
+            case VALUE_POINT:
+                return new Point(in.readInt(), in.readInt());
+            case VALUE_LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in));
+                }
+                return list;
+            }
+            case VALUE_SET: {
+                int size = in.readInt();
+                Set<Object> set = new LinkedHashSet<>(size);
+                for (int i = 0; i < size; i++) {
+                    set.add(readValue(in));
+                }
+                return set;
+            }
+            default:
+                throw new IOException("Unknown value type " + type + "!");
+        }
+    }
+
+    private static EntityComponent remapEntityIds(EntityComponent component, Map<EntityId, EntityId> oldToNewIds) {
+        try {
+            for (Field field : getFields(component.getClass())) {
+                if (field.getType().isPrimitive()) {
+                    continue;
+                }
+                Object value = field.get(component);
+                Object remapped = remapValue(value, oldToNewIds);
+                if (remapped != value) {
+                    field.set(component, remapped);
+                }
+            }
+        } catch (IllegalAccessException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to remap the entity references of " + component + "!", ex);
+        }
+
+        return component;
+    }
+
+    /**
+     * Remaps the entity references of a field value, also the ones inside the
+     * collections. The collections are only the ones read from the file, so
+     * they can be replaced freely.
+     *
+     * @param value the field value
+     * @param oldToNewIds mapping from the IDs in the snapshot to the new
+     * entities
+     * @return the remapped value, the value itself if there was nothing to
+     * remap
+     */
+    private static Object remapValue(Object value, Map<EntityId, EntityId> oldToNewIds) {
+        if (value instanceof EntityId) {
+            EntityId newId = oldToNewIds.get((EntityId) value);
+            return newId != null ? newId : value;
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            List<Object> remapped = new ArrayList<>(list.size());
+            for (Object item : list) {
+                remapped.add(remapValue(item, oldToNewIds));
+            }
+            return remapped;
+        }
+        if (value instanceof Set) {
+            Set<?> set = (Set<?>) value;
+            Set<Object> remapped = new LinkedHashSet<>(set.size());
+            for (Object item : set) {
+                remapped.add(remapValue(item, oldToNewIds));
+            }
+            return remapped;
+        }
+
+        return value;
+    }
+
+}
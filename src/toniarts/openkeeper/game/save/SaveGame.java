@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.save;
+
+import com.jme3.export.Savable;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import toniarts.openkeeper.game.data.GameTimer;
+import toniarts.openkeeper.game.data.Keeper;
+import toniarts.openkeeper.game.map.MapData;
+import toniarts.openkeeper.tools.convert.AssetsConverter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A saved game. Holds the complete server side game state in a form that can
+ * be written without touching the live game objects anymore.<br>
+ * The mutable game objects (players, map) are serialized already when the save
+ * game is created, the entities are kept as an immutable snapshot and encoded
+ * only when written.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public final class SaveGame {
+
+    public static final String SAVE_GAME_EXTENSION = ".oks";
+    private static final String SAVES_FOLDER = "Saves";
+    private static final int MAGIC = 0x4F4B5356; // OKSV
+    private static final int VERSION = 2;
+
+    private final String levelName;
+    private final double gameTime;
+    private final long ticks;
+    private final int levelScore;
+    private final Float timeLimit;
+    private final int[] flags;
+    private final float[] timerTimes;
+    private final boolean[] timerActive;
+    private final List<byte[]> players;
+    private final byte[] mapData;
+    private final EntitySnapshot entities;
+
+    private SaveGame(String levelName, double gameTime, long ticks, int levelScore, Float timeLimit, int[] flags,
+            float[] timerTimes, boolean[] timerActive, List<byte[]> players, byte[] mapData, EntitySnapshot entities) {
+        this.levelName = levelName;
+        this.gameTime = gameTime;
+        this.ticks = ticks;
+        this.levelScore = levelScore;
+        this.timeLimit = timeLimit;
+        this.flags = flags;
+        this.timerTimes = timerTimes;
+        this.timerActive = timerActive;
+        this.players = players;
+        this.mapData = mapData;
+        this.entities = entities;
+    }
+
+    /**
+     * Creates a save game from the current game state. Must be called from
+     * the game logic thread.
+     *
+     * @param levelName the level (KWD file) name
+     * @param gameTime current game time
+     * @param ticks current game tick
+     * @param levelScore the level score
+     * @param timeLimit the level time limit, can be {@code null}
+     * @param flags the level flags
+     * @param timers the level timers
+     * @param players the players
+     * @param mapData the map data
+     * @param entities snapshot of the entities
+     * @return the save game ready to be written
+     * @throws IOException if serializing the game objects fails
+     */
+    public static SaveGame create(String levelName, double gameTime, long ticks, int levelScore, Float timeLimit,
+            List<Integer> flags, GameTimer[] timers, Collection<Keeper> players, MapData mapData,
+            EntitySnapshot entities) throws IOException {
+        int[] flagValues = new int[flags.size()];
+        for (int i = 0; i < flagValues.length; i++) {
+            flagValues[i] = flags.get(i);
+        }
+
+        float[] timerTimes = new float[timers.length];
+        boolean[] timerActive = new boolean[timers.length];
+        for (int i = 0; i < timers.length; i++) {
+            timerTimes[i] = timers[i].getTime();
+            timerActive[i] = timers[i].isActive();
+        }
+
+        List<byte[]> playerData = new ArrayList<>(players.size());
+        for (Keeper keeper : players) {
+            playerData.add(toBytes(keeper));
+        }
+
+        return new SaveGame(levelName, gameTime, ticks, levelScore, timeLimit, flagValues, timerTimes, timerActive,
+                playerData, toBytes(mapData), entities);
+    }
+
+    private static byte[] toBytes(Savable savable) throws IOException {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            BinaryExporter.getInstance().save(savable, out);
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Writes the save game to a file. The file is first written to a
+     * temporary file and then moved in place so that a crash while saving
+     * doesn't destroy an old save.
+     *
+     * @param file the file to write to
+     * @throws IOException may fail
+     */
+    public void save(File file) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            write(out);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the save game to a stream
+     *
+     * @param out the stream to write to
+     * @throws IOException may fail
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        // Level state
+        out.writeUTF(levelName);
+        out.writeDouble(gameTime);
+        out.writeLong(ticks);
+        out.writeInt(levelScore);
+        out.writeBoolean(timeLimit != null);
+        out.writeFloat(timeLimit != null ? timeLimit : 0f);
+        out.writeInt(flags.length);
+        for (int flag : flags) {
+            out.writeInt(flag);
+        }
+        out.writeInt(timerTimes.length);
+        for (int i = 0; i < timerTimes.length; i++) {
+            out.writeFloat(timerTimes[i]);
+            out.writeBoolean(timerActive[i]);
+        }
+
+        // Players & map
+        out.writeInt(players.size());
+        for (byte[] player : players) {
+            writeBytes(out, player);
+        }
+        writeBytes(out, mapData);
+
+        // Entities
+        entities.write(out);
+    }
+
+    /**
+     * Get the file for a named save, the saves are kept in a folder of their
+     * own
+     *
+     * @param name the save name
+     * @return the save file
+     */
+    public static File getSaveFile(String name) {
+        return new File(AssetsConverter.getCurrentFolder() + SAVES_FOLDER + File.separator + name + SAVE_GAME_EXTENSION);
+    }
+
+    /**
+     * Reads a save game from a file
+     *
+     * @param file the save game file
+     * @return the save game
+     * @throws IOException may fail, also if the file is not a save game or
+     * from an incompatible version
+     */
+    public static SaveGame load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads a save game from a stream
+     *
+     * @param in the stream to read from
+     * @return the save game
+     * @throws IOException may fail, also if the data is not a save game or
+     * from an incompatible version
+     */
+    public static SaveGame read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a save game!");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported save game version " + version + "!");
+        }
+
+        // Level state
+        String levelName = in.readUTF();
+        double gameTime = in.readDouble();
+        long ticks = in.readLong();
+        int levelScore = in.readInt();
+        boolean hasTimeLimit = in.readBoolean();
+        float timeLimitValue = in.readFloat();
+        int[] flags = new int[in.readInt()];
+        for (int i = 0; i < flags.length; i++) {
+            flags[i] = in.readInt();
+        }
+        int timerCount = in.readInt();
+        float[] timerTimes = new float[timerCount];
+        boolean[] timerActive = new boolean[timerCount];
+        for (int i = 0; i < timerCount; i++) {
+            timerTimes[i] = in.readFloat();
+            timerActive[i] = in.readBoolean();
+        }
+
+        // Players & map
+        int playerCount = in.readInt();
+        List<byte[]> players = new ArrayList<>(playerCount);
+        for (int i = 0; i < playerCount; i++) {
+            players.add(readBytes(in));
+        }
+        byte[] mapData = readBytes(in);
+
+        // Entities
+        EntitySnapshot entities = EntitySnapshot.read(in);
+
+        return new SaveGame(levelName, gameTime, ticks, levelScore, hasTimeLimit ? timeLimitValue : null, flags,
+                timerTimes, timerActive, players, mapData, entities);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] data) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return data;
+    }
+
+    public String getLevelName() {
+        return levelName;
+    }
+
+    public double getGameTime() {
+        return gameTime;
+    }
+
+    public long getTicks() {
+        return ticks;
+    }
+
+    public int getLevelScore() {
+        return levelScore;
+    }
+
+    public Float getTimeLimit() {
+        return timeLimit;
+    }
+
+    public int[] getFlags() {
+        return flags;
+    }
+
+    /**
+     * Recreates the level timers
+     *
+     * @return the timers as they were saved
+     */
+    public List<GameTimer> getTimers() {
+        List<GameTimer> timers = new ArrayList<>(timerTimes.length);
+        for (int i = 0; i < timerTimes.length; i++) {
+            timers.add(new GameTimer(timerTimes[i], timerActive[i]));
+        }
+        return timers;
+    }
+
+    /**
+     * Deserializes the players
+     *
+     * @return new player instances
+     * @throws IOException may fail
+     */
+    public List<Keeper> getPlayers() throws IOException {
+        List<Keeper> keepers = new ArrayList<>(players.size());
+        for (byte[] player : players) {
+            keepers.add((Keeper) BinaryImporter.getInstance().load(player));
+        }
+        return keepers;
+    }
+
+    /**
+     * Deserializes the map data
+     *
+     * @return new map data instance
+     * @throws IOException may fail
+     */
+    public MapData getMapData() throws IOException {
+        return (MapData) BinaryImporter.getInstance().load(mapData);
+    }
+
+    public EntitySnapshot getEntities() {
+        return entities;
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.save;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes save games in a background thread so that the game loop doesn't need
+ * to wait for the encoding and disk I/O. Saves are written one at a time in the
+ * order they are requested.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public final class SaveGameWriter implements AutoCloseable {
+
+    private final ExecutorService executorService;
+    private static final Logger LOGGER = Logger.getLogger(SaveGameWriter.class.getName());
+
+    public SaveGameWriter() {
+        executorService = Executors.newSingleThreadExecutor((Runnable r) -> {
+            Thread t = new Thread(r, "SaveGameWriter");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queue the save game to be written
+     *
+     * @param saveGame the save game
+     * @param file the file to write to
+     * @return future completed with the written file
+     */
+    public CompletableFuture<File> write(SaveGame saveGame, File file) {
+        CompletableFuture<File> result = new CompletableFuture<>();
+        executorService.submit(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                saveGame.save(file);
+                LOGGER.log(Level.INFO, "Saved game to {0} in {1} ms", new Object[]{file, System.currentTimeMillis() - start});
+                result.complete(file);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to save the game to " + file + "!", ex);
+                result.completeExceptionally(ex);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Waits for the pending saves to finish and stops the writer
+     */
+    @Override
+    public void close() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.log(Level.WARNING, "Save game writer did not finish in time!");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.server;
+
+import toniarts.openkeeper.game.MapSelector;
+import toniarts.openkeeper.game.data.Settings;
+import toniarts.openkeeper.tools.convert.map.KwdFile;
+import toniarts.openkeeper.utils.PathUtils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Dedicated game server. Hosts multiplayer games without a window, renderer
+ * or any graphical assets, only the level data is needed. The server hosts a
+ * fixed number of matches, each on a port of its own. Each match runs the
+ * lobby itself and starts the game once all the connected players are ready.
+ * When a match ends, a new one is opened in its place. The game logic of all
+ * the matches is run by a shared, bounded thread pool.<br>
+ * Usage: {@code DedicatedServer [-name <game name>] [-port <first port>] [-map
+ * <map name>] [-ai <AI player count>] [-matches <match count>] [-threads
+ * <game logic thread count>] [-folder <DK II folder>]}
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public final class DedicatedServer {
+
+    /**
+     * The network server takes the port and the three following ones
+     */
+    public static final int PORT_STRIDE = 4;
+    private static final long MATCH_RESTART_DELAY = 5;
+
+    private final String name;
+    private final int port;
+    private final MapSelector.GameMapContainer map;
+    private volatile KwdFile level;
+    private final int aiPlayers;
+    private final Match[] matches;
+    private final MatchScheduler scheduler;
+    private final ScheduledExecutorService matchManager;
+    private final Match.MatchListener matchListener = this::onMatchEnded;
+    private final CountDownLatch shutdownLatch = new CountDownLatch(1);
+    private volatile boolean closed = false;
+
+    private static final Logger LOGGER = Logger.getLogger(DedicatedServer.class.getName());
+
+    /**
+     * Creates a dedicated server
+     *
+     * @param name the server name
+     * @param port the port of the first match, the rest are after it
+     * @param map the map to play, all the matches share the same level data
+     * @param aiPlayers the amount of AI players to add to each match
+     * @param matchCount the amount of concurrent matches
+     * @param threads the amount of threads running the game logic
+     */
+    public DedicatedServer(String name, int port, MapSelector.GameMapContainer map, int aiPlayers, int matchCount, int threads) {
+        this.name = name;
+        this.port = port;
+        this.map = map;
+        this.aiPlayers = aiPlayers;
+        this.matches = new Match[matchCount];
+        this.scheduler = new MatchScheduler(threads);
+        this.matchManager = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread t = new Thread(r, "MatchManager");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        Map<String, String> params = parseArguments(args);
+
+        // Check the DK II folder, we only need the level data
+        if (params.containsKey("folder")) {
+            PathUtils.setDKIIFolder(PathUtils.fixFilePath(params.get("folder")));
+        }
+        if (!PathUtils.checkDkFolder(PathUtils.getDKIIFolder())) {
+            LOGGER.log(Level.SEVERE, "Dungeon Keeper II folder not set or invalid, use -folder!");
+            System.exit(1);
+        }
+
+        // Select the map
+        MapSelector mapSelector = new MapSelector();
+        MapSelector.GameMapContainer map = params.containsKey("map") ? mapSelector.getMap(params.get("map")) : mapSelector.getMap();
+        if (map == null) {
+            LOGGER.log(Level.SEVERE, "Map {0} not found!", params.get("map"));
+            System.exit(1);
+        }
+
+        Settings settings = Settings.getInstance();
+        String name = params.getOrDefault("name", (String) settings.getSetting(Settings.Setting.GAME_NAME));
+        int port = params.containsKey("port") ? Integer.parseInt(params.get("port")) : settings.getInteger(Settings.Setting.MULTIPLAYER_LAST_PORT);
+        int aiPlayers = params.containsKey("ai") ? Integer.parseInt(params.get("ai")) : 0;
+        int matchCount = params.containsKey("matches") ? Integer.parseInt(params.get("matches")) : 1;
+        int threads = params.containsKey("threads") ? Integer.parseInt(params.get("threads")) : Runtime.getRuntime().availableProcessors();
+
+        DedicatedServer server = new DedicatedServer(name, port, map, aiPlayers, Math.max(1, matchCount), Math.max(1, threads));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "DedicatedServerShutdown"));
+        server.start();
+        server.awaitShutdown();
+    }
+
+    private static Map<String, String> parseArguments(String[] args) {
+        Map<String, String> params = new HashMap<>(args.length);
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                continue;
+            }
+
+            // If the next parameter doesn't have a "-", it is the value for the param
+            String value = null;
+            if (i + 1 < args.length && !args[i + 1].startsWith("-")) {
+                value = args[i + 1];
+            }
+            params.put(args[i].substring(1).toLowerCase(), value);
+        }
+
+        return params;
+    }
+
+    /**
+     * Opens all the matches
+     *
+     * @throws IOException if a match can't be started
+     */
+    public void start() throws IOException {
+        LOGGER.log(Level.INFO, "Starting dedicated server {0} with {1} matches at ports {2}-{3}, map {4}",
+                new Object[]{name, matches.length, Integer.toString(port), Integer.toString(port + PORT_STRIDE * matches.length - 1), map.getMapName()});
+
+        // Load the level once before any match starts, all the matches share the same level data and only read it
+        level = map.getMap();
+        level.load();
+
+        synchronized (matches) {
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] = startMatch(i);
+            }
+        }
+    }
+
+    /**
+     * Waits until the server is closed
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitShutdown() throws InterruptedException {
+        shutdownLatch.await();
+    }
+
+    /**
+     * Stops all the matches and the server
+     */
+    public void close() {
+        synchronized (matches) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] != null) {
+                    matches[i].close();
+                    matches[i] = null;
+                }
+            }
+        }
+        matchManager.shutdownNow();
+        scheduler.close();
+        shutdownLatch.countDown();
+    }
+
+    private Match startMatch(int index) throws IOException {
+        Match match = new Match(name, port + index * PORT_STRIDE, map, level, aiPlayers, scheduler, matchListener);
+        match.start();
+        return match;
+    }
+
+    /**
+     * Recycle the match slot. The match can end from a network thread of the
+     * very same match, so it is closed from the match manager instead.
+     *
+     * @param match the ended match
+     */
+    private void onMatchEnded(Match match) {
+        if (!closed) {
+            matchManager.execute(() -> restartMatch(match));
+        }
+    }
+
+    private void restartMatch(Match match) {
+        synchronized (matches) {
+            if (closed) {
+                return;
+            }
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i] == match) {
+                    match.close();
+                    matches[i] = null;
+                    reopenMatch(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void reopenMatch(int index) {
+        synchronized (matches) {
+            if (closed) {
+                return;
+            }
+            try {
+                matches[index] = startMatch(index);
+            } catch (IOException ex) {
+
+                // The port might not have been freed yet
+                LOGGER.log(Level.WARNING, "Failed to reopen match " + index + ", retrying!", ex);
+                matchManager.schedule(() -> reopenMatch(index), MATCH_RESTART_DELAY, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.server;
+
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import com.jme3.math.Vector2f;
+import com.jme3.util.SafeArrayList;
+import com.simsilica.es.EntityId;
+import toniarts.openkeeper.Main;
+import toniarts.openkeeper.game.controller.GameController;
+import toniarts.openkeeper.game.controller.IGameWorldController;
+import toniarts.openkeeper.game.controller.IMapController;
+import toniarts.openkeeper.game.controller.IPlayerController;
+import toniarts.openkeeper.game.data.Keeper;
+import toniarts.openkeeper.game.data.Settings;
+import toniarts.openkeeper.game.listener.MapListener;
+import toniarts.openkeeper.game.listener.PlayerActionListener;
+import toniarts.openkeeper.game.logic.LockstepCommandQueue;
+import toniarts.openkeeper.game.logic.StateChecksumSystem;
+import toniarts.openkeeper.game.map.MapTile;
+import toniarts.openkeeper.game.replay.Replay;
+import toniarts.openkeeper.game.replay.ReplayRecorder;
+import toniarts.openkeeper.game.save.SaveGame;
+import toniarts.openkeeper.game.state.CheatState;
+import toniarts.openkeeper.game.state.session.GameSessionServerService;
+import toniarts.openkeeper.game.state.session.GameSessionServiceListener;
+import toniarts.openkeeper.tools.convert.AssetsConverter;
+import toniarts.openkeeper.tools.convert.map.KwdFile;
+
+import java.awt.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the server side of a single game. Loads the level, runs the game
+ * simulation and serves the clients through the game session service. Has no
+ * relation to visuals or the jME application, so it can be run inside the
+ * game client or in a dedicated server alike.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class GameServer implements AutoCloseable {
+
+    /**
+     * Listener for the game server events
+     */
+    public interface GameServerListener {
+
+        /**
+         * A player wants to exit the game
+         *
+         * @param playerId the player
+         */
+        void onExitGame(short playerId);
+
+    }
+
+    private static final String REPLAYS_FOLDER = "Replays";
+
+    /**
+     * How many of our own state checksums are kept for comparing with the
+     * ones the lockstep peers report
+     */
+    private static final int STATE_CHECKSUM_HISTORY = 64;
+
+    private Thread loader;
+
+    private final KwdFile kwdFile;
+    private final boolean campaign;
+    private final boolean multiplayer;
+    private final GameSessionServerService gameService;
+    private IMapController mapController;
+    private final MapListener mapListener = new MapListenerImpl();
+    private final GameSessionServiceListener gameSessionListener = new GameSessionServiceListenerImpl();
+    private final PlayerActionListener playerActionListener = new PlayerActionListenerImpl();
+    private final SafeArrayList<GameServerListener> listeners = new SafeArrayList<>(GameServerListener.class);
+    private GameController gameController;
+    private IGameWorldController gameWorldController;
+    private GameSessionServiceListener commandExecutor;
+    private final StateChecksumVerifier stateChecksumVerifier = new StateChecksumVerifier();
+    private ReplayRecorder replayRecorder;
+    private final MatchScheduler scheduler;
+    private final SaveGame saveGame;
+
+    private static final Logger LOGGER = Logger.getLogger(GameServer.class.getName());
+
+    /**
+     * Creates the game server and starts loading the game in the background
+     *
+     * @param level the level to load
+     * @param players players participating in this game
+     * @param campaign whether this is a campaign level or not
+     * @param gameService the game service
+     */
+    public GameServer(KwdFile level, List<Keeper> players, boolean campaign, GameSessionServerService gameService) {
+        this(level, players, campaign, gameService, null);
+    }
+
+    /**
+     * Creates the game server and starts loading the game in the background
+     *
+     * @param level the level to load
+     * @param players players participating in this game
+     * @param campaign whether this is a campaign level or not
+     * @param gameService the game service
+     * @param scheduler the scheduler to run the game logic with, null to run
+     * the game with threads of its own
+     */
+    public GameServer(KwdFile level, List<Keeper> players, boolean campaign, GameSessionServerService gameService, MatchScheduler scheduler) {
+        this(level, players, campaign, gameService, scheduler, null);
+    }
+
+    /**
+     * Creates the game server and starts loading a saved game in the
+     * background
+     *
+     * @param level the level the game was saved on
+     * @param saveGame the save game to continue
+     * @param gameService the game service
+     */
+    public GameServer(KwdFile level, SaveGame saveGame, GameSessionServerService gameService) {
+        this(level, null, false, gameService, null, saveGame);
+    }
+
+    private GameServer(KwdFile level, List<Keeper> players, boolean campaign, GameSessionServerService gameService, MatchScheduler scheduler,
+            SaveGame saveGame) {
+        this.kwdFile = level;
+        this.campaign = campaign;
+        this.gameService = gameService;
+        this.scheduler = scheduler;
+        this.saveGame = saveGame;
+
+        // Set multiplayer
+        int humanPlayers = 0;
+        if (players != null) {
+            for (Keeper player : players) {
+                if (!player.isAi()) {
+                    humanPlayers++;
+                    if (humanPlayers > 1) {
+                        break;
+                    }
+                }
+            }
+        } else {
+            humanPlayers = 1;
+        }
+        multiplayer = (humanPlayers > 1);
+
+        // Add the listener
+        gameService.addGameSessionServiceListener(gameSessionListener);
+
+        // Start loading game
+        loadGame(players);
+    }
+
+    public boolean isMultiplayer() {
+        return multiplayer;
+    }
+
+    public boolean isCampaign() {
+        return campaign;
+    }
+
+    /**
+     * Saves the game, the game is captured between the game logic ticks and
+     * written in the background
+     *
+     * @param file the file to save to
+     * @return future completed when the save is written
+     */
+    public CompletableFuture<File> saveGame(File file) {
+        if (gameController == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("The game is not running!"));
+        }
+
+        return gameController.saveGame(file);
+    }
+
+    private void loadGame(List<Keeper> players) {
+        loader = new GameLoader(players);
+        loader.start();
+    }
+
+    public void addListener(GameServerListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(GameServerListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Stops the game
+     */
+    @Override
+    public void close() {
+        if (loader != null && loader.isAlive()) {
+            loader.interrupt();
+        }
+        gameService.removeGameSessionServiceListener(gameSessionListener);
+
+        if (gameController != null) {
+            if (scheduler != null) {
+                scheduler.unschedule(gameController);
+            }
+            try {
+                gameController.close();
+            } catch (Exception ex) {
+                LOGGER.log(Level.SEVERE, "Failed to close the game!", ex);
+            }
+        }
+        if (replayRecorder != null) {
+            replayRecorder.close();
+            replayRecorder = null;
+        }
+    }
+
+    /**
+     * Load the game
+     */
+    private class GameLoader extends Thread {
+
+        private final List<Keeper> players;
+
+        public GameLoader(List<Keeper> players) {
+            super("GameLoader");
+
+            this.players = players;
+        }
+
+        @Override
+        public void run() {
+
+            // Make sure the KWD file is fully loaded
+            kwdFile.load();
+
+            // Create the central game controller
+            gameController = new GameController(kwdFile, players, gameService.getEntityData(), kwdFile.getVariables(), gameService);
+
+            // Scheduled games and replays need the deterministic lockstep simulation. Recording replays is opt-in
+            // and the only reason to run a local game in lockstep, the game logic then runs all the systems in a
+            // single thread
+            // A saved game can't be replayed nor simulated by the peers, they would start from the beginning
+            boolean recordReplay = saveGame == null && Main.getUserSettings().getBoolean(Settings.Setting.RECORD_REPLAYS);
+            if (scheduler != null || recordReplay) {
+                if (scheduler == null) {
+                    LOGGER.log(Level.INFO, "Recording replays is enabled, running the game in lockstep mode");
+                }
+                long randomSeed = new Random().nextLong();
+                gameController.setLockstep(randomSeed);
+                if (recordReplay) {
+                    startReplayRecording(randomSeed);
+                }
+
+                // The clients create the game themselves, from the players as they are before the creation
+                gameService.setLockstep(randomSeed, copyPlayers(players));
+            }
+            if (saveGame != null) {
+                try {
+                    gameController.loadGame(saveGame);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.SEVERE, "Failed to load the saved game!", ex);
+                    return;
+                }
+            } else {
+                gameController.createNewGame();
+            }
+            commandExecutor = new PlayerCommandExecutor(gameController);
+            if (gameController.isLockstep()) {
+                gameController.getLockstepCommandQueue().addListener(this::sendLockstepCommands);
+                gameController.getStateChecksumSystem().addListener(stateChecksumVerifier);
+                if (replayRecorder != null) {
+                    gameController.getStateChecksumSystem().addListener(replayRecorder);
+                }
+            }
+
+            gameWorldController = gameController.getGameWorldController();
+            mapController = gameWorldController.getMapController();
+            gameWorldController.addListener(playerActionListener);
+
+            // Send the the initial game data
+            gameService.sendGameData(gameController.getPlayers(), mapController.getMapData());
+
+            // Set up a listener for the map
+            mapController.addListener(mapListener);
+
+            // Set up a listener for the player changes, they are per player
+            for (IPlayerController playerController : gameController.getPlayerControllers()) {
+                playerController.addListener(gameService);
+            }
+
+            // Start the actual game
+            if (scheduler != null) {
+                scheduler.schedule(gameController);
+            } else {
+                gameController.startGame();
+            }
+
+            // Nullify the thread object
+            loader = null;
+        }
+
+        /**
+         * Sends the commands to the clients, they execute them on the same
+         * ticks as we do
+         *
+         * @param sealedTick the last tick the commands are final for
+         * @param commands the new commands
+         */
+        private void sendLockstepCommands(long sealedTick, List<LockstepCommandQueue.Command> commands) {
+            for (LockstepCommandQueue.Command command : commands) {
+                gameService.sendLockstepCommand(command.getTick(), command.getPlayerId(), command.getSequence(), command.getData());
+            }
+            gameService.sealLockstepTick(sealedTick);
+        }
+
+        /**
+         * Copies the players, the game changes the player objects while
+         * running
+         *
+         * @param players the players to copy
+         * @return the copies, {@code null} if there are no players
+         */
+        private List<Keeper> copyPlayers(List<Keeper> players) {
+            if (players == null) {
+                return null;
+            }
+
+            List<Keeper> copies = new ArrayList<>(players.size());
+            for (Keeper player : players) {
+                try (ByteArrayOutputStream data = new ByteArrayOutputStream()) {
+                    BinaryExporter.getInstance().save(player, data);
+                    copies.add((Keeper) BinaryImporter.getInstance().load(data.toByteArray()));
+                } catch (IOException ex) {
+                    throw new RuntimeException("Failed to copy the players!", ex);
+                }
+            }
+
+            return copies;
+        }
+
+        /**
+         * Starts recording the game, the game must be in lockstep mode
+         *
+         * @param randomSeed the random seed of the game
+         */
+        private void startReplayRecording(long randomSeed) {
+            File file = new File(AssetsConverter.getCurrentFolder() + REPLAYS_FOLDER + File.separator
+                    + kwdFile.getGameLevel().getName() + "_" + System.currentTimeMillis() + Replay.REPLAY_EXTENSION);
+            try {
+                replayRecorder = new ReplayRecorder(file, kwdFile, randomSeed, players, gameController,
+                        ReplayRecorder.DEFAULT_KEYFRAME_INTERVAL * kwdFile.getGameLevel().getTicksPerSec());
+            } catch (IOException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to start recording a replay to " + file + "!", ex);
+            }
+        }
+    }
+
+    /**
+     * Listen for basically clients' requests
+     */
+    private class GameSessionServiceListenerImpl implements GameSessionServiceListener {
+
+        public GameSessionServiceListenerImpl() {
+        }
+
+        /**
+         * Executes the player command. In lockstep mode the command is sent
+         * to the clients too and recorded to the replay if we are recording.
+         * The command is recorded when it is executed so that it gets stamped
+         * with the right tick.
+         *
+         * @param playerId the player issuing the command
+         * @param request the command as the client request
+         */
+        private void executePlayerCommand(short playerId, Consumer<GameSessionServiceListener> request) {
+            if (!gameController.isLockstep()) {
+                gameController.executePlayerCommand(playerId, () -> request.accept(commandExecutor), null);
+                return;
+            }
+
+            byte[] command = PlayerCommandCodec.encode(request);
+            gameController.executePlayerCommand(playerId, () -> {
+                if (replayRecorder != null) {
+                    replayRecorder.onCommand(command);
+                }
+                request.accept(commandExecutor);
+            }, command);
+        }
+
+        @Override
+        public void onSelectTiles(Vector2f start, Vector2f end, boolean select, short playerId) {
+            executePlayerCommand(playerId, (executor) -> executor.onSelectTiles(start, end, select, playerId));
+        }
+
+        @Override
+        public void onBuild(Vector2f start, Vector2f end, short roomId, short playerId) {
+            executePlayerCommand(playerId, (executor) -> executor.onBuild(start, end, roomId, playerId));
+        }
+
+        @Override
+        public void onSell(Vector2f start, Vector2f end, short playerId) {
+            executePlayerCommand(playerId, (executor) -> executor.onSell(start, end, playerId));
+        }
+
+        @Override
+        public void onInteract(EntityId entity, short playerId) {
+            executePlayerCommand(playerId, (executor) -> executor.onInteract(entity, playerId));
+        }
+
+        @Override
+        public void onPickUp(EntityId entity, short playerId) {
+            executePlayerCommand(playerId, (executor) -> executor.onPickUp(entity, playerId));
+        }
+
+        @Override
+        public void onDrop(EntityId entity, Point tile, Vector2f coordinates, EntityId dropOnEntity, short playerId) {
+            executePlayerCommand(playerId, (executor) -> executor.onDrop(entity, tile, coordinates, dropOnEntity, playerId));
+        }
+
+        @Override
+        public void onTransitionEnd(short playerId) {
+            // We are not really interested in this, the status is also tracked in the local clients
+        }
+
+        @Override
+        public void onPauseRequest(short playerId) {
+            // TODO: We should only allow the server owner etc. to pause, otherwise, send a system message that player x wants to pause?
+            gameController.pauseGame();
+
+        }
+
+        @Override
+        public void onResumeRequest(short playerId) {
+            // TODO: We should only allow the server owner etc. to pause, otherwise, send a system message that player x wants to pause?
+            gameController.resumeGame();
+        }
+
+        @Override
+        public void onExitGame(short playerId) {
+            // TODO: Close the server and game only when everybody has left
+            for (GameServerListener listener : listeners.getArray()) {
+                listener.onExitGame(playerId);
+            }
+        }
+
+        @Override
+        public void onStateChecksum(long tick, long checksum, short playerId) {
+            stateChecksumVerifier.onPeerStateChecksum(tick, checksum, playerId);
+        }
+
+        @Override
+        public void onGetGold(int amount, short playerId) {
+            executePlayerCommand(playerId, (executor) -> executor.onGetGold(amount, playerId));
+        }
+
+        @Override
+        public void onCheatTriggered(CheatState.CheatType cheat, short playerId) {
+            if (isMultiplayer()) {
+                return; // No! Bad!
+            }
+
+            // See the cheat
+            executePlayerCommand(playerId, (executor) -> executor.onCheatTriggered(cheat, playerId));
+        }
+
+    }
+
+    /**
+     * Compares the state checksums the lockstep peers report to ours. The
+     * peers may be ahead of us by the input delay, or behind us by the
+     * network latency, so both are kept for a while.
+     */
+    private class StateChecksumVerifier implements StateChecksumSystem.StateChecksumListener {
+
+        private final NavigableMap<Long, Long> checksums = new TreeMap<>();
+        private final NavigableMap<Long, Map<Short, Long>> peerChecksums = new TreeMap<>();
+        private final Set<Short> desyncedPlayers = new HashSet<>();
+
+        @Override
+        public synchronized void onStateChecksum(long tick, long checksum) {
+            checksums.put(tick, checksum);
+            while (checksums.size() > STATE_CHECKSUM_HISTORY) {
+                checksums.pollFirstEntry();
+            }
+
+            // The peers that were ahead of us
+            Map<Short, Long> reported = peerChecksums.remove(tick);
+            if (reported != null) {
+                for (Map.Entry<Short, Long> entry : reported.entrySet()) {
+                    verify(tick, checksum, entry.getValue(), entry.getKey());
+                }
+            }
+            peerChecksums.headMap(tick).clear();
+        }
+
+        public synchronized void onPeerStateChecksum(long tick, long checksum, short playerId) {
+            Long ownChecksum = checksums.get(tick);
+            if (ownChecksum != null) {
+                verify(tick, ownChecksum, checksum, playerId);
+            } else if (checksums.isEmpty() || tick > checksums.lastKey()) {
+                peerChecksums.computeIfAbsent(tick, (t) -> new HashMap<>(4)).put(playerId, checksum);
+            } else {
+                LOGGER.log(Level.FINE, "State checksum of player {0} for tick {1} arrived too late to verify", new Object[]{playerId, tick});
+            }
+        }
+
+        private void verify(long tick, long checksum, long peerChecksum, short playerId) {
+            if (checksum != peerChecksum && desyncedPlayers.add(playerId)) {
+                LOGGER.log(Level.SEVERE, "Player {0} desynced at tick {1}! Our state checksum is {2}, the player has {3}",
+                        new Object[]{playerId, tick, Long.toHexString(checksum), Long.toHexString(peerChecksum)});
+            }
+        }
+    }
+
+    /**
+     * Listen for the map changes
+     */
+    private class MapListenerImpl implements MapListener {
+
+        @Override
+        public void onTilesChange(List<MapTile> updatedTiles) {
+            gameService.updateTiles(updatedTiles);
+        }
+
+        @Override
+        public void onTileFlash(List<Point> points, boolean enabled, short keeperId) {
+            gameService.flashTiles(points, enabled, keeperId);
+        }
+    }
+
+    /**
+     * Listen for the player actions
+     */
+    private class PlayerActionListenerImpl implements PlayerActionListener {
+
+        @Override
+        public void onBuild(short keeperId, List<MapTile> tiles) {
+            gameService.onBuild(keeperId, tiles);
+        }
+
+        @Override
+        public void onSold(short keeperId, List<MapTile> tiles) {
+            gameService.onSold(keeperId, tiles);
+        }
+
+    }
+
+}
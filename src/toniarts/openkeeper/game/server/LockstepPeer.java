@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.server;
+
+import com.simsilica.es.EntityData;
+import com.simsilica.es.base.DefaultEntityData;
+import toniarts.openkeeper.game.controller.GameController;
+import toniarts.openkeeper.game.data.Keeper;
+import toniarts.openkeeper.game.logic.LockstepCommandQueue;
+import toniarts.openkeeper.game.replay.HeadlessPlayerService;
+import toniarts.openkeeper.game.state.session.GameSession;
+import toniarts.openkeeper.tools.convert.map.KwdFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the game simulation on the client in lockstep mode. The server sends
+ * only the player commands, stamped with the tick to execute them on, and
+ * seals the ticks as it goes. The peer simulates up to the sealed tick with
+ * its own copy of the game, so the clients see the same game without the
+ * server replicating the entities. The state checksums are reported back to
+ * the server for detecting desyncs.<br>
+ * The visuals use the entity data of the peer instead of the one of the
+ * connection.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class LockstepPeer implements AutoCloseable {
+
+    private final GameSession gameSession;
+    private final EntityData entityData = new DefaultEntityData();
+    private final Object commandLock = new Object();
+    private final List<PendingCommand> pendingCommands = new ArrayList<>();
+    private GameController gameController;
+    private PlayerCommandExecutor commandExecutor;
+    private ScheduledExecutorService simulation;
+    private volatile long sealedTick = -1;
+
+    private static final Logger LOGGER = Logger.getLogger(LockstepPeer.class.getName());
+
+    /**
+     * Create a lockstep peer, the commands may start arriving before the game
+     * is created
+     *
+     * @param gameSession the session to report the checksums to
+     */
+    public LockstepPeer(GameSession gameSession) {
+        this.gameSession = gameSession;
+    }
+
+    /**
+     * Creates the game, exactly like the server did
+     *
+     * @param kwdFile the level, fully loaded
+     * @param randomSeed the random seed of the game
+     * @param players the players as they were before the server created the
+     * game
+     */
+    public void createGame(KwdFile kwdFile, long randomSeed, List<Keeper> players) {
+        synchronized (commandLock) {
+            gameController = new GameController(kwdFile, players, entityData, kwdFile.getVariables(), new HeadlessPlayerService());
+            gameController.setLockstep(randomSeed);
+            gameController.createNewGame();
+            gameController.getStateChecksumSystem().addListener(gameSession::reportStateChecksum);
+            commandExecutor = new PlayerCommandExecutor(gameController);
+
+            // The commands that arrived while we were loading
+            for (PendingCommand pendingCommand : pendingCommands) {
+                schedule(pendingCommand.tick, pendingCommand.sequence, pendingCommand.command);
+            }
+            pendingCommands.clear();
+        }
+    }
+
+    /**
+     * Starts simulating, at the same pace as the server
+     */
+    public void start() {
+        gameController.startSteppedGame();
+        simulation = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread t = new Thread(r, "LockstepPeer");
+            t.setDaemon(true);
+            return t;
+        });
+        simulation.scheduleAtFixedRate(this::update, 0, gameController.getGameLogicUpdateRate(), TimeUnit.NANOSECONDS);
+    }
+
+    private void update() {
+        try {
+            LockstepCommandQueue commandQueue = gameController.getLockstepCommandQueue();
+            if (commandQueue.getTick() > sealedTick) {
+                return; // Waiting for the server
+            }
+
+            // One tick at a time, unless we have fallen behind more than the input delay allows
+            do {
+                gameController.step();
+            } while (sealedTick - commandQueue.getTick() >= commandQueue.getInputDelay());
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Lockstep simulation failed!", e);
+        }
+    }
+
+    /**
+     * A player command from the server
+     *
+     * @param tick the tick to execute the command on
+     * @param playerId the player issuing the command
+     * @param sequence the command sequence number of the player
+     * @param data the encoded command
+     */
+    public void onCommand(long tick, short playerId, int sequence, byte[] data) {
+        PlayerCommandCodec.PlayerCommand command;
+        try {
+            command = PlayerCommandCodec.decode(data);
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to decode a command from player " + playerId + "! The simulation will desync!", ex);
+            return;
+        }
+
+        synchronized (commandLock) {
+            if (gameController == null) {
+                pendingCommands.add(new PendingCommand(tick, sequence, command));
+            } else {
+                schedule(tick, sequence, command);
+            }
+        }
+    }
+
+    private void schedule(long tick, int sequence, PlayerCommandCodec.PlayerCommand command) {
+        gameController.getLockstepCommandQueue().schedule(tick, command.getPlayerId(), sequence, () -> command.dispatch(commandExecutor));
+    }
+
+    /**
+     * The server has sent all the commands up to and including the given tick
+     *
+     * @param tick the sealed tick
+     */
+    public void onTickSealed(long tick) {
+        sealedTick = tick;
+    }
+
+    /**
+     * Get the entity data of the simulation
+     *
+     * @return the entity data
+     */
+    public EntityData getEntityData() {
+        return entityData;
+    }
+
+    @Override
+    public void close() {
+        if (simulation != null) {
+            simulation.shutdownNow();
+            try {
+                simulation.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (gameController != null) {
+            gameController.close();
+        }
+        entityData.close();
+    }
+
+    private static class PendingCommand {
+
+        private final long tick;
+        private final int sequence;
+        private final PlayerCommandCodec.PlayerCommand command;
+
+        public PendingCommand(long tick, int sequence, PlayerCommandCodec.PlayerCommand command) {
+            this.tick = tick;
+            this.sequence = sequence;
+            this.command = command;
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.server;
+
+import com.jme3.network.ConnectionListener;
+import com.jme3.network.HostedConnection;
+import com.jme3.network.Server;
+import toniarts.openkeeper.game.MapSelector;
+import toniarts.openkeeper.game.network.NetworkServer;
+import toniarts.openkeeper.game.network.game.GameHostedService;
+import toniarts.openkeeper.game.network.lobby.LobbyHostedService;
+import toniarts.openkeeper.game.state.lobby.ClientInfo;
+import toniarts.openkeeper.game.state.lobby.LobbySessionListener;
+import toniarts.openkeeper.tools.convert.map.KwdFile;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * A single match hosted on a dedicated server. Each match has a network server
+ * of its own, and with it its own entity data and services, so the matches
+ * share no game state. The match runs the lobby like a hosting player would
+ * and starts the game once all the connected players are ready.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public final class Match implements AutoCloseable {
+
+    /**
+     * Listener for the match end
+     */
+    public interface MatchListener {
+
+        /**
+         * The match has ended, either a player exited the game or everybody
+         * left. Called only once per match, possibly from a network thread.
+         *
+         * @param match the ended match
+         */
+        void onMatchEnded(Match match);
+
+    }
+
+    private final NetworkServer networkServer;
+    private final MapSelector.GameMapContainer map;
+    private final KwdFile level;
+    private final int aiPlayers;
+    private final MatchScheduler scheduler;
+    private final MatchListener listener;
+    private final AtomicBoolean ended = new AtomicBoolean(false);
+    private volatile GameServer gameServer;
+
+    private static final Logger LOGGER = Logger.getLogger(Match.class.getName());
+
+    /**
+     * Creates a match
+     *
+     * @param name the server name
+     * @param port the server port
+     * @param map the map to play
+     * @param level the level data of the map, fully loaded, it is shared
+     * with the other matches
+     * @param aiPlayers the amount of AI players to add
+     * @param scheduler the scheduler running the game logic, null to run the
+     * game with threads of its own
+     * @param listener listener for the match end
+     * @throws IOException if the server can't be created
+     */
+    public Match(String name, int port, MapSelector.GameMapContainer map, KwdFile level, int aiPlayers, MatchScheduler scheduler,
+            MatchListener listener) throws IOException {
+        this.networkServer = new NetworkServer(name, port);
+        this.map = map;
+        this.level = level;
+        this.aiPlayers = aiPlayers;
+        this.scheduler = scheduler;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts the network server and opens the lobby
+     *
+     * @throws IOException if the server can't be started
+     */
+    public void start() throws IOException {
+        LOGGER.log(Level.INFO, "Starting match {0} at {1}, map {2}", new Object[]{networkServer.getName(), networkServer.getPort(), map.getMapName()});
+        networkServer.start();
+        networkServer.getServer().addConnectionListener(new ConnectionListenerImpl());
+
+        LobbyHostedService lobbyService = networkServer.getService(LobbyHostedService.class);
+        lobbyService.addLobbySessionListener(new LobbySessionListenerImpl());
+        lobbyService.setMap(map.getMapName(), map.getMapInfo().getPlayerCount());
+        for (int i = 0; i < aiPlayers; i++) {
+            lobbyService.addPlayer();
+        }
+    }
+
+    public int getPort() {
+        return networkServer.getPort();
+    }
+
+    /**
+     * Is the game running
+     *
+     * @return true if the lobby is done and the game has started
+     */
+    public boolean isInGame() {
+        return gameServer != null;
+    }
+
+    /**
+     * Stops the game and the server
+     */
+    @Override
+    public synchronized void close() {
+        if (gameServer != null) {
+            gameServer.close();
+            gameServer = null;
+        }
+        networkServer.close();
+    }
+
+    private synchronized void startGame(List<ClientInfo> players) {
+        if (gameServer != null || ended.get()) {
+            return;
+        }
+
+        LOGGER.log(Level.INFO, "Starting game at {0} on {1} with {2} players", new Object[]{networkServer.getPort(), map.getMapName(), players.size()});
+        gameServer = new GameServer(level, players.stream().map(ClientInfo::getKeeper).collect(toList()), false,
+                networkServer.getService(GameHostedService.class), scheduler);
+        gameServer.addListener((playerId) -> {
+            LOGGER.log(Level.INFO, "Player {0} exited the game at {1}, ending the match", new Object[]{playerId, networkServer.getPort()});
+            end();
+        });
+    }
+
+    private void end() {
+        if (ended.compareAndSet(false, true)) {
+            listener.onMatchEnded(this);
+        }
+    }
+
+    /**
+     * Runs the lobby like a hosting player would
+     */
+    private class LobbySessionListenerImpl implements LobbySessionListener {
+
+        @Override
+        public void onPlayerListChanged(List<ClientInfo> players) {
+
+            // Start game when all the human players are ready
+            boolean humanPlayers = false;
+            for (ClientInfo clientInfo : players) {
+                if (!clientInfo.isReady()) {
+                    return;
+                }
+                humanPlayers |= !clientInfo.getKeeper().isAi();
+            }
+            if (humanPlayers && gameServer == null) {
+                networkServer.getService(LobbyHostedService.class).startGame();
+            }
+        }
+
+        @Override
+        public void onMapChanged(String mapName) {
+
+        }
+
+        @Override
+        public void onGameStarted(String mapName, List<ClientInfo> players) {
+            startGame(players);
+        }
+    }
+
+    /**
+     * End the match if all the players leave during the game
+     */
+    private class ConnectionListenerImpl implements ConnectionListener {
+
+        @Override
+        public void connectionAdded(Server server, HostedConnection conn) {
+
+        }
+
+        @Override
+        public void connectionRemoved(Server server, HostedConnection conn) {
+            if (gameServer != null && !server.hasConnections()) {
+                LOGGER.log(Level.INFO, "All players left the game at {0}, ending the match", networkServer.getPort());
+                end();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.server;
+
+import toniarts.openkeeper.game.controller.GameController;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the game logic of several games with a bounded thread pool, instead of
+ * each game having game loop threads of its own. The games are run in stepped
+ * lockstep mode, so all of their systems tick in the game logic and a tick
+ * can run on any of the pool threads. A single game is never ticked
+ * concurrently.<br>
+ * If the pool can't keep up, the ticks are delayed and then caught up, they
+ * are not dropped. The simulation stays the same, it just lags.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public final class MatchScheduler implements AutoCloseable {
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<GameController, ScheduledGame> games = new ConcurrentHashMap<>();
+
+    private static final Logger LOGGER = Logger.getLogger(MatchScheduler.class.getName());
+
+    /**
+     * Creates a scheduler
+     *
+     * @param threads the maximum amount of threads running the games
+     */
+    public MatchScheduler(int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(threads, (Runnable r) -> {
+            Thread t = new Thread(r, "MatchScheduler-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Starts running the game. The game must be created in lockstep mode.
+     *
+     * @param gameController the game to run
+     * @see GameController#startSteppedGame()
+     */
+    public void schedule(GameController gameController) {
+        gameController.startSteppedGame();
+
+        ScheduledGame game = new ScheduledGame(gameController);
+        long updateRate = gameController.getGameLogicUpdateRate();
+        game.future = executor.scheduleAtFixedRate(game, updateRate, updateRate, TimeUnit.NANOSECONDS);
+        games.put(gameController, game);
+    }
+
+    /**
+     * Stops running the game. Once this returns, the game is no longer being
+     * ticked.
+     *
+     * @param gameController the game to stop
+     */
+    public void unschedule(GameController gameController) {
+        ScheduledGame game = games.remove(gameController);
+        if (game != null) {
+            game.cancel();
+        }
+    }
+
+    /**
+     * Get the amount of games currently running
+     *
+     * @return the game count
+     */
+    public int getGameCount() {
+        return games.size();
+    }
+
+    @Override
+    public void close() {
+        for (ScheduledGame game : games.values()) {
+            game.cancel();
+        }
+        games.clear();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.WARNING, "Match scheduler did not stop in time!");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class ScheduledGame implements Runnable {
+
+        private final GameController gameController;
+        private ScheduledFuture<?> future;
+        private boolean cancelled = false;
+
+        public ScheduledGame(GameController gameController) {
+            this.gameController = gameController;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (cancelled) {
+                return;
+            }
+
+            // Never let an exception out, it would cancel the scheduling for good
+            try {
+                gameController.step();
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error in game tick!", e);
+            }
+        }
+
+        public synchronized void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+}
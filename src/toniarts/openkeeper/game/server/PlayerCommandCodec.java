@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.server;
+
+import com.jme3.math.Vector2f;
+import com.simsilica.es.EntityId;
+import toniarts.openkeeper.game.state.CheatState;
+import toniarts.openkeeper.game.state.session.GameSessionServiceListener;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Encodes the player commands, i.e. the client requests that change the game
+ * state, to bytes and back. The lockstep peers exchange the commands in this
+ * form and the replays record them in this form.<br>
+ * A command is encoded as [type][player ID][payload].
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public final class PlayerCommandCodec {
+
+    // Command types
+    private static final byte SELECT_TILES = 1;
+    private static final byte BUILD = 2;
+    private static final byte SELL = 3;
+    private static final byte INTERACT = 4;
+    private static final byte PICK_UP = 5;
+    private static final byte DROP = 6;
+    private static final byte GET_GOLD = 7;
+    private static final byte CHEAT = 8;
+
+    private PlayerCommandCodec() {
+        // Nope
+    }
+
+    /**
+     * Encodes a player command
+     *
+     * @param request the command as the client request, must be one of the
+     * requests that change the game state
+     * @return the encoded command
+     */
+    public static byte[] encode(Consumer<GameSessionServiceListener> request) {
+        Encoder encoder = new Encoder();
+        request.accept(encoder);
+
+        return encoder.getData();
+    }
+
+    /**
+     * Decodes a player command
+     *
+     * @param data the encoded command
+     * @return the command
+     * @throws IOException if the data is not a valid command
+     */
+    public static PlayerCommand decode(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte type = in.readByte();
+            short playerId = in.readShort();
+            switch (type) {
+                case SELECT_TILES: {
+                    Vector2f start = readVector(in);
+                    Vector2f end = readVector(in);
+                    boolean select = in.readBoolean();
+                    return new PlayerCommand(playerId, (listener) -> listener.onSelectTiles(start, end, select, playerId));
+                }
+                case BUILD: {
+                    Vector2f start = readVector(in);
+                    Vector2f end = readVector(in);
+                    short roomId = in.readShort();
+                    return new PlayerCommand(playerId, (listener) -> listener.onBuild(start, end, roomId, playerId));
+                }
+                case SELL: {
+                    Vector2f start = readVector(in);
+                    Vector2f end = readVector(in);
+                    return new PlayerCommand(playerId, (listener) -> listener.onSell(start, end, playerId));
+                }
+                case INTERACT: {
+                    EntityId entity = readEntityId(in);
+                    return new PlayerCommand(playerId, (listener) -> listener.onInteract(entity, playerId));
+                }
+                case PICK_UP: {
+                    EntityId entity = readEntityId(in);
+                    return new PlayerCommand(playerId, (listener) -> listener.onPickUp(entity, playerId));
+                }
+                case DROP: {
+                    EntityId entity = readEntityId(in);
+                    Point tile = in.readBoolean() ? new Point(in.readInt(), in.readInt()) : null;
+                    Vector2f coordinates = readVector(in);
+                    EntityId dropOnEntity = readEntityId(in);
+                    return new PlayerCommand(playerId, (listener) -> listener.onDrop(entity, tile, coordinates, dropOnEntity, playerId));
+                }
+                case GET_GOLD: {
+                    int amount = in.readInt();
+                    return new PlayerCommand(playerId, (listener) -> listener.onGetGold(amount, playerId));
+                }
+                case CHEAT: {
+                    CheatState.CheatType cheat = CheatState.CheatType.values()[in.readByte()];
+                    return new PlayerCommand(playerId, (listener) -> listener.onCheatTriggered(cheat, playerId));
+                }
+                default:
+                    throw new IOException("Unknown player command type " + type + "!");
+            }
+        }
+    }
+
+    private static void writeVector(DataOutputStream out, Vector2f vector) throws IOException {
+        out.writeBoolean(vector != null);
+        if (vector != null) {
+            out.writeFloat(vector.x);
+            out.writeFloat(vector.y);
+        }
+    }
+
+    private static Vector2f readVector(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new Vector2f(in.readFloat(), in.readFloat());
+    }
+
+    private static void writeEntityId(DataOutputStream out, EntityId entityId) throws IOException {
+        out.writeBoolean(entityId != null);
+        if (entityId != null) {
+            out.writeLong(entityId.getId());
+        }
+    }
+
+    private static EntityId readEntityId(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        return new EntityId(in.readLong());
+    }
+
+    /**
+     * A decoded player command
+     */
+    public static final class PlayerCommand {
+
+        private final short playerId;
+        private final Consumer<GameSessionServiceListener> action;
+
+        private PlayerCommand(short playerId, Consumer<GameSessionServiceListener> action) {
+            this.playerId = playerId;
+            this.action = action;
+        }
+
+        public short getPlayerId() {
+            return playerId;
+        }
+
+        /**
+         * Dispatches the command as the original client request
+         *
+         * @param listener the listener to receive the request
+         */
+        public void dispatch(GameSessionServiceListener listener) {
+            action.accept(listener);
+        }
+    }
+
+    /**
+     * Writes the client request it receives
+     */
+    private static class Encoder implements GameSessionServiceListener {
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream(32);
+        private final DataOutputStream out = new DataOutputStream(data);
+
+        private void write(byte type, short playerId, PayloadWriter writer) {
+            try {
+                out.writeByte(type);
+                out.writeShort(playerId);
+                writer.write(out);
+                out.flush();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex); // Can't happen, writing to memory
+            }
+        }
+
+        public byte[] getData() {
+            if (data.size() == 0) {
+                throw new IllegalArgumentException("The request is not a player command!");
+            }
+            return data.toByteArray();
+        }
+
+        @Override
+        public void onSelectTiles(Vector2f start, Vector2f end, boolean select, short playerId) {
+            write(SELECT_TILES, playerId, (out) -> {
+                writeVector(out, start);
+                writeVector(out, end);
+                out.writeBoolean(select);
+            });
+        }
+
+        @Override
+        public void onBuild(Vector2f start, Vector2f end, short roomId, short playerId) {
+            write(BUILD, playerId, (out) -> {
+                writeVector(out, start);
+                writeVector(out, end);
+                out.writeShort(roomId);
+            });
+        }
+
+        @Override
+        public void onSell(Vector2f start, Vector2f end, short playerId) {
+            write(SELL, playerId, (out) -> {
+                writeVector(out, start);
+                writeVector(out, end);
+            });
+        }
+
+        @Override
+        public void onInteract(EntityId entity, short playerId) {
+            write(INTERACT, playerId, (out) -> writeEntityId(out, entity));
+        }
+
+        @Override
+        public void onPickUp(EntityId entity, short playerId) {
+            write(PICK_UP, playerId, (out) -> writeEntityId(out, entity));
+        }
+
+        @Override
+        public void onDrop(EntityId entity, Point tile, Vector2f coordinates, EntityId dropOnEntity, short playerId) {
+            write(DROP, playerId, (out) -> {
+                writeEntityId(out, entity);
+                out.writeBoolean(tile != null);
+                if (tile != null) {
+                    out.writeInt(tile.x);
+                    out.writeInt(tile.y);
+                }
+                writeVector(out, coordinates);
+                writeEntityId(out, dropOnEntity);
+            });
+        }
+
+        @Override
+        public void onGetGold(int amount, short playerId) {
+            write(GET_GOLD, playerId, (out) -> out.writeInt(amount));
+        }
+
+        @Override
+        public void onCheatTriggered(CheatState.CheatType cheat, short playerId) {
+            write(CHEAT, playerId, (out) -> out.writeByte(cheat.ordinal()));
+        }
+
+        @Override
+        public void onTransitionEnd(short playerId) {
+            throw new UnsupportedOperationException("Not a player command!");
+        }
+
+        @Override
+        public void onPauseRequest(short playerId) {
+            throw new UnsupportedOperationException("Not a player command!");
+        }
+
+        @Override
+        public void onResumeRequest(short playerId) {
+            throw new UnsupportedOperationException("Not a player command!");
+        }
+
+        @Override
+        public void onExitGame(short playerId) {
+            throw new UnsupportedOperationException("Not a player command!");
+        }
+
+        @Override
+        public void onStateChecksum(long tick, long checksum, short playerId) {
+            throw new UnsupportedOperationException("Not a player command!");
+        }
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+
+        void write(DataOutputStream out) throws IOException;
+
+    }
+
+}
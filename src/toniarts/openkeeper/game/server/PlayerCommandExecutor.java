@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.game.server;
+
+import com.jme3.math.Vector2f;
+import com.simsilica.es.EntityId;
+import toniarts.openkeeper.game.controller.GameController;
+import toniarts.openkeeper.game.controller.IGameWorldController;
+import toniarts.openkeeper.game.state.CheatState;
+import toniarts.openkeeper.game.state.session.GameSessionServiceListener;
+
+import java.awt.*;
+
+/**
+ * Executes the player commands on the game. The server, the lockstep peers and
+ * the replays all execute the commands through this, so that they all change
+ * the game state the same way. The commands are executed right away in the
+ * calling thread, the caller takes care of running them on the game logic
+ * thread on the right tick. The requests that are not player commands are
+ * ignored.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class PlayerCommandExecutor implements GameSessionServiceListener {
+
+    private final GameController gameController;
+    private final IGameWorldController gameWorldController;
+
+    /**
+     * Create a command executor, the game must be already created
+     *
+     * @param gameController the game
+     */
+    public PlayerCommandExecutor(GameController gameController) {
+        this.gameController = gameController;
+        this.gameWorldController = gameController.getGameWorldController();
+    }
+
+    @Override
+    public void onSelectTiles(Vector2f start, Vector2f end, boolean select, short playerId) {
+        gameWorldController.getMapController().selectTiles(start, end, select, playerId);
+    }
+
+    @Override
+    public void onBuild(Vector2f start, Vector2f end, short roomId, short playerId) {
+        gameWorldController.build(start, end, playerId, roomId);
+    }
+
+    @Override
+    public void onSell(Vector2f start, Vector2f end, short playerId) {
+        gameWorldController.sell(start, end, playerId);
+    }
+
+    @Override
+    public void onInteract(EntityId entity, short playerId) {
+        gameWorldController.interact(entity, playerId);
+    }
+
+    @Override
+    public void onPickUp(EntityId entity, short playerId) {
+        gameWorldController.pickUp(entity, playerId);
+    }
+
+    @Override
+    public void onDrop(EntityId entity, Point tile, Vector2f coordinates, EntityId dropOnEntity, short playerId) {
+        gameWorldController.drop(entity, tile, coordinates, dropOnEntity, playerId);
+    }
+
+    @Override
+    public void onGetGold(int amount, short playerId) {
+        gameWorldController.getGold(amount, playerId);
+    }
+
+    @Override
+    public void onCheatTriggered(CheatState.CheatType cheat, short playerId) {
+        gameController.triggerCheat(cheat, playerId);
+    }
+
+    @Override
+    public void onTransitionEnd(short playerId) {
+
+    }
+
+    @Override
+    public void onPauseRequest(short playerId) {
+
+    }
+
+    @Override
+    public void onResumeRequest(short playerId) {
+
+    }
+
+    @Override
+    public void onExitGame(short playerId) {
+
+    }
+
+    @Override
+    public void onStateChecksum(long tick, long checksum, short playerId) {
+
+    }
+
+}
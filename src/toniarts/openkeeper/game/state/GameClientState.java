@@ -21,6 +21,7 @@ import com.jme3.app.state.AppStateManager;
 import com.jme3.cinematic.events.CinematicEvent;
 import com.jme3.cinematic.events.CinematicEventListener;
 import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import toniarts.openkeeper.Main;
 import toniarts.openkeeper.game.controller.IPlayerController;
@@ -32,6 +33,7 @@ import toniarts.openkeeper.game.data.ResearchableType;
 import toniarts.openkeeper.game.map.IMapInformation;
 import toniarts.openkeeper.game.map.MapData;
 import toniarts.openkeeper.game.map.MapTile;
+import toniarts.openkeeper.game.server.LockstepPeer;
 import toniarts.openkeeper.game.state.loading.IPlayerLoadingProgress;
 import toniarts.openkeeper.game.state.loading.MultiplayerLoadingState;
 import toniarts.openkeeper.game.state.loading.SingleBarLoadingState;
@@ -80,6 +82,10 @@ public class GameClientState extends AbstractPauseAwareState {
     private final GameSessionListenerImpl gameSessionListener = new GameSessionListenerImpl();
     private IMapInformation mapClientService;
     private PlayerState playerState;
+    private final Object lockstepLock = new Object();
+    private LockstepPeer lockstepPeer;
+    private volatile Long lockstepRandomSeed;
+    private List<Keeper> lockstepPlayers;
 
     private PlayerMapViewState playerMapViewState;
     private PlayerEntityViewState playerModelViewState;
@@ -173,6 +179,12 @@ public class GameClientState extends AbstractPauseAwareState {
         if (cs != null) {
             cs.disconnect();
         }
+        synchronized (lockstepLock) {
+            if (lockstepPeer != null) {
+                lockstepPeer.close();
+                lockstepPeer = null;
+            }
+        }
 
         // Detach
         detach();
@@ -189,6 +201,34 @@ public class GameClientState extends AbstractPauseAwareState {
         return multiplayer;
     }
 
+    /**
+     * Get the lockstep peer, the commands may arrive before the lockstep
+     * setup, so the peer is created on demand
+     *
+     * @return the lockstep peer
+     */
+    private LockstepPeer getLockstepPeer() {
+        synchronized (lockstepLock) {
+            if (lockstepPeer == null) {
+                lockstepPeer = new LockstepPeer(gameClientService);
+            }
+            return lockstepPeer;
+        }
+    }
+
+    /**
+     * Get the entity data to visualize. In lockstep mode we run the game
+     * ourselves, otherwise the entities come from the server.
+     *
+     * @return the entity data
+     */
+    private EntityData getEntityData() {
+        if (lockstepRandomSeed != null) {
+            return getLockstepPeer().getEntityData();
+        }
+        return gameClientService.getEntityData();
+    }
+
     private IPlayerLoadingProgress createLoadingState(Main app) {
 
         // Create the appropriate loading screen
@@ -294,20 +334,39 @@ public class GameClientState extends AbstractPauseAwareState {
 
     private class GameSessionListenerImpl implements GameSessionListener {
 
+        @Override
+        public void onLockstepSetup(long randomSeed, List<Keeper> players) {
+            lockstepPlayers = players;
+            lockstepRandomSeed = randomSeed;
+        }
+
+        @Override
+        public void onLockstepCommand(long tick, short playerId, int sequence, byte[] command) {
+            getLockstepPeer().onCommand(tick, playerId, sequence, command);
+        }
+
+        @Override
+        public void onLockstepTickSealed(long tick) {
+            getLockstepPeer().onTickSealed(tick);
+        }
+
         @Override
         public void onGameDataLoaded(Collection<Keeper> players, MapData mapData) {
 
             // Now we have the game data, start loading the map
             kwdFile.load();
+            if (lockstepRandomSeed != null) {
+                getLockstepPeer().createGame(kwdFile, lockstepRandomSeed, lockstepPlayers);
+            }
             AssetUtils.prewarmAssets(kwdFile, app.getAssetManager(), app);
             for (Keeper keeper : players) {
                 keeper.setPlayer(kwdFile.getPlayer(keeper.getId()));
                 GameClientState.this.players.put(keeper.getId(), keeper);
-                GameClientState.this.playerControllers.put(keeper.getId(), new PlayerController(kwdFile, keeper, kwdFile.getImp(), gameClientService.getEntityData(), kwdFile.getVariables()));
+                GameClientState.this.playerControllers.put(keeper.getId(), new PlayerController(kwdFile, keeper, kwdFile.getImp(), getEntityData(), kwdFile.getVariables()));
             }
             mapClientService = new MapController(mapData, kwdFile);
             textParser = new TextParserService(mapClientService);
-            playerModelViewState = new PlayerEntityViewState(kwdFile, app.getAssetManager(), gameClientService.getEntityData(), playerId, textParser);
+            playerModelViewState = new PlayerEntityViewState(kwdFile, app.getAssetManager(), getEntityData(), playerId, textParser);
             playerMapViewState = new PlayerMapViewState(app, kwdFile, app.getAssetManager(), mapClientService, playerId) {
 
                 private float lastProgress = 0;
@@ -357,9 +416,14 @@ public class GameClientState extends AbstractPauseAwareState {
             // Set the player stuff
             playerState = stateManager.getState(PlayerState.class);
             playerState.setKwdFile(kwdFile);
-            playerState.setEntityData(gameClientService.getEntityData());
+            playerState.setEntityData(getEntityData());
             playerState.setPlayerId(playerId);
 
+            // Start simulating
+            if (lockstepRandomSeed != null) {
+                getLockstepPeer().start();
+            }
+
             app.enqueue(() -> {
                 playerState.setEnabled(true);
                 stateManager.attach(playerMapViewState);
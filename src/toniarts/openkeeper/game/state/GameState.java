@@ -156,8 +156,7 @@ public class GameState extends AbstractPauseAwareState implements IGameLogicUpda
                     } else {
                         kwdFile.load();
                     }
-                    AssetUtils.prewarmAssets(kwdFile, assetManager, app);
-                    setProgress(0.1f, Player.KEEPER1_ID);
+                    AssetUtils.prewarmAssets(kwdFile, assetManager, app, progress -> setProgress(progress * 0.1f, Player.KEEPER1_ID));
 
                     // load sounds
                     loadSounds();
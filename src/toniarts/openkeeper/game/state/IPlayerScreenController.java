@@ -64,6 +64,10 @@ public interface IPlayerScreenController extends ScreenController {
 
     String getTooltipText(String bundleId);
 
+    void quickSave();
+
+    void quickLoad();
+
     void quitToMainMenu();
 
     void quitToOS();
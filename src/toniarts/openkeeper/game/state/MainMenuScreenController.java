@@ -38,6 +38,7 @@ import de.lessvoid.nifty.tools.Color;
 import de.lessvoid.nifty.tools.SizeValue;
 import org.jetbrains.annotations.NotNull;
 import toniarts.openkeeper.Main;
+import toniarts.openkeeper.game.MapCatalog;
 import toniarts.openkeeper.game.MapSelector;
 import toniarts.openkeeper.game.data.*;
 import toniarts.openkeeper.game.data.Level.LevelType;
@@ -63,7 +64,6 @@ import toniarts.openkeeper.tools.convert.AssetsConverter;
 import toniarts.openkeeper.tools.convert.ConversionUtils;
 import toniarts.openkeeper.tools.convert.map.AI;
 import toniarts.openkeeper.tools.convert.map.GameLevel;
-import toniarts.openkeeper.tools.convert.map.KwdFile;
 import toniarts.openkeeper.tools.modelviewer.SoundsLoader;
 import toniarts.openkeeper.utils.PathUtils;
 import toniarts.openkeeper.utils.Utils;
@@ -87,6 +87,7 @@ public class MainMenuScreenController implements IMainMenuScreenController {
     private static final List<Cutscene> CUTSCENES = new ArrayList<>();
     private ChatSessionListener chatSessionListener;
     private LobbySessionListener lobbySessionListener;
+    private List<MapSelector.GameMapContainer> shownMaps = Collections.emptyList();
 
     /**
      * A popup instance if some screen should need one
@@ -149,7 +150,7 @@ public class MainMenuScreenController implements IMainMenuScreenController {
     public void mapSelected() {
         ListBox<TableRow> listBox = screen.findNiftyControl("mapsTable", ListBox.class);
         int selectedMapIndex = listBox.getSelectedIndices().get(0);
-        state.getLobbyState().setMap(selectedMapIndex);
+        state.getLobbyState().setMap(shownMaps.get(selectedMapIndex));
         nifty.gotoScreen("skirmishLobby");
     }
 
@@ -400,7 +401,7 @@ public class MainMenuScreenController implements IMainMenuScreenController {
 
                 // Ask for players and map
                 refreshPlayerList(lobbyState.getLobbySession().getPlayers());
-                populateSelectedMap(state.mapSelector.getMap(lobbyState.getLobbySession().getMap()).getMap());
+                populateSelectedMap(state.mapSelector.getMap(lobbyState.getLobbySession().getMap()));
 
                 Label title = screen.findNiftyControl("multiplayerTitle", Label.class);
                 if (title != null) {
@@ -588,10 +589,10 @@ public class MainMenuScreenController implements IMainMenuScreenController {
             return;
         }
 
-        KwdFile map = state.mapSelector.getMaps().get(event.getSelectionIndices().get(0)).getMap();
+        MapSelector.GameMapContainer map = shownMaps.get(event.getSelectionIndices().get(0));
         if (state.mapSelector.isMPD()) {
             // on mpd we show the briefing
-            state.selectedLevel = new CustomMPDLevel(map);
+            state.selectedLevel = new CustomMPDLevel(map.getMap());
             goToScreen("briefing");
         } else {
 
@@ -796,18 +797,18 @@ public class MainMenuScreenController implements IMainMenuScreenController {
         screen.findNiftyControl("invertMouse", CheckBox.class).setChecked((boolean) Settings.Setting.MOUSE_INVERT.getDefaultValue());
     }
 
-    private void populateSelectedMap(KwdFile map) {
+    private void populateSelectedMap(MapSelector.GameMapContainer map) {
 
         // The map title
         Label label = screen.findNiftyControl("mapNameTitle", Label.class);
-        label.setText(map == null ? "No maps found from " + PathUtils.DKII_MAPS_FOLDER : map.getGameLevel().getName());
+        label.setText(map == null ? "No maps found from " + PathUtils.DKII_MAPS_FOLDER : map.getMapInfo().getName());
         NiftyUtils.resetConstraints(label);
 
         if (map != null) {
 
             // Player count
             label = screen.findNiftyControl("playerCount", Label.class);
-            label.setText(": " + map.getGameLevel().getPlayerCount());
+            label.setText(": " + map.getMapInfo().getPlayerCount());
             NiftyUtils.resetConstraints(label);
 
             // Map image
@@ -829,19 +830,22 @@ public class MainMenuScreenController implements IMainMenuScreenController {
         ListBox<TableRow> listBox = screen.findNiftyControl("mapsTable", ListBox.class);
         int i = 0;
         listBox.clear();
-        for (MapSelector.GameMapContainer mapContainer : state.mapSelector.getMaps()) {
+
+        // The map list may be replaced in the background, keep the one the rows are from
+        shownMaps = state.mapSelector.getMaps();
+        for (MapSelector.GameMapContainer mapContainer : shownMaps) {
 
             String name = mapContainer.getMapName();
-            KwdFile kwd = mapContainer.getMap();
-            if (kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_MY_PET_DUNGEON_LEVEL)) {
+            MapCatalog.MapInfo mapInfo = mapContainer.getMapInfo();
+            if (mapInfo.isMyPetDungeon()) {
                 // the resource tables in all the other levels are completely wrong, so we just use it for custom mpd maps
-                name = kwd.getGameLevel().getLevelName().isEmpty() ? kwd.getGameLevel().getName() : kwd.getGameLevel().getLevelName();
+                name = mapInfo.getLevelName().isEmpty() ? mapInfo.getName() : mapInfo.getLevelName();
             }
             listBox.addItem(new TableRow(i, name,
-                    String.valueOf(kwd.getGameLevel().getPlayerCount()),
-                    String.format("%s x %s", kwd.getMap().getWidth(), kwd.getMap().getHeight())));
+                    String.valueOf(mapInfo.getPlayerCount()),
+                    String.format("%s x %s", mapInfo.getWidth(), mapInfo.getHeight())));
 
-            if (selectMap && kwd.equals(state.mapSelector.getMap().getMap())) {
+            if (selectMap && mapContainer.equals(state.mapSelector.getMap())) {
                 listBox.selectItemByIndex(i);
             }
             i++;
@@ -859,7 +863,7 @@ public class MainMenuScreenController implements IMainMenuScreenController {
 
                 @Override
                 public void onMapChanged(String mapName) {
-                    populateSelectedMap(state.mapSelector.getMap(mapName).getMap());
+                    populateSelectedMap(state.mapSelector.getMap(mapName));
                 }
 
                 @Override
@@ -47,7 +47,6 @@ import toniarts.openkeeper.game.state.lobby.LocalLobby;
 import toniarts.openkeeper.game.state.session.LocalGameSession;
 import toniarts.openkeeper.gui.CursorFactory;
 import toniarts.openkeeper.tools.convert.AssetsConverter;
-import toniarts.openkeeper.tools.convert.ConversionUtils;
 import toniarts.openkeeper.tools.convert.map.KwdFile;
 import toniarts.openkeeper.tools.convert.map.Player;
 import toniarts.openkeeper.tools.modelviewer.SoundsLoader;
@@ -531,21 +530,21 @@ public class MainMenuState extends AbstractAppState {
     }
 
     /**
-     * See if the map thumbnail exist, otherwise create one TODO maybe move to
-     * KwdFile class ???
+     * See if the map thumbnail exist, otherwise create one. The map file is
+     * read only if the thumbnail needs to be created.
      *
-     * @param map
+     * @param map the map
      * @return path to map thumbnail file
      */
-    protected String getMapThumbnail(KwdFile map) {
+    protected String getMapThumbnail(MapSelector.GameMapContainer map) {
 
         // See if the map thumbnail exist, otherwise create one
-        String asset = AssetsConverter.MAP_THUMBNAILS_FOLDER + File.separator + ConversionUtils.stripFileName(map.getGameLevel().getName()) + ".png";
+        String asset = map.getMapInfo().getThumbnail();
         if (assetManager.locateAsset(new TextureKey(asset)) == null) {
 
             // Generate
             try {
-                AssetsConverter.generateMapThumbnail(map, AssetsConverter.getAssetsFolder() + AssetsConverter.MAP_THUMBNAILS_FOLDER + File.separator);
+                AssetsConverter.generateMapThumbnail(map.getMap(), AssetsConverter.getAssetsFolder() + AssetsConverter.MAP_THUMBNAILS_FOLDER + File.separator);
             } catch (Exception e) {
                 LOGGER.log(java.util.logging.Level.WARNING, "Failed to generate map file out of {0}!", map);
                 asset = "Textures/Unique_NoTextureName.png";
@@ -238,8 +238,8 @@ public class PlayerScreenController implements IPlayerScreenController {
 
                 items.add(new GameMenu("i-objective", "${menu.537}", "pauseMenu()", optionsColumnOne));
                 items.add(new GameMenu("i-game", "${menu.97}", "pauseMenu()", optionsColumnOne));
-                items.add(new GameMenu("i-load", "${menu.143}", "pauseMenu()", optionsColumnOne));
-                items.add(new GameMenu("i-save", "${menu.201}", "pauseMenu()", optionsColumnOne));
+                items.add(new GameMenu("i-load", "${menu.143}", "quickLoad()", optionsColumnOne));
+                items.add(new GameMenu("i-save", "${menu.201}", "quickSave()", optionsColumnOne));
                 items.add(new GameMenu("i-quit", "${menu.1266}", String.format("pauseMenuNavigate(%s,%s,null,null)",
                         PauseMenuState.QUIT.name(), PauseMenuState.MAIN.name()), optionsColumnTwo));
                 items.add(new GameMenu("i-restart", "${menu.1269}", "pauseMenu()", optionsColumnTwo));
@@ -341,6 +341,17 @@ public class PlayerScreenController implements IPlayerScreenController {
         }
     }
 
+    @Override
+    public void quickSave() {
+        state.quickSave();
+        pauseMenu();
+    }
+
+    @Override
+    public void quickLoad() {
+        state.quickLoad();
+    }
+
     @Override
     public void quitToMainMenu() {
         state.quitToMainMenu();
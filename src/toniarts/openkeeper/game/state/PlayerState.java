@@ -32,6 +32,8 @@ import toniarts.openkeeper.game.data.Keeper;
 import toniarts.openkeeper.game.data.ResearchableEntity;
 import toniarts.openkeeper.game.listener.PlayerListener;
 import toniarts.openkeeper.game.map.MapTile;
+import toniarts.openkeeper.game.save.SaveGame;
+import toniarts.openkeeper.game.state.session.LocalGameSession;
 import toniarts.openkeeper.tools.convert.map.*;
 import toniarts.openkeeper.view.*;
 import toniarts.openkeeper.view.PlayerInteractionState.InteractionState;
@@ -43,9 +45,13 @@ import toniarts.openkeeper.world.room.GenericRoom;
 import toniarts.openkeeper.world.room.RoomInstance;
 
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -77,6 +83,7 @@ public class PlayerState extends AbstractAppState implements PlayerListener {
     private boolean transitionEnd = true;
     private final PlayerScreenController screen;
 
+    private static final String QUICK_SAVE = "QuickSave";
     private static final Logger LOGGER = Logger.getLogger(PlayerState.class.getName());
 
     public PlayerState(int playerId, Main app) {
@@ -395,6 +402,62 @@ public class PlayerState extends AbstractAppState implements PlayerListener {
         app.stop();
     }
 
+    /**
+     * Saves the game with the given name. Only the host of the game can save
+     *
+     * @param name the save name
+     * @return future completed when the save is written
+     */
+    public CompletableFuture<File> saveGame(String name) {
+        GameServerState gameServerState = stateManager.getState(GameServerState.class);
+        if (gameServerState == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Only the host can save the game!"));
+        }
+
+        return gameServerState.saveGame(SaveGame.getSaveFile(name));
+    }
+
+    /**
+     * Quits the current game and continues a saved game instead
+     *
+     * @param name the save name
+     * @return {@code false} if there is no such save
+     */
+    public boolean loadGame(String name) {
+        File saveFile = SaveGame.getSaveFile(name);
+        if (!saveFile.exists()) {
+            return false;
+        }
+
+        // Detach the game and start the saved one
+        stateManager.getState(GameClientState.class).detach();
+        setEnabled(false);
+        try {
+            LocalGameSession.LoadLocalGame(saveFile, stateManager, app);
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, "Failed to load the game " + saveFile + "!", ex);
+            stateManager.getState(MainMenuState.class).setEnabled(true);
+        }
+
+        return true;
+    }
+
+    public void quickSave() {
+        saveGame(QUICK_SAVE).whenComplete((file, ex) -> {
+            if (ex != null) {
+                LOGGER.log(Level.SEVERE, "Failed to quick save the game!", ex);
+            } else {
+                LOGGER.log(Level.INFO, "Game saved to {0}", file);
+            }
+        });
+    }
+
+    public void quickLoad() {
+        if (!loadGame(QUICK_SAVE)) {
+            LOGGER.log(Level.INFO, "No quick save to load");
+        }
+    }
+
     public void zoomToDungeon() {
         cameraState.setCameraLookAt(new Point(stateManager.getState(GameClientState.class).getPlayer(playerId).getDungeonHeartLocation()));
     }
@@ -18,7 +18,10 @@ package toniarts.openkeeper.game.state;
 
 import com.jme3.app.Application;
 import com.jme3.app.state.AppStateManager;
+import com.jme3.asset.AssetNotFoundException;
+import com.jme3.audio.AudioData;
 import com.jme3.audio.AudioData.DataType;
+import com.jme3.audio.AudioKey;
 import com.jme3.audio.AudioNode;
 import com.jme3.audio.AudioSource;
 import toniarts.openkeeper.Main;
@@ -73,6 +76,11 @@ public class SoundState extends AbstractPauseAwareState {
     private final BackgroundState backgroundState = new BackgroundState("MUSIC");
     private final Queue<Speech> speechQueue = new ArrayDeque<>();
 
+    /**
+     * Speeches shorter than this are decoded in full and cached, the longer
+     * ones are streamed. The original MP2 files are roughly 16 kB per second
+     */
+    private static final long SHORT_CLIP_SIZE = 96 * 1024;
     private static final Logger LOGGER = Logger.getLogger(SoundState.class.getName());
 
     public SoundState(boolean enabled) {
@@ -162,7 +170,7 @@ public class SoundState extends AbstractPauseAwareState {
     }
 
     private void playSpeech(Speech speech) {
-        speechNode = new AudioNode(app.getAssetManager(), speech.file, DataType.Buffer);
+        speechNode = createAudioNode(speech.file, isShortClip(speech.file) ? DataType.Buffer : DataType.Stream);
         if (speechNode == null) {
             LOGGER.log(Level.WARNING, "Audio file {0} not found", speech.file);
             return;
@@ -195,12 +203,14 @@ public class SoundState extends AbstractPauseAwareState {
 
         String file = AssetsConverter.SOUNDS_FOLDER + File.separator + backgroundState.getNext();
 
-        backgroundNode = new AudioNode(app.getAssetManager(), file, DataType.Buffer);
+        backgroundNode = createAudioNode(file, DataType.Stream);
         if (backgroundNode == null) {
             LOGGER.log(Level.WARNING, "Audio file {0} not found", file);
             return;
         }
-        backgroundNode.setLooping(false);
+
+        // A single track is looped by the stream itself, without a gap
+        backgroundNode.setLooping(backgroundState.isSingleTrack());
         backgroundNode.setPositional(false);
         float volume = Main.getUserSettings().getFloat(Settings.Setting.MASTER_VOLUME)
                 * Main.getUserSettings().getFloat(Settings.Setting.MUSIC_VOLUME);
@@ -208,6 +218,29 @@ public class SoundState extends AbstractPauseAwareState {
         app.enqueue(() -> backgroundNode.play());
     }
 
+    /**
+     * Creates an audio node. The streams are not cached, each node gets its
+     * own stream
+     *
+     * @param file the audio file
+     * @param type buffer or stream
+     * @return the audio node, or {@code null} if the file is not found
+     */
+    private AudioNode createAudioNode(String file, DataType type) {
+        AudioKey key = new AudioKey(file, type == DataType.Stream, false);
+        try {
+            AudioData data = app.getAssetManager().loadAsset(key);
+
+            return new AudioNode(data, key);
+        } catch (AssetNotFoundException e) {
+            return null;
+        }
+    }
+
+    private static boolean isShortClip(String file) {
+        return new File(AssetsConverter.getAssetsFolder(), file).length() <= SHORT_CLIP_SIZE;
+    }
+
     @Override
     public void update(float tpf) {
         if (!isEnabled() || !isInitialized()) {
@@ -233,6 +266,7 @@ public class SoundState extends AbstractPauseAwareState {
 
         private Iterator<SoundGroup> itGroup;
         private Iterator<SoundFile> itFile;
+        private boolean singleTrack;
 
         public BackgroundState(String category) {
             this.setCategory(category);
@@ -255,11 +289,16 @@ public class SoundState extends AbstractPauseAwareState {
             if (total == 0) {
                 throw new RuntimeException("We have no files in groups in category " + category);
             }
+            singleTrack = total == 1;
 
             itGroup = null;
             itFile = null;
         }
 
+        public synchronized boolean isSingleTrack() {
+            return singleTrack;
+        }
+
         public synchronized String getNext() {
             if (itGroup == null) {
                 itGroup = sc.getGroups().values().iterator();
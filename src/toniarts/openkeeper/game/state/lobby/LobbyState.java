@@ -70,7 +70,7 @@ public class LobbyState extends AbstractAppState {
 
         // We as the host should set the initial map
         if (lobbyService != null) {
-            lobbyService.setMap(mapSelector.getMap().getMapName(), mapSelector.getMap().getMap().getGameLevel().getPlayerCount());
+            lobbyService.setMap(mapSelector.getMap().getMapName(), mapSelector.getMap().getMapInfo().getPlayerCount());
         }
     }
 
@@ -120,12 +120,12 @@ public class LobbyState extends AbstractAppState {
 
     public void setRandomMap() {
         mapSelector.random();
-        lobbyService.setMap(mapSelector.getMap().getMapName(), mapSelector.getMap().getMap().getGameLevel().getPlayerCount());
+        lobbyService.setMap(mapSelector.getMap().getMapName(), mapSelector.getMap().getMapInfo().getPlayerCount());
     }
 
-    public void setMap(int selectedMapIndex) {
-        mapSelector.selectMap(selectedMapIndex);
-        lobbyService.setMap(mapSelector.getMap().getMapName(), mapSelector.getMap().getMap().getGameLevel().getPlayerCount());
+    public void setMap(MapSelector.GameMapContainer map) {
+        mapSelector.selectMap(map);
+        lobbyService.setMap(mapSelector.getMap().getMapName(), mapSelector.getMap().getMapInfo().getPlayerCount());
     }
 
     private void startGame(List<ClientInfo> players) {
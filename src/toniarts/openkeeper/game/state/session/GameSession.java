@@ -154,4 +154,14 @@ public interface GameSession {
     @Asynchronous
     void triggerCheat(CheatState.CheatType cheat);
 
+    /**
+     * Report our lockstep game state checksum to the server, for detecting
+     * desyncs
+     *
+     * @param tick     the tick the checksum was calculated on
+     * @param checksum the state checksum
+     */
+    @Asynchronous
+    void reportStateChecksum(long tick, long checksum);
+
 }
@@ -26,6 +26,7 @@ import toniarts.openkeeper.game.map.MapData;
 import toniarts.openkeeper.tools.convert.map.TriggerAction;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * The game callbacks the server sends to the client
@@ -43,6 +44,37 @@ public interface GameSessionListener extends MapListener, PlayerListener {
     @Asynchronous
     void onGameDataLoaded(Collection<Keeper> players, MapData mapData);
 
+    /**
+     * The game runs in lockstep mode, the client should run the simulation
+     * itself instead of receiving the game state. Called before
+     * {@link #onGameDataLoaded(Collection, MapData)}.
+     *
+     * @param randomSeed the random seed of the game
+     * @param players    the players as they were before the game was created,
+     *                   {@code null} if the level decides the players
+     */
+    void onLockstepSetup(long randomSeed, List<Keeper> players);
+
+    /**
+     * A player command to execute on the given tick, in lockstep mode
+     *
+     * @param tick     the tick to execute the command on
+     * @param playerId the player issuing the command
+     * @param sequence the command sequence number of the player
+     * @param command  the encoded command
+     */
+    @Asynchronous
+    void onLockstepCommand(long tick, short playerId, int sequence, byte[] command);
+
+    /**
+     * All the commands up to and including the given tick have been sent, the
+     * client can simulate up to it, in lockstep mode
+     *
+     * @param tick the sealed tick
+     */
+    @Asynchronous
+    void onLockstepTickSealed(long tick);
+
     /**
      * Signal that a player is ready and loaded up
      *
@@ -55,6 +55,35 @@ public interface GameSessionService extends PlayerListener, PlayerService {
      */
     void startGame();
 
+    /**
+     * Sets the game to run in lockstep mode. The clients then simulate the
+     * game themselves and only the player commands are sent to them, not the
+     * game state. Must be called before sending the game data.
+     *
+     * @param randomSeed the random seed of the game
+     * @param players    the players as they were before the game was created,
+     *                   {@code null} if the level decides the players
+     */
+    void setLockstep(long randomSeed, List<Keeper> players);
+
+    /**
+     * Sends a player command to the clients, in lockstep mode
+     *
+     * @param tick     the tick to execute the command on
+     * @param playerId the player issuing the command
+     * @param sequence the command sequence number of the player
+     * @param command  the encoded command
+     */
+    void sendLockstepCommand(long tick, short playerId, int sequence, byte[] command);
+
+    /**
+     * Signals the clients that all the commands up to and including the given
+     * tick have been sent, in lockstep mode
+     *
+     * @param tick the sealed tick
+     */
+    void sealLockstepTick(long tick);
+
     /**
      * Signals that map tiles have been changed
      *
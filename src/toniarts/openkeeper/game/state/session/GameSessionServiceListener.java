@@ -142,4 +142,14 @@ public interface GameSessionServiceListener {
     @Asynchronous
     void onCheatTriggered(CheatState.CheatType cheat, short playerId);
 
+    /**
+     * A lockstep peer reports its game state checksum
+     *
+     * @param tick     the tick the checksum was calculated on
+     * @param checksum the state checksum
+     * @param playerId the player whose peer calculated the checksum
+     */
+    @Asynchronous
+    void onStateChecksum(long tick, long checksum, short playerId);
+
 }
@@ -19,6 +19,7 @@ import toniarts.openkeeper.game.data.Keeper;
 import toniarts.openkeeper.game.data.ResearchableEntity;
 import toniarts.openkeeper.game.map.MapData;
 import toniarts.openkeeper.game.map.MapTile;
+import toniarts.openkeeper.game.save.SaveGame;
 import toniarts.openkeeper.game.state.CheatState;
 import toniarts.openkeeper.game.state.GameClientState;
 import toniarts.openkeeper.game.state.GameServerState;
@@ -82,6 +83,23 @@ public class LocalGameSession implements GameSessionServerService, GameSessionCl
      * @throws java.io.IOException Problem with the map file
      */
     public static void CreateLocalGame(String level, boolean campaign, AppStateManager stateManager, Main app) throws IOException {
+        CreateLocalGame(getKwdFile(level), stateManager, campaign, app);
+    }
+
+    /**
+     * Creates and starts a local game session continuing a saved game
+     *
+     * @param saveFile the save game file
+     * @param stateManager state manager instance for setting up the game
+     * @throws java.io.IOException Problem with the save game or the map file
+     */
+    public static void LoadLocalGame(File saveFile, AppStateManager stateManager, Main app) throws IOException {
+        SaveGame saveGame = SaveGame.load(saveFile);
+
+        CreateLocalGame(getKwdFile(saveGame.getLevelName()), stateManager, false, saveGame, app);
+    }
+
+    private static KwdFile getKwdFile(String level) throws IOException {
 
         // Try to load the file
         String mapFile = ConversionUtils.getRealFileName(Main.getDkIIFolder(), PathUtils.DKII_MAPS_FOLDER + level + ".kwd");
@@ -89,12 +107,15 @@ public class LocalGameSession implements GameSessionServerService, GameSessionCl
         if (!file.exists()) {
             throw new FileNotFoundException(mapFile);
         }
-        KwdFile kwdFile = new KwdFile(Main.getDkIIFolder(), file);
 
-        CreateLocalGame(kwdFile, stateManager, campaign, app);
+        return new KwdFile(Main.getDkIIFolder(), file);
     }
 
     private static void CreateLocalGame(KwdFile kwdFile, AppStateManager stateManager, boolean campaign, Main app) {
+        CreateLocalGame(kwdFile, stateManager, campaign, null, app);
+    }
+
+    private static void CreateLocalGame(KwdFile kwdFile, AppStateManager stateManager, boolean campaign, SaveGame saveGame, Main app) {
 
         // Player and server
         LocalGameSession gameSession = new LocalGameSession();
@@ -109,7 +130,12 @@ public class LocalGameSession implements GameSessionServerService, GameSessionCl
         stateManager.attach(gameClientState);
 
         // The game server
-        GameServerState gameServerState = new GameServerState(kwdFile, campaign ? null : List.of(keeper), campaign, gameSession);
+        GameServerState gameServerState;
+        if (saveGame != null) {
+            gameServerState = new GameServerState(kwdFile, saveGame, gameSession);
+        } else {
+            gameServerState = new GameServerState(kwdFile, campaign ? null : List.of(keeper), campaign, gameSession);
+        }
         stateManager.attach(gameServerState);
     }
 
@@ -152,6 +178,22 @@ public class LocalGameSession implements GameSessionServerService, GameSessionCl
         }
     }
 
+    @Override
+    public void setLockstep(long randomSeed, List<Keeper> players) {
+
+        // The client shares the entity data with the server, no need to simulate twice
+    }
+
+    @Override
+    public void sendLockstepCommand(long tick, short playerId, int sequence, byte[] command) {
+
+    }
+
+    @Override
+    public void sealLockstepTick(long tick) {
+
+    }
+
     @Override
     public void addGameSessionListener(GameSessionListener l) {
         listeners.add(l);
@@ -376,6 +418,13 @@ public class LocalGameSession implements GameSessionServerService, GameSessionCl
         }
     }
 
+    @Override
+    public void reportStateChecksum(long tick, long checksum) {
+        for (GameSessionServiceListener listener : serverListeners.getArray()) {
+            listener.onStateChecksum(tick, checksum, PLAYER_ID);
+        }
+    }
+
     @Override
     public void updateTiles(List<MapTile> updatedTiles) {
         for (GameSessionListener listener : listeners.getArray()) {
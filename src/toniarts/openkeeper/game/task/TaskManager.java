@@ -106,7 +106,7 @@ public class TaskManager implements ITaskManager, IGameLogicUpdatable {
             playerControllers.put(keeper.getId(), playerController);
 
             if (keeper.getId() != Player.GOOD_PLAYER_ID && keeper.getId() != Player.NEUTRAL_PLAYER_ID) {
-                taskQueues.put(keeper.getId(), new HashSet<>());
+                taskQueues.put(keeper.getId(), new LinkedHashSet<>()); // Tasks hash by identity, keep the iteration order predictable
             }
         }
 
@@ -168,14 +168,14 @@ public class TaskManager implements ITaskManager, IGameLogicUpdatable {
     }
 
     private void processAddedTasks(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             long taskId = entity.get(TaskComponent.class).taskId;
             tasksIdsByEntities.put(entity.getId(), taskId);
         }
     }
 
     private void processDeletedTasks(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Long taskId = tasksIdsByEntities.remove(entity.getId());
             Task task = tasksByIds.get(taskId);
             if (task != null) {
@@ -188,7 +188,7 @@ public class TaskManager implements ITaskManager, IGameLogicUpdatable {
     }
 
     private void processChangedTasks(Set<Entity> entities) {
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             long taskId = entity.get(TaskComponent.class).taskId;
             Long oldTaskId = tasksIdsByEntities.put(entity.getId(), taskId);
             Task task = tasksByIds.get(oldTaskId);
@@ -204,7 +204,7 @@ public class TaskManager implements ITaskManager, IGameLogicUpdatable {
     private void processAddedUnconsciousEntities(Set<Entity> entities) {
 
         // Add rescue mission for the own troops and capture for the enemy
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Owner owner = entity.get(Owner.class);
             for (Entry<Short, Set<Task>> entry : taskQueues.entrySet()) {
 
@@ -239,7 +239,7 @@ public class TaskManager implements ITaskManager, IGameLogicUpdatable {
     private void processAddedFreeObjectEntities(Set<Entity> entities) {
 
         // Add fetch object missions for changed objects
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             Point p = WorldUtils.vectorToPoint(entity.get(Position.class).position);
             MapTile tile = mapController.getMapData().getTile(p);
             short playerId = tile.getOwnerId();
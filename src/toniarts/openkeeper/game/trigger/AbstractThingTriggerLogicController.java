@@ -23,6 +23,7 @@ import toniarts.openkeeper.game.component.Trigger;
 import toniarts.openkeeper.game.controller.IEntityWrapper;
 import toniarts.openkeeper.game.controller.entity.IEntityController;
 import toniarts.openkeeper.game.logic.IGameLogicUpdatable;
+import toniarts.openkeeper.utils.Utils;
 
 import java.util.Map;
 import java.util.Set;
@@ -82,7 +83,7 @@ public abstract class AbstractThingTriggerLogicController<T extends IEntityContr
     private void processAddedEntities(Set<Entity> entities) {
 
         // Each entity we are going to wrap in its controller wrapper
-        for (Entity entity : entities) {
+        for (Entity entity : Utils.sortedById(entities)) {
             setThing(entity.get(Trigger.class).triggerId, entityWrapper.createController(entity.getId()));
         }
     }
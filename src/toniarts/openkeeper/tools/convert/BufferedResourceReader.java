@@ -0,0 +1,533 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.tools.convert;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resource reader that holds the whole file in a byte buffer. The primitives
+ * are decoded straight from the buffer, without allocating anything per read.
+ * Small files are read to memory in one go, large ones are memory mapped.<br>
+ * The reader can also give out sub readers bounded to a section of the file,
+ * they share the data with the parent reader.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class BufferedResourceReader implements IResourceReader {
+
+    /**
+     * Files larger than this are memory mapped, the rest are read to memory.
+     * Mapped files stay locked on some platforms until the buffer is garbage
+     * collected, so do not map the small files that may be written to.
+     */
+    private static final long MAP_THRESHOLD = 8 * 1024 * 1024;
+    private static final Charset CHARSET = Charset.forName("windows-1252");
+
+    private final ByteBuffer buffer;
+
+    private static final Logger LOGGER = Logger.getLogger(BufferedResourceReader.class.getName());
+
+    public BufferedResourceReader(File file) throws IOException {
+        this(readFile(file));
+    }
+
+    public BufferedResourceReader(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    /**
+     * Reads the given buffer, from its current position to its limit. The
+     * buffer is not modified.
+     *
+     * @param buffer the data
+     */
+    public BufferedResourceReader(ByteBuffer buffer) {
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Gets the file contents as a buffer, read to memory or mapped depending
+     * on the file size
+     *
+     * @param file the file
+     * @return the file contents
+     * @throws IOException may fail
+     */
+    public static ByteBuffer readFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            ByteBuffer data = ByteBuffer.allocate((int) size);
+            while (data.hasRemaining()) {
+                if (channel.read(data) < 0) {
+                    throw new EOFException("Error reading file " + file + ". Expect " + size + " bytes and " + data.position() + " given");
+                }
+            }
+            data.flip();
+
+            return data;
+        }
+    }
+
+    /**
+     * Gets a reader for a section of this file. The sub reader has its own
+     * file pointer, starting from 0 at the start of the section. Reading past
+     * the section fails.
+     *
+     * @param offset the section start in this reader
+     * @param length the section length
+     * @return a reader for the section
+     * @throws IOException if the section is not within this reader
+     */
+    public BufferedResourceReader getSubReader(long offset, int length) throws IOException {
+        if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+            String message = "Section %s-%s is out of bounds. The length is %s";
+            throw new EOFException(String.format(message, offset, offset + length, buffer.limit()));
+        }
+
+        ByteBuffer section = buffer.duplicate();
+        section.position((int) offset);
+        section.limit((int) offset + length);
+
+        return new BufferedResourceReader(section);
+    }
+
+    private void ensureRemaining(int length) throws EOFException {
+        if (length > buffer.remaining()) {
+            String message = "Error reading at %s. Expect %s bytes and %s given";
+            throw new EOFException(String.format(message, buffer.position(), length, buffer.remaining()));
+        }
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            return b.length == 0 ? 0 : -1;
+        }
+
+        int length = Math.min(b.length, buffer.remaining());
+        buffer.get(b, 0, length);
+
+        return length;
+    }
+
+    @Override
+    public byte[] read(int length) throws IOException {
+        ensureRemaining(length);
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        return bytes;
+    }
+
+    /**
+     * Reads 4 bytes and converts it to JAVA int from LITTLE ENDIAN unsigned int<br>
+     * This method returns long, which means the value is sure to fit
+     *
+     * @return JAVA native long
+     * @throws IOException may fail
+     */
+    @Override
+    public long readUnsignedIntegerAsLong() throws IOException {
+        return this.readInteger() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Reads 4 bytes and converts it to JAVA int from LITTLE ENDIAN unsigned int
+     *
+     * @return JAVA native int
+     * @throws IOException may fail
+     * @see BufferedResourceReader#readUnsignedIntegerAsLong()
+     */
+    @Override
+    public int readUnsignedInteger() throws IOException {
+        int result = this.readInteger();
+        if (result < 0) {
+
+            // Same as ConversionUtils#toUnsignedInteger(byte[])
+            LOGGER.warning("This unsigned integer doesn't fit to JAVA integer! Use a different method!");
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads 4 bytes and converts it to JAVA int from LITTLE ENDIAN int
+     *
+     * @return JAVA native int
+     * @throws IOException may fail
+     */
+    @Override
+    public int readInteger() throws IOException {
+        ensureRemaining(4);
+
+        return buffer.getInt();
+    }
+
+    /**
+     * Reads 2 bytes and converts it to JAVA short from LITTLE ENDIAN unsigned short (needs to be
+     * int in JAVA)
+     *
+     * @return JAVA native int
+     * @throws IOException may fail
+     */
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return this.readShort() & 0xFFFF;
+    }
+
+    /**
+     * Reads 2 bytes and converts it to JAVA short from LITTLE ENDIAN signed short
+     *
+     * @return JAVA native short
+     * @throws IOException may fail
+     */
+    @Override
+    public short readShort() throws IOException {
+        ensureRemaining(2);
+
+        return buffer.getShort();
+    }
+
+    @Override
+    public short readUnsignedByte() throws IOException {
+        return (short) (this.readByte() & 0xFF);
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        ensureRemaining(1);
+
+        return buffer.get();
+    }
+
+    @Override
+    public float readIntegerAsFloat() throws IOException {
+        return this.readInteger() / ConversionUtils.FLOAT;
+    }
+
+    @Override
+    public float readShortAsFloat() throws IOException {
+        return this.readShort() / ConversionUtils.FLOAT;
+    }
+
+    /**
+     * Reads 4 bytes and converts it to JAVA float from LITTLE ENDIAN float
+     *
+     * @return JAVA native float
+     * @throws IOException may fail
+     */
+    @Override
+    public float readFloat() throws IOException {
+        ensureRemaining(4);
+
+        return buffer.getFloat();
+    }
+
+    /**
+     * Reads 2 bytes as BIG ENDIAN signed short
+     *
+     * @return JAVA native short
+     * @throws IOException may fail
+     * @see java.io.RandomAccessFile#readShort()
+     */
+    @Override
+    public short readRealShort() throws IOException {
+        return Short.reverseBytes(this.readShort());
+    }
+
+    @Override
+    public float readIntegerAsDouble() throws IOException {
+        return this.readInteger() / ConversionUtils.DOUBLE;
+    }
+
+    /**
+     * Reads bytes from a file and converts them to a string
+     *
+     * @param length string length
+     * @return fresh String
+     * @throws IOException the reading may fail
+     * @see ConversionUtils#toString(byte[])
+     */
+    @Override
+    public String readString(int length) throws IOException {
+        return decode(length, length, CHARSET);
+    }
+
+    /**
+     * Reads bytes from a file and converts them to a string
+     *
+     * @param length string length
+     * @return fresh String
+     * @throws IOException the reading may fail
+     * @see ConversionUtils#toStringUtf16(byte[])
+     */
+    @Override
+    public String readStringUtf16(int length) throws IOException {
+        return decode(length * 2, length * 2, StandardCharsets.UTF_16LE);
+    }
+
+    /**
+     * Reads strings of varying length (UTF16 NULL terminated) from the file
+     *
+     * @param length max length of string
+     * @return string read from the file
+     * @throws IOException
+     */
+    @Override
+    public String readVaryingLengthStringUtf16(int length) throws IOException {
+        ensureRemaining(length * 2);
+
+        int start = buffer.position();
+        int stringLength = 0;
+        while (stringLength < length * 2 - 1
+                && (buffer.get(start + stringLength) != 0 || buffer.get(start + stringLength + 1) != 0)) {
+            stringLength += 2;
+        }
+
+        return decode(stringLength, length * 2, StandardCharsets.UTF_16LE);
+    }
+
+    /**
+     * Reads strings of varying length (ASCII NULL terminated) from the file
+     *
+     * @param numberOfStrings number of Strings to read
+     * @return list of strings read from the file
+     * @throws IOException
+     */
+    @Override
+    public List<String> readVaryingLengthStrings(int numberOfStrings) throws IOException {
+        List<String> strings = new ArrayList<>(numberOfStrings);
+
+        for (int i = 0; i < numberOfStrings; i++) {
+
+            // Read until 0 byte, the terminator is required here
+            int start = buffer.position();
+            int stringLength = 0;
+            do {
+                ensureRemaining(stringLength + 1);
+            } while (buffer.get(start + stringLength++) != 0);
+
+            strings.add(decode(stringLength - 1, stringLength, CHARSET));
+        }
+
+        return strings;
+    }
+
+    /**
+     * Reads string of varying length (ASCII NULL terminated) from the file
+     *
+     * @param length bytes to reed from file
+     * @return string read from the file
+     * @throws java.io.IOException
+     */
+    @Override
+    public String readVaryingLengthString(int length) throws IOException {
+        ensureRemaining(length);
+
+        int start = buffer.position();
+        int stringLength = 0;
+        while (stringLength < length && buffer.get(start + stringLength) != 0) {
+            stringLength++;
+        }
+
+        return decode(stringLength, length, CHARSET);
+    }
+
+    /**
+     * Decodes a string from the current position and moves the file pointer
+     *
+     * @param length the string length in bytes
+     * @param advance the bytes to move the file pointer by
+     * @param charset the string charset
+     * @return fresh String
+     */
+    private String decode(int length, int advance, Charset charset) throws IOException {
+        ensureRemaining(advance);
+
+        String result;
+        if (buffer.hasArray()) {
+            result = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, charset);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            result = new String(bytes, charset);
+        }
+        buffer.position(buffer.position() + advance);
+
+        return result;
+    }
+
+    /**
+     * Reads a DK2 style timestamp
+     *
+     * @return the date in current locale
+     * @throws IOException may fail
+     */
+    @Override
+    public Date readTimestamp() throws IOException {
+        // Dates are in UTC
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        cal.set(Calendar.YEAR, this.readUnsignedShort());
+        cal.set(Calendar.DAY_OF_MONTH, this.readUnsignedByte());
+        cal.set(Calendar.MONTH, this.readUnsignedByte());
+        this.skipBytes(2);
+        cal.set(Calendar.HOUR_OF_DAY, this.readUnsignedByte());
+        cal.set(Calendar.MINUTE, this.readUnsignedByte());
+        cal.set(Calendar.SECOND, this.readUnsignedByte());
+        this.skipBytes(1);
+
+        return cal.getTime();
+    }
+
+    @Override
+    public <E extends Enum & IValueEnum> E readIntegerAsEnum(Class<E> enumeration) throws IOException {
+        return ConversionUtils.parseEnum(this.readUnsignedInteger(), enumeration);
+    }
+
+    @Override
+    public <E extends Enum & IValueEnum> E readShortAsEnum(Class<E> enumeration) throws IOException {
+        return ConversionUtils.parseEnum(this.readUnsignedShort(), enumeration);
+    }
+
+    @Override
+    public <E extends Enum & IValueEnum> E readByteAsEnum(Class<E> enumeration) throws IOException {
+        return ConversionUtils.parseEnum(this.readUnsignedByte(), enumeration);
+    }
+
+    @Override
+    public <E extends Enum<E> & IFlagEnum> EnumSet<E> readIntegerAsFlag(Class<E> enumeration) throws IOException {
+        return ConversionUtils.parseFlagValue(this.readUnsignedIntegerAsLong(), enumeration);
+    }
+
+    @Override
+    public <E extends Enum<E> & IFlagEnum> EnumSet<E> readShortAsFlag(Class<E> enumeration) throws IOException {
+        return ConversionUtils.parseFlagValue(this.readUnsignedShort(), enumeration);
+    }
+
+    @Override
+    public <E extends Enum<E> & IFlagEnum> EnumSet<E> readByteAsFlag(Class<E> enumeration) throws IOException {
+        return ConversionUtils.parseFlagValue(this.readUnsignedByte(), enumeration);
+    }
+
+    /**
+     * Change this function to skipBytes when all resources will be decoded
+     *
+     * @param size number of bytes
+     * @throws IOException
+     * @deprecated
+     */
+    @Deprecated
+    @Override
+    public void readAndCheckNull(int size) throws IOException {
+        ensureRemaining(size);
+
+        for (int i = 0; i < size; i++) {
+            byte b = buffer.get();
+            if (b != 0) {
+                LOGGER.log(Level.WARNING, "Value not 0! Was {0}!", b);
+            }
+        }
+    }
+
+    @Override
+    public int skipBytes(int size) throws IOException {
+        if (size > buffer.remaining()) {
+            String message = "Error skipping bytes. Expect %s bytes and %s given";
+            throw new IOException(String.format(message, size, buffer.remaining()));
+        }
+        buffer.position(buffer.position() + size);
+
+        return size;
+    }
+
+    @Override
+    public long getFilePointer() throws IOException {
+        return buffer.position();
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+        if (pos < 0 || pos > buffer.limit()) {
+            String message = "Can not seek to %s. The length is %s";
+            throw new EOFException(String.format(message, pos, buffer.limit()));
+        }
+        buffer.position((int) pos);
+    }
+
+    @Override
+    public long length() throws IOException {
+        return buffer.limit();
+    }
+
+    /**
+     * Not all the data types are of the length that suits us, do our best to ignore it<br>
+     * Skips the file to the correct position after an item is read<br>
+     * <b>Use this directly with Things & Triggers!</b>
+     *
+     * @param itemSize the item size
+     * @param offset   the file offset before the last item was read
+     * @throws java.io.IOException
+     * @see ResourceReader#checkOffset(long, long)
+     */
+    @Override
+    public void checkOffset(long itemSize, long offset) throws IOException {
+        long expected = offset + itemSize;
+        if (this.getFilePointer() != expected) {
+            LOGGER.log(Level.WARNING, "Record size differs from expected! File offset is {0} and should be {1}!",
+                    new Object[]{this.getFilePointer(), expected});
+            this.seek(expected);
+        }
+    }
+
+    /**
+     * End of file
+     *
+     * @return true if filepointer >= length of file
+     * @throws IOException
+     */
+    @Override
+    public boolean isEof() throws IOException {
+        return !buffer.hasRemaining();
+    }
+
+    @Override
+    public void close() {
+
+        // Nothing to release, the mapped buffer is freed with the reader
+    }
+}
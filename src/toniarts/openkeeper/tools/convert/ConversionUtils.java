@@ -18,8 +18,17 @@ package toniarts.openkeeper.tools.convert;
 
 import com.jme3.math.Vector3f;
 
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.RenderedImage;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.Charset;
@@ -42,6 +51,7 @@ public class ConversionUtils {
     private static final PathTree PATH_CACHE = new PathTree();
     private static final Object FILENAME_LOCK = new Object();
     private static final String QUOTED_FILE_SEPARATOR = Matcher.quoteReplacement(File.separator);
+    private static final float PNG_COMPRESSION_QUALITY = 0.85f; // Maps to deflate level 1
 
     public static final float FLOAT = 4096f; // or DIVIDER_FLOAT Fixed Point Single Precision Divider
     public static final float DOUBLE = 65536f; // or DIVIDER_DOUBLE Fixed Point Double Precision Divider
@@ -137,6 +147,44 @@ public class ConversionUtils {
         return new String(bytes, Charset.forName("UTF_16LE"));
     }
 
+    /**
+     * Writes the image as PNG. Uses a fast compression level, the converted
+     * textures are read far less often than they are written during the
+     * conversion.
+     *
+     * @param image the image to write
+     * @param output the output stream
+     * @throws IOException may fail
+     */
+    public static void writePng(RenderedImage image, OutputStream output) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        try (ImageOutputStream ios = ImageIO.createImageOutputStream(output)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(PNG_COMPRESSION_QUALITY);
+            }
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Writes the image as PNG file
+     *
+     * @param image the image to write
+     * @param file the file to write to
+     * @throws IOException may fail
+     * @see #writePng(RenderedImage, OutputStream)
+     */
+    public static void writePng(RenderedImage image, File file) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            writePng(image, output);
+        }
+    }
+
     /**
      * Converts JAVAX 3f vector to JME vector (also converts the coordinate
      * system)
@@ -35,11 +35,13 @@ import toniarts.openkeeper.animation.Pose;
 import toniarts.openkeeper.animation.PoseTrack;
 import toniarts.openkeeper.animation.PoseTrack.PoseFrame;
 import toniarts.openkeeper.tools.convert.kmf.*;
+import toniarts.openkeeper.tools.convert.wad.WadAssetLocator;
 import toniarts.openkeeper.tools.modelviewer.ModelViewer;
 import toniarts.openkeeper.utils.PathUtils;
 import toniarts.openkeeper.utils.TangentBinormalGenerator;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.logging.Level;
@@ -124,7 +126,7 @@ public class KmfModelLoader implements AssetLoader {
             kmfFile = ((KmfAssetInfo) assetInfo).getKmfFile();
             generateMaterialFile = ((KmfAssetInfo) assetInfo).isGenerateMaterialFile();
         } else {
-            kmfFile = new KmfFile(inputStreamToFile(assetInfo.openStream(), assetInfo.getKey().getName()));
+            kmfFile = new KmfFile(readAsset(assetInfo), assetInfo.getKey().getName());
         }
 
         //Create a root
@@ -169,30 +171,32 @@ public class KmfModelLoader implements AssetLoader {
     }
 
     /**
-     * Converts input stream to a file by writing it to a temp file (yeah...)
+     * Reads the whole asset to memory for parsing
      *
-     * @param is     the InputStream
-     * @param prefix temp file prefix
-     * @return random access file
+     * @param assetInfo the asset info
+     * @return the asset contents
      * @throws IOException
      */
-    public static File inputStreamToFile(InputStream is, String prefix) throws IOException {
-        File tempFile = File.createTempFile(prefix, "kmf");
-        tempFile.deleteOnExit();
+    private static ByteBuffer readAsset(AssetInfo assetInfo) throws IOException {
 
-        //Write the file
-        try (BufferedOutputStream output = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+        // Straight from the WAD
+        if (assetInfo instanceof WadAssetLocator.WadAssetInfo) {
+            return ByteBuffer.wrap(((WadAssetLocator.WadAssetInfo) assetInfo).getData());
+        }
+
+        try (InputStream is = assetInfo.openStream();
+                ByteArrayOutputStream output = new ByteArrayOutputStream()) {
 
-            //Write in blocks
-            byte[] buffer = new byte[2048];
+            //Read in blocks
+            byte[] buffer = new byte[8192];
             int tmp;
 
             while ((tmp = is.read(buffer)) != -1) {
                 output.write(buffer, 0, tmp);
             }
-        }
 
-        return tempFile;
+            return ByteBuffer.wrap(output.toByteArray());
+        }
     }
 
     /**
@@ -456,8 +460,9 @@ public class KmfModelLoader implements AssetLoader {
                 frameList.add(f);
             }
 
-            // Create a pose track for this mesh
+            // Create a pose track for this mesh, bake the frames for GPU morphing
             PoseTrack poseTrack = new PoseTrack(index, times, frameList.toArray(new PoseFrame[0]));
+            poseTrack.bakeMorphFrames(BufferUtils.createFloatBuffer(vertices));
             poseTracks.add(poseTrack);
 
             // Create lod levels
@@ -471,6 +476,13 @@ public class KmfModelLoader implements AssetLoader {
             mesh.setBuffer(Type.TexCoord, 2, BufferUtils.createFloatBuffer(texCoord));
             mesh.setBuffer(Type.Normal, 3, BufferUtils.createFloatBuffer(normals));
             mesh.setBuffer(Type.BindPoseNormal, 3, BufferUtils.createFloatBuffer(normals));
+            if (poseTrack.getMorphFrames() != null) {
+                float[] vertexIndices = new float[vertices.length];
+                for (int vertexIndex = 0; vertexIndex < vertexIndices.length; vertexIndex++) {
+                    vertexIndices[vertexIndex] = vertexIndex;
+                }
+                mesh.setBuffer(PoseTrack.MORPH_INDEX_BUFFER, 1, vertexIndices);
+            }
             mesh.setStreamed();
 
             // Create geometry
@@ -590,6 +602,36 @@ public class KmfModelLoader implements AssetLoader {
         material.setTransparent(kmfMaterial.getFlag().contains(toniarts.openkeeper.tools.convert.kmf.Material.MaterialFlag.HAS_ALPHA) || kmfMaterial.getFlag().contains(toniarts.openkeeper.tools.convert.kmf.Material.MaterialFlag.ALPHA_ADDITIVE));
     }
 
+    /**
+     * Registers the materials of an already converted model to the material
+     * cache. So the models converted after it use the very same material
+     * files instead of generating them again.
+     *
+     * @param kmfFile the KMF file of the converted model
+     * @throws IOException if the material files can't be resolved
+     */
+    public static void registerMaterials(KmfFile kmfFile) throws IOException {
+        if (kmfFile.getMaterials() == null) {
+            return;
+        }
+
+        for (toniarts.openkeeper.tools.convert.kmf.Material mat : kmfFile.getMaterials()) {
+            if (materialCache.containsKey(mat)) {
+                continue;
+            }
+
+            // The first one, like when generating
+            String fileName = ConversionUtils.stripFileName(mat.getName());
+            if (mat.getTextures().size() > 1) {
+                fileName = fileName.concat(MATERIAL_ALTERNATIVE_TEXTURE_SUFFIX_SEPARATOR).concat("0");
+            }
+            File file = new File(AssetsConverter.getAssetsFolder().concat(AssetsConverter.MATERIALS_FOLDER.concat(File.separator).concat(fileName).concat(".j3m"))).getCanonicalFile();
+            if (file.exists()) {
+                materialCache.put(mat, AssetsConverter.MATERIALS_FOLDER.concat("/").concat(file.getName()));
+            }
+        }
+    }
+
     /**
      * <i>Extracts</i> the materials from the KMF file
      *
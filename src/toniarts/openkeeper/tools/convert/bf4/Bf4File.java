@@ -17,8 +17,8 @@
 package toniarts.openkeeper.tools.convert.bf4;
 
 import org.jetbrains.annotations.NotNull;
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 import toniarts.openkeeper.tools.convert.bf4.Bf4Entry.FontEntryFlag;
 
 import javax.imageio.stream.MemoryCacheImageInputStream;
@@ -69,7 +69,7 @@ public class Bf4File implements Iterable<Bf4Entry> {
     public Bf4File(File file) {
 
         // Read the file
-        try (IResourceReader rawBf4 = new ResourceReader(file)) {
+        try (IResourceReader rawBf4 = new BufferedResourceReader(file)) {
 
             // Check the header
             String header = rawBf4.readString(4);
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.tools.convert.conversion;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the conversion of the individual entries of the original game files
+ * in parallel. The idle threads steal work from the busy ones, so the work
+ * spreads over all the cores no matter how the entries are split between the
+ * archives.<br>
+ * The entries are decoded in memory, and some of them are big. So the
+ * submitter declares the memory each entry needs and is blocked when the
+ * entries in flight would exceed the memory budget.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class ConversionExecutor {
+
+    /**
+     * The memory budget is counted in kilobytes, to fit the semaphore
+     */
+    private static final int PERMIT_SIZE = 1024;
+    private static final Logger LOGGER = Logger.getLogger(ConversionExecutor.class.getName());
+
+    private final ForkJoinPool pool;
+    private final Semaphore memoryBudget;
+    private final int maxPermits;
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    /**
+     * Creates a new executor with a thread per core
+     *
+     * @param name the thread name prefix
+     * @param memoryBudget the maximum amount of memory the entries in flight
+     * may use, in bytes
+     */
+    public ConversionExecutor(String name, long memoryBudget) {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), p -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName(name + "_" + threadIndex.incrementAndGet());
+            return thread;
+        }, null, true);
+        this.maxPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, memoryBudget / PERMIT_SIZE));
+        this.memoryBudget = new Semaphore(maxPermits);
+    }
+
+    /**
+     * Submits an entry for conversion. Blocks while there is not enough
+     * memory budget left for the entry. An entry larger than the whole budget
+     * waits until it can run alone.
+     *
+     * @param memoryNeeded the estimated memory the conversion needs, in bytes
+     * @param task the conversion
+     */
+    public void submit(long memoryNeeded, Runnable task) {
+        if (failure.get() != null) {
+            return;
+        }
+
+        int permits = (int) Math.max(1, Math.min(maxPermits, memoryNeeded / PERMIT_SIZE));
+        memoryBudget.acquireUninterruptibly(permits);
+        pool.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.SEVERE, "Conversion failed!", e);
+                failure.compareAndSet(null, e);
+            } finally {
+                memoryBudget.release(permits);
+            }
+        });
+    }
+
+    /**
+     * Waits for all the submitted conversions to complete and shuts down the
+     * executor
+     *
+     * @throws RuntimeException the first failure of the conversions, if any
+     */
+    public void awaitCompletion() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the conversion!", e);
+        }
+
+        RuntimeException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.tools.convert.conversion;
+
+import toniarts.openkeeper.tools.convert.AssetsConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the converted assets of a conversion process. For each
+ * converted asset, the hash of its source data is stored. So on the next
+ * conversion only the assets whose source has changed, or that are missing,
+ * need to be converted again. The manifest is saved every now and then during
+ * the conversion, so an interrupted conversion can continue from where it
+ * was left.<br>
+ * Changing the conversion process version invalidates the whole manifest.
+ * Thread safe.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class ConversionManifest {
+
+    private static final String MANIFEST_FOLDER = "Manifests";
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_INPUTS = "inputs";
+    private static final String KEY_ASSET_PREFIX = "asset.";
+    private static final int SAVE_INTERVAL = 100;
+    private static final Logger LOGGER = Logger.getLogger(ConversionManifest.class.getName());
+
+    private final AssetsConverter.ConvertProcess process;
+    private final Path file;
+    private final Path assetsFolder;
+    private final Map<String, String> assets = new ConcurrentHashMap<>();
+    private String inputs;
+    private int unsavedChanges;
+
+    private ConversionManifest(AssetsConverter.ConvertProcess process) {
+        this.process = process;
+        this.assetsFolder = Paths.get(AssetsConverter.getAssetsFolder());
+        this.file = assetsFolder.resolve(MANIFEST_FOLDER).resolve(process.name().toLowerCase() + ".properties");
+    }
+
+    /**
+     * Loads the manifest of the given conversion process. If there is none,
+     * or it is of a different conversion version, an empty manifest is
+     * returned.
+     *
+     * @param process the conversion process
+     * @return the manifest
+     */
+    public static ConversionManifest load(AssetsConverter.ConvertProcess process) {
+        ConversionManifest manifest = new ConversionManifest(process);
+        if (!Files.exists(manifest.file)) {
+            return manifest;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream is = Files.newInputStream(manifest.file)) {
+            properties.load(is);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the conversion manifest " + manifest.file + "!", e);
+            return manifest;
+        }
+
+        // The assets of the other versions are not valid anymore
+        if (!Integer.toString(process.getVersion()).equals(properties.getProperty(KEY_VERSION))) {
+            return manifest;
+        }
+        manifest.inputs = properties.getProperty(KEY_INPUTS);
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(KEY_ASSET_PREFIX)) {
+                manifest.assets.put(key.substring(KEY_ASSET_PREFIX.length()), properties.getProperty(key));
+            }
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Is the manifest empty, i.e. nothing converted with the current
+     * conversion version
+     *
+     * @return true if nothing has been converted
+     */
+    public boolean isEmpty() {
+        return assets.isEmpty();
+    }
+
+    /**
+     * See if the asset has been converted from the given source and is still
+     * intact
+     *
+     * @param output the converted asset file
+     * @param sourceHash the hash of the source data
+     * @return true if the asset does not need to be converted again
+     */
+    public boolean isUpToDate(File output, String sourceHash) {
+        String entry = assets.get(getAssetKey(output));
+        return entry != null && entry.equals(getEntry(output, sourceHash));
+    }
+
+    /**
+     * Marks the asset converted
+     *
+     * @param output the converted asset file, must exist
+     * @param sourceHash the hash of the source data
+     */
+    public void setConverted(File output, String sourceHash) {
+        assets.put(getAssetKey(output), getEntry(output, sourceHash));
+
+        synchronized (this) {
+
+            // No longer complete, and save from time to time
+            inputs = null;
+            if (++unsavedChanges >= SAVE_INTERVAL) {
+                save();
+            }
+        }
+    }
+
+    /**
+     * Is the whole conversion complete with the given inputs, and all the
+     * converted assets intact
+     *
+     * @param inputs the inputs of the conversion process
+     * @return true if there is no need to run the conversion
+     * @see #getInputs(List)
+     */
+    public synchronized boolean isComplete(String inputs) {
+        if (this.inputs == null || !this.inputs.equals(inputs) || assets.isEmpty()) {
+            return false;
+        }
+
+        for (Map.Entry<String, String> entry : assets.entrySet()) {
+            File output = assetsFolder.resolve(entry.getKey()).toFile();
+            if (!entry.getValue().endsWith(":" + output.length()) || !output.exists()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Marks the whole conversion complete and saves the manifest
+     *
+     * @param inputs the inputs of the conversion process
+     * @see #getInputs(List)
+     */
+    public synchronized void setComplete(String inputs) {
+        this.inputs = inputs;
+        save();
+    }
+
+    /**
+     * Saves the manifest
+     */
+    public synchronized void save() {
+        unsavedChanges = 0;
+
+        Properties properties = new Properties();
+        properties.setProperty(KEY_VERSION, Integer.toString(process.getVersion()));
+        if (inputs != null) {
+            properties.setProperty(KEY_INPUTS, inputs);
+        }
+        for (Map.Entry<String, String> entry : assets.entrySet()) {
+            properties.setProperty(KEY_ASSET_PREFIX + entry.getKey(), entry.getValue());
+        }
+
+        // Write to a temporary file first, so that an interruption doesn't leave us with a broken manifest
+        try {
+            Files.createDirectories(file.getParent());
+            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream os = Files.newOutputStream(tempFile)) {
+                properties.store(os, process + " conversion manifest");
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the conversion manifest " + file + "!", e);
+        }
+    }
+
+    private String getAssetKey(File output) {
+        return assetsFolder.relativize(output.toPath().toAbsolutePath()).toString().replace(File.separatorChar, '/');
+    }
+
+    private static String getEntry(File output, String sourceHash) {
+        return sourceHash + ":" + output.length();
+    }
+
+    /**
+     * Calculates a hash of the source data
+     *
+     * @param data the source data
+     * @return the hash as a hex string
+     */
+    public static String hash(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to hash the data!", e);
+        }
+    }
+
+    /**
+     * Gets a fingerprint of the input files of a conversion process. The
+     * files are identified by their size and modification time, not to read
+     * them all just to see that there is nothing to do.
+     *
+     * @param files the input files
+     * @return the fingerprint
+     */
+    public static String getInputs(List<File> files) {
+        StringBuilder sb = new StringBuilder();
+        for (File file : files) {
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(file.getName()).append(':').append(file.length()).append(':').append(file.lastModified());
+        }
+        return sb.toString();
+    }
+
+}
@@ -17,9 +17,14 @@
 package toniarts.openkeeper.tools.convert.conversion.task;
 
 import toniarts.openkeeper.tools.convert.AssetsConverter;
+import toniarts.openkeeper.tools.convert.conversion.ConversionManifest;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Base class for conversion tasks
@@ -33,6 +38,9 @@ public abstract class ConversionTask implements IConversionTask {
     protected final boolean overwriteData;
 
     private final List<IConversionTaskUpdate> listeners = new ArrayList<>();
+    private ConversionManifest manifest;
+
+    private static final Logger LOGGER = Logger.getLogger(ConversionTask.class.getName());
 
     public ConversionTask(String dungeonKeeperFolder, String destination, boolean overwriteData) {
         this.dungeonKeeperFolder = dungeonKeeperFolder;
@@ -44,10 +52,52 @@ public abstract class ConversionTask implements IConversionTask {
 
     protected abstract void internalExecuteTask();
 
+    /**
+     * Get the original game files this conversion reads. If the task lists
+     * its source files, it is skipped when the files and the converted assets
+     * have not changed since the last conversion.
+     *
+     * @return the source files, empty if the task doesn't keep a manifest
+     */
+    protected List<File> getSourceFiles() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Get the manifest of the converted assets of this task
+     *
+     * @return the conversion manifest
+     */
+    protected synchronized ConversionManifest getManifest() {
+        if (manifest == null) {
+            manifest = ConversionManifest.load(getConvertProcess());
+        }
+        return manifest;
+    }
+
+    /**
+     * See if the sources and the converted assets are the same as on the last
+     * completed conversion
+     *
+     * @return true if there is nothing to convert
+     */
+    public boolean isUpToDate() {
+        List<File> sourceFiles = getSourceFiles();
+        return !sourceFiles.isEmpty() && getManifest().isComplete(ConversionManifest.getInputs(sourceFiles));
+    }
+
     @Override
     public final void executeTask() {
         try {
-            internalExecuteTask();
+            List<File> sourceFiles = getSourceFiles();
+            if (isUpToDate()) {
+                LOGGER.log(Level.INFO, "{0} is up to date, skipping!", getConvertProcess());
+            } else {
+                internalExecuteTask();
+                if (!sourceFiles.isEmpty()) {
+                    getManifest().setComplete(ConversionManifest.getInputs(sourceFiles));
+                }
+            }
 
             for (IConversionTaskUpdate listener : listeners) {
                 listener.onComplete(getConvertProcess());
@@ -18,19 +18,25 @@ package toniarts.openkeeper.tools.convert.conversion.task;
 
 import toniarts.openkeeper.tools.convert.AssetsConverter;
 import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.conversion.ConversionExecutor;
+import toniarts.openkeeper.tools.convert.conversion.ConversionManifest;
 import toniarts.openkeeper.tools.convert.map.GameLevel;
 import toniarts.openkeeper.tools.convert.map.KwdFile;
+import toniarts.openkeeper.tools.convert.map.MapDataTypeEnum;
 import toniarts.openkeeper.utils.AssetUtils;
 import toniarts.openkeeper.utils.MapThumbnailGenerator;
 import toniarts.openkeeper.utils.PathUtils;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,6 +50,8 @@ import java.util.logging.Logger;
 public class ConvertMapThumbnails extends ConversionTask {
 
     private static final Logger LOGGER = Logger.getLogger(ConvertMapThumbnails.class.getName());
+    private static final long MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
+    private static final long THUMBNAIL_MEMORY = 4 * 1024 * 1024;
 
     public ConvertMapThumbnails(String dungeonKeeperFolder, String destination, boolean overwriteData) {
         super(dungeonKeeperFolder, destination, overwriteData);
@@ -63,39 +71,77 @@ public class ConvertMapThumbnails extends ConversionTask {
     private void generateMapThumbnails(String dungeonKeeperFolder, String destination) {
         LOGGER.log(Level.INFO, "Generating map thumbnails to: {0}", destination);
         updateStatus(null, null);
+        ConversionManifest manifest = getManifest();
         File destFolder = new File(destination);
-        AssetUtils.deleteFolder(destFolder);
+        if (manifest.isEmpty()) {
+            AssetUtils.deleteFolder(destFolder);
+        }
 
         // Make sure it exists
         destFolder.mkdirs();
-        try {
-
-            // Get the skirmish/mp maps
-            File f = new File(dungeonKeeperFolder + PathUtils.DKII_MAPS_FOLDER);
-            File[] files = f.listFiles((dir, name) -> name.toLowerCase().endsWith(".kwd"));
-
-            // Read them
-            List<KwdFile> maps = new ArrayList<>(files.length);
-            for (File file : files) {
-                KwdFile kwd = new KwdFile(dungeonKeeperFolder, file, false);
-                if (kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_SKIRMISH_LEVEL)
-                        || kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_MULTIPLAYER_LEVEL)) {
-                    maps.add(kwd);
+
+        // Get the maps
+        File[] files = new File(dungeonKeeperFolder + PathUtils.DKII_MAPS_FOLDER).listFiles((dir, name) -> name.toLowerCase().endsWith(".kwd"));
+        if (files == null) {
+            LOGGER.log(Level.WARNING, "Failed to list the maps for the thumbnails!"); // Not fatal
+            return;
+        }
+
+        // Each map on its own, spread over all the cores
+        AtomicInteger progress = new AtomicInteger(0);
+        int total = files.length;
+        ConversionExecutor executor = new ConversionExecutor("MapThumbnailGenerator", MEMORY_BUDGET);
+        for (File file : files) {
+            executor.submit(THUMBNAIL_MEMORY, () -> {
+                try {
+                    generateMapThumbnail(dungeonKeeperFolder, file, destination, manifest);
+                } catch (Exception ex) {
+                    String msg = "Failed to process the map thumbnail of " + file + " to " + destination + "!";
+                    LOGGER.log(Level.WARNING, msg, ex); // Not fatal
                 }
-            }
-
-            // Go through the map files
-            int i = 0;
-            int total = maps.size();
-            for (KwdFile kwd : maps) {
-                updateStatus(i, total);
-                generateMapThumbnail(kwd, destination);
-                i++;
-            }
-        } catch (Exception ex) {
-            String msg = "Failed to process the map thumbnails to " + destination + "!";
-            LOGGER.log(Level.WARNING, msg, ex); // Not fatal
+                updateStatus(progress.incrementAndGet(), total);
+            });
+        }
+        executor.awaitCompletion();
+    }
+
+    /**
+     * Generates a map thumbnail out of the given map file, if it is a
+     * skirmish/mp map and not already generated from the very same map data.
+     * Only the map tiles and the terrain are read.
+     *
+     * @param dungeonKeeperFolder DK II main folder
+     * @param file the map file
+     * @param destination the folder to save to
+     * @param manifest the conversion manifest
+     * @throws IOException may fail
+     */
+    private static void generateMapThumbnail(String dungeonKeeperFolder, File file, String destination, ConversionManifest manifest) throws IOException {
+        KwdFile kwd = new KwdFile(dungeonKeeperFolder, file, false);
+        if (!kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_SKIRMISH_LEVEL)
+                && !kwd.getGameLevel().getLvlFlags().contains(GameLevel.LevFlag.IS_MULTIPLAYER_LEVEL)) {
+            return;
+        }
+
+        // The level info and the map tiles make the thumbnail
+        File output = getThumbnailFile(kwd, destination);
+        ByteArrayOutputStream mapData = new ByteArrayOutputStream();
+        mapData.write(Files.readAllBytes(file.toPath()));
+        String mapFile = kwd.getGameLevel().getFile(MapDataTypeEnum.MAP);
+        if (mapFile != null) {
+            mapData.write(Files.readAllBytes(Paths.get(ConversionUtils.getRealFileName(dungeonKeeperFolder, mapFile))));
         }
+        String hash = ConversionManifest.hash(mapData.toByteArray());
+        if (manifest.isUpToDate(output, hash)) {
+            return;
+        }
+
+        generateMapThumbnail(kwd, destination);
+        manifest.setConverted(output, hash);
+    }
+
+    private static File getThumbnailFile(KwdFile kwd, String destination) {
+        return new File(destination + ConversionUtils.stripFileName(kwd.getGameLevel().getName()) + ".png");
     }
 
     /**
@@ -110,7 +156,19 @@ public class ConvertMapThumbnails extends ConversionTask {
         // Create the thumbnail & save it
         // TODO maybe image size in Settings ???
         BufferedImage thumbnail = MapThumbnailGenerator.generateMap(kwd, 144, 144, false);
-        ImageIO.write(thumbnail, "png", new File(destination + ConversionUtils.stripFileName(kwd.getGameLevel().getName()) + ".png"));
+        ConversionUtils.writePng(thumbnail, getThumbnailFile(kwd, destination));
+    }
+
+    @Override
+    protected List<File> getSourceFiles() {
+
+        // The level files and the map data files next to them
+        File[] files = new File(dungeonKeeperFolder + PathUtils.DKII_MAPS_FOLDER).listFiles(File::isFile);
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
     }
 
     @Override
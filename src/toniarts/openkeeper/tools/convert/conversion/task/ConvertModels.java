@@ -24,16 +24,30 @@ import org.jetbrains.annotations.NotNull;
 import toniarts.openkeeper.tools.convert.AssetsConverter;
 import toniarts.openkeeper.tools.convert.KmfAssetInfo;
 import toniarts.openkeeper.tools.convert.KmfModelLoader;
+import toniarts.openkeeper.tools.convert.conversion.ConversionManifest;
+import toniarts.openkeeper.tools.convert.kmf.Grop;
 import toniarts.openkeeper.tools.convert.kmf.KmfFile;
 import toniarts.openkeeper.tools.convert.wad.WadFile;
 import toniarts.openkeeper.utils.AssetUtils;
 import toniarts.openkeeper.utils.PathUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -52,6 +66,7 @@ public class ConvertModels extends ConversionTask {
 
     private static final Logger LOGGER = Logger.getLogger(ConvertModels.class.getName());
     private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_PARSED_AHEAD = MAX_THREADS * 4;
 
     private final AssetManager assetManager;
     private final ExecutorService executorService;
@@ -86,54 +101,84 @@ public class ConvertModels extends ConversionTask {
     private void convertModels(String dungeonKeeperFolder, String destination, AssetManager assetManager) {
         LOGGER.log(Level.INFO, "Extracting models to: {0}", destination);
         updateStatus(null, null);
-        AssetUtils.deleteFolder(new File(destination));
 
-        // Create the materials folder or else the material file saving fails
+        // Start from scratch if there is nothing to continue from
+        // Otherwise only the changed models are converted, and their materials with them
+        ConversionManifest manifest = getManifest();
         File materialFolder = new File(getAssetsFolder().concat(AssetsConverter.MATERIALS_FOLDER));
-        AssetUtils.deleteFolder(materialFolder);
+        if (manifest.isEmpty()) {
+            AssetUtils.deleteFolder(new File(destination));
+            AssetUtils.deleteFolder(materialFolder);
+        }
+
+        // Create the materials folder or else the material file saving fails
         materialFolder.mkdirs();
 
         // Meshes are in the data folder, access the packed file
-        WadFile wad = new WadFile(new File(dungeonKeeperFolder + PathUtils.DKII_DATA_FOLDER + "Meshes.WAD"));
-        Map<String, KmfFile> kmfs = new LinkedHashMap<>(wad.getWadFileEntryCount());
-        File tmpdir = new File(System.getProperty("java.io.tmpdir"));
+        WadFile wad = new WadFile(getSourceFiles().get(0));
+        Map<String, ParsedEntry> kmfs = new LinkedHashMap<>(wad.getWadFileEntryCount());
+        Map<String, String> modelHashes = new HashMap<>(wad.getWadFileEntryCount());
         AtomicInteger progress = new AtomicInteger(0);
         int total = wad.getWadFileEntryCount();
-        for (final String entry : wad.getWadFileEntries()) {
+
+        // The entries are parsed ahead in the thread pool, straight from the WAD
+        // The materials are shared between the models, so build the models here in order
+        Deque<Map.Entry<String, Future<ParsedEntry>>> parsedEntries = new ArrayDeque<>(MAX_PARSED_AHEAD);
+        Iterator<String> entries = wad.getWadFileEntries().iterator();
+        while (entries.hasNext() || !parsedEntries.isEmpty()) {
+            while (entries.hasNext() && parsedEntries.size() < MAX_PARSED_AHEAD) {
+                final String entry = entries.next();
+                parsedEntries.add(new AbstractMap.SimpleImmutableEntry<>(entry,
+                        executorService.submit(() -> parseEntry(wad, entry))));
+            }
+            if (parsedEntries.isEmpty()) {
+                break;
+            }
+
+            Map.Entry<String, Future<ParsedEntry>> parsedEntry = parsedEntries.poll();
+            String entry = parsedEntry.getKey();
+            ParsedEntry parsed;
             try {
+                parsed = parsedEntry.getValue().get();
+            } catch (InterruptedException | ExecutionException ex) {
+                LOGGER.log(Level.SEVERE, "Failed to read WAD entry " + entry + "!", ex);
+                throw new RuntimeException("Failed to read WAD entry " + entry + "!", ex);
+            }
 
-                // See if we already have this model
-                if (!overwriteData && new File(destination.concat(entry.substring(0, entry.length() - 4)).concat(".j3o")).exists()) {
-                    LOGGER.log(Level.INFO, "File {0} already exists, skipping!", entry);
-                    updateStatus(progress.incrementAndGet(), total);
-                    continue;
-                }
+            modelHashes.put(getModelName(entry).toLowerCase(), parsed.hash);
 
-                // Extract each file to temp
-                File f = wad.extractFileData(entry, tmpdir.toString());
-                f.deleteOnExit();
+            // If it is a regular model or animation, process it straight away
+            // Leave groups for later (since linking)
+            if (parsed.kmfFile.getType() != KmfFile.Type.MESH && parsed.kmfFile.getType() != KmfFile.Type.ANIM) {
 
-                // Parse
-                final KmfFile kmfFile = new KmfFile(f);
+                // For later processing
+                kmfs.put(entry, parsed);
+                continue;
+            }
 
-                // If it is a regular model or animation, process it straight away
-                // Leave groups for later (since linking)
-                if (kmfFile.getType() == KmfFile.Type.MESH || kmfFile.getType() == KmfFile.Type.ANIM) {
-                    convertModel(assetManager, entry, kmfFile, destination, f, total, progress);
-                } else {
+            if (isConverted(entry, parsed.hash, destination, manifest)) {
 
-                    // For later processing
-                    kmfs.put(entry, kmfFile);
+                // The models converted after this may share its materials
+                try {
+                    KmfModelLoader.registerMaterials(parsed.kmfFile);
+                } catch (IOException ex) {
+                    LOGGER.log(Level.SEVERE, "Failed to register the materials of " + entry + "!", ex);
+                    throw new RuntimeException("Failed to register the materials of " + entry + "!", ex);
                 }
-            } catch (Exception ex) {
-                LOGGER.log(Level.SEVERE, "Failed to create a file for WAD entry " + entry + "!", ex);
-                throw ex;
+                updateStatus(progress.incrementAndGet(), total);
+                continue;
             }
+            convertModel(assetManager, entry, parsed, destination, total, progress);
         }
 
         // And the groups (now they can be linked)
-        for (Map.Entry<String, KmfFile> entry : kmfs.entrySet()) {
-            convertModel(assetManager, entry.getKey(), entry.getValue(), destination, null, total, progress);
+        for (Map.Entry<String, ParsedEntry> entry : kmfs.entrySet()) {
+            ParsedEntry group = new ParsedEntry(getGroupHash(entry.getValue(), modelHashes), entry.getValue().kmfFile);
+            if (isConverted(entry.getKey(), group.hash, destination, manifest)) {
+                updateStatus(progress.incrementAndGet(), total);
+                continue;
+            }
+            convertModel(assetManager, entry.getKey(), group, destination, total, progress);
         }
 
         executorService.shutdown();
@@ -144,22 +189,82 @@ public class ConvertModels extends ConversionTask {
         }
     }
 
+    /**
+     * Reads and parses a single WAD entry. Also the already converted ones
+     * are parsed, their materials are needed by the models converted after
+     * them.
+     *
+     * @param wad the WAD file
+     * @param entry the entry name
+     * @return the parsed entry
+     */
+    private static ParsedEntry parseEntry(WadFile wad, String entry) {
+        byte[] data = wad.getFileBytes(entry);
+
+        return new ParsedEntry(ConversionManifest.hash(data), new KmfFile(ByteBuffer.wrap(data), entry));
+    }
+
+    /**
+     * See if we already have this model
+     *
+     * @param entry the entry name
+     * @param hash the hash of the source data
+     * @param destination destination directory
+     * @param manifest the conversion manifest
+     * @return true if the model doesn't need to be converted
+     */
+    private boolean isConverted(String entry, String hash, String destination, ConversionManifest manifest) {
+        File modelFile = getModelFile(destination, entry);
+        if (!overwriteData && modelFile.exists()) {
+            LOGGER.log(Level.INFO, "File {0} already exists, skipping!", entry);
+            return true;
+        }
+        if (manifest.isUpToDate(modelFile, hash)) {
+            LOGGER.log(Level.INFO, "File {0} is up to date, skipping!", entry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the hash of a group. The group is converted again also when the
+     * models it links change, so their hashes are included.
+     *
+     * @param group the parsed group
+     * @param modelHashes the hashes of the models by their lower case names
+     * @return the hash
+     */
+    private static String getGroupHash(ParsedEntry group, Map<String, String> modelHashes) {
+        StringBuilder sb = new StringBuilder(group.hash);
+        for (Grop grop : group.kmfFile.getGrops()) {
+            sb.append(':').append(modelHashes.get(grop.getName().toLowerCase()));
+        }
+        return ConversionManifest.hash(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String getModelName(String name) {
+
+        // Remove the file extension from the file
+        return name.substring(0, name.length() - 4);
+    }
+
+    private static File getModelFile(String destination, String name) {
+        return new File(destination.concat(getModelName(name)).concat(".j3o"));
+    }
+
     /**
      * Convert a single KMF to JME object
      *
      * @param assetManager assetManager, for finding stuff
      * @param name model name
-     * @param model the loaded KMF model
+     * @param model the parsed KMF model
      * @param destination destination directory
-     * @param kmfFile the actual KMF file reference
      * @param total the total amount to process
      * @param progress current progress
      * @throws RuntimeException May fail
      */
-    private void convertModel(AssetManager assetManager, String name, KmfFile model, String destination, File kmfFile, int total, AtomicInteger progress) throws RuntimeException {
-
-        // Remove the file extension from the file
-        KmfAssetInfo ai = new KmfAssetInfo(assetManager, new AssetKey(name), model, true);
+    private void convertModel(AssetManager assetManager, String name, ParsedEntry model, String destination, int total, AtomicInteger progress) throws RuntimeException {
+        KmfAssetInfo ai = new KmfAssetInfo(assetManager, new AssetKey(name), model.kmfFile, true);
         KmfModelLoader kmfModelLoader = new KmfModelLoader();
         try {
             Node n = (Node) kmfModelLoader.load(ai);
@@ -168,13 +273,9 @@ public class ConvertModels extends ConversionTask {
             executorService.submit(() -> {
                 try {
                     BinaryExporter exporter = BinaryExporter.getInstance();
-                    File file = new File(destination.concat(name.substring(0, name.length() - 4)).concat(".j3o"));
+                    File file = getModelFile(destination, name);
                     exporter.save(n, file);
-
-                    // See if we can just delete the file straight
-                    if (kmfFile != null) {
-                        kmfFile.delete();
-                    }
+                    getManifest().setConverted(file, model.hash);
 
                     updateStatus(progress.incrementAndGet(), total);
                 } catch (Exception ex) {
@@ -190,9 +291,28 @@ public class ConvertModels extends ConversionTask {
         }
     }
 
+    @Override
+    protected List<File> getSourceFiles() {
+        return Collections.singletonList(new File(dungeonKeeperFolder + PathUtils.DKII_DATA_FOLDER + "Meshes.WAD"));
+    }
+
     @Override
     public AssetsConverter.ConvertProcess getConvertProcess() {
         return AssetsConverter.ConvertProcess.MODELS;
     }
 
+    /**
+     * A read WAD entry
+     */
+    private static class ParsedEntry {
+
+        private final String hash;
+        private final KmfFile kmfFile;
+
+        public ParsedEntry(String hash, KmfFile kmfFile) {
+            this.hash = hash;
+            this.kmfFile = kmfFile;
+        }
+    }
+
 }
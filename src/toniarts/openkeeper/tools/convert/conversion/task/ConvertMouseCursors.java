@@ -17,12 +17,17 @@
 package toniarts.openkeeper.tools.convert.conversion.task;
 
 import toniarts.openkeeper.tools.convert.AssetsConverter;
+import toniarts.openkeeper.tools.convert.conversion.ConversionExecutor;
 import toniarts.openkeeper.tools.convert.spr.SprFile;
 import toniarts.openkeeper.tools.convert.wad.WadFile;
 import toniarts.openkeeper.utils.AssetUtils;
 import toniarts.openkeeper.utils.PathUtils;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -38,6 +43,7 @@ import static toniarts.openkeeper.tools.convert.AssetsConverter.getAssetsFolder;
 public class ConvertMouseCursors extends ConversionTask {
 
     private static final Logger LOGGER = Logger.getLogger(ConvertMouseCursors.class.getName());
+    private static final long MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
 
     public ConvertMouseCursors(String dungeonKeeperFolder, String destination, boolean overwriteData) {
         super(dungeonKeeperFolder, destination, overwriteData);
@@ -61,30 +67,45 @@ public class ConvertMouseCursors extends ConversionTask {
 
         // Mouse cursors are PNG files in the Sprite.WAD
         WadFile wadFile = new WadFile(new File(dungeonKeeperFolder + PathUtils.DKII_DATA_FOLDER + "Sprite.WAD"));
-        int i = 0;
+        AtomicInteger progress = new AtomicInteger(0);
         int total = wadFile.getWadFileEntryCount();
         File destinationFolder = new File(getAssetsFolder().concat(SPRITES_FOLDER).concat(File.separator));
         AssetUtils.deleteFolder(destinationFolder);
         destinationFolder.mkdirs();
 
+        // Each sprite file on its own, spread over all the cores
+        ConversionExecutor executor = new ConversionExecutor("SpriteConverter", MEMORY_BUDGET);
         for (String fileName : wadFile.getWadFileEntries()) {
-            updateStatus(i, total);
-            i++;
+            byte[] data = wadFile.getFileBytes(fileName);
 
-            // Extract the file
-            File extracted = wadFile.extractFileData(fileName, destination);
+            // The sprites are decoded to images and PNGs, four bytes per pixel
+            executor.submit(16L * data.length, () -> {
+                if (fileName.toLowerCase().endsWith(".spr")) {
 
-            if (fileName.toLowerCase().endsWith(".spr")) {
-
-                // Extract the spr and delete it afterwards
-                SprFile sprFile = new SprFile(extracted);
-                try {
-                    sprFile.extract(destinationFolder.getPath(), fileName.substring(0, fileName.length() - 4));
-                    extracted.delete();
-                } catch (Exception ex) {
-                    LOGGER.log(Level.SEVERE, "Error Sprite: {0}", ex);
+                    // Extract the spr straight from memory
+                    SprFile sprFile = new SprFile(ByteBuffer.wrap(data), fileName);
+                    try {
+                        sprFile.extract(destinationFolder.getPath(), fileName.substring(0, fileName.length() - 4));
+                    } catch (Exception ex) {
+                        LOGGER.log(Level.SEVERE, "Error Sprite: {0}", ex);
+                    }
+                } else {
+                    writeFile(new File(destination + fileName), data);
                 }
-            }
+                updateStatus(progress.incrementAndGet(), total);
+            });
+        }
+        executor.awaitCompletion();
+    }
+
+    private static void writeFile(File file, byte[] data) {
+        try {
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), data);
+        } catch (IOException ex) {
+
+            // Fug
+            throw new RuntimeException("Failed to write the file " + file + "!", ex);
         }
     }
 
@@ -16,22 +16,23 @@
  */
 package toniarts.openkeeper.tools.convert.conversion.task;
 
-import org.jetbrains.annotations.NotNull;
 import toniarts.openkeeper.tools.convert.AssetsConverter;
 import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.conversion.ConversionExecutor;
+import toniarts.openkeeper.tools.convert.conversion.ConversionManifest;
+import toniarts.openkeeper.tools.convert.textures.enginetextures.EngineTextureEntry;
 import toniarts.openkeeper.tools.convert.textures.enginetextures.EngineTexturesFile;
 import toniarts.openkeeper.tools.convert.textures.loadingscreens.LoadingScreenFile;
 import toniarts.openkeeper.tools.convert.wad.WadFile;
 import toniarts.openkeeper.utils.AssetUtils;
 import toniarts.openkeeper.utils.PathUtils;
 
-import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.TimeUnit;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,23 +47,10 @@ import java.util.regex.Pattern;
 public class ConvertTextures extends ConversionTask {
 
     private static final Logger LOGGER = Logger.getLogger(ConvertTextures.class.getName());
-    private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
-
-    private final ExecutorService executorService;
+    private static final long MEMORY_BUDGET = Runtime.getRuntime().maxMemory() / 4;
 
     public ConvertTextures(String dungeonKeeperFolder, String destination, boolean overwriteData) {
         super(dungeonKeeperFolder, destination, overwriteData);
-
-        this.executorService = Executors.newFixedThreadPool(MAX_THREADS, new ThreadFactory() {
-
-            private final AtomicInteger threadIndex = new AtomicInteger(0);
-
-            @Override
-            public Thread newThread(@NotNull Runnable r) {
-                return new Thread(r, "TexturesConverter_" + threadIndex.incrementAndGet());
-            }
-
-        });
     }
 
     @Override
@@ -79,31 +67,25 @@ public class ConvertTextures extends ConversionTask {
     private void convertTextures(String dungeonKeeperFolder, String destination) {
         LOGGER.log(Level.INFO, "Extracting textures to: {0}", destination);
         updateStatus(null, null);
-        AssetUtils.deleteFolder(new File(destination));
-        EngineTexturesFile etFile = getEngineTexturesFile(dungeonKeeperFolder);
-        WadFile frontEnd;
-        WadFile engineTextures;
-        try {
-            frontEnd = new WadFile(new File(ConversionUtils.getRealFileName(dungeonKeeperFolder, PathUtils.DKII_DATA_FOLDER + "FrontEnd.WAD")));
-            engineTextures = new WadFile(new File(ConversionUtils.getRealFileName(dungeonKeeperFolder, PathUtils.DKII_DATA_FOLDER + "EngineTextures.WAD")));
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to open a WAD file!", e);
+
+        // Start from scratch if there is nothing to continue from
+        ConversionManifest manifest = getManifest();
+        if (manifest.isEmpty()) {
+            AssetUtils.deleteFolder(new File(destination));
         }
+        EngineTexturesFile etFile = getEngineTexturesFile(dungeonKeeperFolder);
+        WadFile frontEnd = new WadFile(getSourceFile(PathUtils.DKII_DATA_FOLDER + "FrontEnd.WAD"));
+        WadFile engineTextures = new WadFile(getSourceFile(PathUtils.DKII_DATA_FOLDER + "EngineTextures.WAD"));
 
         AtomicInteger progress = new AtomicInteger(0);
         int total = etFile.getFileCount() + frontEnd.getWadFileEntries().size() + engineTextures.getWadFileEntries().size();
 
-        // Process each container in its own thread
-        executorService.submit(() -> extractEngineTextureContainer(progress, total, etFile, destination));
-        executorService.submit(() -> extractTextureContainer(progress, total, frontEnd, destination));
-        executorService.submit(() -> extractTextureContainer(progress, total, engineTextures, destination));
-
-        executorService.shutdown();
-        try {
-            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
-        } catch (InterruptedException ex) {
-            LOGGER.log(Level.SEVERE, "Failed to wait textures conversion complete!", ex);
-        }
+        // Process each texture on its own, spread over all the cores
+        ConversionExecutor executor = new ConversionExecutor("TexturesConverter", MEMORY_BUDGET);
+        extractEngineTextureContainer(progress, total, etFile, destination, manifest, executor);
+        extractTextureContainer(progress, total, frontEnd, destination, manifest, executor);
+        extractTextureContainer(progress, total, engineTextures, destination, manifest, executor);
+        executor.awaitCompletion();
     }
 
     /**
@@ -122,7 +104,7 @@ public class ConvertTextures extends ConversionTask {
         }
     }
 
-    private void extractEngineTextureContainer(AtomicInteger progress, int total, EngineTexturesFile etFile, String destination) throws NumberFormatException {
+    private void extractEngineTextureContainer(AtomicInteger progress, int total, EngineTexturesFile etFile, String destination, ConversionManifest manifest, ConversionExecutor executor) throws NumberFormatException {
         Pattern pattern = Pattern.compile("(?<name>\\w+)MM(?<mipmaplevel>\\d)");
         for (String textureFile : etFile) {
 
@@ -130,27 +112,49 @@ public class ConvertTextures extends ConversionTask {
             // highest quality one, so don't bother extracting the other mipmap levels
             Matcher matcher = pattern.matcher(textureFile);
             boolean found = matcher.find();
-            if (found && Integer.parseInt(matcher.group("mipmaplevel")) == 0) {
-                // Highest resolution, extract and rename
-                File f = etFile.extractFileData(textureFile, destination, overwriteData);
-                File newFile = new File(f.toString().replaceFirst("MM" + matcher.group("mipmaplevel"), ""));
-                if (overwriteData && newFile.exists()) {
-                    newFile.delete();
-                } else if (!overwriteData && newFile.exists()) {
-
-                    // Delete the extracted file
-                    LOGGER.log(Level.INFO, "File {0} already exists, skipping!", newFile);
-                    f.delete();
+            if (found && Integer.parseInt(matcher.group("mipmaplevel")) != 0) {
+                updateStatus(progress.incrementAndGet(), total);
+                continue;
+            }
+
+            // The compressed data, the decoded pixels, the image and the PNG
+            EngineTextureEntry entry = etFile.getEntry(textureFile);
+            long memoryNeeded = 16L * entry.getResX() * entry.getResY() + 3L * entry.getSize();
+            executor.submit(memoryNeeded, () -> {
+
+                // See if we have already converted this very texture
+                File output = new File(PathUtils.fixFilePath(destination).concat(textureFile).concat(".png"));
+                if (found) {
+                    output = new File(output.toString().replaceFirst("MM0", ""));
+                }
+                String hash = ConversionManifest.hash(etFile.getRawFileData(textureFile));
+                if (manifest.isUpToDate(output, hash)) {
                     updateStatus(progress.incrementAndGet(), total);
                     return;
                 }
-                f.renameTo(newFile);
-            } else if (!found) {
 
-                // No mipmap levels, just extract
-                etFile.extractFileData(textureFile, destination, overwriteData);
-            }
-            updateStatus(progress.incrementAndGet(), total);
+                if (found) {
+                    // Highest resolution, extract and rename
+                    File f = etFile.extractFileData(textureFile, destination, overwriteData);
+                    if (overwriteData && output.exists()) {
+                        output.delete();
+                    } else if (!overwriteData && output.exists()) {
+
+                        // Delete the extracted file
+                        LOGGER.log(Level.INFO, "File {0} already exists, skipping!", output);
+                        f.delete();
+                        updateStatus(progress.incrementAndGet(), total);
+                        return;
+                    }
+                    f.renameTo(output);
+                } else {
+
+                    // No mipmap levels, just extract
+                    etFile.extractFileData(textureFile, destination, overwriteData);
+                }
+                manifest.setConverted(output, hash);
+                updateStatus(progress.incrementAndGet(), total);
+            });
         }
     }
 
@@ -161,29 +165,64 @@ public class ConvertTextures extends ConversionTask {
      * @param total       total entry number
      * @param wad         wad file
      * @param destination destination directory
+     * @param manifest    the conversion manifest
      */
-    private void extractTextureContainer(AtomicInteger progress, int total, WadFile wad, String destination) {
+    private void extractTextureContainer(AtomicInteger progress, int total, WadFile wad, String destination, ConversionManifest manifest, ConversionExecutor executor) {
         for (final String entry : wad.getWadFileEntries()) {
+            byte[] data = wad.getFileBytes(entry);
+
+            // The loading screens are decoded to images, twice the size with four bytes per pixel
+            long memoryNeeded = entry.endsWith(".444") ? 12L * data.length : 2L * data.length;
+            executor.submit(memoryNeeded, () -> {
+                String hash = ConversionManifest.hash(data);
+
+                // Some of these archives contain .444 files, convert these to PNGs
+                File output = new File(destination + entry);
+                if (entry.endsWith(".444")) {
+                    output = new File(output.getPath().substring(0, output.getPath().length() - 3).concat("png"));
+                }
+                if (manifest.isUpToDate(output, hash)) {
+                    updateStatus(progress.incrementAndGet(), total);
+                    return;
+                }
 
-            // Some of these archives contain .444 files, convert these to PNGs
-            if (entry.endsWith(".444")) {
-                LoadingScreenFile lsf = new LoadingScreenFile(wad.getFileData(entry));
                 try {
-                    File destFile = new File(destination + entry);
-                    String destFilename = destFile.getCanonicalPath();
-                    destFile.getParentFile().mkdirs();
-                    ImageIO.write(lsf.getImage(), "png", new File(destFilename.substring(0, destFilename.length() - 3).concat("png")));
+                    output.getParentFile().mkdirs();
+                    if (entry.endsWith(".444")) {
+                        ByteArrayOutputStream fileData = new ByteArrayOutputStream(data.length);
+                        fileData.write(data, 0, data.length);
+                        LoadingScreenFile lsf = new LoadingScreenFile(fileData);
+                        ConversionUtils.writePng(lsf.getImage(), output);
+                    } else {
+                        Files.write(output.toPath(), data);
+                    }
                 } catch (IOException ex) {
                     throw new RuntimeException("Failed to save the wad entry " + entry + "!", ex);
                 }
-            } else {
-                wad.extractFileData(entry, destination);
-            }
+                manifest.setConverted(output, hash);
 
-            updateStatus(progress.incrementAndGet(), total);
+                updateStatus(progress.incrementAndGet(), total);
+            });
         }
     }
 
+    private File getSourceFile(String fileName) {
+        try {
+            return new File(ConversionUtils.getRealFileName(dungeonKeeperFolder, fileName));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to find the file " + fileName + "!", e);
+        }
+    }
+
+    @Override
+    protected List<File> getSourceFiles() {
+        String engineTextures = "DK2TextureCache".concat(File.separator).concat("EngineTextures");
+        return Arrays.asList(getSourceFile(engineTextures.concat(".dat")),
+                getSourceFile(engineTextures.concat(".dir")),
+                getSourceFile(PathUtils.DKII_DATA_FOLDER + "FrontEnd.WAD"),
+                getSourceFile(PathUtils.DKII_DATA_FOLDER + "EngineTextures.WAD"));
+    }
+
     @Override
     public AssetsConverter.ConvertProcess getConvertProcess() {
         return AssetsConverter.ConvertProcess.TEXTURES;
@@ -16,8 +16,8 @@
  */
 package toniarts.openkeeper.tools.convert.hiscores;
 
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 
 import java.io.File;
 import java.io.IOException;
@@ -43,7 +43,7 @@ public class HiScoresFile {
     public HiScoresFile(File file) {
 
         //Read the file
-        try (IResourceReader data = new ResourceReader(file)) {
+        try (IResourceReader data = new BufferedResourceReader(file)) {
 
             //Read the entries, no header, just entries till the end
             hiScoresEntries = new ArrayList<>();
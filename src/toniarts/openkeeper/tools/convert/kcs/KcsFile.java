@@ -16,8 +16,8 @@
  */
 package toniarts.openkeeper.tools.convert.kcs;
 
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 
 import java.io.File;
 import java.io.IOException;
@@ -49,7 +49,7 @@ public class KcsFile {
     public KcsFile(File file) {
 
         //Read the file
-        try (IResourceReader rawKcs = new ResourceReader(file)) {
+        try (IResourceReader rawKcs = new BufferedResourceReader(file)) {
 
             //Header
             int numOfEntries = rawKcs.readUnsignedInteger();
@@ -17,12 +17,13 @@
 package toniarts.openkeeper.tools.convert.kmf;
 
 import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 
 import javax.vecmath.Vector3f;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -84,9 +85,23 @@ public class KmfFile {
     private static final String KMF_GROP_ELEM = "ELEM";
 
     public KmfFile(File file) {
+        this(openFile(file), file.toString());
+    }
+
+    /**
+     * Reads the KMF from memory, no need to have it on the disk
+     *
+     * @param data the KMF file contents
+     * @param name the file name, for the error messages
+     */
+    public KmfFile(ByteBuffer data, String name) {
+        this(new BufferedResourceReader(data), name);
+    }
+
+    private KmfFile(IResourceReader reader, String name) {
 
         //Read the file
-        try (IResourceReader rawKmf = new ResourceReader(file)) {
+        try (IResourceReader rawKmf = reader) {
 
             //Read the identifier
             checkHeader(rawKmf, KMF_HEADER_IDENTIFIER);
@@ -132,6 +147,14 @@ public class KmfFile {
         } catch (IOException e) {
 
             //Fug
+            throw new RuntimeException("Failed to open the file " + name + "!", e);
+        }
+    }
+
+    private static IResourceReader openFile(File file) {
+        try {
+            return new BufferedResourceReader(file);
+        } catch (IOException e) {
             throw new RuntimeException("Failed to open the file " + file + "!", e);
         }
     }
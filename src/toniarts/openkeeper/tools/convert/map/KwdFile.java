@@ -17,8 +17,8 @@
 package toniarts.openkeeper.tools.convert.map;
 
 import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 import toniarts.openkeeper.tools.convert.map.ArtResource.ArtResourceType;
 import toniarts.openkeeper.tools.convert.map.Creature.*;
 import toniarts.openkeeper.tools.convert.map.Door.DoorFlag;
@@ -81,6 +81,8 @@ public final class KwdFile {
 
     private GameLevel gameLevel;
     private GameMap map;
+    private int mapWidth;
+    private int mapHeight;
     private Map<Short, Player> players;
     private Map<Short, Terrain> terrainTiles;
     private Map<Short, Door> doors;
@@ -105,7 +107,9 @@ public final class KwdFile {
     private Set<Sacrifice> sacrifices;
     private Set<Variable.Unknown> unknownVariables;
     //
-    private boolean loaded = false;
+    private volatile boolean loaded = false;
+    private final Map<MapDataTypeEnum, Section> sections = new EnumMap<>(MapDataTypeEnum.class);
+    private boolean customOverrides = false;
     private Creature imp;
     private Creature dwarf;
     private final String basePath;
@@ -117,7 +121,7 @@ public final class KwdFile {
     /**
      * Constructs a new KWD file reader<br>
      * Reads the whole map and its catalogs (either standard ones or custom
-     * ones)
+     * ones). The sections are read in parallel.
      *
      * @param basePath path to DK II main path (or where ever is the "root")
      * @param file     the KWD file to read
@@ -132,7 +136,8 @@ public final class KwdFile {
      * @param basePath path to DK II main path (or where ever is the "root")
      * @param file     the KWD file to read
      * @param load     whether to actually load the map data, or just get the
-     *                 general info
+     *                 general info. If not loaded, the sections are read on
+     *                 first access
      */
     public KwdFile(String basePath, File file, boolean load) {
 
@@ -145,16 +150,21 @@ public final class KwdFile {
             throw new RuntimeException("Failed to read the file " + file + "!", e);
         }
         this.basePath = PathUtils.fixFilePath(basePath);
+        indexSections();
 
         // See if we need to load the actual data
         if (load) {
             load();
+            mapWidth = map.getWidth();
+            mapHeight = map.getHeight();
         } else {
 
             // We need map width & height if not loaded fully, I couldn't figure out where, except the map data
-            try (IResourceReader data = new ResourceReader(ConversionUtils.getRealFileName(basePath, gameLevel.getFile(MAP)))) {
+            try (IResourceReader data = new BufferedResourceReader(ConversionUtils.getRealFileName(basePath, gameLevel.getFile(MAP)))) {
                 KwdHeader header = readKwdHeader(data);
-                map = new GameMap(header.getWidth(), header.getHeight());
+                mapWidth = header.getWidth();
+                mapHeight = header.getHeight();
+                map = new GameMap(mapWidth, mapHeight);
             } catch (Exception e) {
 
                 //Fug
@@ -164,7 +174,7 @@ public final class KwdFile {
     }
 
     private void readFileContents(File file) throws IOException {
-        try (IResourceReader data = new ResourceReader(file)) {
+        try (IResourceReader data = new BufferedResourceReader(file)) {
             while (data.getFilePointer() < data.length()) {
 
                 // Read header (and put the file pointer to the data start)
@@ -178,6 +188,19 @@ public final class KwdFile {
         }
     }
 
+    /**
+     * Groups the map data files by the section they contain, for reading them
+     * on demand
+     */
+    private void indexSections() {
+        for (FilePath path : gameLevel.getPaths()) {
+            sections.computeIfAbsent(path.getId(), Section::new).paths.add(path);
+            if (path.getId() == MapDataTypeEnum.GLOBALS) {
+                customOverrides = true;
+            }
+        }
+    }
+
     /**
      * Loads the map data
      *
@@ -189,19 +212,21 @@ public final class KwdFile {
                 if (!loaded) {
 
                     // Read the map data first (we store some data to the map)
-                    for (FilePath path : gameLevel.getPaths()) {
-                        if (path.getId() == MapDataTypeEnum.MAP) {
-                            readFilePath(path);
-                            break;
-                        }
-                    }
+                    loadSection(MAP);
 
-                    // Now we have the paths, read all of those in order
-                    for (FilePath path : gameLevel.getPaths()) {
-                        if (path.getId() != MapDataTypeEnum.MAP) {
-                            // Open the file
-                            readFilePath(path);
+                    if (customOverrides) {
+
+                        // The globals contain any sections and override the others, read all in order
+                        for (FilePath path : gameLevel.getPaths()) {
+                            if (path.getId() != MapDataTypeEnum.MAP) {
+                                // Open the file
+                                readFilePath(path);
+                            }
                         }
+                    } else {
+
+                        // The sections are independent of each other
+                        sections.values().parallelStream().forEach(Section::load);
                     }
                     loaded = true;
                 }
@@ -209,6 +234,34 @@ public final class KwdFile {
         }
     }
 
+    /**
+     * Makes sure the given section is loaded, loads it if not. Thread safe.
+     *
+     * @param type the section
+     */
+    private void ensureLoaded(MapDataTypeEnum type) {
+        if (loaded) {
+            return;
+        }
+
+        // With the globals we can't tell which sections are overridden, so all or nothing
+        if (customOverrides) {
+            load();
+            return;
+        }
+
+        // The map first, some of the sections store data to it
+        loadSection(MAP);
+        loadSection(type);
+    }
+
+    private void loadSection(MapDataTypeEnum type) {
+        Section section = sections.get(type);
+        if (section != null) {
+            section.load();
+        }
+    }
+
     private void readFilePath(FilePath path) {
         File file = null;
         try {
@@ -2818,6 +2871,7 @@ public final class KwdFile {
      * @return list of terrain tiles
      */
     public Collection<Terrain> getTerrainList() {
+        ensureLoaded(MapDataTypeEnum.TERRAIN);
         return terrainTiles.values();
     }
 
@@ -2827,6 +2881,7 @@ public final class KwdFile {
      * @return list of objects
      */
     public Collection<GameObject> getObjectList() {
+        ensureLoaded(MapDataTypeEnum.OBJECTS);
         return objects.values();
     }
 
@@ -2836,6 +2891,7 @@ public final class KwdFile {
      * @return list of creatures
      */
     public Collection<Creature> getCreatureList() {
+        ensureLoaded(MapDataTypeEnum.CREATURES);
         return creatures.values();
     }
 
@@ -2846,10 +2902,12 @@ public final class KwdFile {
      * @return the player
      */
     public Player getPlayer(short id) {
+        ensureLoaded(MapDataTypeEnum.PLAYERS);
         return players.get(id);
     }
 
     public Map<Short, Player> getPlayers() {
+        ensureLoaded(MapDataTypeEnum.PLAYERS);
         return players;
     }
 
@@ -2860,6 +2918,7 @@ public final class KwdFile {
      * @return the creature
      */
     public Creature getCreature(short id) {
+        ensureLoaded(MapDataTypeEnum.CREATURES);
         return creatures.get(id);
     }
 
@@ -2903,6 +2962,7 @@ public final class KwdFile {
      * @return the terrain
      */
     public Terrain getTerrain(short id) {
+        ensureLoaded(MapDataTypeEnum.TERRAIN);
         return terrainTiles.get(id);
     }
 
@@ -2913,6 +2973,7 @@ public final class KwdFile {
      * @return the room associated with the terrain ID
      */
     public Room getRoomByTerrain(short id) {
+        ensureLoaded(MapDataTypeEnum.ROOMS);
         return roomsByTerrainId.get(id);
     }
 
@@ -2924,6 +2985,7 @@ public final class KwdFile {
      * @return things list of things you want
      */
     public <T extends Thing> List<T> getThings(Class<T> thingClass) {
+        ensureLoaded(MapDataTypeEnum.THINGS);
         List<T> result = (List<T>) thingsByType.get(thingClass);
         if (result == null) {
             result = Collections.emptyList();
@@ -2938,10 +3000,12 @@ public final class KwdFile {
      * @return the trigger/action
      */
     public Trigger getTrigger(int id) {
+        ensureLoaded(MapDataTypeEnum.TRIGGERS);
         return triggers.get(id);
     }
 
     public Map<Integer, Trigger> getTriggers() {
+        ensureLoaded(MapDataTypeEnum.TRIGGERS);
         return triggers;
     }
 
@@ -2952,6 +3016,7 @@ public final class KwdFile {
      * @return the object
      */
     public GameObject getObject(int id) {
+        ensureLoaded(MapDataTypeEnum.OBJECTS);
         return objects.get((short) id);
     }
 
@@ -2962,6 +3027,7 @@ public final class KwdFile {
      * @return the room
      */
     public Room getRoomById(int id) {
+        ensureLoaded(MapDataTypeEnum.ROOMS);
         return rooms.get((short) id);
     }
 
@@ -2972,6 +3038,7 @@ public final class KwdFile {
      * @return the keeper spell
      */
     public KeeperSpell getKeeperSpellById(int id) {
+        ensureLoaded(MapDataTypeEnum.KEEPER_SPELLS);
         return keeperSpells.get((short) id);
     }
 
@@ -2982,6 +3049,7 @@ public final class KwdFile {
      * @return the trap
      */
     public Trap getTrapById(int id) {
+        ensureLoaded(MapDataTypeEnum.TRAPS);
         return traps.get((short) id);
     }
 
@@ -2992,6 +3060,7 @@ public final class KwdFile {
      * @return the door
      */
     public Door getDoorById(int id) {
+        ensureLoaded(MapDataTypeEnum.DOORS);
         return doors.get((short) id);
     }
 
@@ -3001,6 +3070,7 @@ public final class KwdFile {
      * @return list of all rooms
      */
     public List<Room> getRooms() {
+        ensureLoaded(MapDataTypeEnum.ROOMS);
         List<Room> c = new ArrayList<>(rooms.values());
         Collections.sort(c);
         return c;
@@ -3012,6 +3082,7 @@ public final class KwdFile {
      * @return list of all keeper spells
      */
     public List<KeeperSpell> getKeeperSpells() {
+        ensureLoaded(MapDataTypeEnum.KEEPER_SPELLS);
         List<KeeperSpell> c = new ArrayList<>(keeperSpells.values());
         Collections.sort(c);
         return c;
@@ -3023,6 +3094,7 @@ public final class KwdFile {
      * @return list of all doors
      */
     public List<Door> getDoors() {
+        ensureLoaded(MapDataTypeEnum.DOORS);
         List<Door> c = new ArrayList<>(doors.values());
         Collections.sort(c);
         return c;
@@ -3034,21 +3106,42 @@ public final class KwdFile {
      * @return list of all shots
      */
     public List<Shot> getShots() {
+        ensureLoaded(MapDataTypeEnum.SHOTS);
         List<Shot> c = new ArrayList<>(shots.values());
         Collections.sort(c);
         return c;
     }
 
     public GameMap getMap() {
+        ensureLoaded(MapDataTypeEnum.TERRAIN); // The terrain stores the water & lava to the map
         return map;
     }
 
+    /**
+     * Get the map width, without loading the map
+     *
+     * @return the map width in tiles
+     */
+    public int getMapWidth() {
+        return mapWidth;
+    }
+
+    /**
+     * Get the map height, without loading the map
+     *
+     * @return the map height in tiles
+     */
+    public int getMapHeight() {
+        return mapHeight;
+    }
+
     /**
      * Get the list of all traps
      *
      * @return list of all traps
      */
     public List<Trap> getTraps() {
+        ensureLoaded(MapDataTypeEnum.TRAPS);
         List<Trap> c = new ArrayList<>(traps.values());
         Collections.sort(c);
         return c;
@@ -3059,30 +3152,37 @@ public final class KwdFile {
     }
 
     public CreatureSpell getCreatureSpellById(short spellId) {
+        ensureLoaded(MapDataTypeEnum.CREATURE_SPELLS);
         return creatureSpells.get(spellId);
     }
 
     public Effect getEffect(int effectId) {
+        ensureLoaded(MapDataTypeEnum.EFFECTS);
         return effects.get(effectId);
     }
 
     public Map<Integer, Effect> getEffects() {
+        ensureLoaded(MapDataTypeEnum.EFFECTS);
         return effects;
     }
 
     public EffectElement getEffectElement(int effectElementId) {
+        ensureLoaded(MapDataTypeEnum.EFFECT_ELEMENTS);
         return effectElements.get(effectElementId);
     }
 
     public Map<Integer, EffectElement> getEffectElements() {
+        ensureLoaded(MapDataTypeEnum.EFFECT_ELEMENTS);
         return effectElements;
     }
 
     public Map<MiscVariable.MiscType, MiscVariable> getVariables() {
+        ensureLoaded(MapDataTypeEnum.VARIABLES);
         return variables;
     }
 
     public List<Availability> getAvailabilities() {
+        ensureLoaded(MapDataTypeEnum.VARIABLES);
         return availabilities;
     }
 
@@ -3093,14 +3193,17 @@ public final class KwdFile {
      * @return the creature pool
      */
     public Map<Integer, CreaturePool> getCreaturePool(short playerId) {
+        ensureLoaded(MapDataTypeEnum.VARIABLES);
         return creaturePools.get(Short.valueOf(playerId).intValue());
     }
 
     public Creature getImp() {
+        ensureLoaded(MapDataTypeEnum.CREATURES);
         return imp;
     }
 
     public Creature getDwarf() {
+        ensureLoaded(MapDataTypeEnum.CREATURES);
         return dwarf;
     }
 
@@ -3109,6 +3212,7 @@ public final class KwdFile {
     }
 
     public GameObject getLevelGem() {
+        ensureLoaded(MapDataTypeEnum.OBJECTS);
         return levelGem;
     }
 
@@ -3120,6 +3224,7 @@ public final class KwdFile {
      * @return the creature stats on given level
      */
     public Map<CreatureStats.StatType, CreatureStats> getCreatureStats(int level) {
+        ensureLoaded(MapDataTypeEnum.VARIABLES);
         return creatureStatistics.get(level);
     }
 
@@ -3139,6 +3244,34 @@ public final class KwdFile {
         file.checkOffset(header.getItemSize(), offset);
     }
 
+    /**
+     * A section of the map data, i.e. the files of a single data type. Read
+     * once, on the first access
+     */
+    private final class Section {
+
+        private final MapDataTypeEnum type;
+        private final List<FilePath> paths = new ArrayList<>(1);
+        private volatile boolean sectionLoaded = false;
+
+        private Section(MapDataTypeEnum type) {
+            this.type = type;
+        }
+
+        private void load() {
+            if (!sectionLoaded) {
+                synchronized (this) {
+                    if (!sectionLoaded) {
+                        for (FilePath path : paths) {
+                            readFilePath(path);
+                        }
+                        sectionLoaded = true;
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Kwd header, few different kinds, handles all
      */
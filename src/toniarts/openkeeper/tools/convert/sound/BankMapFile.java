@@ -16,8 +16,8 @@
  */
 package toniarts.openkeeper.tools.convert.sound;
 
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 
 import java.io.File;
 import java.io.IOException;
@@ -53,7 +53,7 @@ public class BankMapFile {
         this.file = file;
 
         //Read the file
-        try (IResourceReader rawMap = new ResourceReader(file)) {
+        try (IResourceReader rawMap = new BufferedResourceReader(file)) {
             //Header
             int[] check = new int[]{
                 rawMap.readInteger(),
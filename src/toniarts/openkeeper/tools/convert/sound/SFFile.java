@@ -16,8 +16,8 @@
  */
 package toniarts.openkeeper.tools.convert.sound;
 
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 
 import java.io.File;
 import java.io.IOException;
@@ -32,7 +32,7 @@ public class SFFile {
 
     public SFFile(File file) {
         //Read the file
-        try (IResourceReader f = new ResourceReader(file)) {
+        try (IResourceReader f = new BufferedResourceReader(file)) {
             chunk = new SFChunk(f);
         } catch (IOException e) {
             //Fug
@@ -17,8 +17,8 @@
 package toniarts.openkeeper.tools.convert.sound;
 
 import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 import toniarts.openkeeper.utils.PathUtils;
 
 import java.io.*;
@@ -50,7 +50,7 @@ public class SdtFile {
         this.file = file;
 
         // Read the file
-        try (IResourceReader rawSdt = new ResourceReader(file)) {
+        try (IResourceReader rawSdt = new BufferedResourceReader(file)) {
 
             // Header
             int count = rawSdt.readUnsignedInteger();
@@ -101,7 +101,7 @@ public class SdtFile {
     public void extractFileData(String destination) {
 
         // Open the SDT for extraction
-        try (IResourceReader rawSdt = new ResourceReader(file)) {
+        try (IResourceReader rawSdt = new BufferedResourceReader(file)) {
             for (SdtFileEntry entry : entries) {
                 extractFileData(entry, destination, rawSdt);
             }
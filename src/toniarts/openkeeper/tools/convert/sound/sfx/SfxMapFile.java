@@ -16,8 +16,8 @@
  */
 package toniarts.openkeeper.tools.convert.sound.sfx;
 
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 
 import java.io.File;
 import java.io.IOException;
@@ -46,7 +46,7 @@ public class SfxMapFile {
         this.file = file;
 
         //Read the file
-        try (IResourceReader rawMap = new ResourceReader(file)) {
+        try (IResourceReader rawMap = new BufferedResourceReader(file)) {
             //Header
             int[] check = new int[] {
                 rawMap.readInteger(),
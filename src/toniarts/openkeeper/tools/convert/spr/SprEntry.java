@@ -16,9 +16,9 @@
  */
 package toniarts.openkeeper.tools.convert.spr;
 
+import toniarts.openkeeper.tools.convert.ConversionUtils;
 import toniarts.openkeeper.tools.convert.IResourceReader;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -79,6 +79,6 @@ public class SprEntry {
         file.seek(pointer);
 
         buffer = new ByteArrayOutputStream();
-        ImageIO.write(image, "png", buffer);
+        ConversionUtils.writePng(image, buffer);
     }
 }
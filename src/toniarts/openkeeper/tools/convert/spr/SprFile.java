@@ -16,11 +16,12 @@
  */
 package toniarts.openkeeper.tools.convert.spr;
 
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 
 import java.awt.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -40,15 +41,26 @@ public class SprFile {
 
     private final static String PSFB = "PSFB";
     private final SprHeader header;
-    private final File sprFile;
     private final SprEntry[] sprites;
 
     private static final Logger LOGGER = Logger.getLogger(SprFile.class.getName());
 
     public SprFile(File file) {
-        this.sprFile = file;
+        this(openFile(file), file.getName());
+    }
+
+    /**
+     * Reads the sprite file from memory
+     *
+     * @param data the sprite file contents
+     * @param name the file name, for the error messages
+     */
+    public SprFile(ByteBuffer data, String name) {
+        this(new BufferedResourceReader(data), name);
+    }
 
-        try (IResourceReader data = new ResourceReader(sprFile)) {
+    private SprFile(IResourceReader reader, String name) {
+        try (IResourceReader data = reader) {
 
             header = new SprHeader();
             header.tag = data.readString(4);
@@ -69,6 +81,14 @@ public class SprFile {
         } catch (Exception e) {
 
             //Fug
+            throw new RuntimeException("Failed to read the file " + name + "!", e);
+        }
+    }
+
+    private static IResourceReader openFile(File file) {
+        try {
+            return new BufferedResourceReader(file);
+        } catch (IOException e) {
             throw new RuntimeException("Failed to read the file " + file.getName() + "!", e);
         }
     }
@@ -123,8 +143,9 @@ public class SprFile {
     public void extract(String destination, String fileName) throws IOException {
         int i = 0;
         for (SprEntry sprite : sprites) {
-            OutputStream outputStream = new FileOutputStream(destination + File.separator + fileName + "#" + i++ + ".png");
-            sprite.buffer.writeTo(outputStream);
+            try (OutputStream outputStream = new FileOutputStream(destination + File.separator + fileName + "#" + i++ + ".png")) {
+                sprite.buffer.writeTo(outputStream);
+            }
         }
     }
 }
@@ -16,8 +16,8 @@
  */
 package toniarts.openkeeper.tools.convert.str;
 
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 
 import java.io.File;
 import java.io.IOException;
@@ -50,7 +50,7 @@ public class MbToUniFile {
     private final int count;
 
     public MbToUniFile(File file) {
-        try (IResourceReader rawCodepage = new ResourceReader(file)) {
+        try (IResourceReader rawCodepage = new BufferedResourceReader(file)) {
 
             // Check the header
             String header = rawCodepage.readString(4);
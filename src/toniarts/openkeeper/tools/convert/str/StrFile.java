@@ -17,8 +17,8 @@
 package toniarts.openkeeper.tools.convert.str;
 
 import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 
 import java.io.File;
 import java.io.IOException;
@@ -73,7 +73,7 @@ public class StrFile {
         this.codePage = codePage;
 
         // Read the file
-        try (IResourceReader rawStr = new ResourceReader(file)) {
+        try (IResourceReader rawStr = new BufferedResourceReader(file)) {
 
             // Check the header
             String header = rawStr.readString(4);
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.tools.convert.textures.enginetextures;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.TextureKey;
+import com.jme3.texture.plugins.AWTLoader;
+
+import java.io.IOException;
+
+/**
+ * Loads the engine textures located by {@link EngineTexturesAssetLocator}
+ * straight to jME images. Replaces the PNG loader, the images located from the
+ * other sources are loaded as usual.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class EngineTextureLoader extends AWTLoader {
+
+    public static final String FILE_EXTENSION = "png";
+
+    @Override
+    public Object load(AssetInfo assetInfo) throws IOException {
+        if (assetInfo instanceof EngineTexturesAssetLocator.EngineTextureAssetInfo) {
+            boolean flipY = assetInfo.getKey() instanceof TextureKey && ((TextureKey) assetInfo.getKey()).isFlipY();
+            return ((EngineTexturesAssetLocator.EngineTextureAssetInfo) assetInfo).getImage(flipY);
+        }
+
+        return super.load(assetInfo);
+    }
+
+}
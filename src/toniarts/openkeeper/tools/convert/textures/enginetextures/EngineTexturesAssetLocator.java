@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.tools.convert.textures.enginetextures;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetLocator;
+import com.jme3.asset.AssetManager;
+import com.jme3.texture.Image;
+import com.jme3.texture.image.ColorSpace;
+import com.jme3.util.BufferUtils;
+import toniarts.openkeeper.tools.convert.AssetsConverter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the engine textures straight from the Dungeon Keeper II
+ * EngineTextures.dat, no need to convert them to PNGs first. The root path is
+ * the EngineTextures.dat file itself. The asset names are the same as the
+ * converted textures would have, i.e. Textures/&lt;texture&gt;.png, case
+ * insensitive.<br>
+ * The textures are decoded straight to jME images with the mipmap levels
+ * found from the file. The decoded images are cached on disk in a raw format,
+ * so the decoding is done only once.
+ *
+ * @see EngineTextureLoader
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class EngineTexturesAssetLocator implements AssetLocator {
+
+    private static final String TEXTURES_PREFIX = AssetsConverter.TEXTURES_FOLDER.toLowerCase(Locale.ROOT) + "/";
+    private static final String TEXTURES_SUFFIX = ".png";
+    private static final Pattern MIPMAP_PATTERN = Pattern.compile("(?<name>.+)MM(?<mipmaplevel>\\d+)");
+    /**
+     * The decoder works in 8x8 blocks, the mipmap levels smaller than that are
+     * not taken from the file. jME doesn't generate the missing levels of an
+     * image that has mipmaps, so they are downsampled from the smallest file
+     * level to complete the chain
+     */
+    private static final int MIN_MIPMAP_SIZE = 8;
+    private static final String CACHE_FOLDER = "Cache" + File.separator + "EngineTextures";
+    private static final String CACHE_FILE_EXTENSION = ".tex";
+    private static final int CACHE_MAGIC = 0x4F4B5458; // OKTX
+    private static final int CACHE_VERSION = 2;
+    private static final int CACHE_HEADER_SIZE = 40;
+    /**
+     * jME creates a locator per loading thread, share the texture files
+     * between them
+     */
+    private static final Map<String, TextureArchive> ARCHIVES = new ConcurrentHashMap<>();
+    private static final Logger LOGGER = Logger.getLogger(EngineTexturesAssetLocator.class.getName());
+
+    private TextureArchive archive;
+
+    @Override
+    public void setRootPath(String rootPath) {
+        try {
+            String path = new File(rootPath).getCanonicalPath();
+            archive = ARCHIVES.computeIfAbsent(path, TextureArchive::new);
+        } catch (IOException | RuntimeException e) {
+
+            // Just serve nothing, the textures may well be converted
+            LOGGER.log(Level.WARNING, "Failed to open the engine textures " + rootPath + "!", e);
+        }
+    }
+
+    @Override
+    public AssetInfo locate(AssetManager manager, AssetKey key) {
+        if (archive == null) {
+            return null;
+        }
+
+        String name = key.getName().replace('\\', '/').toLowerCase(Locale.ROOT);
+        if (!name.startsWith(TEXTURES_PREFIX) || !name.endsWith(TEXTURES_SUFFIX)) {
+            return null;
+        }
+
+        String[] mipmapLevels = archive.textures.get(name.substring(TEXTURES_PREFIX.length(), name.length() - TEXTURES_SUFFIX.length()));
+        if (mipmapLevels == null) {
+            return null;
+        }
+
+        return new EngineTextureAssetInfo(manager, key, archive, mipmapLevels);
+    }
+
+    /**
+     * Asset info for a single engine texture
+     */
+    public static class EngineTextureAssetInfo extends AssetInfo {
+
+        private final TextureArchive archive;
+        private final String[] mipmapLevels;
+
+        private EngineTextureAssetInfo(AssetManager manager, AssetKey key, TextureArchive archive, String[] mipmapLevels) {
+            super(manager, key);
+
+            this.archive = archive;
+            this.mipmapLevels = mipmapLevels;
+        }
+
+        /**
+         * Get the texture as a jME image, with the mipmap levels from the
+         * file. Served from the cache if possible.
+         *
+         * @param flipY flip the image upside down, like the textures loaded
+         * from image files usually are
+         * @return the image
+         */
+        public Image getImage(boolean flipY) {
+            EngineTextureEntry entry = archive.etFile.getEntry(mipmapLevels[0]);
+            boolean alpha = entry.isAlphaFlag();
+            int bytesPerPixel = alpha ? 4 : 3;
+            Path cacheFile = archive.cacheFolder.resolve(mipmapLevels[0] + CACHE_FILE_EXTENSION);
+
+            ByteBuffer data = readCache(cacheFile, entry);
+            if (data == null) {
+                data = decode(bytesPerPixel);
+                writeCache(cacheFile, entry, data);
+            }
+
+            // The data is just the levels one after another
+            int[][] levelSizes = getLevelSizes();
+            int[] mipMapSizes = new int[levelSizes.length];
+            for (int i = 0; i < levelSizes.length; i++) {
+                mipMapSizes[i] = levelSizes[i][0] * levelSizes[i][1] * bytesPerPixel;
+            }
+            if (flipY) {
+                data = flip(data, levelSizes, bytesPerPixel);
+            }
+
+            // Without mipmaps in the file, leave the generation to jME
+            return new Image(alpha ? Image.Format.RGBA8 : Image.Format.RGB8, entry.getResX(), entry.getResY(), data,
+                    mipMapSizes.length > 1 ? mipMapSizes : null, ColorSpace.sRGB);
+        }
+
+        /**
+         * Get the sizes of the mipmap levels. The levels from the file, and if
+         * there are any, the rest of the chain down to 1x1
+         *
+         * @return width and height of each level
+         */
+        private int[][] getLevelSizes() {
+            List<int[]> sizes = new ArrayList<>();
+            for (String mipmapLevel : mipmapLevels) {
+                EngineTextureEntry level = archive.etFile.getEntry(mipmapLevel);
+                sizes.add(new int[]{level.getResX(), level.getResY()});
+            }
+            if (mipmapLevels.length > 1) {
+                int[] last = sizes.get(sizes.size() - 1);
+                while (last[0] > 1 || last[1] > 1) {
+                    last = new int[]{Math.max(1, last[0] >> 1), Math.max(1, last[1] >> 1)};
+                    sizes.add(last);
+                }
+            }
+
+            return sizes.toArray(new int[0][]);
+        }
+
+        private ByteBuffer decode(int bytesPerPixel) {
+            int[][] levelSizes = getLevelSizes();
+            int size = 0;
+            for (int[] levelSize : levelSizes) {
+                size += levelSize[0] * levelSize[1] * bytesPerPixel;
+            }
+
+            // The decoder gives us RGBA, drop the alpha if the texture doesn't have it
+            ByteBuffer data = BufferUtils.createByteBuffer(size);
+            for (String mipmapLevel : mipmapLevels) {
+                byte[] pixels = archive.etFile.getPixels(mipmapLevel);
+                if (bytesPerPixel == 4) {
+                    data.put(pixels);
+                } else {
+                    for (int i = 0; i < pixels.length; i += 4) {
+                        data.put(pixels, i, 3);
+                    }
+                }
+            }
+
+            // Complete the chain by averaging 2x2 blocks of the previous level
+            int offset = data.position() - levelSizes[mipmapLevels.length - 1][0] * levelSizes[mipmapLevels.length - 1][1] * bytesPerPixel;
+            for (int i = mipmapLevels.length; i < levelSizes.length; i++) {
+                int srcWidth = levelSizes[i - 1][0];
+                int srcHeight = levelSizes[i - 1][1];
+                int nextOffset = data.position();
+                for (int y = 0; y < levelSizes[i][1]; y++) {
+                    int y0 = Math.min(y * 2, srcHeight - 1) * srcWidth;
+                    int y1 = Math.min(y * 2 + 1, srcHeight - 1) * srcWidth;
+                    for (int x = 0; x < levelSizes[i][0]; x++) {
+                        int x0 = Math.min(x * 2, srcWidth - 1);
+                        int x1 = Math.min(x * 2 + 1, srcWidth - 1);
+                        for (int c = 0; c < bytesPerPixel; c++) {
+                            int sum = (data.get(offset + (y0 + x0) * bytesPerPixel + c) & 0xFF)
+                                    + (data.get(offset + (y0 + x1) * bytesPerPixel + c) & 0xFF)
+                                    + (data.get(offset + (y1 + x0) * bytesPerPixel + c) & 0xFF)
+                                    + (data.get(offset + (y1 + x1) * bytesPerPixel + c) & 0xFF);
+                            data.put((byte) ((sum + 2) >> 2));
+                        }
+                    }
+                }
+                offset = nextOffset;
+            }
+            data.flip();
+
+            return data;
+        }
+
+        private ByteBuffer readCache(Path cacheFile, EngineTextureEntry entry) {
+            if (!Files.exists(cacheFile)) {
+                return null;
+            }
+
+            try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+                ByteBuffer header = ByteBuffer.allocate(CACHE_HEADER_SIZE);
+                while (header.hasRemaining() && channel.read(header) != -1) {
+                    // Read the whole header
+                }
+                header.flip();
+                if (header.remaining() != CACHE_HEADER_SIZE || header.getInt() != CACHE_MAGIC
+                        || header.getInt() != CACHE_VERSION || header.getLong() != archive.lastModified
+                        || header.getLong() != entry.getDataStartLocation() || header.getInt() != entry.getSize()
+                        || header.getInt() != entry.getResX() || header.getInt() != entry.getResY()) {
+                    return null;
+                }
+
+                // Straight to the image data
+                int size = header.getInt();
+                if (channel.size() != CACHE_HEADER_SIZE + size) {
+                    return null;
+                }
+                ByteBuffer data = BufferUtils.createByteBuffer(size);
+                while (data.hasRemaining() && channel.read(data) != -1) {
+                    // Read the whole image
+                }
+                data.flip();
+
+                return data.remaining() == size ? data : null;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read the texture cache " + cacheFile + "!", e);
+                return null;
+            }
+        }
+
+        private void writeCache(Path cacheFile, EngineTextureEntry entry, ByteBuffer data) {
+            ByteBuffer header = ByteBuffer.allocate(CACHE_HEADER_SIZE);
+            header.putInt(CACHE_MAGIC);
+            header.putInt(CACHE_VERSION);
+            header.putLong(archive.lastModified);
+            header.putLong(entry.getDataStartLocation());
+            header.putInt(entry.getSize());
+            header.putInt(entry.getResX());
+            header.putInt(entry.getResY());
+            header.putInt(data.remaining());
+            header.flip();
+
+            // Write to a temporary file first, the other threads may be reading the same texture
+            try {
+                Files.createDirectories(cacheFile.getParent());
+                Path tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+                try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                    ByteBuffer image = data.duplicate();
+                    while (header.hasRemaining() || image.hasRemaining()) {
+                        channel.write(new ByteBuffer[]{header, image});
+                    }
+                }
+                Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to write the texture cache " + cacheFile + "!", e);
+            }
+        }
+
+        private ByteBuffer flip(ByteBuffer data, int[][] levelSizes, int bytesPerPixel) {
+            ByteBuffer flipped = BufferUtils.createByteBuffer(data.remaining());
+            int offset = data.position();
+            for (int[] levelSize : levelSizes) {
+                int stride = levelSize[0] * bytesPerPixel;
+                for (int y = levelSize[1] - 1; y >= 0; y--) {
+                    ByteBuffer row = data.duplicate();
+                    row.position(offset + y * stride).limit(offset + (y + 1) * stride);
+                    flipped.put(row);
+                }
+                offset += stride * levelSize[1];
+            }
+            flipped.flip();
+
+            return flipped;
+        }
+
+        /**
+         * Get the texture as a PNG file, for the ones that want to read the
+         * image themselves
+         *
+         * @return the PNG file stream
+         */
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(archive.etFile.getFileBytes(mipmapLevels[0]));
+        }
+    }
+
+    private static class TextureArchive {
+
+        private final EngineTexturesFile etFile;
+        private final long lastModified;
+        private final Path cacheFolder;
+        private final Map<String, String[]> textures;
+
+        public TextureArchive(String path) {
+            File file = new File(path);
+            etFile = new EngineTexturesFile(file);
+            lastModified = file.lastModified();
+            cacheFolder = Paths.get(AssetsConverter.getAssetsFolder(), CACHE_FOLDER);
+
+            // Gather the mipmap levels under the texture names
+            Map<String, TreeMap<Integer, String>> levels = new HashMap<>(etFile.getFileCount());
+            for (String textureFile : etFile) {
+                String name = textureFile.replace(File.separatorChar, '/');
+                Matcher matcher = MIPMAP_PATTERN.matcher(name);
+                if (matcher.matches()) {
+                    levels.computeIfAbsent(matcher.group("name").toLowerCase(Locale.ROOT), k -> new TreeMap<>()).put(Integer.valueOf(matcher.group("mipmaplevel")), textureFile);
+                } else {
+                    levels.computeIfAbsent(name.toLowerCase(Locale.ROOT), k -> new TreeMap<>()).put(0, textureFile);
+                }
+            }
+
+            // Only take the full mipmap levels, each half the size of the previous one
+            textures = new HashMap<>(levels.size());
+            for (Map.Entry<String, TreeMap<Integer, String>> texture : levels.entrySet()) {
+                String baseLevel = texture.getValue().get(0);
+                if (baseLevel == null) {
+                    continue;
+                }
+
+                EngineTextureEntry base = etFile.getEntry(baseLevel);
+                List<String> mipmapLevels = new ArrayList<>(texture.getValue().size());
+                mipmapLevels.add(baseLevel);
+                for (int i = 1; texture.getValue().containsKey(i); i++) {
+                    EngineTextureEntry level = etFile.getEntry(texture.getValue().get(i));
+                    if (level.getResX() != base.getResX() >> i || level.getResY() != base.getResY() >> i
+                            || level.getResX() < MIN_MIPMAP_SIZE || level.getResY() < MIN_MIPMAP_SIZE
+                            || level.isAlphaFlag() != base.isAlphaFlag()) {
+                        break;
+                    }
+                    mipmapLevels.add(texture.getValue().get(i));
+                }
+                textures.put(texture.getKey(), mipmapLevels.toArray(new String[0]));
+            }
+        }
+    }
+
+}
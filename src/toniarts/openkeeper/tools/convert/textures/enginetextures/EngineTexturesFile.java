@@ -18,14 +18,15 @@ package toniarts.openkeeper.tools.convert.textures.enginetextures;
 
 import org.jetbrains.annotations.NotNull;
 import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 import toniarts.openkeeper.utils.PathUtils;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -46,8 +47,9 @@ public class EngineTexturesFile implements Iterable<String> {
     private static final int CHESS_BOARD_GRID_SIZE = 8;
 
     private final File file;
-    private EngineTextureDecoder decoder;
+    private final ThreadLocal<EngineTextureDecoder> decoders = ThreadLocal.withInitial(EngineTextureDecoder::new);
     private final HashMap<String, EngineTextureEntry> engineTextureEntries;
+    private ByteBuffer data;
 
     private static final Logger LOGGER = Logger.getLogger(EngineTexturesFile.class.getName());
 
@@ -56,7 +58,7 @@ public class EngineTexturesFile implements Iterable<String> {
 
         //Read the names from the DIR file in the same folder
         File dirFile = new File(file.toString().substring(0, file.toString().length() - 3).concat("dir"));
-        try (IResourceReader rawDir = new ResourceReader(dirFile)) {
+        try (IResourceReader rawDir = new BufferedResourceReader(dirFile)) {
 
             // File format:
             // HEADER:
@@ -73,7 +75,7 @@ public class EngineTexturesFile implements Iterable<String> {
             int numberOfEntries = rawDir.readUnsignedInteger();
             engineTextureEntries = new HashMap<>(numberOfEntries);
 
-            try (IResourceReader rawTextures = new ResourceReader(file)) {
+            try (IResourceReader rawTextures = new BufferedResourceReader(file)) {
                 do {
                     String name = ConversionUtils.convertFileSeparators(rawDir.readVaryingLengthStrings(1).get(0));
                     int offset = rawDir.readUnsignedInteger();
@@ -123,7 +125,7 @@ public class EngineTexturesFile implements Iterable<String> {
     public void extractFileData(String destination) {
 
         //Open the Texture file for extraction
-        try (IResourceReader rawTextures = new ResourceReader(file)) {
+        try (IResourceReader rawTextures = new BufferedResourceReader(file)) {
 
             for (String textureEntry : engineTextureEntries.keySet()) {
                 extractFileData(textureEntry, destination, rawTextures, true);
@@ -146,7 +148,7 @@ public class EngineTexturesFile implements Iterable<String> {
     public File extractFileData(String textureEntry, String destination, boolean overwrite) {
 
         //Open the Texture file for extraction
-        try (IResourceReader rawTextures = new ResourceReader(file)) {
+        try (IResourceReader rawTextures = new BufferedResourceReader(getData())) {
             return extractFileData(textureEntry, destination, rawTextures, overwrite);
         } catch (IOException e) {
 
@@ -155,6 +157,81 @@ public class EngineTexturesFile implements Iterable<String> {
         }
     }
 
+    /**
+     * Get the texture data as it is stored in the file, compressed. Thread
+     * safe.
+     *
+     * @param textureEntry the texture
+     * @return the raw texture data
+     */
+    public byte[] getRawFileData(String textureEntry) {
+        EngineTextureEntry engineTextureEntry = engineTextureEntries.get(textureEntry);
+        if (engineTextureEntry == null) {
+            throw new RuntimeException("File " + textureEntry + " not found from the texture archive!");
+        }
+
+        try (IResourceReader rawTextures = new BufferedResourceReader(getData())) {
+            rawTextures.seek(engineTextureEntry.getDataStartLocation());
+            return rawTextures.read(engineTextureEntry.getSize());
+        } catch (IOException e) {
+
+            //Fug
+            throw new RuntimeException("Failed to read the file " + file + "!", e);
+        }
+    }
+
+    /**
+     * Get the texture decoded to a PNG file. Thread safe.
+     *
+     * @param textureEntry the texture
+     * @return the PNG file data
+     */
+    public byte[] getFileBytes(String textureEntry) {
+        try (IResourceReader rawTextures = new BufferedResourceReader(getData())) {
+            return getFileData(textureEntry, rawTextures).toByteArray();
+        } catch (IOException e) {
+
+            //Fug
+            throw new RuntimeException("Failed to read the file " + file + "!", e);
+        }
+    }
+
+    /**
+     * Get the texture decoded to raw pixels, four bytes per pixel in RGBA
+     * order, the rows from top to bottom. Thread safe.
+     *
+     * @param textureEntry the texture
+     * @return the pixels
+     */
+    public byte[] getPixels(String textureEntry) {
+        EngineTextureEntry engineTextureEntry = engineTextureEntries.get(textureEntry);
+        if (engineTextureEntry == null) {
+            throw new RuntimeException("File " + textureEntry + " not found from the texture archive!");
+        }
+
+        try (IResourceReader rawTextures = new BufferedResourceReader(getData())) {
+            return decodePixels(engineTextureEntry, rawTextures);
+        } catch (IOException e) {
+
+            //Fug
+            throw new RuntimeException("Failed to read the file " + file + "!", e);
+        }
+    }
+
+    /**
+     * Get the texture file contents, mapped or read only on the first call.
+     * The buffer itself is never read from, only the readers created on it.
+     *
+     * @return the texture file contents
+     * @throws IOException may fail
+     */
+    private synchronized ByteBuffer getData() throws IOException {
+        if (data == null) {
+            data = BufferedResourceReader.readFile(file);
+        }
+        return data;
+    }
+
     /**
      * Extract a single file to a given location
      *
@@ -210,23 +287,15 @@ public class EngineTexturesFile implements Iterable<String> {
             BufferedImage image;
             if (DECOMPRESSION_ENABLED) {
 
-                //Seek to the file we want and read it
-                rawTextures.seek(engineTextureEntry.getDataStartLocation());
-                int count = (engineTextureEntry.getSize()) / 4;
-                long[] buf = new long[count];
-                for (int i = 0; i < count; i++) {
-                    buf[i] = rawTextures.readUnsignedIntegerAsLong();
-                }
-
                 // Use the monstrous decompression routine
-                image = decompressTexture(buf, engineTextureEntry);
+                image = decompressTexture(decodePixels(engineTextureEntry, rawTextures), engineTextureEntry);
             } else {
 
                 //Use our chess board texture
                 image = generateChessBoard(engineTextureEntry);
             }
             result = new ByteArrayOutputStream();
-            ImageIO.write(image, "png", result);
+            ConversionUtils.writePng(image, result);
         } catch (IOException e) {
 
             //Fug
@@ -270,32 +339,45 @@ public class EngineTexturesFile implements Iterable<String> {
     }
 
     /**
-     * Decompresses the texture from given entry
+     * Reads and decompresses the texture pixels of the given entry
+     *
+     * @param engineTextureEntry the texture entry
+     * @param rawTextures the opened EngineTextures file
+     * @return the pixels in RGBA order
+     * @throws IOException may fail
+     */
+    private byte[] decodePixels(EngineTextureEntry engineTextureEntry, IResourceReader rawTextures) throws IOException {
+
+        //Seek to the file we want and read it
+        rawTextures.seek(engineTextureEntry.getDataStartLocation());
+        int count = (engineTextureEntry.getSize()) / 4;
+        long[] buf = new long[count];
+        for (int i = 0; i < count; i++) {
+            buf[i] = rawTextures.readUnsignedIntegerAsLong();
+        }
+
+        // Decompress the texture, the decoder has state so each thread has its own
+        return decoders.get().dd_texture(buf, engineTextureEntry.getResX() * (32 / 8)/*(bpp / 8 = bytes per pixel)*/, engineTextureEntry.getResX(), engineTextureEntry.getResY(), engineTextureEntry.isAlphaFlag());
+    }
+
+    /**
+     * Creates an image of the decompressed texture
      *
-     * @param buf the compressed texture data read as uint32 items
+     * @param pixels the decompressed texture pixels
      * @param engineTextureEntry the texture entry
      * @return
      */
-    private BufferedImage decompressTexture(long[] buf, EngineTextureEntry engineTextureEntry) {
+    private BufferedImage decompressTexture(byte[] pixels, EngineTextureEntry engineTextureEntry) {
         BufferedImage img = new BufferedImage(engineTextureEntry.getResX(), engineTextureEntry.getResY(), engineTextureEntry.isAlphaFlag() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
 
-        // Decompress the texture
-        if (decoder == null) {
-            decoder = new EngineTextureDecoder();
-        }
-        byte[] pixels = decoder.dd_texture(buf, engineTextureEntry.getResX() * (32 / 8)/*(bpp / 8 = bytes per pixel)*/, engineTextureEntry.getResX(), engineTextureEntry.getResY(), engineTextureEntry.isAlphaFlag());
-
-        // Draw the image, pixel by pixel
-        for (int x = 0; x < engineTextureEntry.getResX(); x++) {
-            for (int y = 0; y < engineTextureEntry.getResY(); y++) {
-                int base = engineTextureEntry.getResX() * y * 4 + x * 4;
-                int r = ConversionUtils.toUnsignedByte(pixels[base]);
-                int g = ConversionUtils.toUnsignedByte(pixels[base + 1]);
-                int b = ConversionUtils.toUnsignedByte(pixels[base + 2]);
-                int a = ConversionUtils.toUnsignedByte(pixels[base + 3]);
-                int col = (a << 24) | (r << 16) | (g << 8) | b;
-                img.setRGB(x, y, col);
-            }
+        // Copy the pixels straight to the image data, the RGB image just ignores the alpha
+        int[] data = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+        for (int i = 0, base = 0; i < data.length; i++, base += 4) {
+            int r = pixels[base] & 0xFF;
+            int g = pixels[base + 1] & 0xFF;
+            int b = pixels[base + 2] & 0xFF;
+            int a = pixels[base + 3] & 0xFF;
+            data[i] = (a << 24) | (r << 16) | (g << 8) | b;
         }
         return img;
     }
@@ -315,4 +397,8 @@ public class EngineTexturesFile implements Iterable<String> {
     public EngineTextureEntry getEntry(String texture) {
         return engineTextureEntries.get(texture);
     }
+
+    public File getFile() {
+        return file;
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.tools.convert.wad;
+
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetLocator;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.AssetNotFoundException;
+import toniarts.openkeeper.tools.convert.ConversionUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves assets straight from a Dungeon Keeper II WAD archive, no need to
+ * extract it first. The root path is the WAD file itself. The files are
+ * decompressed when they are opened.<br>
+ * The asset names are case insensitive, like they are in the original game.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class WadAssetLocator implements AssetLocator {
+
+    /**
+     * jME creates a locator per loading thread, share the archives between
+     * them
+     */
+    private static final Map<String, WadArchive> ARCHIVES = new ConcurrentHashMap<>();
+
+    private WadArchive archive;
+
+    @Override
+    public void setRootPath(String rootPath) {
+        try {
+            String path = new File(rootPath).getCanonicalPath();
+            archive = ARCHIVES.computeIfAbsent(path, WadArchive::new);
+        } catch (IOException e) {
+            throw new AssetNotFoundException("Failed to open the WAD file " + rootPath + "!", e);
+        }
+    }
+
+    @Override
+    public AssetInfo locate(AssetManager manager, AssetKey key) {
+        String fileName = archive.fileNames.get(ConversionUtils.convertFileSeparators(key.getName()).toLowerCase(Locale.ROOT));
+        if (fileName == null) {
+            return null;
+        }
+
+        return new WadAssetInfo(manager, key, archive.wad, fileName);
+    }
+
+    /**
+     * Asset info for a single WAD archive entry
+     */
+    public static class WadAssetInfo extends AssetInfo {
+
+        private final WadFile wad;
+        private final String fileName;
+
+        public WadAssetInfo(AssetManager manager, AssetKey key, WadFile wad, String fileName) {
+            super(manager, key);
+
+            this.wad = wad;
+            this.fileName = fileName;
+        }
+
+        /**
+         * Get the whole entry, decompressed
+         *
+         * @return the file data
+         */
+        public byte[] getData() {
+            return wad.getFileBytes(fileName);
+        }
+
+        @Override
+        public InputStream openStream() {
+            return new ByteArrayInputStream(getData());
+        }
+    }
+
+    private static class WadArchive {
+
+        private final WadFile wad;
+        private final Map<String, String> fileNames;
+
+        public WadArchive(String path) {
+            wad = new WadFile(new File(path));
+            fileNames = new HashMap<>(wad.getWadFileEntryCount());
+            for (String fileName : wad.getWadFileEntries()) {
+                fileNames.put(fileName.toLowerCase(Locale.ROOT), fileName);
+            }
+        }
+    }
+
+}
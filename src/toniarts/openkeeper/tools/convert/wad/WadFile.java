@@ -17,11 +17,12 @@
 package toniarts.openkeeper.tools.convert.wad;
 
 import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.BufferedResourceReader;
 import toniarts.openkeeper.tools.convert.IResourceReader;
-import toniarts.openkeeper.tools.convert.ResourceReader;
 import toniarts.openkeeper.utils.PathUtils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -39,6 +40,7 @@ public class WadFile {
 
     private final File file;
     private final Map<String, WadFileEntry> wadFileEntries;
+    private ByteBuffer data;
     private static final String WAD_HEADER_IDENTIFIER = "DWFB";
     private static final int WAD_HEADER_VERSION = 2;
 
@@ -54,7 +56,7 @@ public class WadFile {
         this.file = file;
 
         // Read the file
-        try (IResourceReader rawWad = new ResourceReader(file)) {
+        try (IResourceReader rawWad = new BufferedResourceReader(file)) {
 
             // Check the header
             String header = rawWad.readString(4);
@@ -163,7 +165,7 @@ public class WadFile {
     public void extractFileData(String destination) {
 
         // Open the WAD for extraction
-        try (IResourceReader rawWad = new ResourceReader(file)) {
+        try (IResourceReader rawWad = new BufferedResourceReader(file)) {
 
             for (String fileName : wadFileEntries.keySet()) {
                 extractFileData(fileName, destination, rawWad);
@@ -215,7 +217,7 @@ public class WadFile {
     public File extractFileData(String fileName, String destination) {
 
         // Open the WAD for extraction
-        try (IResourceReader rawWad = new ResourceReader(file)) {
+        try (IResourceReader rawWad = new BufferedResourceReader(file)) {
             return extractFileData(fileName, destination, rawWad);
         } catch (Exception e) {
 
@@ -232,7 +234,21 @@ public class WadFile {
      * @return the file data
      */
     private ByteArrayOutputStream getFileData(String fileName, IResourceReader rawWad) {
-        ByteArrayOutputStream result = null;
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] bytes = getFileBytes(fileName, rawWad);
+        result.write(bytes, 0, bytes.length);
+
+        return result;
+    }
+
+    /**
+     * Extract a single file
+     *
+     * @param fileName the file to extract
+     * @param rawWad   the opened WAD file
+     * @return the file data, decompressed
+     */
+    private byte[] getFileBytes(String fileName, IResourceReader rawWad) {
 
         // Get the file
         WadFileEntry fileEntry = wadFileEntries.get(fileName);
@@ -246,22 +262,16 @@ public class WadFile {
             rawWad.seek(fileEntry.getOffset());
             byte[] bytes = rawWad.read(fileEntry.getCompressedSize());
 
-            result = new ByteArrayOutputStream();
-
             // See if the file is compressed
             if (fileEntry.isCompressed()) {
-                result.write(decompressFileData(bytes, fileName));
-            } else {
-                result.write(bytes);
+                return decompressFileData(bytes, fileName);
             }
-
+            return bytes;
         } catch (Exception e) {
 
             // Fug
             throw new RuntimeException("Failed to read the WAD file!", e);
         }
-
-        return result;
     }
 
     /**
@@ -271,17 +281,57 @@ public class WadFile {
      * @return the file data
      */
     public ByteArrayOutputStream getFileData(String fileName) {
-
-        // Open the WAD for extraction
-        try (IResourceReader rawWad = new ResourceReader(file)) {
+        try (IResourceReader rawWad = new BufferedResourceReader(getData())) {
             return getFileData(fileName, rawWad);
-        } catch (Exception e) {
+        } catch (IOException e) {
 
             // Fug
             throw new RuntimeException("Failed to read the WAD file!", e);
         }
     }
 
+    /**
+     * Extract a single file straight to memory. The WAD is read only once
+     * and kept open for the following extractions, so this is cheap to call
+     * repeatedly. Thread safe.
+     *
+     * @param fileName the file to extract
+     * @return the file data, decompressed
+     */
+    public byte[] getFileBytes(String fileName) {
+        try (IResourceReader rawWad = new BufferedResourceReader(getData())) {
+            return getFileBytes(fileName, rawWad);
+        } catch (IOException e) {
+
+            // Fug
+            throw new RuntimeException("Failed to read the WAD file!", e);
+        }
+    }
+
+    /**
+     * See if the WAD archive has the given file
+     *
+     * @param fileName the file name
+     * @return true if the file is found
+     */
+    public boolean hasFile(String fileName) {
+        return wadFileEntries.containsKey(fileName);
+    }
+
+    /**
+     * Get the WAD contents, mapped or read only on the first call. The buffer
+     * itself is never read from, only the readers created on it.
+     *
+     * @return the WAD file contents
+     * @throws IOException may fail
+     */
+    private synchronized ByteBuffer getData() throws IOException {
+        if (data == null) {
+            data = BufferedResourceReader.readFile(file);
+        }
+        return data;
+    }
+
     /**
      * Some file entries in the WAD are compressed (type 4?), this decompresses the file data
      *
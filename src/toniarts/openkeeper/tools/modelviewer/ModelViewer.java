@@ -50,6 +50,9 @@ import toniarts.openkeeper.tools.convert.KmfAssetInfo;
 import toniarts.openkeeper.tools.convert.KmfModelLoader;
 import toniarts.openkeeper.tools.convert.kmf.KmfFile;
 import toniarts.openkeeper.tools.convert.map.*;
+import toniarts.openkeeper.tools.convert.textures.enginetextures.EngineTextureLoader;
+import toniarts.openkeeper.tools.convert.textures.enginetextures.EngineTexturesAssetLocator;
+import toniarts.openkeeper.tools.convert.wad.WadAssetLocator;
 import toniarts.openkeeper.utils.AssetUtils;
 import toniarts.openkeeper.utils.PathUtils;
 import toniarts.openkeeper.world.MapLoader;
@@ -172,6 +175,14 @@ public class ModelViewer extends SimpleApplication {
         assetManager.registerLocator(AssetsConverter.getAssetsFolder(), FileLocator.class);
         assetManager.registerLoader(MP2Loader.class, "mp2");
 
+        // The original models and textures, straight from the game files
+        if (dkIIFolder != null) {
+            assetManager.registerLocator(dkIIFolder + PathUtils.DKII_DATA_FOLDER + "Meshes.WAD", WadAssetLocator.class);
+            assetManager.registerLoader(KmfModelLoader.class, "kmf");
+            assetManager.registerLocator(dkIIFolder + PathUtils.DKII_TEXTURE_CACHE_FOLDER + "EngineTextures.dat", EngineTexturesAssetLocator.class);
+            assetManager.registerLoader(EngineTextureLoader.class, EngineTextureLoader.FILE_EXTENSION);
+        }
+
         //Effects manager
         this.effectManagerState = new EffectManagerState(getKwdFile(), assetManager);
         stateManager.attach(effectManagerState);
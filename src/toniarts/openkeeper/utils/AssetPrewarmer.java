@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.utils;
+
+import com.jme3.app.state.AbstractAppState;
+import com.jme3.asset.AssetManager;
+import com.jme3.scene.Spatial;
+import toniarts.openkeeper.Main;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams the preloaded models of a level in. The models are loaded to the
+ * asset cache on several threads, in priority order. The loaded models are
+ * then uploaded to the GPU on the render thread, a few at a time so that the
+ * frames stay short.<br>
+ * The loading only waits for the models needed to show the dungeon itself,
+ * the rest are streamed in while the level is being loaded and played. The
+ * models already in the cache, i.e. used by the previous level too, are
+ * skipped.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public final class AssetPrewarmer extends AbstractAppState {
+
+    /**
+     * The loading order, lower first
+     */
+    public enum Priority {
+
+        TERRAIN,
+        ROOM,
+        CREATURE,
+        OBJECT,
+        DOOR,
+        TRAP;
+    }
+
+    /**
+     * The models with this priority or higher are waited for
+     */
+    private static final Priority BLOCKING_PRIORITY = Priority.ROOM;
+    private static final int MAX_LOADER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final long UPLOAD_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+    private static final Logger LOGGER = Logger.getLogger(AssetPrewarmer.class.getName());
+
+    private final Main app;
+    private final AssetManager assetManager;
+    private final List<Set<String>> modelsByPriority = new ArrayList<>(Priority.values().length);
+    private final Queue<Spatial> uploadQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingModels = new AtomicInteger();
+    private ExecutorService loader;
+
+    public AssetPrewarmer(Main app, AssetManager assetManager) {
+        this.app = app;
+        this.assetManager = assetManager;
+        for (int i = 0; i < Priority.values().length; i++) {
+            modelsByPriority.add(new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Adds a model to be prewarmed
+     *
+     * @param modelName the model name
+     * @param priority the loading priority
+     */
+    public void addModel(String modelName, Priority priority) {
+        modelsByPriority.get(priority.ordinal()).add(modelName);
+    }
+
+    /**
+     * Get all the models to be prewarmed
+     *
+     * @return the model names
+     */
+    public Set<String> getModels() {
+        Set<String> models = new LinkedHashSet<>();
+        for (Set<String> priorityModels : modelsByPriority) {
+            models.addAll(priorityModels);
+        }
+        return models;
+    }
+
+    /**
+     * Starts loading the models. Blocks until the models needed to show the
+     * dungeon are loaded, the rest are left loading in the background.
+     *
+     * @param progressListener gets the loading progress from 0.0 to 1.0 of
+     * the models waited for, may be {@code null}
+     */
+    public void start(Consumer<Float> progressListener) {
+        int blockingModels = 0;
+        for (Priority priority : Priority.values()) {
+            modelsByPriority.get(priority.ordinal()).removeIf(AssetUtils::isModelCached);
+            if (priority.compareTo(BLOCKING_PRIORITY) <= 0) {
+                blockingModels += modelsByPriority.get(priority.ordinal()).size();
+            }
+            pendingModels.addAndGet(modelsByPriority.get(priority.ordinal()).size());
+        }
+        if (pendingModels.get() == 0) {
+            return;
+        }
+        LOGGER.log(Level.INFO, "Prewarming {0} objects!", pendingModels.get());
+
+        // The uploads happen on the render thread
+        app.enqueue(() -> {
+            app.getStateManager().attach(this);
+            return null;
+        });
+
+        loader = new ThreadPoolExecutor(MAX_LOADER_THREADS, MAX_LOADER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), new ThreadFactory() {
+
+            private final AtomicInteger threadIndex = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AssetPrewarmer_" + threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+
+        });
+        CountDownLatch blockingLatch = new CountDownLatch(blockingModels);
+        int order = 0;
+        for (Priority priority : Priority.values()) {
+            boolean blocking = priority.compareTo(BLOCKING_PRIORITY) <= 0;
+            for (String modelName : modelsByPriority.get(priority.ordinal())) {
+                loader.execute(new LoadTask(modelName, priority, order++, blocking ? blockingLatch : null));
+            }
+        }
+        loader.shutdown();
+
+        // Wait for the dungeon
+        try {
+            while (!blockingLatch.await(100, TimeUnit.MILLISECONDS)) {
+                if (progressListener != null) {
+                    progressListener.accept(1f - blockingLatch.getCount() / (float) blockingModels);
+                }
+            }
+            if (progressListener != null) {
+                progressListener.accept(1f);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops streaming the models in, the level is no longer needed. The
+     * models already loaded stay in the cache.
+     */
+    public void stop() {
+        if (loader != null) {
+            loader.shutdownNow();
+        }
+        app.enqueue(() -> {
+            app.getStateManager().detach(this);
+            return null;
+        });
+    }
+
+    @Override
+    public void update(float tpf) {
+
+        // Upload within the frame budget, but always at least one
+        long start = System.nanoTime();
+        Spatial spatial;
+        while ((spatial = uploadQueue.poll()) != null) {
+            app.getRenderManager().preloadScene(spatial);
+            pendingModels.decrementAndGet();
+            if (System.nanoTime() - start > UPLOAD_BUDGET_NANOS) {
+                break;
+            }
+        }
+
+        if (pendingModels.get() == 0) {
+            app.getStateManager().detach(this);
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        if (loader != null) {
+            loader.shutdownNow();
+        }
+        uploadQueue.clear();
+
+        super.cleanup();
+    }
+
+    /**
+     * Loads a single model to the cache
+     */
+    private class LoadTask implements Runnable, Comparable<LoadTask> {
+
+        private final String modelName;
+        private final Priority priority;
+        private final int order;
+        private final CountDownLatch latch;
+
+        public LoadTask(String modelName, Priority priority, int order, CountDownLatch latch) {
+            this.modelName = modelName;
+            this.priority = priority;
+            this.order = order;
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            try {
+                uploadQueue.add(AssetUtils.loadModel(assetManager, modelName));
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Failed to prewarm " + modelName + "!", e);
+                pendingModels.decrementAndGet();
+            } finally {
+                if (latch != null) {
+                    latch.countDown();
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(LoadTask o) {
+            int result = priority.compareTo(o.priority);
+            if (result == 0) {
+                result = Integer.compare(order, o.order);
+            }
+            return result;
+        }
+    }
+
+}
@@ -17,22 +17,24 @@
 package toniarts.openkeeper.utils;
 
 import com.jme3.asset.*;
-import com.jme3.asset.cache.AssetCache;
-import com.jme3.asset.cache.SimpleAssetCache;
-import com.jme3.asset.cache.WeakRefAssetCache;
+import com.jme3.material.MatParam;
 import com.jme3.material.Material;
 import com.jme3.material.RenderState;
 import com.jme3.material.RenderState.BlendMode;
 import com.jme3.math.ColorRGBA;
 import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
 import com.jme3.scene.Node;
 import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
 import com.jme3.texture.Texture;
 import com.jme3.texture.Texture2D;
 import com.jme3.texture.plugins.AWTLoader;
 import toniarts.openkeeper.Main;
+import toniarts.openkeeper.animation.PoseTrack;
 import toniarts.openkeeper.cinematics.CameraSweepData;
 import toniarts.openkeeper.cinematics.CameraSweepDataLoader;
+import toniarts.openkeeper.game.data.Settings;
 import toniarts.openkeeper.tools.convert.AssetsConverter;
 import toniarts.openkeeper.tools.convert.ConversionUtils;
 import toniarts.openkeeper.tools.convert.map.ArtResource;
@@ -48,9 +50,10 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -61,16 +64,17 @@ import java.util.logging.Logger;
  */
 public class AssetUtils {
 
-    private static volatile boolean preWarmedAssets = false;
     private final static Object ASSET_LOCK = new Object();
-    private final static AssetCache ASSET_CACHE = new SimpleAssetCache();
-    private final static AssetCache WEAK_ASSET_CACHE = new WeakRefAssetCache();
-    private final static Map<String, Boolean> TEXTURE_MAP_CACHE = new HashMap<>();
+    private static AssetPrewarmer levelPrewarmer;
+    private final static BoundedAssetCache ASSET_CACHE = new BoundedAssetCache(Settings.getInstance().getInteger(Settings.Setting.ASSET_CACHE_SIZE) * 1024L * 1024L);
+    private final static Map<String, Boolean> TEXTURE_MAP_CACHE = new ConcurrentHashMap<>();
     private static final Logger LOGGER = Logger.getLogger(AssetUtils.class.getName());
 
     // Custom model data keys
     public final static String USER_DATA_KEY_REMOVABLE = "Removable";
 
+    private final static String MORPH_MATERIAL_DEFINITION = "MatDefs/LightingMorph.j3md";
+
     private AssetUtils() {
         // Nope
     }
@@ -82,43 +86,57 @@ public class AssetUtils {
      * @param assetManager the asset manager to use
      * @param modelName    the model name, the model name is checked and fixed
      * @param useCache     use cache or not
-     * @param useWeakCache use weak cache, if not, then permanently cache the
-     *                     models. Use weak cache to load some models that are not often needed
-     *                     (water bed etc.)
+     * @param useWeakCache use weak cache, if not, then cache the models for
+     *                     the current level. Use weak cache to load some models that are not
+     *                     often needed (water bed etc.), they are the first to go when the
+     *                     cache is full
      * @return a cloned instance from the cache
      */
     public static Spatial loadModel(final AssetManager assetManager, String modelName,
             final boolean useCache, final boolean useWeakCache) {
 
-        String filename = AssetsConverter.MODELS_FOLDER + File.separator + modelName + ".j3o";
-        ModelKey assetKey = new ModelKey(ConversionUtils.getCanonicalAssetKey(filename));
+        ModelKey assetKey = getModelKey(modelName);
 
         Spatial result;
         if (useCache) {
 
-            // Set the correct asset cache
-            final AssetCache cache = (useWeakCache) ? WEAK_ASSET_CACHE : ASSET_CACHE;
-
             // Get the model from cache
-            Spatial model = cache.getFromCache(assetKey);
+            Spatial model = ASSET_CACHE.getFromCache(assetKey);
             if (model == null) {
                 model = assetManager.loadModel(assetKey);
                 resetSpatial(model);
 
                 // Assign maps
                 assignMapsToMaterial(model, assetManager);
+                setupMorphAnimation(model, assetManager);
 
-                cache.addToCache(assetKey, model);
+                ASSET_CACHE.addToCache(assetKey, model, !useWeakCache);
             }
             result = model.clone();
         } else {
             result = assetManager.loadModel(assetKey);
             resetSpatial(result);
+            setupMorphAnimation(result, assetManager);
         }
 
         return result;
     }
 
+    private static ModelKey getModelKey(String modelName) {
+        String filename = AssetsConverter.MODELS_FOLDER + File.separator + modelName + ".j3o";
+        return new ModelKey(ConversionUtils.getCanonicalAssetKey(filename));
+    }
+
+    /**
+     * Is the model already loaded to the cache
+     *
+     * @param modelName the model name
+     * @return true if the model is in the cache
+     */
+    static boolean isModelCached(String modelName) {
+        return ASSET_CACHE.contains(getModelKey(modelName));
+    }
+
     /**
      * Only for ModelViewer
      *
@@ -171,6 +189,54 @@ public class AssetUtils {
         });
     }
 
+    /**
+     * Moves the pose animated geometries to a material that morphs the
+     * vertices in the vertex shader. The animations need to be baked for
+     * this, otherwise the animation stays on the CPU.<br>
+     * The mesh is never modified after this, so the bind pose is dropped. This
+     * way the model clones share the mesh instead of copying the vertex data
+     * for each instance.
+     *
+     * @param model the model
+     * @param assetManager the asset manager
+     */
+    private static void setupMorphAnimation(Spatial model, AssetManager assetManager) {
+        if (!Settings.getInstance().getBoolean(Settings.Setting.GPU_MORPH_ANIMATION)) {
+            return;
+        }
+
+        model.depthFirstTraversal(spatial -> {
+            if (spatial instanceof Geometry) {
+                Geometry geometry = (Geometry) spatial;
+                Material material = geometry.getMaterial();
+                if (geometry.getMesh().getBuffer(PoseTrack.MORPH_INDEX_BUFFER) != null
+                        && material.getMaterialDef().getMaterialParam(PoseTrack.MATERIAL_PARAM_MORPH_MAP) == null) {
+                    geometry.setMaterial(createMorphMaterial(assetManager, material));
+
+                    Mesh mesh = geometry.getMesh();
+                    mesh.clearBuffer(VertexBuffer.Type.BindPosePosition);
+                    mesh.clearBuffer(VertexBuffer.Type.BindPoseNormal);
+                    mesh.getBuffer(VertexBuffer.Type.Position).setUsage(VertexBuffer.Usage.Static);
+                    mesh.getBuffer(VertexBuffer.Type.Normal).setUsage(VertexBuffer.Usage.Static);
+                }
+            }
+        });
+    }
+
+    private static Material createMorphMaterial(AssetManager assetManager, Material material) {
+        Material morphMaterial = new Material(assetManager, MORPH_MATERIAL_DEFINITION);
+        for (MatParam param : material.getParams()) {
+            if (morphMaterial.getMaterialDef().getMaterialParam(param.getName()) != null) {
+                morphMaterial.setParam(param.getName(), param.getVarType(), param.getValue());
+            }
+        }
+        morphMaterial.getAdditionalRenderState().set(material.getAdditionalRenderState());
+        morphMaterial.setTransparent(material.isTransparent());
+        morphMaterial.setReceivesShadows(material.isReceivesShadows());
+
+        return morphMaterial;
+    }
+
     /**
      * Assign different kind of maps (Specular, Norma, etc.) to material, if
      * found
@@ -346,47 +412,78 @@ public class AssetUtils {
 
     /**
      * Preloads all assets, to memory and to the GPU. May take some time, but
-     * everything works smoothly after. Enqueues the actual GPU loading to the
-     * main render loop.
+     * everything works smoothly after. The assets are loaded on several
+     * threads, this blocks only until the terrain and the rooms are loaded.
+     * The GPU loading is spread over the next frames.
      *
      * @param kwdFile the KWD file to scan for the loadable assets
      * @param assetManager the asset manager
      * @param app the app
+     * @see #prewarmAssets(KwdFile, AssetManager, Main, Consumer)
      */
     public static void prewarmAssets(KwdFile kwdFile, AssetManager assetManager, Main app) {
-        if (!preWarmedAssets) {
-            synchronized (ASSET_LOCK) {
-                if (!preWarmedAssets) {
-                    try {
+        prewarmAssets(kwdFile, assetManager, app, null);
+    }
 
-                        // Objects
-                        prewarmArtResources(new ArrayList<>(kwdFile.getObjectList()), assetManager, app);
+    /**
+     * Preloads all assets, to memory and to the GPU. May take some time, but
+     * everything works smoothly after. The assets are loaded on several
+     * threads, this blocks only until the terrain and the rooms are loaded.
+     * The GPU loading is spread over the next frames.<br>
+     * Call on every level load, only the assets of the level that are not
+     * already in the cache are loaded. The assets of the previous level are
+     * released from the cache as needed.
+     *
+     * @param kwdFile the KWD file to scan for the loadable assets
+     * @param assetManager the asset manager
+     * @param app the app
+     * @param progressListener gets the progress from 0.0 to 1.0, may be
+     * {@code null}
+     */
+    public static void prewarmAssets(KwdFile kwdFile, AssetManager assetManager, Main app, Consumer<Float> progressListener) {
 
-                        // Creatures
-                        prewarmArtResources(new ArrayList<>(kwdFile.getCreatureList()), assetManager, app);
+        synchronized (ASSET_LOCK) {
 
-                        // Doors
-                        prewarmArtResources(kwdFile.getDoors(), assetManager, app);
+            // A new level, let go of the old one
+            if (levelPrewarmer != null) {
+                levelPrewarmer.stop();
+            }
+            levelPrewarmer = new AssetPrewarmer(app, assetManager);
 
-                        // Traps
-                        prewarmArtResources(kwdFile.getTraps(), assetManager, app);
+            try {
+                // Terrain
+                prewarmArtResources(new ArrayList<>(kwdFile.getTerrainList()), AssetPrewarmer.Priority.TERRAIN, levelPrewarmer);
 
-                        // Terrain
-                        prewarmArtResources(new ArrayList<>(kwdFile.getTerrainList()), assetManager, app);
+                // Rooms
+                prewarmArtResources(kwdFile.getRooms(), AssetPrewarmer.Priority.ROOM, levelPrewarmer);
 
-                        // Rooms
-                        prewarmArtResources(kwdFile.getRooms(), assetManager, app);
-                    } catch (Exception e) {
-                        Logger.getLogger(AssetUtils.class.getName()).log(Level.SEVERE, "Failed to prewarm assets!", e);
-                    } finally {
-                        preWarmedAssets = true;
-                    }
-                }
+                // Creatures
+                prewarmArtResources(new ArrayList<>(kwdFile.getCreatureList()), AssetPrewarmer.Priority.CREATURE, levelPrewarmer);
+
+                // Objects
+                prewarmArtResources(new ArrayList<>(kwdFile.getObjectList()), AssetPrewarmer.Priority.OBJECT, levelPrewarmer);
+
+                // Doors
+                prewarmArtResources(kwdFile.getDoors(), AssetPrewarmer.Priority.DOOR, levelPrewarmer);
+
+                // Traps
+                prewarmArtResources(kwdFile.getTraps(), AssetPrewarmer.Priority.TRAP, levelPrewarmer);
+            } catch (Exception e) {
+                Logger.getLogger(AssetUtils.class.getName()).log(Level.SEVERE, "Failed to prewarm assets!", e);
+            }
+
+            // Keep what the level needs, the evicted ones are loaded again
+            List<ModelKey> levelAssets = new ArrayList<>();
+            for (String modelName : levelPrewarmer.getModels()) {
+                levelAssets.add(getModelKey(modelName));
             }
+            ASSET_CACHE.startLevel(levelAssets);
+
+            levelPrewarmer.start(progressListener);
         }
     }
 
-    private static void prewarmArtResources(List<?> objects, AssetManager assetManager, Main app) throws Exception {
+    private static void prewarmArtResources(List<?> objects, AssetPrewarmer.Priority priority, AssetPrewarmer prewarmer) throws Exception {
 
         // Get the fields that house a possible ArtResource
         Class clazz = objects.get(0).getClass();
@@ -399,98 +496,78 @@ public class AssetUtils {
         }
 
         // Scan every object
-        List<Spatial> models = new ArrayList<>(methodsToScan.size() * objects.size());
         if (!methodsToScan.isEmpty()) {
             for (Object obj : objects) {
                 for (Method method : methodsToScan) {
                     ArtResource artResource = (ArtResource) method.invoke(obj);
                     if (artResource != null && artResource.getFlags().contains(ArtResource.ArtResourceFlag.PRELOAD)) {
 
-                        try {
-
-                            // TODO: if possible, we should have here a general loadAsset(ArtResource) stuff
-                            if (artResource.getType() == ArtResource.ArtResourceType.MESH
-                                    || artResource.getType() == ArtResource.ArtResourceType.ANIMATING_MESH
-                                    || artResource.getType() == ArtResource.ArtResourceType.MESH_COLLECTION
-                                    || artResource.getType() == ArtResource.ArtResourceType.PROCEDURAL_MESH) {
-                                models.add(loadModel(assetManager, artResource.getName()));
-                            } else if (artResource.getType() == ArtResource.ArtResourceType.TERRAIN_MESH && obj instanceof Terrain) {
-
-                                // With terrains, we need to see the construction type
-                                Terrain terrain = (Terrain) obj;
-                                if (method.getName().startsWith("getTaggedTopResource") || method.getName().startsWith("getSideResource")) {
-                                    models.add(loadModel(assetManager, artResource.getName()));
-                                } else if (terrain.getFlags().contains(Terrain.TerrainFlag.CONSTRUCTION_TYPE_QUAD)) {
-                                    for (int i = 0; i < 5; i++) {
-                                        if (terrain.getFlags().contains(Terrain.TerrainFlag.OWNABLE)) {
-                                            for (int y = 0; y < 7; y++) {
-                                                models.add(loadModel(assetManager, artResource.getName() + y + "_" + i, true, false));
-                                            }
-                                        } else {
-                                            models.add(loadModel(assetManager, artResource.getName() + i));
+                        // TODO: if possible, we should have here a general loadAsset(ArtResource) stuff
+                        if (artResource.getType() == ArtResource.ArtResourceType.MESH
+                                || artResource.getType() == ArtResource.ArtResourceType.ANIMATING_MESH
+                                || artResource.getType() == ArtResource.ArtResourceType.MESH_COLLECTION
+                                || artResource.getType() == ArtResource.ArtResourceType.PROCEDURAL_MESH) {
+                            prewarmer.addModel(artResource.getName(), priority);
+                        } else if (artResource.getType() == ArtResource.ArtResourceType.TERRAIN_MESH && obj instanceof Terrain) {
+
+                            // With terrains, we need to see the construction type
+                            Terrain terrain = (Terrain) obj;
+                            if (method.getName().startsWith("getTaggedTopResource") || method.getName().startsWith("getSideResource")) {
+                                prewarmer.addModel(artResource.getName(), priority);
+                            } else if (terrain.getFlags().contains(Terrain.TerrainFlag.CONSTRUCTION_TYPE_QUAD)) {
+                                for (int i = 0; i < 5; i++) {
+                                    if (terrain.getFlags().contains(Terrain.TerrainFlag.OWNABLE)) {
+                                        for (int y = 0; y < 7; y++) {
+                                            prewarmer.addModel(artResource.getName() + y + "_" + i, priority);
                                         }
+                                    } else {
+                                        prewarmer.addModel(artResource.getName() + i, priority);
                                     }
-                                } // TODO: No water... it is done in Water.java, need to tweak somehow
-                                else if (!terrain.getFlags().contains(Terrain.TerrainFlag.CONSTRUCTION_TYPE_WATER)) {
-                                    models.add(loadModel(assetManager, artResource.getName()));
                                 }
-                            } else if (artResource.getType() == ArtResource.ArtResourceType.TERRAIN_MESH && obj instanceof Room) {
-
-                                // With terrains, we need to see the construction type
-                                Room room = (Room) obj;
-                                int count = 0;
-                                int start = 0;
-                                switch (room.getTileConstruction()) {
-                                    case NORMAL: {
-                                        count = 10;
-                                        break;
-                                    }
-                                    case QUAD:
-                                    case HERO_GATE_2_BY_2:
-                                    case _5_BY_5_ROTATED: {
-                                        count = 4;
-                                        break;
-                                    }
-                                    case DOUBLE_QUAD: {
-                                        count = 15; // Hmm not perfect, see Prison
-                                        break;
-                                    }
-                                    case _3_BY_3_ROTATED:
-                                    case _3_BY_3: {
-                                        count = 9;
-                                        break;
-                                    }
-                                    case HERO_GATE_FRONT_END: {
-                                        count = 17;
-                                        start = 1;
-                                        break;
-                                    }
+                            } // TODO: No water... it is done in Water.java, need to tweak somehow
+                            else if (!terrain.getFlags().contains(Terrain.TerrainFlag.CONSTRUCTION_TYPE_WATER)) {
+                                prewarmer.addModel(artResource.getName(), priority);
+                            }
+                        } else if (artResource.getType() == ArtResource.ArtResourceType.TERRAIN_MESH && obj instanceof Room) {
+
+                            // With terrains, we need to see the construction type
+                            Room room = (Room) obj;
+                            int count = 0;
+                            int start = 0;
+                            switch (room.getTileConstruction()) {
+                                case NORMAL: {
+                                    count = 10;
+                                    break;
+                                }
+                                case QUAD:
+                                case HERO_GATE_2_BY_2:
+                                case _5_BY_5_ROTATED: {
+                                    count = 4;
+                                    break;
+                                }
+                                case DOUBLE_QUAD: {
+                                    count = 15; // Hmm not perfect, see Prison
+                                    break;
                                 }
-                                for (int i = start; i < count; i++) {
-                                    models.add(loadModel(assetManager, artResource.getName() + i, false));
+                                case _3_BY_3_ROTATED:
+                                case _3_BY_3: {
+                                    count = 9;
+                                    break;
+                                }
+                                case HERO_GATE_FRONT_END: {
+                                    count = 17;
+                                    start = 1;
+                                    break;
                                 }
                             }
-
-                        } catch (Exception e) {
-                            throw new Exception("Failed to load " + artResource + " on object " + obj + "!", e);
+                            for (int i = start; i < count; i++) {
+                                prewarmer.addModel(artResource.getName() + i, priority);
+                            }
                         }
                     }
                 }
             }
         }
-
-        // Enqueue the warming up, we need GL context
-        if (!models.isEmpty()) {
-            LOGGER.log(Level.INFO, "Prewarming {0} objects!", models.size());
-            app.enqueue(() -> {
-
-                for (Spatial spatial : models) {
-                    app.getRenderManager().preloadScene(spatial);
-                }
-
-                return null;
-            });
-        }
     }
 
     /**
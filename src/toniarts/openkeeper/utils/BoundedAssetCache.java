@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.utils;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.cache.AssetCache;
+import com.jme3.material.MatParam;
+import com.jme3.material.Material;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An asset cache with a memory budget. The size of the assets is estimated
+ * from their vertex and texture data. The data shared between the assets, like
+ * the textures of the models and their materials, is counted only once. When
+ * the budget is exceeded, the least recently used assets are evicted.<br>
+ * The assets used by the current level are pinned and never evicted. Starting
+ * a new level unpins the assets of the previous one, they are then evicted as
+ * the new level needs room. Assets can also be added unpinned, for the ones
+ * not often needed.<br>
+ * Thread safe.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class BoundedAssetCache implements AssetCache {
+
+    private static final Logger LOGGER = Logger.getLogger(BoundedAssetCache.class.getName());
+
+    private final long budget;
+    private final Map<AssetKey, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<Object, DataReference> dataReferences = new IdentityHashMap<>();
+    private int level;
+    private long residentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a new cache
+     *
+     * @param budget the memory budget in bytes
+     */
+    public BoundedAssetCache(long budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public <T> void addToCache(AssetKey<T> key, T obj) {
+        addToCache(key, obj, true);
+    }
+
+    /**
+     * Adds an asset to the cache
+     *
+     * @param <T> the asset type
+     * @param key the asset key
+     * @param obj the asset
+     * @param pinned pin to the current level, unpinned assets may be evicted
+     * any time the cache is over the budget
+     */
+    public synchronized <T> void addToCache(AssetKey<T> key, T obj, boolean pinned) {
+        Entry entry = new Entry(obj, collectData(obj), pinned ? level : -1);
+        retain(entry);
+        Entry oldEntry = entries.put(key, entry);
+        if (oldEntry != null) {
+            release(oldEntry);
+        }
+
+        evict();
+    }
+
+    @Override
+    public <T> void registerAssetClone(AssetKey<T> key, T clone) {
+        // No clone tracking
+    }
+
+    @Override
+    public void notifyNoAssetClone() {
+        // No clone tracking
+    }
+
+    @Override
+    public synchronized <T> T getFromCache(AssetKey<T> key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        // Used by this level
+        hits++;
+        if (entry.level >= 0) {
+            entry.level = level;
+        }
+        return (T) entry.asset;
+    }
+
+    /**
+     * Is the asset in the cache. Doesn't count as a use of the asset.
+     *
+     * @param key the asset key
+     * @return true if the asset is in the cache
+     */
+    public synchronized boolean contains(AssetKey key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public synchronized boolean deleteFromCache(AssetKey key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            release(entry);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void clearCache() {
+        entries.clear();
+        dataReferences.clear();
+        residentBytes = 0;
+    }
+
+    /**
+     * Starts a new level. The assets of the previous levels are no longer
+     * pinned, unless the new level uses them too. The assets the new level
+     * needs are pinned before making room, so they are not evicted just to be
+     * loaded again.
+     *
+     * @param levelAssets the assets the new level needs
+     */
+    public synchronized void startLevel(Collection<? extends AssetKey> levelAssets) {
+        LOGGER.log(Level.INFO, "Asset cache at level change: {0}", this);
+        level++;
+        for (AssetKey key : levelAssets) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.level >= 0) {
+                entry.level = level;
+            }
+        }
+        evict();
+    }
+
+    private void evict() {
+        if (residentBytes <= budget) {
+            return;
+        }
+
+        // In the least recently used order
+        Iterator<Entry> iter = entries.values().iterator();
+        while (residentBytes > budget && iter.hasNext()) {
+            Entry entry = iter.next();
+            if (entry.level != level) {
+                iter.remove();
+                release(entry);
+                evictions++;
+            }
+        }
+        if (residentBytes > budget) {
+            LOGGER.log(Level.WARNING, "The current level alone exceeds the asset cache budget! {0}", this);
+        }
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BoundedAssetCache{" + "assets=" + entries.size() + ", residentBytes=" + residentBytes
+                + ", budget=" + budget + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + '}';
+    }
+
+    /**
+     * Counts the data of the asset as resident, the data already used by
+     * other assets is not counted again
+     *
+     * @param entry the cache entry
+     */
+    private void retain(Entry entry) {
+        for (Object data : entry.data) {
+            DataReference reference = dataReferences.get(data);
+            if (reference == null) {
+                reference = new DataReference(estimateSize(data));
+                dataReferences.put(data, reference);
+                residentBytes += reference.size;
+            }
+            reference.count++;
+        }
+    }
+
+    /**
+     * Releases the data of the asset, the data is no longer counted as
+     * resident once no asset uses it
+     *
+     * @param entry the cache entry
+     */
+    private void release(Entry entry) {
+        for (Object data : entry.data) {
+            DataReference reference = dataReferences.get(data);
+            if (--reference.count == 0) {
+                dataReferences.remove(data);
+                residentBytes -= reference.size;
+            }
+        }
+    }
+
+    /**
+     * Collects the data taking memory in the asset, the meshes and the
+     * texture images
+     *
+     * @param asset the asset
+     * @return the data, each only once
+     */
+    private static Set<Object> collectData(Object asset) {
+        Set<Object> data = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (asset instanceof Spatial) {
+            ((Spatial) asset).depthFirstTraversal(spatial -> {
+                if (spatial instanceof Geometry) {
+                    addData(((Geometry) spatial).getMesh(), data);
+                    collectData(((Geometry) spatial).getMaterial(), data);
+                }
+            });
+        } else if (asset instanceof Material) {
+            collectData((Material) asset, data);
+        } else if (asset instanceof Texture) {
+            addData(((Texture) asset).getImage(), data);
+        }
+        return data;
+    }
+
+    private static void collectData(Material material, Set<Object> data) {
+        if (material == null) {
+            return;
+        }
+
+        for (MatParam param : material.getParams()) {
+            if (param.getValue() instanceof Texture) {
+                addData(((Texture) param.getValue()).getImage(), data);
+            }
+        }
+    }
+
+    private static void addData(Object obj, Set<Object> data) {
+        if (obj != null) {
+            data.add(obj);
+        }
+    }
+
+    /**
+     * Estimates the memory used by the mesh or the image
+     *
+     * @param data the mesh or the image
+     * @return the estimated size in bytes
+     */
+    private static long estimateSize(Object data) {
+        long size = 0;
+        if (data instanceof Mesh) {
+            for (VertexBuffer vertexBuffer : ((Mesh) data).getBufferList()) {
+                if (vertexBuffer.getData() != null) {
+                    size += (long) vertexBuffer.getData().capacity() * vertexBuffer.getFormat().getComponentSize();
+                }
+            }
+        } else if (data instanceof Image) {
+            for (ByteBuffer buffer : ((Image) data).getData()) {
+                if (buffer != null) {
+                    size += buffer.capacity();
+                }
+            }
+        }
+        return size;
+    }
+
+    private static final class Entry {
+
+        private final Object asset;
+        private final Set<Object> data;
+        private int level;
+
+        private Entry(Object asset, Set<Object> data, int level) {
+            this.asset = asset;
+            this.data = data;
+            this.level = level;
+        }
+    }
+
+    /**
+     * Mesh or image data used by one or more assets
+     */
+    private static final class DataReference {
+
+        private final long size;
+        private int count;
+
+        private DataReference(long size) {
+            this.size = size;
+        }
+    }
+
+}
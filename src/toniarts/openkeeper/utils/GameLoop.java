@@ -17,6 +17,7 @@
 package toniarts.openkeeper.utils;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A game loop. This is a fork of Paul Speeds class of a same name.
@@ -33,7 +34,9 @@ public class GameLoop {
 
     private final long updateRate;
     private long idleSleepTime = 0;
+    private volatile boolean fixedTimeStep = false;
     private final AtomicBoolean pauseFlag = new AtomicBoolean(false);
+    private final ReentrantLock tickLock = new ReentrantLock(true);
 
     public GameLoop(IGameLoopManager gameLoopManager) {
         this(gameLoopManager, INTERVAL_FPS_60); // 60 FPS
@@ -107,10 +110,36 @@ public class GameLoop {
         return idleSleepTime;
     }
 
+    /**
+     * In fixed time step mode every tick is reported to take exactly the
+     * update rate, regardless of the real elapsed time. This is needed for
+     * deterministic simulation where every peer must advance the game with
+     * identical time steps.
+     *
+     * @param fixedTimeStep use fixed time step
+     */
+    public void setFixedTimeStep(boolean fixedTimeStep) {
+        this.fixedTimeStep = fixedTimeStep;
+    }
+
+    public boolean isFixedTimeStep() {
+        return fixedTimeStep;
+    }
+
     public void pause() {
         pauseFlag.set(true);
     }
 
+    /**
+     * Is the loop paused, note that the possible tick in progress is still
+     * finished after pausing
+     *
+     * @return {@code true} if paused
+     */
+    public boolean isPaused() {
+        return pauseFlag.get();
+    }
+
     public void resume() {
         pauseFlag.set(false);
         synchronized (pauseFlag) {
@@ -118,6 +147,25 @@ public class GameLoop {
         }
     }
 
+    /**
+     * Holds the loop between ticks. Waits for the possible tick in progress
+     * to finish and then keeps the loop from starting a new one until
+     * {@link #unlockTicks()} is called. Can be called from the loop thread
+     * itself too.
+     */
+    public void lockTicks() {
+        tickLock.lock();
+    }
+
+    /**
+     * Lets the loop continue ticking
+     *
+     * @see #lockTicks()
+     */
+    public void unlockTicks() {
+        tickLock.unlock();
+    }
+
     /**
      * Use our own thread instead of a java executor because we need more
      * control over the update loop. ScheduledThreadPoolExecutor will try to
@@ -172,8 +220,20 @@ public class GameLoop {
                 if (delta >= updateRate) {
 
                     // Time to update
-                    lastTime = time;
-                    gameLoopManager.processTick(delta);
+                    tickLock.lock();
+                    try {
+                        if (fixedTimeStep) {
+
+                            // Catch up missed ticks in whole time steps, don't drop them
+                            lastTime += updateRate;
+                            gameLoopManager.processTick(updateRate);
+                        } else {
+                            lastTime = time;
+                            gameLoopManager.processTick(delta);
+                        }
+                    } finally {
+                        tickLock.unlock();
+                    }
                     continue;
                 }
 
@@ -18,6 +18,7 @@ package toniarts.openkeeper.utils;
 
 import toniarts.openkeeper.tools.convert.AssetsConverter;
 import toniarts.openkeeper.tools.convert.ConversionUtils;
+import toniarts.openkeeper.tools.convert.map.GameMap;
 import toniarts.openkeeper.tools.convert.map.KwdFile;
 import toniarts.openkeeper.tools.convert.map.Terrain;
 import toniarts.openkeeper.tools.convert.map.Tile;
@@ -72,8 +73,7 @@ public class MapThumbnailGenerator {
             }
         }
 
-        // Ensure that the kwd is fully loaded
-        kwd.load();
+        // The map & terrain sections are loaded on demand, no need to load the rest
 
         // Determine wanted width/height
         int imageWidth = kwd.getMap().getWidth();
@@ -170,18 +170,19 @@ public class MapThumbnailGenerator {
     private static void drawMap(final KwdFile kwd, byte[] data, int xScale, int yScale) {
 
         // For now this is very much hard coded, I couldn't find much logic
-        for (int y = 0; y < kwd.getMap().getHeight(); y++) {
-            for (int x = 0; x < kwd.getMap().getWidth(); x++) {
-                Tile tile = kwd.getMap().getTile(x, y);
+        GameMap map = kwd.getMap();
+        for (int y = 0; y < map.getHeight(); y++) {
+            for (int x = 0; x < map.getWidth(); x++) {
+                Tile tile = map.getTile(x, y);
                 byte value = 0;
 
                 // Water and lava
                 Terrain terrainTile = kwd.getTerrain(tile.getTerrainId());
-                if (x == 0 || y == 0 || y == kwd.getMap().getHeight() - 1 || x == kwd.getMap().getWidth() - 1) {
+                if (x == 0 || y == 0 || y == map.getHeight() - 1 || x == map.getWidth() - 1) {
                     value = 46; // Edge of maps
-                } else if (kwd.getMap().getLava().getTerrainId() == tile.getTerrainId()) {
+                } else if (map.getLava().getTerrainId() == tile.getTerrainId()) {
                     value = 10; // Lava
-                } else if (kwd.getMap().getWater().getTerrainId() == tile.getTerrainId()) {
+                } else if (map.getWater().getTerrainId() == tile.getTerrainId()) {
                     value = 8; // Water
                 } // Other non-ownable tiles
                 else if (terrainTile.getFlags().contains(Terrain.TerrainFlag.IMPENETRABLE)) {
@@ -221,7 +222,7 @@ public class MapThumbnailGenerator {
                 // Write the value
                 for (int yScaling = 0; yScaling < yScale; yScaling++) {
                     for (int xScaling = 0; xScaling < xScale; xScaling++) {
-                        data[(y * yScale + yScaling) * kwd.getMap().getWidth() * xScale + (x * xScale + xScaling)] = value;
+                        data[(y * yScale + yScaling) * map.getWidth() * xScale + (x * xScale + xScaling)] = value;
                     }
                 }
 
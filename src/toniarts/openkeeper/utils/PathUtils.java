@@ -28,6 +28,7 @@ import java.nio.file.Paths;
 public class PathUtils {
 
     public static final String DKII_DATA_FOLDER = getRealDKIIRelativeFolder("Data" + File.separator);
+    public static final String DKII_TEXTURE_CACHE_FOLDER = getRealDKIIRelativeFolder("DK2TextureCache" + File.separator);
     public static final String DKII_SFX_FOLDER = getRealDKIIRelativeFolder(DKII_DATA_FOLDER + "Sound" + File.separator
             + "sfx" + File.separator);
     public static final String DKII_MOVIES_FOLDER = getRealDKIIRelativeFolder(DKII_DATA_FOLDER + "Movies" + File.separator);
@@ -16,6 +16,10 @@
  */
 package toniarts.openkeeper.utils;
 
+import com.badlogic.gdx.ai.DefaultTimepiece;
+import com.badlogic.gdx.ai.GdxAI;
+import com.badlogic.gdx.ai.Timepiece;
+import com.simsilica.es.Entity;
 import toniarts.openkeeper.Main;
 
 import javax.management.MBeanServer;
@@ -39,6 +43,10 @@ public class Utils {
     private static final Logger LOGGER = Logger.getLogger(Utils.class.getName());
     private static final ResourceBundle BUNDLE = Main.getResourceBundle("Interface/Texts/Text");
     private static final Random RANDOM = new Random();
+    private static final ThreadLocal<Random> THREAD_RANDOM = new ThreadLocal<>();
+    private static final Timepiece TIMEPIECE = new DefaultTimepiece();
+    private static final ThreadLocal<Timepiece> THREAD_TIMEPIECE = new ThreadLocal<>();
+    private static final Comparator<Entity> ENTITY_ID_ORDER = Comparator.comparing(Entity::getId);
     private static Boolean windows;
     private static final String[] BLOOD_TYPES = {"IkI", "BO", "PoE", "BA", "MoO", "O", "ARh"};
     private static final String[] CREATURE_NAMES = {
@@ -123,7 +131,7 @@ public class Utils {
      * @return name for your creature
      */
     public static String generateCreatureName() {
-        return CREATURE_NAMES[RANDOM.nextInt(CREATURE_NAMES.length)];
+        return CREATURE_NAMES[getRandom().nextInt(CREATURE_NAMES.length)];
     }
 
     /**
@@ -132,7 +140,76 @@ public class Utils {
      * @return blood type for your creature
      */
     public static String generateBloodType() {
-        return BLOOD_TYPES[RANDOM.nextInt(BLOOD_TYPES.length)];
+        return BLOOD_TYPES[getRandom().nextInt(BLOOD_TYPES.length)];
+    }
+
+    /**
+     * Get the random number generator. The game logic should use this instead
+     * of any other random sources so that the simulation can be made
+     * deterministic by seeding it. Returns the generator bound to the current
+     * thread, or the shared one if none is bound.
+     *
+     * @return the random number generator
+     * @see #setThreadRandom(Random)
+     */
+    public static Random getRandom() {
+        Random random = THREAD_RANDOM.get();
+        return random != null ? random : RANDOM;
+    }
+
+    /**
+     * Binds a random number generator to the current thread. This way each
+     * game simulation running in the same process can have its own seeded
+     * generator.
+     *
+     * @param random the random number generator, {@code null} to use the
+     * shared one again
+     */
+    public static void setThreadRandom(Random random) {
+        if (random == null) {
+            THREAD_RANDOM.remove();
+        } else {
+            THREAD_RANDOM.set(random);
+        }
+    }
+
+    /**
+     * Binds a gdx-ai timepiece to the current thread. The gdx-ai timepiece is
+     * global, so it is replaced with one that delegates to the timepiece bound
+     * to the calling thread. This way each game simulation running in the
+     * same process can have its own AI time.
+     *
+     * @param timepiece the timepiece, {@code null} to use the shared one
+     * again
+     */
+    public static void setThreadTimepiece(Timepiece timepiece) {
+        if (!(GdxAI.getTimepiece() instanceof ThreadTimepiece)) {
+            GdxAI.setTimepiece(new ThreadTimepiece());
+        }
+        if (timepiece == null) {
+            THREAD_TIMEPIECE.remove();
+        } else {
+            THREAD_TIMEPIECE.set(timepiece);
+        }
+    }
+
+    /**
+     * Get the entities in the order of their IDs. Entity sets iterate in an
+     * undefined order, the game logic should iterate them through this so
+     * that the deterministic simulation processes the entities in the same
+     * order on every peer.
+     *
+     * @param entities the entities
+     * @return the entities sorted by their IDs
+     */
+    public static Collection<Entity> sortedById(Collection<Entity> entities) {
+        if (entities.size() < 2) {
+            return entities;
+        }
+
+        List<Entity> sorted = new ArrayList<>(entities);
+        sorted.sort(ENTITY_ID_ORDER);
+        return sorted;
     }
 
     /**
@@ -149,7 +226,7 @@ public class Utils {
         if (list.size() == 1) {
             return list.get(0);
         }
-        return list.get(RANDOM.nextInt(list.size()));
+        return list.get(getRandom().nextInt(list.size()));
     }
 
     /**
@@ -161,7 +238,7 @@ public class Utils {
      * empty
      */
     public static <T> Optional<T> getRandomItem(Collection<T> collection) {
-        return collection.stream().skip(RANDOM.nextInt(collection.size())).findFirst();
+        return collection.stream().skip(getRandom().nextInt(collection.size())).findFirst();
     }
 
     /**
@@ -231,4 +308,30 @@ public class Utils {
         return result.trim();
     }
 
+    /**
+     * Delegates to the timepiece bound to the current thread, or to the
+     * shared one if none is bound
+     */
+    private static class ThreadTimepiece implements Timepiece {
+
+        private Timepiece getTimepiece() {
+            Timepiece timepiece = THREAD_TIMEPIECE.get();
+            return timepiece != null ? timepiece : TIMEPIECE;
+        }
+
+        @Override
+        public float getTime() {
+            return getTimepiece().getTime();
+        }
+
+        @Override
+        public float getDeltaTime() {
+            return getTimepiece().getDeltaTime();
+        }
+
+        @Override
+        public void update(float deltaTime) {
+            getTimepiece().update(deltaTime);
+        }
+    }
 }
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.view;
+
+import com.jme3.animation.AnimControl;
+import com.jme3.material.Material;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.GeometryGroupNode;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.scene.instancing.InstancedGeometry;
+import toniarts.openkeeper.animation.PoseTrack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A node for the entity models that renders the static parts of the models
+ * with hardware instancing. The geometries sharing the mesh and the material
+ * are drawn with one draw call, no matter how many gold piles there are in the
+ * treasury.<br>
+ * The entity models are attached here just like to a normal node. The
+ * geometries stay in the scene graph as they are (picking etc.), only the
+ * rendering is done by the instanced geometries. Animated geometries and the
+ * hidden ones are rendered normally. The models are examined when they are
+ * attached and when they are {@link #refresh(Spatial) refreshed}, and only
+ * the instanced geometries that have moving instances are updated.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class InstancedEntityNode extends GeometryGroupNode {
+
+    private static final String MATERIAL_PARAM_USE_INSTANCING = "UseInstancing";
+
+    private final Map<Mesh, List<InstancedGeometry>> instancedGeometriesByMesh = new IdentityHashMap<>();
+    private final Map<Geometry, InstancedGeometry> instances = new HashMap<>();
+    private final Map<InstancedGeometry, Material> templateMaterials = new HashMap<>();
+    private final Map<Spatial, List<Geometry>> entityGeometries = new HashMap<>(); // The instanceable geometries of each model
+    private final Set<Spatial> dirtyEntities = new LinkedHashSet<>(); // Models to examine on the next update
+    private final Set<InstancedGeometry> dirtyInstancedGeometries = new LinkedHashSet<>(); // Instance transforms to update
+    private final List<Geometry> geometryBuffer = new ArrayList<>();
+    private boolean instancesRemoved = false;
+
+    public InstancedEntityNode(String name) {
+        super(name);
+
+        addControl(new InstancingControl());
+    }
+
+    @Override
+    public int attachChildAt(Spatial child, int index) {
+        int result = super.attachChildAt(child, index);
+        if (!(child instanceof InstancedGeometry)) {
+            dirtyEntities.add(child);
+        }
+
+        return result;
+    }
+
+    @Override
+    public Spatial detachChildAt(int index) {
+        Spatial child = super.detachChildAt(index);
+        if (child != null && !(child instanceof InstancedGeometry)) {
+            dirtyEntities.remove(child);
+            List<Geometry> geometries = entityGeometries.remove(child);
+            if (geometries != null) {
+                for (Geometry geometry : geometries) {
+                    releaseInstance(geometry);
+                }
+            }
+        }
+
+        return child;
+    }
+
+    /**
+     * Examines the model again on the next update. Call when the model has
+     * changed in a way that may affect the instancing, i.e. it has been shown,
+     * hidden, animated or its parts have changed.
+     *
+     * @param entity the entity model attached to this node
+     */
+    public void refresh(Spatial entity) {
+        if (entity.getParent() == this) {
+            dirtyEntities.add(entity);
+        }
+    }
+
+    /**
+     * Moves the geometries of the changed models to the instanced geometries
+     * and back
+     */
+    private void updateInstances() {
+        if (!dirtyEntities.isEmpty()) {
+            for (Spatial entity : dirtyEntities) {
+                updateEntityInstances(entity);
+            }
+            dirtyEntities.clear();
+        }
+
+        // Get rid of the unused instanced geometries
+        if (!instancesRemoved) {
+            return;
+        }
+        instancesRemoved = false;
+        for (Iterator<List<InstancedGeometry>> iter = instancedGeometriesByMesh.values().iterator(); iter.hasNext();) {
+            List<InstancedGeometry> instancedGeometries = iter.next();
+            for (Iterator<InstancedGeometry> instancedGeometryIter = instancedGeometries.iterator(); instancedGeometryIter.hasNext();) {
+                InstancedGeometry instancedGeometry = instancedGeometryIter.next();
+                if (instancedGeometry.getActualNumInstances() == 0) {
+                    instancedGeometryIter.remove();
+                    templateMaterials.remove(instancedGeometry);
+                    dirtyInstancedGeometries.remove(instancedGeometry);
+                    instancedGeometry.removeFromParent();
+                }
+            }
+            if (instancedGeometries.isEmpty()) {
+                iter.remove();
+            }
+        }
+    }
+
+    private void updateEntityInstances(Spatial entity) {
+        geometryBuffer.clear();
+        collectInstanceableGeometries(entity, geometryBuffer);
+
+        // Release the ones that are no longer here or that have been hidden
+        List<Geometry> geometries = entityGeometries.get(entity);
+        if (geometries != null) {
+            for (Geometry geometry : geometries) {
+                if (!geometryBuffer.contains(geometry)) {
+                    releaseInstance(geometry);
+                }
+            }
+        }
+
+        for (Geometry geometry : geometryBuffer) {
+            if (!instances.containsKey(geometry)) {
+                addInstance(geometry);
+            }
+        }
+
+        if (geometryBuffer.isEmpty()) {
+            entityGeometries.remove(entity);
+        } else {
+            entityGeometries.put(entity, new ArrayList<>(geometryBuffer));
+        }
+    }
+
+    /**
+     * Get the entity model the geometry is part of
+     *
+     * @param geometry the geometry
+     * @return the entity model, or {@code null} if the geometry is not under
+     * this node
+     */
+    private Spatial getEntity(Geometry geometry) {
+        Spatial spatial = geometry;
+        while (spatial.getParent() != null && spatial.getParent() != this) {
+            spatial = spatial.getParent();
+        }
+
+        return spatial.getParent() == this ? spatial : null;
+    }
+
+    private static void collectInstanceableGeometries(Spatial spatial, List<Geometry> geometries) {
+        if (spatial.getCullHint() == CullHint.Always || spatial.getControl(AnimControl.class) != null) {
+            return;
+        }
+
+        if (spatial instanceof Geometry) {
+            Geometry geometry = (Geometry) spatial;
+            if (isInstanceable(geometry)) {
+                geometries.add(geometry);
+            }
+        } else if (spatial instanceof Node) {
+            for (Spatial child : ((Node) spatial).getChildren()) {
+                collectInstanceableGeometries(child, geometries);
+            }
+        }
+    }
+
+    private static boolean isInstanceable(Geometry geometry) {
+        Material material = geometry.getMaterial();
+        if (material == null || geometry.getMesh() == null) {
+            return false;
+        }
+
+        // The morphed ones have their own animation frame each
+        if (material.getMaterialDef().getMaterialParam(MATERIAL_PARAM_USE_INSTANCING) == null
+                || material.getMaterialDef().getMaterialParam(PoseTrack.MATERIAL_PARAM_MORPH_MAP) != null
+                || geometry.getMesh().getBuffer(VertexBuffer.Type.BindPosePosition) != null) {
+            return false;
+        }
+
+        // The transparent ones need to be sorted one by one
+        return !material.isTransparent()
+                && geometry.getQueueBucket() != RenderQueue.Bucket.Transparent
+                && geometry.getQueueBucket() != RenderQueue.Bucket.Translucent;
+    }
+
+    private void addInstance(Geometry geometry) {
+        InstancedGeometry instancedGeometry = getInstancedGeometry(geometry);
+        geometry.associateWithGroupNode(this, 0);
+        instancedGeometry.addInstance(geometry);
+        instances.put(geometry, instancedGeometry);
+        dirtyInstancedGeometries.add(instancedGeometry);
+    }
+
+    private InstancedGeometry getInstancedGeometry(Geometry geometry) {
+        List<InstancedGeometry> instancedGeometries = instancedGeometriesByMesh.computeIfAbsent(geometry.getMesh(), k -> new ArrayList<>(1));
+
+        // The models are clones, so are the materials, compare the contents
+        for (InstancedGeometry instancedGeometry : instancedGeometries) {
+            if (instancedGeometry.getShadowMode() == geometry.getShadowMode()
+                    && templateMaterials.get(instancedGeometry).contentEquals(geometry.getMaterial())) {
+                return instancedGeometry;
+            }
+        }
+
+        Material material = geometry.getMaterial().clone();
+        material.setBoolean(MATERIAL_PARAM_USE_INSTANCING, true);
+
+        InstancedGeometry instancedGeometry = new InstancedGeometry(geometry.getName() + " instances");
+        instancedGeometry.setMesh(geometry.getMesh());
+        instancedGeometry.setMaterial(material);
+        instancedGeometry.setShadowMode(geometry.getShadowMode());
+        instancedGeometry.setCullHint(CullHint.Never);
+        attachChild(instancedGeometry);
+
+        instancedGeometries.add(instancedGeometry);
+        templateMaterials.put(instancedGeometry, geometry.getMaterial());
+
+        return instancedGeometry;
+    }
+
+    private void releaseInstance(Geometry geometry) {
+        if (instances.containsKey(geometry)) {
+            geometry.unassociateFromGroupNode();
+        }
+    }
+
+    private void removeInstance(Geometry geometry) {
+        InstancedGeometry instancedGeometry = instances.remove(geometry);
+        if (instancedGeometry != null) {
+            instancedGeometry.deleteInstance(geometry);
+            dirtyInstancedGeometries.add(instancedGeometry);
+            instancesRemoved = true;
+        }
+    }
+
+    @Override
+    public void onTransformChange(Geometry geom) {
+
+        // Updated in bulk before rendering
+        InstancedGeometry instancedGeometry = instances.get(geom);
+        if (instancedGeometry != null) {
+            dirtyInstancedGeometries.add(instancedGeometry);
+        }
+    }
+
+    @Override
+    public void onMaterialChange(Geometry geom) {
+
+        // Find it a new home on the next update
+        geom.unassociateFromGroupNode();
+        refreshEntity(geom);
+    }
+
+    @Override
+    public void onMeshChange(Geometry geom) {
+        geom.unassociateFromGroupNode();
+        refreshEntity(geom);
+    }
+
+    private void refreshEntity(Geometry geometry) {
+        Spatial entity = getEntity(geometry);
+        if (entity != null) {
+            dirtyEntities.add(entity);
+        }
+    }
+
+    @Override
+    public void onGeometryUnassociated(Geometry geom) {
+        removeInstance(geom);
+    }
+
+    /**
+     * Keeps the instances up to date
+     */
+    private class InstancingControl extends AbstractControl {
+
+        @Override
+        protected void controlUpdate(float tpf) {
+            updateInstances();
+        }
+
+        @Override
+        protected void controlRender(RenderManager rm, ViewPort vp) {
+            if (dirtyInstancedGeometries.isEmpty()) {
+                return;
+            }
+
+            for (InstancedGeometry instancedGeometry : dirtyInstancedGeometries) {
+                instancedGeometry.updateInstances();
+            }
+            dirtyInstancedGeometries.clear();
+        }
+    }
+
+}
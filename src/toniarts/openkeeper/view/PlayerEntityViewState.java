@@ -28,6 +28,7 @@ import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import toniarts.openkeeper.Main;
 import toniarts.openkeeper.game.component.*;
+import toniarts.openkeeper.game.data.Settings;
 import toniarts.openkeeper.tools.convert.map.Creature;
 import toniarts.openkeeper.tools.convert.map.Door;
 import toniarts.openkeeper.tools.convert.map.KwdFile;
@@ -92,9 +93,9 @@ public class PlayerEntityViewState extends AbstractAppState {
         // Create the scene graph
         root = new Node("Things");
         nodeCreatures = new Node("Creatures");
-        nodeObjects = new Node("Objects");
-        nodeDoors = new Node("Doors");
-        nodeTraps = new Node("Traps");
+        nodeObjects = createEntityNode("Objects");
+        nodeDoors = createEntityNode("Doors");
+        nodeTraps = createEntityNode("Traps");
         root.attachChild(nodeCreatures);
         root.attachChild(nodeObjects);
         root.attachChild(nodeDoors);
@@ -153,6 +154,21 @@ public class PlayerEntityViewState extends AbstractAppState {
         super.cleanup();
     }
 
+    /**
+     * Creates a node for the entity models. The static models are drawn
+     * instanced, if enabled. Creatures are always animated, they don't benefit
+     * from this.
+     *
+     * @param name name of the node
+     * @return the entity node
+     */
+    private static Node createEntityNode(String name) {
+        if (Settings.getInstance().getBoolean(Settings.Setting.ENTITY_INSTANCING)) {
+            return new InstancedEntityNode(name);
+        }
+        return new Node(name);
+    }
+
     /**
      * Gets the entity view root node (no map, just entities)
      *
@@ -291,6 +307,7 @@ public class PlayerEntityViewState extends AbstractAppState {
     private void updateDoorModelState(Spatial object, Entity e) {
         DoorViewState viewState = e.get(DoorViewState.class);
         object.getControl(DoorViewControl.class).setTargetState(viewState);
+        refreshInstances(object);
     }
 
     private void updateObjectModelState(Spatial object, Entity e) {
@@ -307,6 +324,19 @@ public class PlayerEntityViewState extends AbstractAppState {
             control.setTargetState(viewState);
         }
         object.setCullHint(viewState.visible ? Spatial.CullHint.Inherit : Spatial.CullHint.Always);
+        refreshInstances(object);
+    }
+
+    /**
+     * The view state changes may show, hide or animate parts of the model,
+     * let the instancing know
+     *
+     * @param object the model
+     */
+    private static void refreshInstances(Spatial object) {
+        if (object.getParent() instanceof InstancedEntityNode) {
+            ((InstancedEntityNode) object.getParent()).refresh(object);
+        }
     }
 
     private void updateModelPosition(Spatial object, Entity e) {
@@ -105,6 +105,9 @@ public abstract class PlayerMapViewState extends AbstractAppState implements Map
         this.app = (Main) app;
         this.stateManager = stateManager;
 
+        // The terrain rendering depends on the hardware
+        mapLoader.initialize(app.getRenderer());
+
         // Effects
         this.stateManager.attach(effectManager);
 
@@ -130,6 +133,9 @@ public abstract class PlayerMapViewState extends AbstractAppState implements Map
         // Effects
         this.stateManager.detach(effectManager);
 
+        // Stop the terrain page builders
+        mapLoader.cleanup();
+
         super.cleanup();
     }
 
@@ -154,6 +160,9 @@ public abstract class PlayerMapViewState extends AbstractAppState implements Map
             return;
         }
 
+        // Swap in the rebuilt terrain pages and start rebuilding the changed ones
+        mapLoader.update(app.getCamera());
+
         // Maybe like an additional update or something so that we know the tick
 //        lastUpdate += tpf;
 //        if (lastUpdate > TICK) {
@@ -186,8 +195,8 @@ public abstract class PlayerMapViewState extends AbstractAppState implements Map
             points[i] = new Point(mapTile.getX(), mapTile.getY());
         }
 
-        // FIXME: See in what thread we are, perhaps even do everything ready, just the attaching in render thread
-        app.enqueue(() -> mapLoader.updateTiles(points));
+        // Just marks the tiles, the pages are rebuilt in the background
+        mapLoader.updateTiles(points);
     }
 
     @Override
@@ -198,8 +207,8 @@ public abstract class PlayerMapViewState extends AbstractAppState implements Map
             updatableTiles[i] = tiles.get(i).getLocation();
         }
 
-        // FIXME: See in what thread we are, perhaps even do everything ready, just the attaching in render thread
-        app.enqueue(() -> mapLoader.updateTiles(updatableTiles));
+        // Just marks the tiles, the pages are rebuilt in the background
+        mapLoader.updateTiles(updatableTiles);
     }
 
     @Override
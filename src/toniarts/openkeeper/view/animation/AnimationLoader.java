@@ -199,6 +199,12 @@ public class AnimationLoader {
         }
     }
 
+    /**
+     * Loads the model from the asset cache. The clone has its own animation
+     * control and materials, i.e. the playback state. With the GPU morphing,
+     * the meshes and the animation data are shared with all the other
+     * instances.
+     */
     private static Spatial loadModel(AssetManager assetManager, String resourceName, Node creatureRoot) {
 
         // Load the model and attach it without the root
@@ -221,14 +227,16 @@ public class AnimationLoader {
 
         Node root = (Node) spatial;
 
-        // Attach the anim node and get rid of the rest
-        for (Spatial child : root.getChildren()) {
-            if (Boolean.FALSE.equals(child.getUserData(AssetUtils.USER_DATA_KEY_REMOVABLE))) {
-                continue;
+        // Attach the anim node and get rid of the rest, if we already have the animation, just replay it
+        if (anim == null || root.getChild(anim.getName()) == null) {
+            for (Spatial child : root.getChildren()) {
+                if (Boolean.FALSE.equals(child.getUserData(AssetUtils.USER_DATA_KEY_REMOVABLE))) {
+                    continue;
+                }
+                child.removeFromParent();
             }
-            child.removeFromParent();
+            attachResource(root, root.getControl(AnimationControl.class), anim, assetManager);
         }
-        attachResource(root, root.getControl(AnimationControl.class), anim, assetManager);
 
         if(anim == null) {
             LOGGER.log(Level.WARNING, "Animation null!");
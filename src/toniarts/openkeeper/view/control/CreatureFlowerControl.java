@@ -25,7 +25,6 @@ import toniarts.openkeeper.game.task.TaskType;
 import toniarts.openkeeper.tools.convert.map.Creature;
 import toniarts.openkeeper.tools.convert.map.Player;
 
-import java.awt.*;
 import java.util.Collection;
 
 /**
@@ -204,19 +203,14 @@ public class CreatureFlowerControl extends UnitFlowerControl<Creature> {
     }
 
     @Override
-    protected void onTextureGenerated(Graphics2D g) {
+    protected float getProgress() {
         CreatureExperience creatureExperience = getEntity().get(CreatureExperience.class);
         if (creatureExperience == null) {
-            return;
+            return -1;
         }
 
-        // Calculate the angle
-        int angle = (int) ((float) creatureExperience.experience / creatureExperience.experienceToNextLevel * 360);
-
-        // Draw the experience indicator
-        g.setPaint(new Color(0, 0, 0, 100));
-        g.fillArc(
-                22, 22, 20, 20, 90, 360 - angle);
+        // The experience indicator
+        return Math.min(1f, (float) creatureExperience.experience / creatureExperience.experienceToNextLevel);
     }
 
     @Override
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.view.control;
+
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.material.RenderState.BlendMode;
+import com.jme3.material.RenderState.FaceCullMode;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.texture.image.ColorSpace;
+import com.jme3.util.BufferUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A texture atlas of the unit flower icons, shared by all the flowers. The
+ * icons are added to the atlas as they are first needed, each icon is read
+ * only once. The flowers composite their icons from the atlas in the shader,
+ * so they all share the same material.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+final class UnitFlowerAtlas {
+
+    /**
+     * Size of a single icon cell in pixels, also the size of the whole flower
+     */
+    static final int CELL_SIZE = 64;
+
+    /**
+     * Cells per atlas row and column
+     */
+    private static final int ATLAS_SIZE = 16;
+    private static final String MATERIAL_DEFINITION = "MatDefs/UnitFlower.j3md";
+
+    private static UnitFlowerAtlas instance;
+
+    private final AssetManager assetManager;
+    private final Map<String, Integer> iconIndices = new HashMap<>();
+    private final ByteBuffer atlasData;
+    private final Image atlasImage;
+    private final Material material;
+    private int nextIndex = 0;
+
+    private static final Logger LOGGER = Logger.getLogger(UnitFlowerAtlas.class.getName());
+
+    private UnitFlowerAtlas(AssetManager assetManager) {
+        this.assetManager = assetManager;
+
+        int size = ATLAS_SIZE * CELL_SIZE;
+        atlasData = BufferUtils.createByteBuffer(size * size * 4);
+        atlasImage = new Image(Image.Format.RGBA8, size, size, atlasData, ColorSpace.sRGB);
+        Texture2D atlas = new Texture2D(atlasImage);
+        atlas.setMinFilter(Texture.MinFilter.BilinearNoMipMaps);
+        atlas.setMagFilter(Texture.MagFilter.Bilinear);
+        atlas.setWrap(Texture.WrapMode.EdgeClamp);
+
+        material = new Material(assetManager, MATERIAL_DEFINITION);
+        material.setTexture("AtlasMap", atlas);
+        material.setFloat("AtlasSize", ATLAS_SIZE);
+        material.getAdditionalRenderState().setFaceCullMode(FaceCullMode.Off);
+        material.getAdditionalRenderState().setBlendMode(BlendMode.Alpha);
+        material.getAdditionalRenderState().setDepthTest(false);
+    }
+
+    /**
+     * Get the atlas, should only be called from the render thread
+     *
+     * @param assetManager the asset manager
+     * @return the shared atlas
+     */
+    static UnitFlowerAtlas getInstance(AssetManager assetManager) {
+        if (instance == null || instance.assetManager != assetManager) {
+            instance = new UnitFlowerAtlas(assetManager);
+        }
+        return instance;
+    }
+
+    /**
+     * The material shared by all the flowers
+     *
+     * @return the flower material
+     */
+    Material getMaterial() {
+        return material;
+    }
+
+    /**
+     * Get the atlas index of the icon, the icon is added to the atlas if it is
+     * not already there
+     *
+     * @param icon the icon asset path, may be {@code null}
+     * @return the atlas index, or -1 if there is no such icon
+     */
+    int getIconIndex(String icon) {
+        if (icon == null) {
+            return -1;
+        }
+
+        Integer index = iconIndices.get(icon);
+        if (index == null) {
+            index = addIcon(icon);
+            iconIndices.put(icon, index);
+        }
+        return index;
+    }
+
+    private int addIcon(String icon) {
+        if (nextIndex >= ATLAS_SIZE * ATLAS_SIZE) {
+            LOGGER.log(Level.WARNING, "Unit flower atlas is full, can't add {0}!", icon);
+            return -1;
+        }
+
+        BufferedImage img;
+        try (InputStream is = assetManager.locateAsset(new AssetKey(icon)).openStream()) {
+            img = ImageIO.read(is);
+        } catch (Exception ex) {
+            LOGGER.log(Level.SEVERE, "Can't load the texture " + icon + "!", ex);
+            return -1;
+        }
+
+        // Draw the icon centered in its cell, like it would be on the flower
+        int index = nextIndex++;
+        int cellX = (index % ATLAS_SIZE) * CELL_SIZE;
+        int cellY = (index / ATLAS_SIZE) * CELL_SIZE;
+        int offsetX = (CELL_SIZE - img.getWidth()) / 2;
+        int offsetY = (CELL_SIZE - img.getHeight()) / 2;
+        int rowLength = ATLAS_SIZE * CELL_SIZE;
+        for (int y = Math.max(0, -offsetY); y < Math.min(img.getHeight(), CELL_SIZE - offsetY); y++) {
+            for (int x = Math.max(0, -offsetX); x < Math.min(img.getWidth(), CELL_SIZE - offsetX); x++) {
+                int argb = img.getRGB(x, y);
+                int position = ((cellY + offsetY + y) * rowLength + cellX + offsetX + x) * 4;
+                atlasData.put(position, (byte) (argb >> 16));
+                atlasData.put(position + 1, (byte) (argb >> 8));
+                atlasData.put(position + 2, (byte) argb);
+                atlasData.put(position + 3, (byte) (argb >> 24));
+            }
+        }
+        atlasImage.setUpdateNeeded();
+
+        return index;
+    }
+
+}
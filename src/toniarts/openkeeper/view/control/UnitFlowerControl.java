@@ -16,35 +16,28 @@
  */
 package toniarts.openkeeper.view.control;
 
-import com.jme3.asset.AssetKey;
 import com.jme3.asset.AssetManager;
-import com.jme3.material.Material;
-import com.jme3.material.RenderState.BlendMode;
-import com.jme3.material.RenderState.FaceCullMode;
-import com.jme3.math.ColorRGBA;
 import com.jme3.renderer.queue.RenderQueue.Bucket;
 import com.jme3.scene.*;
 import com.jme3.scene.control.AbstractControl;
 import com.jme3.scene.control.BillboardControl;
-import com.jme3.texture.Texture;
-import com.jme3.texture.Texture2D;
-import com.jme3.texture.plugins.AWTLoader;
+import com.jme3.util.BufferUtils;
 import com.simsilica.es.*;
 import toniarts.openkeeper.game.component.Health;
 import toniarts.openkeeper.game.component.Owner;
 import toniarts.openkeeper.utils.AssetUtils;
 import toniarts.openkeeper.utils.MapThumbnailGenerator;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.image.BufferedImage;
+import java.nio.FloatBuffer;
 import java.util.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 /**
  * A base class for showing unit (creature, object...) flower. TODO: Maybe
- * listen for changes in health to automatically show the icon
+ * listen for changes in health to automatically show the icon<br>
+ * The flower icons are composited in the shader from a shared icon atlas, the
+ * flower only tells which icons to show. All the flowers share the same
+ * material.
  *
  * @param <T> The type of the entity, the data record
  * @author Toni Helenius <helenius.toni@gmail.com>
@@ -52,7 +45,6 @@ import java.util.logging.Logger;
 public abstract class UnitFlowerControl<T> extends BillboardControl implements IUnitFlowerControl<T> {
 
     private static final float DISPLAY_SECONDS = 2.5f;
-    private static final Logger LOGGER = Logger.getLogger(UnitFlowerControl.class.getName());
     private static final Collection<Class<? extends EntityComponent>> WATCHED_COMPONENTS = Arrays.asList(Health.class, Owner.class);
 
     private float targetTimeVisible = DISPLAY_SECONDS;
@@ -60,7 +52,8 @@ public abstract class UnitFlowerControl<T> extends BillboardControl implements I
     private int currentHealthIndex = 0;
     private Node unitSpatial;
     private boolean updateRequired = false;
-    private Material material;
+    private Mesh mesh;
+    private final float[] layers = new float[4];
     private final EntityId entityId;
     private final WatchedEntity entity;
     private final AssetManager assetManager;
@@ -187,13 +180,13 @@ public abstract class UnitFlowerControl<T> extends BillboardControl implements I
     }
 
     /**
-     * The flower texture has been generated, but the graphics are still open
-     * for modifying
+     * Get the progress shown in the middle of the flower
      *
-     * @param g the graphics for modifying
+     * @return progress between 0 and 1, or a negative value for no progress
+     * indicator
      */
-    protected void onTextureGenerated(Graphics2D g) {
-
+    protected float getProgress() {
+        return -1;
     }
 
     @Override
@@ -293,7 +286,7 @@ public abstract class UnitFlowerControl<T> extends BillboardControl implements I
 
         // See if we need to update
         if (onUpdate(tpf) || updateRequired) {
-            generateTexture();
+            updateLayers();
         }
     }
 
@@ -301,18 +294,14 @@ public abstract class UnitFlowerControl<T> extends BillboardControl implements I
         if (spatial == null) {
             updateRequired = false;
 
-            Mesh mesh = createMesh(0.5f, 0.5f);
+            mesh = createMesh(0.5f, 0.5f);
             spatial = new Geometry("Health indicator", mesh);
-            material = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
             setFlowerColor(getPlayerColor());
-            spatial.setMaterial(material);
-            material.getAdditionalRenderState().setFaceCullMode(FaceCullMode.Off);
-            material.getAdditionalRenderState().setBlendMode(BlendMode.Alpha);
-            material.getAdditionalRenderState().setDepthTest(false);
+            spatial.setMaterial(UnitFlowerAtlas.getInstance(assetManager).getMaterial());
             spatial.setQueueBucket(Bucket.Translucent);
             spatial.setUserData(AssetUtils.USER_DATA_KEY_REMOVABLE, false);
 
-            generateTexture();
+            updateLayers();
         }
         return spatial;
     }
@@ -326,8 +315,9 @@ public abstract class UnitFlowerControl<T> extends BillboardControl implements I
     }
 
     protected final void setFlowerColor(Color c) {
-        if (material != null) {
-            material.setColor("Color", new ColorRGBA(c.getRed() / 255f, c.getGreen() / 255f, c.getBlue() / 255f, c.getAlpha() / 255f));
+        if (mesh != null) {
+            float[] color = {c.getRed() / 255f, c.getGreen() / 255f, c.getBlue() / 255f, c.getAlpha() / 255f};
+            setVertexData(VertexBuffer.Type.Color, color);
         }
     }
 
@@ -351,44 +341,34 @@ public abstract class UnitFlowerControl<T> extends BillboardControl implements I
         }
     }
 
-    private void generateTexture() {
-        if (material != null) {
-
-            // The base image
-            BufferedImage flower = new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g = flower.createGraphics();
-
-            // Health ring
-            drawImage(assetManager, g, flower.getWidth(), flower.getHeight(), "Textures/GUI/moods/H-0" + currentHealthIndex + ".png");
-
-            // The rest
-            drawImage(assetManager, g, flower.getWidth(), flower.getHeight(), getCenterIcon());
-            drawImage(assetManager, g, flower.getWidth(), flower.getHeight(), getObjectiveIcon());
-
-            onTextureGenerated(g);
-
-            // Dispose
-            g.dispose();
-
-            // Convert the new image to a texture
-            AWTLoader loader = new AWTLoader();
-            Texture tex = new Texture2D(loader.load(flower, false));
+    private void updateLayers() {
+        if (mesh != null) {
+            updateRequired = false;
 
-            material.setTexture("ColorMap", tex);
+            UnitFlowerAtlas atlas = UnitFlowerAtlas.getInstance(assetManager);
+            layers[0] = atlas.getIconIndex("Textures/GUI/moods/H-0" + currentHealthIndex + ".png");
+            layers[1] = atlas.getIconIndex(getCenterIcon());
+            layers[2] = atlas.getIconIndex(getObjectiveIcon());
+            layers[3] = getProgress();
+            setVertexData(VertexBuffer.Type.TexCoord2, layers);
         }
     }
 
-    private static void drawImage(AssetManager assetManager, Graphics2D g, int width, int height, String image) {
-
-        if (image != null) {
-            try {
-                // TODO: cache the images
-                BufferedImage img = ImageIO.read(assetManager.locateAsset(new AssetKey(image)).openStream());
-                g.drawImage(img, (width - img.getWidth()) / 2, (height - img.getHeight()) / 2, null);
-            } catch (Exception ex) {
-                LOGGER.log(Level.SEVERE, "Can't load the texture " + image + "!", ex);
-            }
+    /**
+     * Sets the same data to all the vertices of the flower quad
+     *
+     * @param type the buffer type
+     * @param data the data for a single vertex
+     */
+    private void setVertexData(VertexBuffer.Type type, float[] data) {
+        VertexBuffer vb = mesh.getBuffer(type);
+        FloatBuffer fb = (FloatBuffer) vb.getData();
+        fb.clear();
+        for (int i = 0; i < 4; i++) {
+            fb.put(data);
         }
+        fb.clear();
+        vb.updateData(fb);
     }
 
     /**
@@ -417,9 +397,13 @@ public abstract class UnitFlowerControl<T> extends BillboardControl implements I
             0, 0, 1});
         mesh.setBuffer(VertexBuffer.Type.Index, 3, new short[]{0, 1, 2,
             0, 2, 3});
+        mesh.setBuffer(VertexBuffer.Type.TexCoord2, 4, BufferUtils.createFloatBuffer(4 * 4));
+        mesh.setBuffer(VertexBuffer.Type.Color, 4, BufferUtils.createFloatBuffer(4 * 4));
 
         mesh.updateBound();
         mesh.setStatic();
+        mesh.getBuffer(VertexBuffer.Type.TexCoord2).setUsage(VertexBuffer.Usage.Dynamic);
+        mesh.getBuffer(VertexBuffer.Type.Color).setUsage(VertexBuffer.Usage.Dynamic);
         return mesh;
     }
 
@@ -20,15 +20,21 @@ import com.jme3.asset.AssetInfo;
 import com.jme3.asset.AssetKey;
 import com.jme3.asset.AssetManager;
 import com.jme3.asset.TextureKey;
+import com.jme3.bounding.BoundingBox;
 import com.jme3.material.Material;
 import com.jme3.math.ColorRGBA;
 import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.Caps;
+import com.jme3.renderer.Renderer;
 import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.scene.*;
+import com.jme3.scene.control.LodControl;
 import com.jme3.texture.Texture;
 import toniarts.openkeeper.common.EntityInstance;
 import toniarts.openkeeper.common.RoomInstance;
+import toniarts.openkeeper.game.data.Settings;
 import toniarts.openkeeper.game.map.IMapInformation;
 import toniarts.openkeeper.game.map.MapData;
 import toniarts.openkeeper.game.map.MapTile;
@@ -48,6 +54,12 @@ import toniarts.openkeeper.world.room.GenericRoom;
 import java.awt.*;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -75,7 +87,18 @@ public abstract class MapViewController implements ILoader<KwdFile> {
     private final static String MAP_NODE = "Map";
     private final static String TERRAIN_NODE = "Terrain";
     private final static String ROOM_NODE = "Rooms";
+    private final static int MAX_PAGE_BUILDER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private final static int DETAIL_PAGE_DISTANCE = 2; // Pages around the view center are built in full detail
+    private final static int MAX_RESIDENT_PAGES = 64; // Built pages kept, the ones longest out of view are evicted
+    private final static int PAGE_NOT_BUILT = -1;
+    private final static int PAGE_DETAIL_FULL = 0;
+    private final static int PAGE_DETAIL_LOW = 1; // Lowest model LODs, no torches and no shadow casting
     private List<Node> pages;
+    private int[] pageDetails; // The detail level each page is currently built in
+    private long[] pageLastNeeded; // The frame each page was last in view, for the eviction
+    private BoundingBox[] pageBounds;
+    private long frame = 0;
+    private boolean pagesInitialized = false;
     private final KwdFile kwdFile;
     private Node map;
     //private final MapData mapData;
@@ -93,6 +116,11 @@ public abstract class MapViewController implements ILoader<KwdFile> {
     private final Map<RoomInstance, Spatial> roomNodes = new HashMap<>(); // Room instances by node
     private final Map<RoomInstance, RoomConstructor> roomActuals = new HashMap<>(); // Rooms by room constructor
     private final Map<Point, EntityInstance<Terrain>> terrainBatchCoordinates = new HashMap<>(); // A quick glimpse whether terrain batch at specific coordinates is already "found"
+    private final Set<Point> dirtyTiles = new HashSet<>(); // Tiles waiting for the update, coalesced between frames
+    private final Map<Integer, PageBuild> pageBuilds = new HashMap<>(); // Terrain pages being built, by page index
+    private final ExecutorService pageBuilder;
+    private TerrainTextureArrays terrainTextureArrays;
+    private TerrainMesher terrainMesher;
     private static final Logger LOGGER = Logger.getLogger(MapViewController.class.getName());
 
     public MapViewController(AssetManager assetManager, KwdFile kwdFile, IMapInformation mapClientService, short playerId) {
@@ -100,6 +128,18 @@ public abstract class MapViewController implements ILoader<KwdFile> {
         this.assetManager = assetManager;
         this.mapClientService = mapClientService;
         this.playerId = playerId;
+        this.pageBuilder = Executors.newFixedThreadPool(MAX_PAGE_BUILDER_THREADS, new ThreadFactory() {
+
+            private final AtomicInteger threadIndex = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "MapPageBuilder_" + threadIndex.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+
+        });
     }
 
     @Override
@@ -119,14 +159,14 @@ public abstract class MapViewController implements ILoader<KwdFile> {
             handleRoom(p, kwdFile.getRoomByTerrain(getMapData().getTile(p).getTerrainId()), room);
         }
 
-        // Go through the map
+        // Go through the map, the terrain pages themselves are built as they come to view
         int index = 0;
         int tilesCount = getMapData().getSize();
 
         for (MapTile tile : getMapData()) {
 
             try {
-                handleTile(tile, terrain);
+                registerTile(tile);
             } catch (Exception e) {
                 LOGGER.log(Level.SEVERE, "Failed to handle tile at " + tile.getLocation() + "!", e);
             }
@@ -134,13 +174,6 @@ public abstract class MapViewController implements ILoader<KwdFile> {
             // Update progress
             updateProgress((float) ++index / tilesCount);
         }
-
-        // Batch the terrain pages
-        for (Node page : pages) {
-            ((BatchNode) page.getChild(FLOOR_INDEX)).batch();
-            ((BatchNode) page.getChild(WALL_INDEX)).batch();
-            ((BatchNode) page.getChild(TOP_INDEX)).batch();
-        }
         map.attachChild(terrain);
 
         // Create the water
@@ -156,6 +189,26 @@ public abstract class MapViewController implements ILoader<KwdFile> {
         return map;
     }
 
+    /**
+     * Sets up the merged terrain meshes, if they are enabled and the hardware
+     * supports texture arrays. Otherwise the terrain pieces are just batched.
+     * Must be called from the render thread, before the first update.
+     *
+     * @param renderer the renderer
+     */
+    public void initialize(Renderer renderer) {
+        if (!Settings.getInstance().getBoolean(Settings.Setting.MERGED_TERRAIN_MESHES)) {
+            return;
+        }
+        if (!renderer.getCaps().contains(Caps.TextureArray)) {
+            LOGGER.info("Texture arrays not supported, the terrain meshes are not merged.");
+            return;
+        }
+
+        terrainTextureArrays = new TerrainTextureArrays(assetManager);
+        terrainMesher = new TerrainMesher(terrainTextureArrays);
+    }
+
     public MapData getMapData() {
         return mapClientService.getMapData();
     }
@@ -165,11 +218,224 @@ public abstract class MapViewController implements ILoader<KwdFile> {
     }
 
     /**
-     * Update the selected tiles (and neighbouring tiles if needed)
+     * Update the selected tiles (and neighbouring tiles if needed). The tiles
+     * are only marked for update here, the updates are done in
+     * {@link #update(Camera)}, so several updates to the same tiles are coalesced.
+     * Can be called from any thread.
      *
      * @param points tile coordinates to update
      */
     public void updateTiles(Point... points) {
+        synchronized (dirtyTiles) {
+            dirtyTiles.addAll(Arrays.asList(points));
+        }
+    }
+
+    /**
+     * Keeps the terrain pages around the camera view built. The pages near
+     * the view center are built in full detail, the other visible ones in low
+     * detail. The pages out of view are kept until there are too many of
+     * them. Swaps in the built pages and starts building the pages that are
+     * needed or that have changed since. The pages are built on the page
+     * builder threads from a copy of the tiles, the rooms and the scene are
+     * only touched here. Must be called from the render thread, once per
+     * frame.
+     *
+     * @param camera the camera the pages are built for
+     */
+    public void update(Camera camera) {
+        frame++;
+        swapPages();
+
+        // Rebuild the changed pages that are built or being built
+        Map<Integer, Integer> pagesToBuild = new HashMap<>();
+        Point[] points = null;
+        synchronized (dirtyTiles) {
+            if (!dirtyTiles.isEmpty()) {
+                points = dirtyTiles.toArray(new Point[0]);
+                dirtyTiles.clear();
+            }
+        }
+        if (points != null) {
+            for (int pageIndex : updateRooms(points)) {
+                int detail = getPendingDetail(pageIndex);
+                if (detail != PAGE_NOT_BUILT) {
+                    pagesToBuild.put(pageIndex, detail);
+                }
+            }
+        }
+
+        updatePageResidency(camera, pagesToBuild);
+        for (Map.Entry<Integer, Integer> pageToBuild : pagesToBuild.entrySet()) {
+            int pageIndex = pageToBuild.getKey();
+            int detail = pageToBuild.getValue();
+
+            // The rooms are constructed here, the page builders get their walls with the copy of the tiles
+            constructPageRooms(pageIndex);
+            PageSnapshot snapshot = createPageSnapshot(pageIndex, detail);
+            PageBuild outdatedBuild = pageBuilds.put(pageIndex, new PageBuild(detail, pageBuilder.submit(() -> buildPage(snapshot))));
+            if (outdatedBuild != null) {
+                outdatedBuild.future.cancel(false);
+            }
+        }
+
+        // Wait for the first pages, we don't want to start with an empty map
+        if (!pagesInitialized) {
+            pagesInitialized = true;
+            for (PageBuild pageBuild : pageBuilds.values()) {
+                try {
+                    pageBuild.future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    // Logged in the swap
+                }
+            }
+            swapPages();
+        }
+    }
+
+    /**
+     * Swaps in the built pages, each as soon as it is done
+     */
+    private void swapPages() {
+        Map<Integer, PageBuild> finishedBuilds = new HashMap<>();
+        Iterator<Map.Entry<Integer, PageBuild>> iterator = pageBuilds.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, PageBuild> pageBuild = iterator.next();
+            if (pageBuild.getValue().future.isDone()) {
+                finishedBuilds.put(pageBuild.getKey(), pageBuild.getValue());
+                iterator.remove();
+            }
+        }
+        if (finishedBuilds.isEmpty()) {
+            return;
+        }
+
+        // The finished pages may use new texture array layers
+        if (terrainTextureArrays != null) {
+            terrainTextureArrays.update();
+        }
+
+        Node terrainNode = (Node) map.getChild(TERRAIN_NODE);
+        for (Map.Entry<Integer, PageBuild> pageBuild : finishedBuilds.entrySet()) {
+            try {
+                swapPage(terrainNode, pageBuild.getKey(), pageBuild.getValue().detail, pageBuild.getValue().future.get());
+            } catch (InterruptedException | ExecutionException e) {
+                LOGGER.log(Level.SEVERE, "Failed to build terrain page " + pageBuild.getKey() + "!", e);
+            }
+        }
+    }
+
+    /**
+     * Get the detail level the page is built in, or is being built in
+     *
+     * @param pageIndex the page index
+     * @return the detail level
+     */
+    private int getPendingDetail(int pageIndex) {
+        PageBuild pageBuild = pageBuilds.get(pageIndex);
+        return pageBuild != null ? pageBuild.detail : pageDetails[pageIndex];
+    }
+
+    /**
+     * Figures out the pages needed for the camera view, and evicts the pages
+     * out of view if there are too many built
+     *
+     * @param camera the camera
+     * @param pagesToBuild the pages that need building, with their detail
+     * levels, the needed pages are added here
+     */
+    private void updatePageResidency(Camera camera, Map<Integer, Integer> pagesToBuild) {
+        Vector3f viewCenter = getViewCenter(camera);
+        int centerPageX = (int) Math.floor((viewCenter.x / TILE_WIDTH + 0.5f) / PAGE_SQUARE_SIZE);
+        int centerPageY = (int) Math.floor((viewCenter.z / TILE_WIDTH + 0.5f) / PAGE_SQUARE_SIZE);
+        int pagesPerRow = getPagesPerRow();
+        int residentPages = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            int detail;
+            if (Math.max(Math.abs(i % pagesPerRow - centerPageX), Math.abs(i / pagesPerRow - centerPageY)) <= DETAIL_PAGE_DISTANCE) {
+                detail = PAGE_DETAIL_FULL;
+            } else if (isInView(camera, pageBounds[i])) {
+                detail = PAGE_DETAIL_LOW;
+            } else {
+                detail = PAGE_NOT_BUILT;
+            }
+
+            if (detail != PAGE_NOT_BUILT) {
+                pageLastNeeded[i] = frame;
+                if (detail != getPendingDetail(i)) {
+                    pagesToBuild.put(i, detail);
+                }
+            }
+            if (getPendingDetail(i) != PAGE_NOT_BUILT || pagesToBuild.containsKey(i)) {
+                residentPages++;
+            }
+        }
+
+        // Evict the pages that have been out of view the longest
+        if (residentPages > MAX_RESIDENT_PAGES) {
+            List<Integer> evictablePages = new ArrayList<>();
+            for (int i = 0; i < pages.size(); i++) {
+                if (pageDetails[i] != PAGE_NOT_BUILT && pageLastNeeded[i] != frame && !pagesToBuild.containsKey(i)
+                        && !pageBuilds.containsKey(i)) {
+                    evictablePages.add(i);
+                }
+            }
+            evictablePages.sort(Comparator.comparingLong(pageIndex -> pageLastNeeded[pageIndex]));
+            Node terrainNode = (Node) map.getChild(TERRAIN_NODE);
+            for (int i = 0; i < residentPages - MAX_RESIDENT_PAGES && i < evictablePages.size(); i++) {
+                int pageIndex = evictablePages.get(i);
+                swapPage(terrainNode, pageIndex, PAGE_NOT_BUILT, createPage(pageIndex % pagesPerRow, pageIndex / pagesPerRow));
+            }
+        }
+    }
+
+    /**
+     * Get the point on the floor level the camera is looking at
+     *
+     * @param camera the camera
+     * @return the view center
+     */
+    private static Vector3f getViewCenter(Camera camera) {
+        Vector3f location = camera.getLocation();
+        Vector3f direction = camera.getDirection();
+        if (direction.y < -FastMath.ZERO_TOLERANCE) {
+            float distance = (FLOOR_HEIGHT - location.y) / direction.y;
+            if (distance > 0) {
+                return location.add(direction.mult(distance));
+            }
+        }
+        return location;
+    }
+
+    private static boolean isInView(Camera camera, BoundingBox bounds) {
+
+        // Don't mess up the culling state of the camera
+        int planeState = camera.getPlaneState();
+        camera.setPlaneState(0);
+        boolean inView = camera.contains(bounds) != Camera.FrustumIntersect.Outside;
+        camera.setPlaneState(planeState);
+
+        return inView;
+    }
+
+    /**
+     * Stops the page builders, call when the map is no longer needed
+     */
+    public void cleanup() {
+        pageBuilder.shutdownNow();
+        pageBuilds.clear();
+    }
+
+    /**
+     * Updates the rooms affected by the changed tiles
+     *
+     * @param points the changed tiles
+     * @return indices of the pages that need rebuilding
+     */
+    private Set<Integer> updateRooms(Point... points) {
         Set<Point> pointsToUpdate = new HashSet<>();
 
         // FIXME: This is really quite heavy and unneeded, just a quick "fix"
@@ -198,44 +464,174 @@ public abstract class MapViewController implements ILoader<KwdFile> {
             }
         }
 
-        // Reconstruct all tiles in the area
-        Set<BatchNode> nodesNeedBatching = new HashSet<>();
-        Node terrainNode = (Node) map.getChild(TERRAIN_NODE);
+        // Rebuild every page in the area as a whole, reconstruct the rooms even if the page isn't built
+        Set<Integer> pageIndices = new HashSet<>();
         for (Point point : pointsToUpdate) {
-            MapTile tile = getMapData().getTile(point);
-
-            // Reconstruct and mark for patching
-            // The tile node needs to created anew, somehow the BatchNode just doesn't get it if I remove children from subnode
-            Node pageNode = getPageNode(point, terrainNode);
-            Node tileNode = getTileNode(point, (Node) pageNode.getChild(FLOOR_INDEX));
-            if (!tileNode.getChildren().isEmpty()) {
-                tileNode.removeFromParent();
-                ((BatchNode) pageNode.getChild(FLOOR_INDEX)).attachChildAt(new Node(tileNode.getName()), getTileNodeIndex(point));
-                nodesNeedBatching.add((BatchNode) pageNode.getChild(FLOOR_INDEX));
+            pageIndices.add(getPageIndex(point));
+        }
+        for (int pageIndex : pageIndices) {
+            constructPageRooms(pageIndex);
+        }
+
+        return pageIndices;
+    }
+
+    /**
+     * Constructs the rooms on the page and right next to it, the walls of the
+     * page tiles may be room walls
+     *
+     * @param pageIndex the page index
+     */
+    private void constructPageRooms(int pageIndex) {
+        int pagesPerRow = getPagesPerRow();
+        int startX = (pageIndex % pagesPerRow) * PAGE_SQUARE_SIZE;
+        int startY = (pageIndex / pagesPerRow) * PAGE_SQUARE_SIZE;
+        for (int y = startY - 1; y <= startY + PAGE_SQUARE_SIZE; y++) {
+            for (int x = startX - 1; x <= startX + PAGE_SQUARE_SIZE; x++) {
+                MapTile tile = getMapData().getTile(x, y);
+                if (tile != null && getTerrain(tile).getFlags().contains(Terrain.TerrainFlag.ROOM)) {
+                    handleRoom(tile.getLocation(), kwdFile.getRoomByTerrain(tile.getTerrainId()), null);
+                }
             }
-            tileNode = getTileNode(point, (Node) pageNode.getChild(WALL_INDEX));
-            if (!tileNode.getChildren().isEmpty()) {
-                tileNode.removeFromParent();
-                ((BatchNode) pageNode.getChild(WALL_INDEX)).attachChildAt(new Node(tileNode.getName()), getTileNodeIndex(point));
-                nodesNeedBatching.add((BatchNode) pageNode.getChild(WALL_INDEX));
+        }
+    }
+
+    /**
+     * Copies what the page builder needs for building the page. The tiles of
+     * the page and the tiles right next to it are copied, and the room walls
+     * of the page are taken from the rooms.
+     *
+     * @param pageIndex the page index
+     * @param detail the detail level of the page
+     * @return the page snapshot
+     */
+    private PageSnapshot createPageSnapshot(int pageIndex, int detail) {
+        int pagesPerRow = getPagesPerRow();
+        int pageX = pageIndex % pagesPerRow;
+        int pageY = pageIndex / pagesPerRow;
+        MapData mapData = getMapData().copy(new Rectangle(pageX * PAGE_SQUARE_SIZE - 1, pageY * PAGE_SQUARE_SIZE - 1,
+                PAGE_SQUARE_SIZE + 2, PAGE_SQUARE_SIZE + 2));
+        PageSnapshot snapshot = new PageSnapshot(pageX, pageY, detail, mapData);
+        for (int y = pageY * PAGE_SQUARE_SIZE; y < (pageY + 1) * PAGE_SQUARE_SIZE; y++) {
+            for (int x = pageX * PAGE_SQUARE_SIZE; x < (pageX + 1) * PAGE_SQUARE_SIZE; x++) {
+                MapTile tile = mapData.getTile(x, y);
+                if (tile == null) {
+                    continue;
+                }
+
+                Terrain terrain = getTerrain(tile);
+                if (!terrain.getFlags().contains(Terrain.TerrainFlag.SOLID)
+                        || !terrain.getFlags().contains(Terrain.TerrainFlag.ALLOW_ROOM_WALLS)) {
+                    continue;
+                }
+                for (WallDirection direction : WallDirection.values()) {
+                    MapTile neighbourTile = getNeighbourTile(mapData, tile, direction);
+                    if (neighbourTile != null && !getTerrain(neighbourTile).getFlags().contains(Terrain.TerrainFlag.SOLID)
+                            && hasRoomWalls(neighbourTile)) {
+                        snapshot.roomWalls.computeIfAbsent(tile.getLocation(), p -> new EnumMap<>(WallDirection.class))
+                                .put(direction, getRoomWall(neighbourTile, direction));
+                    }
+                }
             }
-            tileNode = getTileNode(point, (Node) pageNode.getChild(TOP_INDEX));
-            if (!tileNode.getChildren().isEmpty()) {
-                tileNode.removeFromParent();
-                ((BatchNode) pageNode.getChild(TOP_INDEX)).attachChildAt(new Node(tileNode.getName()), getTileNodeIndex(point));
-                nodesNeedBatching.add((BatchNode) pageNode.getChild(TOP_INDEX));
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Builds a terrain page from scratch, detached from the scene. Run on the
+     * page builder threads.
+     *
+     * @param snapshot the page data
+     * @return the batched page
+     */
+    private Node buildPage(PageSnapshot snapshot) {
+        int pageX = snapshot.pageX;
+        int pageY = snapshot.pageY;
+        boolean fullDetail = (snapshot.detail == PAGE_DETAIL_FULL);
+        Node page = createPage(pageX, pageY);
+        if (!fullDetail) {
+            page.getChild(WALL_INDEX).setShadowMode(RenderQueue.ShadowMode.Receive);
+        }
+        for (int y = pageY * PAGE_SQUARE_SIZE; y < (pageY + 1) * PAGE_SQUARE_SIZE; y++) {
+            for (int x = pageX * PAGE_SQUARE_SIZE; x < (pageX + 1) * PAGE_SQUARE_SIZE; x++) {
+                MapTile tile = snapshot.mapData.getTile(x, y);
+                if (tile == null) {
+                    continue;
+                }
+
+                try {
+                    handleTile(tile, snapshot, page, fullDetail);
+                } catch (Exception e) {
+                    LOGGER.log(Level.SEVERE, "Failed to handle tile at " + tile.getLocation() + "!", e);
+                }
             }
+        }
 
-            // Reconstruct
-            handleTile(tile, (Node) map.getChild(TERRAIN_NODE));
+        if (!fullDetail) {
+            reduceDetail(page);
         }
+        batchPage(page);
+
+        return page;
+    }
 
-        // Batch
-        for (BatchNode batchNode : nodesNeedBatching) {
-            batchNode.batch();
+    /**
+     * Batches the page layers. The terrain pieces are first merged into
+     * texture array meshes if possible, whatever is left is batched by
+     * material.
+     *
+     * @param page the page, not attached to the scene
+     */
+    private void batchPage(Node page) {
+        for (int index : new int[]{FLOOR_INDEX, WALL_INDEX, TOP_INDEX}) {
+            BatchNode layer = (BatchNode) page.getChild(index);
+            if (terrainMesher != null) {
+                terrainMesher.mesh(layer);
+            }
+            layer.batch();
         }
     }
 
+    /**
+     * Switches the models on the page to their lowest level of detail
+     *
+     * @param page the page, not attached to the scene
+     */
+    private static void reduceDetail(Node page) {
+        page.depthFirstTraversal(spatial -> {
+            if (!(spatial instanceof Geometry)) {
+                return;
+            }
+
+            // Some of the KMF LOD levels are just dummies, take the lowest real one
+            Geometry geometry = (Geometry) spatial;
+            Mesh mesh = geometry.getMesh();
+            for (int level = mesh.getNumLodLevels() - 1; level > 0; level--) {
+                VertexBuffer indices = mesh.getLodLevel(level);
+                if (indices.getNumElements() > 0) {
+
+                    // The mesh is shared with the other clones of the model
+                    Mesh lowDetailMesh = mesh.clone();
+                    lowDetailMesh.setLodLevels(null);
+                    lowDetailMesh.clearBuffer(VertexBuffer.Type.Index);
+                    lowDetailMesh.setBuffer(indices);
+                    lowDetailMesh.updateCounts();
+                    geometry.setMesh(lowDetailMesh);
+                    break;
+                }
+            }
+            geometry.removeControl(LodControl.class);
+        });
+    }
+
+    private void swapPage(Node terrainNode, int pageIndex, int detail, Node page) {
+        pages.set(pageIndex, page);
+        pageDetails[pageIndex] = detail;
+        terrainNode.detachChildAt(pageIndex);
+        terrainNode.attachChildAt(page, pageIndex);
+    }
+
     /**
      * Sets the right material to tile (selected / decayed...)
      *
@@ -308,26 +704,51 @@ public abstract class MapViewController implements ILoader<KwdFile> {
                 * ((int) Math.ceil(getMapData().getWidth() / (float) PAGE_SQUARE_SIZE)));
         for (int y = 0; y < (int) Math.ceil(getMapData().getHeight() / (float) PAGE_SQUARE_SIZE); y++) {
             for (int x = 0; x < (int) Math.ceil(getMapData().getWidth() / (float) PAGE_SQUARE_SIZE); x++) {
-                Node page = new Node(x + "_" + y);
-
-                // Create batch nodes for ceiling, floor and walls
-                BatchNode floor = new BatchNode("floor");
-                floor.setShadowMode(RenderQueue.ShadowMode.Receive); // Floors don't cast
-                generateTileNodes(floor, x, y);
-                page.attachChild(floor);
-                BatchNode wall = new BatchNode("wall");
-                wall.setShadowMode(RenderQueue.ShadowMode.CastAndReceive); // Walls cast and receive shadows
-                generateTileNodes(wall, x, y);
-                page.attachChild(wall);
-                BatchNode ceiling = new BatchNode("ceiling");
-                ceiling.setShadowMode(RenderQueue.ShadowMode.Off); // No lights above ceilings
-                generateTileNodes(ceiling, x, y);
-                page.attachChild(ceiling);
-
+                Node page = createPage(x, y);
                 pages.add(page);
                 root.attachChild(page);
             }
         }
+
+        // The pages are built later, as they come to view
+        pageDetails = new int[pages.size()];
+        Arrays.fill(pageDetails, PAGE_NOT_BUILT);
+        pageLastNeeded = new long[pages.size()];
+        pageBounds = new BoundingBox[pages.size()];
+        float pageSize = PAGE_SQUARE_SIZE * TILE_WIDTH;
+        int pagesPerRow = getPagesPerRow();
+        for (int i = 0; i < pages.size(); i++) {
+            Vector3f center = new Vector3f((i % pagesPerRow) * pageSize - TILE_WIDTH / 2 + pageSize / 2, TOP_HEIGHT / 2,
+                    (i / pagesPerRow) * pageSize - TILE_WIDTH / 2 + pageSize / 2);
+            pageBounds[i] = new BoundingBox(center, pageSize / 2, TOP_HEIGHT / 2, pageSize / 2);
+        }
+    }
+
+    /**
+     * Create an empty page node
+     *
+     * @param pageX page x
+     * @param pageY page y
+     * @return the page node
+     */
+    private Node createPage(int pageX, int pageY) {
+        Node page = new Node(pageX + "_" + pageY);
+
+        // Create batch nodes for ceiling, floor and walls
+        BatchNode floor = new BatchNode("floor");
+        floor.setShadowMode(RenderQueue.ShadowMode.Receive); // Floors don't cast
+        generateTileNodes(floor, pageX, pageY);
+        page.attachChild(floor);
+        BatchNode wall = new BatchNode("wall");
+        wall.setShadowMode(RenderQueue.ShadowMode.CastAndReceive); // Walls cast and receive shadows
+        generateTileNodes(wall, pageX, pageY);
+        page.attachChild(wall);
+        BatchNode ceiling = new BatchNode("ceiling");
+        ceiling.setShadowMode(RenderQueue.ShadowMode.Off); // No lights above ceilings
+        generateTileNodes(ceiling, pageX, pageY);
+        page.attachChild(ceiling);
+
+        return page;
     }
 
     /**
@@ -345,25 +766,25 @@ public abstract class MapViewController implements ILoader<KwdFile> {
         }
     }
 
-    private Spatial getWallSpatial(MapTile tile, WallDirection direction) {
-        Terrain terrain = getTerrain(tile);
-        String modelName = terrain.getSideResource().getName();
+    private static MapTile getNeighbourTile(MapData mapData, MapTile tile, WallDirection direction) {
         Point p = tile.getLocation();
-        MapTile neighbourTile;
         switch (direction) {
             case NORTH:
-                neighbourTile = getMapData().getTile(p.x, p.y - 1);
-                break;
+                return mapData.getTile(p.x, p.y - 1);
             case SOUTH:
-                neighbourTile = getMapData().getTile(p.x, p.y + 1);
-                break;
+                return mapData.getTile(p.x, p.y + 1);
             case EAST:
-                neighbourTile = getMapData().getTile(p.x + 1, p.y);
-                break;
+                return mapData.getTile(p.x + 1, p.y);
             default: // WEST
-                neighbourTile = getMapData().getTile(p.x - 1, p.y);
-                break;
+                return mapData.getTile(p.x - 1, p.y);
         }
+    }
+
+    private Spatial getWallSpatial(MapTile tile, PageSnapshot snapshot, WallDirection direction) {
+        Terrain terrain = getTerrain(tile);
+        String modelName = terrain.getSideResource().getName();
+        MapTile neighbourTile = getNeighbourTile(snapshot.mapData, tile, direction);
+
         // Check for out of bounds
         if (neighbourTile == null) {
             return loadModel(modelName);
@@ -376,7 +797,7 @@ public abstract class MapViewController implements ILoader<KwdFile> {
         if (!(terrain.getFlags().contains(Terrain.TerrainFlag.ALLOW_ROOM_WALLS))) {
             return loadModel(modelName);
         } else if (hasRoomWalls(neighbourTile)) {
-            return getRoomWall(neighbourTile, direction);
+            return snapshot.getRoomWall(tile.getLocation(), direction);
         }
 
         return loadModel(modelName);
@@ -387,7 +808,7 @@ public abstract class MapViewController implements ILoader<KwdFile> {
         Room room = kwdFile.getRoomByTerrain(tile.getTerrainId());
         RoomInstance roomInstance = handleRoom(p, room, null);
         RoomConstructor rc = roomActuals.get(roomInstance);
-        return rc.getWallSpatial(p, direction);
+        return rc != null ? rc.getWallSpatial(p, direction) : null;
     }
 
     /**
@@ -437,46 +858,66 @@ public abstract class MapViewController implements ILoader<KwdFile> {
         return spatial;
     }
 
+    /**
+     * Registers the rooms and the water of a tile. These are not on the
+     * terrain pages, so they are needed even if the page isn't built.
+     *
+     * @param tile tile to handle
+     */
+    private void registerTile(MapTile tile) {
+        Terrain terrain = getTerrain(tile);
+        if (terrain.getFlags().contains(Terrain.TerrainFlag.ROOM)) {
+            Room room = kwdFile.getRoomByTerrain(terrain.getTerrainId());
+            handleRoom(tile.getLocation(), room, null);
+
+            // Bridges may be over water
+            terrain = kwdFile.getTerrainBridge(tile.getBridgeTerrainType(), room);
+            if (terrain == null) {
+                return;
+            }
+        }
+        if (terrain.getFlags().contains(Terrain.TerrainFlag.CONSTRUCTION_TYPE_WATER)) {
+            registerTerrainBatch(tile.getLocation(), terrain);
+        }
+    }
+
     /**
      * Handle single tile from the map, represented by the X & Y coordinates
      *
      * @param tile tile to handle
-     * @param root the root node
+     * @param snapshot the page data
+     * @param pageNode the page node the tile is on
+     * @param fullDetail if false, the torches are left out
      */
-    private void handleTile(MapTile tile, Node root) {
+    private void handleTile(MapTile tile, PageSnapshot snapshot, Node pageNode, boolean fullDetail) {
 
         // Get the terrain
         Terrain terrain = getTerrain(tile);
-        Point p = tile.getLocation();
-        Node pageNode = getPageNode(p, root);
 
         // Torch (see https://github.com/tonihele/OpenKeeper/issues/128)
-        if (!terrain.getFlags().contains(Terrain.TerrainFlag.SOLID)
+        if (fullDetail && !terrain.getFlags().contains(Terrain.TerrainFlag.SOLID)
                 && (tile.getX() % 2 == 0 || tile.getY() % 2 == 0)) {
-            handleTorch(tile, pageNode);
+            handleTorch(tile, snapshot.mapData, pageNode);
         }
 
-        // Room
+        // Room, the actual room is constructed on the render thread
         if (terrain.getFlags().contains(Terrain.TerrainFlag.ROOM)) {
 
-            // Construct the actual room
-            Room room = kwdFile.getRoomByTerrain(terrain.getTerrainId());
-            handleRoom(p, room, null);
-
             // Swap the terrain if this is a bridge
+            Room room = kwdFile.getRoomByTerrain(terrain.getTerrainId());
             terrain = kwdFile.getTerrainBridge(tile.getBridgeTerrainType(), room);
             if (terrain == null) {
                 return;
             }
         }
 
-        handleTop(tile, terrain, pageNode);
+        handleTop(tile, terrain, snapshot.mapData, pageNode);
         if (terrain.getFlags().contains(Terrain.TerrainFlag.SOLID)) {
-            handleSide(tile, pageNode);
+            handleSide(tile, snapshot, pageNode);
         }
     }
 
-    private void handleTorch(MapTile tile, Node pageNode) {
+    private void handleTorch(MapTile tile, MapData mapData, Node pageNode) {
 
         // The rooms actually contain the torch model resource, but it is always the same,
         // and sometimes even null and there is still a torch. So I don't think they are used
@@ -485,21 +926,21 @@ public abstract class MapViewController implements ILoader<KwdFile> {
         float angleY = 0;
         Vector3f position = Vector3f.ZERO;
 
-        if (tile.getY() % 2 == 0 && tile.getX() % 2 != 0 && canPlaceTorch(tile.getX(), tile.getY() - 1)) { // North
+        if (tile.getY() % 2 == 0 && tile.getX() % 2 != 0 && canPlaceTorch(mapData, tile.getX(), tile.getY() - 1)) { // North
             name = "Torch1";
             angleY = -FastMath.HALF_PI;
             position = new Vector3f(0, TORCH_HEIGHT, -TILE_WIDTH / 2);
 
-        } else if (tile.getX() % 2 == 0 && tile.getY() % 2 == 0 && canPlaceTorch(tile.getX() - 1, tile.getY())) { // West
+        } else if (tile.getX() % 2 == 0 && tile.getY() % 2 == 0 && canPlaceTorch(mapData, tile.getX() - 1, tile.getY())) { // West
             name = "Torch1";
             position = new Vector3f(-TILE_WIDTH / 2, TORCH_HEIGHT, 0);
 
-        } else if (tile.getY() % 2 == 0 && tile.getX() % 2 != 0 && canPlaceTorch(tile.getX(), tile.getY() + 1)) { // South
+        } else if (tile.getY() % 2 == 0 && tile.getX() % 2 != 0 && canPlaceTorch(mapData, tile.getX(), tile.getY() + 1)) { // South
             name = "Torch1";
             angleY = FastMath.HALF_PI;
             position = new Vector3f(0, TORCH_HEIGHT, TILE_WIDTH / 2);
 
-        } else if (tile.getX() % 2 == 0 && tile.getY() % 2 == 0 && canPlaceTorch(tile.getX() + 1, tile.getY())) { // East
+        } else if (tile.getX() % 2 == 0 && tile.getY() % 2 == 0 && canPlaceTorch(mapData, tile.getX() + 1, tile.getY())) { // East
             name = "Torch1";
             angleY = FastMath.PI;
             position = new Vector3f(TILE_WIDTH / 2, TORCH_HEIGHT, 0);
@@ -527,8 +968,8 @@ public abstract class MapViewController implements ILoader<KwdFile> {
         }
     }
 
-    private boolean canPlaceTorch(int x, int y) {
-        MapTile tile = getMapData().getTile(x, y);
+    private boolean canPlaceTorch(MapData mapData, int x, int y) {
+        MapTile tile = mapData.getTile(x, y);
         return (tile != null && getTerrain(tile).getFlags().contains(Terrain.TerrainFlag.TORCH));
 
     }
@@ -562,14 +1003,33 @@ public abstract class MapViewController implements ILoader<KwdFile> {
         return roomInstance;
     }
 
+    /**
+     * Registers the water or lava batch the tile belongs to
+     *
+     * @param p the tile coordinates
+     * @param terrain the water or lava terrain
+     */
+    private void registerTerrainBatch(Point p, Terrain terrain) {
+        if (!terrainBatchCoordinates.containsKey(p)) {
+            EntityInstance<Terrain> entityInstance = new EntityInstance<>(terrain);
+            findTerrainBatch(p, entityInstance);
+            if (terrain.getFlags().contains(Terrain.TerrainFlag.LAVA)) {
+                lavaBatches.add(entityInstance);
+            } else {
+                waterBatches.add(entityInstance);
+            }
+        }
+    }
+
     /**
      * Handle top construction on the tile
      *
      * @param tile this tile
      * @param terrain DO NOT REMOVE. Need for construct water bed
+     * @param mapData the tiles
      * @param pageNode page node
      */
-    private void handleTop(MapTile tile, Terrain terrain, Node pageNode) {
+    private void handleTop(MapTile tile, Terrain terrain, MapData mapData, Node pageNode) {
 
         ArtResource model = terrain.getCompleteResource();
         Point p = tile.getLocation();
@@ -577,24 +1037,12 @@ public abstract class MapViewController implements ILoader<KwdFile> {
         // For water construction type (lava & water), there are 8 pieces (0-7 suffix) in complete resource
         // And in the top resource there is the actual lava/water
         if (terrain.getFlags().contains(Terrain.TerrainFlag.CONSTRUCTION_TYPE_WATER)) {
-
-            // Store the batch instance
-            if (!terrainBatchCoordinates.containsKey(p)) {
-                EntityInstance<Terrain> entityInstance = new EntityInstance<>(terrain);
-                findTerrainBatch(p, entityInstance);
-                if (terrain.getFlags().contains(Terrain.TerrainFlag.LAVA)) {
-                    lavaBatches.add(entityInstance);
-                } else {
-                    waterBatches.add(entityInstance);
-                }
-            }
-
-            spatial = new WaterConstructor(kwdFile).construct(getMapData(), p.x, p.y, terrain, assetManager, model.getName());
+            spatial = new WaterConstructor(kwdFile).construct(mapData, p.x, p.y, terrain, assetManager, model.getName());
 
         } else if (terrain.getFlags().contains(Terrain.TerrainFlag.CONSTRUCTION_TYPE_QUAD)) {
             // If this resource is type quad, parse it together. With fixed Hero Lair
             String modelName = (model == null && terrain.getTerrainId() == 35) ? "hero_outpost_floor" : model.getName();
-            spatial = new SingleQuadConstructor(kwdFile).construct(getMapData(), p.x, p.y, terrain, assetManager, modelName);
+            spatial = new SingleQuadConstructor(kwdFile).construct(mapData, p.x, p.y, terrain, assetManager, modelName);
 
         } else {
 
@@ -622,12 +1070,12 @@ public abstract class MapViewController implements ILoader<KwdFile> {
 //        tile.setTopNode(topTileNode);
     }
 
-    private void handleSide(MapTile tile, Node pageNode) {
+    private void handleSide(MapTile tile, PageSnapshot snapshot, Node pageNode) {
         Point p = tile.getLocation();
         Node sideTileNode = getTileNode(p, (Node) pageNode.getChild(WALL_INDEX));
 
         for (WallDirection direction : WallDirection.values()) {
-            Spatial wall = getWallSpatial(tile, direction);
+            Spatial wall = getWallSpatial(tile, snapshot, direction);
             if (wall != null) {
                 wall.rotate(0, direction.getAngle(), 0);
                 sideTileNode.attachChild(wall);
@@ -679,16 +1127,23 @@ public abstract class MapViewController implements ILoader<KwdFile> {
      * @return page node
      */
     protected Node getPageNode(Point p, Node root) {
+        return (Node) root.getChild(getPageIndex(p));
+    }
+
+    /**
+     * Get the index of the terrain "page" we are on
+     *
+     * @param p the tile coordinates
+     * @return page index
+     */
+    private int getPageIndex(Point p) {
         int pageX = (int) Math.floor(p.x / (float) PAGE_SQUARE_SIZE);
         int pageY = (int) Math.floor(p.y / (float) PAGE_SQUARE_SIZE);
+        return pageX + getPagesPerRow() * pageY;
+    }
 
-        // Get the page index
-        int index = pageX;
-        if (pageY > 0) {
-            int pagesPerRow = (int) Math.ceil(getMapData().getWidth() / (float) PAGE_SQUARE_SIZE);
-            index += pagesPerRow * pageY;
-        }
-        return (Node) root.getChild(index);
+    private int getPagesPerRow() {
+        return (int) Math.ceil(getMapData().getWidth() / (float) PAGE_SQUARE_SIZE);
     }
 
     /**
@@ -1074,4 +1529,49 @@ public abstract class MapViewController implements ILoader<KwdFile> {
      */
     protected abstract void updateProgress(final float progress);
 
+    /**
+     * The data a terrain page is built from. Copied on the render thread, so
+     * the page builders don't touch the live map data or the rooms.
+     */
+    private static class PageSnapshot {
+
+        private final int pageX;
+        private final int pageY;
+        private final int detail;
+        private final MapData mapData; // The page tiles and the tiles right next to them
+        private final Map<Point, Map<WallDirection, Spatial>> roomWalls = new HashMap<>();
+
+        public PageSnapshot(int pageX, int pageY, int detail, MapData mapData) {
+            this.pageX = pageX;
+            this.pageY = pageY;
+            this.detail = detail;
+            this.mapData = mapData;
+        }
+
+        /**
+         * Get the room wall on the side of a solid tile
+         *
+         * @param p the solid tile
+         * @param direction the side of the tile
+         * @return the wall, or {@code null} if the room has no wall there
+         */
+        public Spatial getRoomWall(Point p, WallDirection direction) {
+            Map<WallDirection, Spatial> walls = roomWalls.get(p);
+            return walls != null ? walls.get(direction) : null;
+        }
+    }
+
+    /**
+     * A terrain page being built
+     */
+    private static class PageBuild {
+
+        private final int detail;
+        private final Future<Node> future;
+
+        public PageBuild(int detail, Future<Node> future) {
+            this.detail = detail;
+            this.future = future;
+        }
+    }
 }
@@ -0,0 +1,621 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.view.map;
+
+import com.jme3.material.MatParam;
+import com.jme3.material.MatParamTexture;
+import com.jme3.material.Material;
+import com.jme3.material.RenderState;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.scene.control.LodControl;
+import com.jme3.scene.mesh.IndexBuffer;
+import com.jme3.texture.Texture;
+import com.jme3.texture.Texture2D;
+import com.jme3.util.BufferUtils;
+import toniarts.openkeeper.view.map.TerrainTextureArrays.Layers;
+import toniarts.openkeeper.view.map.TerrainTextureArrays.Surface;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the terrain pieces of a terrain page layer to as few meshes as
+ * possible. The pieces with plain lit and textured materials are written to a
+ * single mesh per texture array, the texture is selected per vertex
+ * from the texture arrays. The pieces that are just a tile sized flat quad
+ * (plain floors, ceilings and wall faces) are merged with their coplanar
+ * neighbours, so that large uniform areas take only a few vertices.<br>
+ * Anything else, like the animated torches and transparent pieces, is left
+ * as it is.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+final class TerrainMesher {
+
+    private static final String LIGHTING_DEFINITION = "Common/MatDefs/Light/Lighting.j3md";
+    private static final Set<String> MERGEABLE_PARAMS = new HashSet<>(Arrays.asList("DiffuseMap", "NormalMap",
+            "SpecularMap", "Ambient", "Diffuse", "Specular", "Shininess", "UseMaterialColors"));
+    private static final float CELL_SIZE = MapViewController.TILE_WIDTH;
+    private static final float EPSILON = 0.001f;
+
+    private final TerrainTextureArrays textureArrays;
+
+    TerrainMesher(TerrainTextureArrays textureArrays) {
+        this.textureArrays = textureArrays;
+    }
+
+    /**
+     * Merges the layer. The merged pieces are removed from the layer and the
+     * merged meshes are attached to it in their place. The layer must not be
+     * attached to the scene.
+     *
+     * @param layer the page layer
+     */
+    void mesh(Node layer) {
+        List<Piece> pieces = new ArrayList<>();
+        layer.depthFirstTraversal(spatial -> {
+            if (spatial instanceof Geometry) {
+                Piece piece = createPiece((Geometry) spatial, layer);
+                if (piece != null) {
+                    pieces.add(piece);
+                }
+            }
+        });
+        if (pieces.isEmpty()) {
+            return;
+        }
+
+        // Group by the texture arrays
+        Map<Layers, List<Piece>> groups = new LinkedHashMap<>();
+        for (Piece piece : pieces) {
+            groups.computeIfAbsent(textureArrays.getLayers(piece.surface), k -> new ArrayList<>()).add(piece);
+        }
+        for (Map.Entry<Layers, List<Piece>> group : groups.entrySet()) {
+            Layers layers = group.getKey();
+            Geometry geometry = new Geometry(layer.getName() + "Merged", createMesh(group.getValue(), layers));
+            geometry.setMaterial(layers.getMaterial());
+            geometry.setBatchHint(Spatial.BatchHint.Never);
+            layer.attachChild(geometry);
+        }
+
+        for (Piece piece : pieces) {
+            piece.geometry.removeFromParent();
+        }
+    }
+
+    private static Piece createPiece(Geometry geometry, Node layer) {
+        Mesh mesh = geometry.getMesh();
+        if (mesh.getMode() != Mesh.Mode.Triangles || mesh.getBuffer(Type.BindPosePosition) != null
+                || mesh.getBuffer(Type.Position) == null || mesh.getBuffer(Type.Normal) == null
+                || mesh.getBuffer(Type.TexCoord) == null || mesh.getBuffer(Type.TexCoord).getNumComponents() != 2) {
+            return null;
+        }
+        if (geometry.getQueueBucket() == RenderQueue.Bucket.Transparent
+                || geometry.getQueueBucket() == RenderQueue.Bucket.Translucent) {
+            return null;
+        }
+
+        // Controlled pieces are left alone, only the level of detail is lost in merging
+        Transform transform = geometry.getLocalTransform().clone();
+        for (Spatial spatial = geometry; spatial != layer; spatial = spatial.getParent()) {
+            for (int i = 0; i < spatial.getNumControls(); i++) {
+                if (!(spatial.getControl(i) instanceof LodControl)) {
+                    return null;
+                }
+            }
+            if (spatial != geometry) {
+                transform.combineWithParent(spatial.getLocalTransform());
+            }
+        }
+
+        // Only the plain materials, the texture array material has nothing else
+        Material material = geometry.getMaterial();
+        if (!LIGHTING_DEFINITION.equals(material.getMaterialDef().getAssetName()) || material.isTransparent()
+                || material.getAdditionalRenderState().getBlendMode() != RenderState.BlendMode.Off) {
+            return null;
+        }
+        for (MatParam param : material.getParams()) {
+            if (!MERGEABLE_PARAMS.contains(param.getName())) {
+                return null;
+            }
+        }
+        Texture diffuseMap = getTexture(material, "DiffuseMap");
+        Texture normalMap = getTexture(material, "NormalMap");
+        if (!isArrayable(diffuseMap) || (material.getParam("NormalMap") != null
+                && (!isArrayable(normalMap) || mesh.getBuffer(Type.Tangent) == null))) {
+            return null;
+        }
+
+        // Flashing and tagging, the ambient color is used as a per vertex tint
+        ColorRGBA tint = null;
+        MatParam useMaterialColors = material.getParam("UseMaterialColors");
+        if (useMaterialColors != null && Boolean.TRUE.equals(useMaterialColors.getValue())) {
+            MatParam ambient = material.getParam("Ambient");
+            tint = (ambient != null ? (ColorRGBA) ambient.getValue() : ColorRGBA.Black);
+        }
+
+        return new Piece(geometry, transform, new Surface(diffuseMap, normalMap), tint);
+    }
+
+    private static Texture getTexture(Material material, String name) {
+        MatParamTexture param = material.getTextureParam(name);
+        return (param != null ? param.getTextureValue() : null);
+    }
+
+    private static boolean isArrayable(Texture texture) {
+        return texture instanceof Texture2D && texture.getKey() != null && texture.getImage() != null
+                && texture.getImage().getData().size() == 1;
+    }
+
+    private static Mesh createMesh(List<Piece> pieces, Layers layers) {
+        boolean normalMapped = pieces.get(0).surface.hasNormalMap();
+
+        // Sort out the quads that can be merged
+        Map<String, List<Quad>> quads = new LinkedHashMap<>();
+        List<Piece> others = new ArrayList<>();
+        for (Piece piece : pieces) {
+            Quad quad = createQuad(piece, layers.getLayer(piece.surface), normalMapped);
+            if (quad != null) {
+                quads.computeIfAbsent(quad.key, k -> new ArrayList<>()).add(quad);
+            } else {
+                others.add(piece);
+            }
+        }
+        List<Rectangle> rectangles = new ArrayList<>();
+        for (List<Quad> plane : quads.values()) {
+            mergeQuads(plane, rectangles);
+        }
+
+        // Write the mesh
+        int vertexCount = rectangles.size() * 4;
+        int indexCount = rectangles.size() * 6;
+        for (Piece piece : others) {
+            vertexCount += piece.mesh.getVertexCount();
+            indexCount += getIndexCount(piece.mesh);
+        }
+        MeshWriter writer = new MeshWriter(vertexCount, indexCount, normalMapped);
+        for (Rectangle rectangle : rectangles) {
+            writer.writeRectangle(rectangle);
+        }
+        for (Piece piece : others) {
+            writer.writePiece(piece, layers.getLayer(piece.surface));
+        }
+
+        return writer.createMesh();
+    }
+
+    private static int getIndexCount(Mesh mesh) {
+        IndexBuffer indexBuffer = mesh.getIndexBuffer();
+        if (indexBuffer == null) {
+            return mesh.getVertexCount() / 3 * 3;
+        }
+
+        // Whole triangles only, the KMF meshes may have dummy index buffers
+        return indexBuffer.size() / 3 * 3;
+    }
+
+    /**
+     * See if the piece is a single tile sized flat quad, parallel to some
+     * axis, and with a texture mapping that can be repeated over several
+     * tiles
+     *
+     * @param piece the piece
+     * @param layer texture array layer of the piece
+     * @param normalMapped whether the tangents are needed
+     * @return the quad, or {@code null} if the piece is something else
+     */
+    private static Quad createQuad(Piece piece, int layer, boolean normalMapped) {
+        Mesh mesh = piece.mesh;
+        if (mesh.getVertexCount() != 4 || getIndexCount(mesh) != 6) {
+            return null;
+        }
+
+        FloatBuffer positionBuffer = mesh.getFloatBuffer(Type.Position);
+        FloatBuffer normalBuffer = mesh.getFloatBuffer(Type.Normal);
+        FloatBuffer texCoordBuffer = mesh.getFloatBuffer(Type.TexCoord);
+        Vector3f[] positions = new Vector3f[4];
+        Vector3f quadNormal = null;
+        for (int i = 0; i < 4; i++) {
+            positions[i] = piece.transform.transformVector(new Vector3f(positionBuffer.get(i * 3),
+                    positionBuffer.get(i * 3 + 1), positionBuffer.get(i * 3 + 2)), null);
+            Vector3f normal = piece.transform.getRotation().mult(new Vector3f(normalBuffer.get(i * 3),
+                    normalBuffer.get(i * 3 + 1), normalBuffer.get(i * 3 + 2))).normalizeLocal();
+            if (i == 0) {
+                quadNormal = normal;
+            } else if (normal.distanceSquared(quadNormal) > EPSILON) {
+                return null;
+            }
+        }
+
+        // The plane
+        Quad quad = new Quad(layer, piece.tint);
+        for (int axis = 0; axis < 3; axis++) {
+            if (Math.abs(quadNormal.get(axis)) > 1 - EPSILON) {
+                quad.axis = axis;
+                quad.normalSign = Math.signum(quadNormal.get(axis));
+            }
+        }
+        if (quad.axis < 0) {
+            return null;
+        }
+        int axisA = (quad.axis + 1) % 3;
+        int axisB = (quad.axis + 2) % 3;
+        quad.plane = positions[0].get(quad.axis);
+        float minA = Float.MAX_VALUE;
+        float minB = Float.MAX_VALUE;
+        for (Vector3f position : positions) {
+            if (Math.abs(position.get(quad.axis) - quad.plane) > EPSILON) {
+                return null;
+            }
+            minA = Math.min(minA, position.get(axisA));
+            minB = Math.min(minB, position.get(axisB));
+        }
+
+        // Must be exactly a cell, get the texture coordinates of each corner
+        float[] u = new float[4];
+        float[] v = new float[4];
+        boolean[] corners = new boolean[4];
+        for (int i = 0; i < 4; i++) {
+            float a = (positions[i].get(axisA) - minA) / CELL_SIZE;
+            float b = (positions[i].get(axisB) - minB) / CELL_SIZE;
+            int cornerA = Math.round(a);
+            int cornerB = Math.round(b);
+            if (cornerA > 1 || cornerB > 1 || Math.abs(a - cornerA) > EPSILON || Math.abs(b - cornerB) > EPSILON) {
+                return null;
+            }
+            int corner = cornerA + cornerB * 2;
+            if (corners[corner]) {
+                return null;
+            }
+            corners[corner] = true;
+            u[corner] = texCoordBuffer.get(i * 2);
+            v[corner] = texCoordBuffer.get(i * 2 + 1);
+        }
+
+        // The texture must repeat over the cells
+        quad.u0 = u[0];
+        quad.uA = u[1] - u[0];
+        quad.uB = u[2] - u[0];
+        quad.v0 = v[0];
+        quad.vA = v[1] - v[0];
+        quad.vB = v[2] - v[0];
+        if (Math.abs(u[3] - (quad.u0 + quad.uA + quad.uB)) > EPSILON || Math.abs(v[3] - (quad.v0 + quad.vA + quad.vB)) > EPSILON
+                || !isWhole(quad.uA) || !isWhole(quad.uB) || !isWhole(quad.vA) || !isWhole(quad.vB)) {
+            return null;
+        }
+
+        // Keep the facing of the original triangles
+        IndexBuffer indexBuffer = mesh.getIndexBuffer();
+        Vector3f p0 = positions[indexBuffer != null ? indexBuffer.get(0) : 0];
+        Vector3f p1 = positions[indexBuffer != null ? indexBuffer.get(1) : 1];
+        Vector3f p2 = positions[indexBuffer != null ? indexBuffer.get(2) : 2];
+        quad.front = p1.subtract(p0).crossLocal(p2.subtract(p0)).get(quad.axis) > 0;
+
+        if (normalMapped) {
+            FloatBuffer tangentBuffer = mesh.getFloatBuffer(Type.Tangent);
+            for (int i = 0; i < 4; i++) {
+                float[] tangent = readTangent(tangentBuffer, i, piece.transform);
+                if (i == 0) {
+                    quad.tangent = tangent;
+                } else if (!Arrays.equals(roundAll(tangent), roundAll(quad.tangent))) {
+                    return null;
+                }
+            }
+        }
+
+        quad.cellA = Math.round(minA / CELL_SIZE);
+        quad.cellB = Math.round(minB / CELL_SIZE);
+        quad.offsetA = minA - quad.cellA * CELL_SIZE;
+        quad.offsetB = minB - quad.cellB * CELL_SIZE;
+        quad.key = layer + " " + quad.axis + " " + quad.normalSign + " " + quad.front + " " + round(quad.plane)
+                + " " + round(quad.offsetA) + " " + round(quad.offsetB)
+                + " " + round(quad.u0) + " " + round(quad.uA) + " " + round(quad.uB)
+                + " " + round(quad.v0) + " " + round(quad.vA) + " " + round(quad.vB)
+                + " " + quad.tint + " " + (quad.tangent != null ? Arrays.toString(roundAll(quad.tangent)) : "");
+
+        return quad;
+    }
+
+    /**
+     * Greedy merge of the coplanar quads, grows rectangles first along the
+     * rows and then down the columns
+     *
+     * @param quads quads on the same plane with the same surface
+     * @param rectangles the merged rectangles are added here
+     */
+    private static void mergeQuads(List<Quad> quads, List<Rectangle> rectangles) {
+        Map<Long, Quad> cells = new HashMap<>(quads.size());
+        for (Quad quad : quads) {
+            cells.put(getCellKey(quad.cellA, quad.cellB), quad);
+        }
+        List<Quad> sortedQuads = new ArrayList<>(cells.values());
+        sortedQuads.sort(Comparator.comparingInt((Quad quad) -> quad.cellB).thenComparingInt(quad -> quad.cellA));
+
+        Set<Long> merged = new HashSet<>(cells.size());
+        for (Quad quad : sortedQuads) {
+            if (merged.contains(getCellKey(quad.cellA, quad.cellB))) {
+                continue;
+            }
+
+            int width = 1;
+            while (isFree(cells, merged, quad.cellA + width, quad.cellB)) {
+                width++;
+            }
+            int height = 1;
+            rows:
+            while (true) {
+                for (int x = 0; x < width; x++) {
+                    if (!isFree(cells, merged, quad.cellA + x, quad.cellB + height)) {
+                        break rows;
+                    }
+                }
+                height++;
+            }
+
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    merged.add(getCellKey(quad.cellA + x, quad.cellB + y));
+                }
+            }
+            rectangles.add(new Rectangle(quad, width, height));
+        }
+    }
+
+    private static boolean isFree(Map<Long, Quad> cells, Set<Long> merged, int cellA, int cellB) {
+        long key = getCellKey(cellA, cellB);
+        return cells.containsKey(key) && !merged.contains(key);
+    }
+
+    private static long getCellKey(int cellA, int cellB) {
+        return ((long) cellA << 32) | (cellB & 0xffffffffL);
+    }
+
+    private static float[] readTangent(FloatBuffer tangentBuffer, int index, Transform transform) {
+        Vector3f tangent = transform.getRotation().mult(new Vector3f(tangentBuffer.get(index * 4),
+                tangentBuffer.get(index * 4 + 1), tangentBuffer.get(index * 4 + 2))).normalizeLocal();
+        return new float[]{tangent.x, tangent.y, tangent.z, tangentBuffer.get(index * 4 + 3)};
+    }
+
+    private static boolean isWhole(float value) {
+        return Math.abs(value - Math.round(value)) < EPSILON;
+    }
+
+    private static long round(float value) {
+        return Math.round(value / EPSILON);
+    }
+
+    private static long[] roundAll(float[] values) {
+        long[] rounded = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            rounded[i] = round(values[i]);
+        }
+        return rounded;
+    }
+
+    /**
+     * A terrain piece that can be merged
+     */
+    private static class Piece {
+
+        private final Geometry geometry;
+        private final Mesh mesh;
+        private final Transform transform;
+        private final Surface surface;
+        private final ColorRGBA tint;
+
+        public Piece(Geometry geometry, Transform transform, Surface surface, ColorRGBA tint) {
+            this.geometry = geometry;
+            this.mesh = geometry.getMesh();
+            this.transform = transform;
+            this.surface = surface;
+            this.tint = tint;
+        }
+    }
+
+    /**
+     * A tile sized flat quad, in layer space. The a and b axes are the ones
+     * on the quad plane.
+     */
+    private static class Quad {
+
+        private final int layer;
+        private final ColorRGBA tint;
+        private String key;
+        private int axis = -1;
+        private float normalSign;
+        private boolean front;
+        private float plane;
+        private int cellA;
+        private int cellB;
+        private float offsetA;
+        private float offsetB;
+        private float u0;
+        private float uA;
+        private float uB;
+        private float v0;
+        private float vA;
+        private float vB;
+        private float[] tangent;
+
+        public Quad(int layer, ColorRGBA tint) {
+            this.layer = layer;
+            this.tint = tint;
+        }
+    }
+
+    /**
+     * Merged quads, size in cells
+     */
+    private static class Rectangle {
+
+        private final Quad quad;
+        private final int width;
+        private final int height;
+
+        public Rectangle(Quad quad, int width, int height) {
+            this.quad = quad;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Writes the merged mesh buffers
+     */
+    private static class MeshWriter {
+
+        private final FloatBuffer positions;
+        private final FloatBuffer normals;
+        private final FloatBuffer texCoords;
+        private final FloatBuffer tangents;
+        private final ByteBuffer colors;
+        private final int[] indices;
+        private final int vertexCount;
+        private int vertexIndex = 0;
+        private int indexIndex = 0;
+
+        public MeshWriter(int vertexCount, int indexCount, boolean normalMapped) {
+            this.vertexCount = vertexCount;
+            positions = BufferUtils.createFloatBuffer(vertexCount * 3);
+            normals = BufferUtils.createFloatBuffer(vertexCount * 3);
+            texCoords = BufferUtils.createFloatBuffer(vertexCount * 3);
+            tangents = (normalMapped ? BufferUtils.createFloatBuffer(vertexCount * 4) : null);
+            colors = BufferUtils.createByteBuffer(vertexCount * 4);
+            indices = new int[indexCount];
+        }
+
+        public void writeRectangle(Rectangle rectangle) {
+            Quad quad = rectangle.quad;
+            int axisA = (quad.axis + 1) % 3;
+            int axisB = (quad.axis + 2) % 3;
+            Vector3f normal = new Vector3f();
+            normal.set(quad.axis, quad.normalSign);
+
+            int firstVertex = vertexIndex;
+            int[][] corners = {{0, 0}, {rectangle.width, 0}, {rectangle.width, rectangle.height}, {0, rectangle.height}};
+            Vector3f position = new Vector3f();
+            for (int[] corner : corners) {
+                position.set(quad.axis, quad.plane);
+                position.set(axisA, (quad.cellA + corner[0]) * CELL_SIZE + quad.offsetA);
+                position.set(axisB, (quad.cellB + corner[1]) * CELL_SIZE + quad.offsetB);
+                writeVertex(position, normal,
+                        quad.u0 + quad.uA * corner[0] + quad.uB * corner[1],
+                        quad.v0 + quad.vA * corner[0] + quad.vB * corner[1],
+                        quad.layer, quad.tangent, quad.tint);
+            }
+
+            // The corners are counter clockwise when looking from the positive axis
+            if (quad.front) {
+                writeTriangle(firstVertex, firstVertex + 1, firstVertex + 2);
+                writeTriangle(firstVertex, firstVertex + 2, firstVertex + 3);
+            } else {
+                writeTriangle(firstVertex, firstVertex + 2, firstVertex + 1);
+                writeTriangle(firstVertex, firstVertex + 3, firstVertex + 2);
+            }
+        }
+
+        public void writePiece(Piece piece, int layer) {
+            Mesh mesh = piece.mesh;
+            FloatBuffer positionBuffer = mesh.getFloatBuffer(Type.Position);
+            FloatBuffer normalBuffer = mesh.getFloatBuffer(Type.Normal);
+            FloatBuffer texCoordBuffer = mesh.getFloatBuffer(Type.TexCoord);
+            FloatBuffer tangentBuffer = (tangents != null ? mesh.getFloatBuffer(Type.Tangent) : null);
+
+            int firstVertex = vertexIndex;
+            Vector3f position = new Vector3f();
+            Vector3f normal = new Vector3f();
+            for (int i = 0; i < mesh.getVertexCount(); i++) {
+                position.set(positionBuffer.get(i * 3), positionBuffer.get(i * 3 + 1), positionBuffer.get(i * 3 + 2));
+                piece.transform.transformVector(position, position);
+                normal.set(normalBuffer.get(i * 3), normalBuffer.get(i * 3 + 1), normalBuffer.get(i * 3 + 2));
+                piece.transform.getRotation().mult(normal, normal).normalizeLocal();
+                writeVertex(position, normal, texCoordBuffer.get(i * 2), texCoordBuffer.get(i * 2 + 1), layer,
+                        tangentBuffer != null ? readTangent(tangentBuffer, i, piece.transform) : null, piece.tint);
+            }
+
+            IndexBuffer indexBuffer = mesh.getIndexBuffer();
+            for (int i = 0; i < getIndexCount(mesh); i++) {
+                indices[indexIndex++] = firstVertex + (indexBuffer != null ? indexBuffer.get(i) : i);
+            }
+        }
+
+        private void writeVertex(Vector3f position, Vector3f normal, float u, float v, int layer, float[] tangent, ColorRGBA tint) {
+            positions.put(position.x).put(position.y).put(position.z);
+            normals.put(normal.x).put(normal.y).put(normal.z);
+            texCoords.put(u).put(v).put(layer);
+            if (tangents != null) {
+                tangents.put(tangent);
+            }
+            if (tint != null) {
+                colors.put((byte) (tint.r * 255)).put((byte) (tint.g * 255)).put((byte) (tint.b * 255)).put((byte) 255);
+            } else {
+                colors.put((byte) 255).put((byte) 255).put((byte) 255).put((byte) 0);
+            }
+            vertexIndex++;
+        }
+
+        private void writeTriangle(int index1, int index2, int index3) {
+            indices[indexIndex++] = index1;
+            indices[indexIndex++] = index2;
+            indices[indexIndex++] = index3;
+        }
+
+        public Mesh createMesh() {
+            Mesh mesh = new Mesh();
+            mesh.setBuffer(Type.Position, 3, positions);
+            mesh.setBuffer(Type.Normal, 3, normals);
+            mesh.setBuffer(Type.TexCoord, 3, texCoords);
+            if (tangents != null) {
+                mesh.setBuffer(Type.Tangent, 4, tangents);
+            }
+            mesh.setBuffer(Type.Color, 4, colors);
+            mesh.getBuffer(Type.Color).setNormalized(true);
+            if (vertexCount > 65535) {
+                mesh.setBuffer(Type.Index, 3, BufferUtils.createIntBuffer(indices));
+            } else {
+                short[] shortIndices = new short[indices.length];
+                for (int i = 0; i < indices.length; i++) {
+                    shortIndices[i] = (short) indices[i];
+                }
+                mesh.setBuffer(Type.Index, 3, BufferUtils.createShortBuffer(shortIndices));
+            }
+            mesh.updateBound();
+            mesh.updateCounts();
+            mesh.setStatic();
+
+            return mesh;
+        }
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.view.map;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.texture.Image;
+import com.jme3.texture.Texture;
+import com.jme3.texture.TextureArray;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Texture arrays of the terrain textures, used by the merged terrain meshes.
+ * The terrain textures are grouped by their size and format, each group has
+ * its own texture arrays and materials. The arrays are allocated with a fixed
+ * number of layers and never grow. A surface gets a free layer of its group
+ * when it is first needed, and a new array is allocated when the arrays of
+ * the group are full. So the pages built earlier keep on using the same
+ * arrays, and the textures are never in more than one array.<br>
+ * The layers are handed out on the page builder threads, but the textures
+ * are copied to the arrays only in {@link #update()}, on the render thread.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+final class TerrainTextureArrays {
+
+    private static final String MATERIAL_DEFINITION = "MatDefs/TerrainArray.j3md";
+    private static final int LAYERS_PER_ARRAY = 16; // Allocated up front, the unused layers take video memory too
+
+    private final AssetManager assetManager;
+    private final Map<String, Layers> openArrays = new HashMap<>(); // The arrays with free layers, by group
+    private final Map<Surface, Layers> surfaceArrays = new ConcurrentHashMap<>();
+    private final List<Layers> arrays = new ArrayList<>();
+
+    /**
+     * Create the texture arrays
+     *
+     * @param assetManager the asset manager
+     */
+    TerrainTextureArrays(AssetManager assetManager) {
+        this.assetManager = assetManager;
+    }
+
+    /**
+     * Get the texture array layers holding the surface. A free layer is
+     * given to the surface if it doesn't have one yet.
+     *
+     * @param surface the surface
+     * @return the texture array layers
+     */
+    Layers getLayers(Surface surface) {
+        Layers layers = surfaceArrays.get(surface);
+        if (layers != null) {
+            return layers;
+        }
+
+        synchronized (this) {
+            layers = surfaceArrays.get(surface);
+            if (layers != null) {
+                return layers;
+            }
+
+            String groupKey = surface.getGroupKey();
+            layers = openArrays.get(groupKey);
+            if (layers == null) {
+                layers = new Layers(assetManager, surface, LAYERS_PER_ARRAY);
+                openArrays.put(groupKey, layers);
+                arrays.add(layers);
+            }
+            layers.addSurface(surface);
+            if (layers.isFull()) {
+                openArrays.remove(groupKey);
+            }
+            surfaceArrays.put(surface, layers);
+
+            return layers;
+        }
+    }
+
+    /**
+     * Copies the textures of the newly added surfaces to their layers. Must
+     * be called from the render thread, before the pages using them are
+     * attached to the scene.
+     */
+    synchronized void update() {
+        for (Layers layers : arrays) {
+            layers.upload();
+        }
+    }
+
+    private static TextureArray createTextureArray(Texture template, int layers) {
+
+        // Fill all the layers with the first texture for now
+        Image image = template.getImage();
+        List<Image> images = new ArrayList<>(layers);
+        for (int i = 0; i < layers; i++) {
+            images.add(new Image(image.getFormat(), image.getWidth(), image.getHeight(), image.getData(0).duplicate(),
+                    image.getMipMapSizes(), image.getColorSpace()));
+        }
+        TextureArray textureArray = new TextureArray(images);
+        textureArray.setWrap(Texture.WrapMode.Repeat);
+        textureArray.setMinFilter(template.getMinFilter());
+        textureArray.setMagFilter(template.getMagFilter());
+        textureArray.setAnisotropicFilter(template.getAnisotropicFilter());
+
+        return textureArray;
+    }
+
+    /**
+     * The textures of a single terrain piece
+     */
+    static final class Surface {
+
+        private final Texture diffuseMap;
+        private final Texture normalMap;
+        private final String layerKey;
+
+        /**
+         * Creates a surface
+         *
+         * @param diffuseMap the diffuse texture
+         * @param normalMap the normal map, may be {@code null}
+         */
+        Surface(Texture diffuseMap, Texture normalMap) {
+            this.diffuseMap = diffuseMap;
+            this.normalMap = normalMap;
+            this.layerKey = diffuseMap.getKey().getName() + "|" + (normalMap != null ? normalMap.getKey().getName() : "");
+        }
+
+        boolean hasNormalMap() {
+            return normalMap != null;
+        }
+
+        /**
+         * The surfaces sharing the group key can be put to the same texture
+         * arrays
+         *
+         * @return the group key
+         */
+        String getGroupKey() {
+            return getImageKey(diffuseMap.getImage()) + "|" + (normalMap != null ? getImageKey(normalMap.getImage()) : "");
+        }
+
+        private static String getImageKey(Image image) {
+            return image.getWidth() + "x" + image.getHeight() + " " + image.getFormat() + " " + image.hasMipmaps();
+        }
+
+        @Override
+        public int hashCode() {
+            return layerKey.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            return layerKey.equals(((Surface) obj).layerKey);
+        }
+
+    }
+
+    /**
+     * A texture array of a group, and the material using it
+     */
+    static final class Layers {
+
+        private final Material material;
+        private final TextureArray diffuseArray;
+        private final TextureArray normalArray;
+        private final Surface[] surfaces;
+        private final Map<Surface, Integer> layerIndices = new ConcurrentHashMap<>();
+        private int size;
+        private int uploadedSize;
+
+        private Layers(AssetManager assetManager, Surface template, int capacity) {
+            this.surfaces = new Surface[capacity];
+            this.diffuseArray = createTextureArray(template.diffuseMap, capacity);
+            this.normalArray = template.normalMap != null ? createTextureArray(template.normalMap, capacity) : null;
+
+            material = new Material(assetManager, MATERIAL_DEFINITION);
+            material.setTexture("DiffuseMap", diffuseArray);
+            if (normalArray != null) {
+                material.setTexture("NormalMap", normalArray);
+            }
+            material.setBoolean("UseVertexColor", true);
+        }
+
+        private void addSurface(Surface surface) {
+            layerIndices.put(surface, size);
+            surfaces[size++] = surface;
+        }
+
+        private boolean isFull() {
+            return size == surfaces.length;
+        }
+
+        private void upload() {
+            for (; uploadedSize < size; uploadedSize++) {
+                Surface surface = surfaces[uploadedSize];
+                diffuseArray.getImage().setData(uploadedSize, getData(surface.diffuseMap));
+                if (normalArray != null) {
+                    normalArray.getImage().setData(uploadedSize, getData(surface.normalMap));
+                }
+            }
+        }
+
+        private static ByteBuffer getData(Texture texture) {
+            return texture.getImage().getData(0).duplicate();
+        }
+
+        /**
+         * The material using the texture arrays
+         *
+         * @return the material
+         */
+        Material getMaterial() {
+            return material;
+        }
+
+        /**
+         * Get the texture array layer of a surface
+         *
+         * @param surface the surface
+         * @return the layer index
+         */
+        int getLayer(Surface surface) {
+            return layerIndices.get(surface);
+        }
+
+    }
+
+}
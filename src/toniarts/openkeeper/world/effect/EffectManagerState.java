@@ -17,6 +17,7 @@
 package toniarts.openkeeper.world.effect;
 
 import com.jme3.app.Application;
+import com.jme3.app.SimpleApplication;
 import com.jme3.app.state.AbstractAppState;
 import com.jme3.app.state.AppStateManager;
 import com.jme3.asset.AssetManager;
@@ -40,31 +41,50 @@ import java.util.logging.Logger;
 public class EffectManagerState extends AbstractAppState {
 
     public static final int ROOM_CLAIM_ID = 2;
+    private static final int MAX_PARTICLES = 8192;
 
     private final KwdFile kwdFile;
     private final AssetManager assetManager;
     private final List<VisualEffect> activeEffects = new ArrayList<>();
+    private final ParticleEngine particleEngine;
     private AppStateManager stateManager;
+    private Node rootNode;
     private static final Logger logger = Logger.getLogger(EffectManagerState.class.getName());
 
     public EffectManagerState(KwdFile kwdFile, AssetManager assetManager) {
         this.kwdFile = kwdFile;
         this.assetManager = assetManager;
+        this.particleEngine = new ParticleEngine(assetManager, MAX_PARTICLES);
     }
 
     @Override
     public void initialize(AppStateManager stateManager, Application app) {
         super.initialize(stateManager, app);
         this.stateManager = stateManager;
+
+        // The particles are in world space
+        rootNode = ((SimpleApplication) app).getRootNode();
+        rootNode.attachChild(particleEngine.getNode());
     }
 
     @Override
     public void update(float tpf) {
 
+        // Simulate the particles first, the effects check whether their particles are still alive
+        particleEngine.update(tpf);
+
         // Maintain the effects (on every frame?)
         activeEffects.removeIf(visualEffect -> !visualEffect.update(tpf));
     }
 
+    @Override
+    public void cleanup() {
+        clearActiveEffects();
+        rootNode.detachChild(particleEngine.getNode());
+
+        super.cleanup();
+    }
+
     /**
      * Loads up an particle effect
      *
@@ -87,6 +107,7 @@ public class EffectManagerState extends AbstractAppState {
             visualEffect.update(-1);
         }
         activeEffects.clear();
+        particleEngine.clear();
     }
 
     /**
@@ -112,6 +133,10 @@ public class EffectManagerState extends AbstractAppState {
         return stateManager.getState(WorldState.class);
     }
 
+    public ParticleEngine getParticleEngine() {
+        return particleEngine;
+    }
+
     public AssetManager getAssetManger() {
         return assetManager;
     }
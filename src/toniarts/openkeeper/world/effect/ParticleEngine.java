@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2014-2020 OpenKeeper
+ *
+ * OpenKeeper is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * OpenKeeper is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenKeeper.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package toniarts.openkeeper.world.effect;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.material.RenderState;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.control.AbstractControl;
+import com.jme3.util.BufferUtils;
+import toniarts.openkeeper.tools.convert.map.ArtResource;
+import toniarts.openkeeper.tools.convert.map.Effect;
+import toniarts.openkeeper.tools.convert.map.EffectElement;
+import toniarts.openkeeper.utils.AssetUtils;
+
+import java.awt.Color;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Simulates and draws the sprite effect elements. The particles live in
+ * preallocated arrays, one array per property, so there is no allocation per
+ * particle and the whole lot is simulated in one go. The live particles are
+ * kept packed at the start of the arrays.<br>
+ * Each art resource has one point sprite mesh that is rewritten on every
+ * update, so an effect resource costs one draw call no matter how many
+ * particles there are. There is a global particle budget, the particles over
+ * it are simply not emitted.
+ *
+ * @author Toni Helenius <helenius.toni@gmail.com>
+ */
+public class ParticleEngine {
+
+    private static final int INITIAL_BATCH_CAPACITY = 64;
+    private static final Logger LOGGER = Logger.getLogger(ParticleEngine.class.getName());
+
+    private final AssetManager assetManager;
+    private final int maxParticles;
+    private final Node node;
+    private final List<ParticleBatch> batches = new ArrayList<>();
+    private final Map<String, ParticleBatch> batchesByResource = new HashMap<>();
+
+    private int particleCount;
+    private final float[] positionX;
+    private final float[] positionY;
+    private final float[] positionZ;
+    private final float[] velocityX;
+    private final float[] velocityY;
+    private final float[] velocityZ;
+    private final float[] age;
+    private final float[] life;
+    private final float[] startSize;
+    private final float[] endSize;
+    private final int[] frame;
+    private final ParticleGroup[] groups;
+
+    public ParticleEngine(AssetManager assetManager, int maxParticles) {
+        this.assetManager = assetManager;
+        this.maxParticles = maxParticles;
+
+        positionX = new float[maxParticles];
+        positionY = new float[maxParticles];
+        positionZ = new float[maxParticles];
+        velocityX = new float[maxParticles];
+        velocityY = new float[maxParticles];
+        velocityZ = new float[maxParticles];
+        age = new float[maxParticles];
+        life = new float[maxParticles];
+        startSize = new float[maxParticles];
+        endSize = new float[maxParticles];
+        frame = new int[maxParticles];
+        groups = new ParticleGroup[maxParticles];
+
+        node = new Node("Particles");
+        node.setShadowMode(RenderQueue.ShadowMode.Off);
+        node.addControl(new PointSizeControl());
+    }
+
+    /**
+     * The node holding the particle meshes, attach this to the scene. The
+     * particles are in world space.
+     *
+     * @return the particle node
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * Emits the particles of a sprite effect element
+     *
+     * @param element the effect element
+     * @param effect the effect the element is part of, tells the amount of
+     * particles
+     * @param location the world location to emit at
+     * @return the particle group, tells when all the particles have died
+     */
+    public ParticleGroup emit(EffectElement element, Effect effect, Vector3f location) {
+        ArtResource resource = element.getArtResource();
+        ParticleBatch batch = getBatch(resource);
+        ParticleGroup group = new ParticleGroup(element.getMass() * element.getAirFriction());
+
+        Color color = element.getColor();
+        group.red = color.getRed() / 255f;
+        group.green = color.getGreen() / 255f;
+        group.blue = color.getBlue() / 255f;
+        group.endAlpha = 1f;
+        if (element.getFlags().contains(EffectElement.EffectElementFlag.FADE)) {
+            group.endAlpha -= element.getFadePercentage() / 100f;
+        }
+        group.batchIndex = batch.index;
+
+        boolean randomFrame = resource.getFlags().contains(ArtResource.ArtResourceFlag.RANDOM_START_FRAME);
+        for (int i = 0; i < effect.getElementsPerTurn(); i++) {
+            if (particleCount == maxParticles) {
+                LOGGER.log(Level.FINE, "Particle budget of {0} exhausted, dropping particles of {1}!", new Object[]{maxParticles, element.getName()});
+                break;
+            }
+
+            int particle = particleCount++;
+            group.aliveCount++;
+            groups[particle] = group;
+
+            positionX[particle] = location.x;
+            positionY[particle] = location.y;
+            positionZ[particle] = location.z;
+
+            // Random direction on the XZ plane, see EffectControl#calculateVelocity
+            float xzAngle = FastMath.nextRandomFloat() * FastMath.TWO_PI;
+            float xzSpeed = element.getMinSpeedXy() + FastMath.nextRandomFloat() * (element.getMaxSpeedXy() - element.getMinSpeedXy());
+            float yzSpeed = element.getMinSpeedYz() + FastMath.nextRandomFloat() * (element.getMaxSpeedYz() - element.getMinSpeedYz());
+            velocityX[particle] = -FastMath.sin(xzAngle) * xzSpeed;
+            velocityY[particle] = FastMath.nextRandomFloat() * yzSpeed;
+            velocityZ[particle] = FastMath.cos(xzAngle) * xzSpeed;
+
+            age[particle] = 0;
+            life[particle] = Math.max(FastMath.ZERO_TOLERANCE,
+                    (element.getMinHp() + FastMath.nextRandomFloat() * (element.getMaxHp() - element.getMinHp())) / 10f);
+
+            if (element.getFlags().contains(EffectElement.EffectElementFlag.SHRINK)) {
+                startSize[particle] = element.getMaxScale();
+                endSize[particle] = element.getMinScale();
+            } else if (element.getFlags().contains(EffectElement.EffectElementFlag.EXPAND)) {
+                startSize[particle] = element.getMinScale();
+                endSize[particle] = element.getMaxScale();
+            } else {
+                startSize[particle] = element.getMinScale() + FastMath.nextRandomFloat() * (element.getMaxScale() - element.getMinScale());
+                endSize[particle] = startSize[particle];
+            }
+
+            // Either a fixed random frame or animated over the lifetime
+            frame[particle] = randomFrame ? FastMath.nextRandomInt(0, batch.frames - 1) : -1;
+        }
+
+        return group;
+    }
+
+    /**
+     * Simulates the particles and rewrites the particle meshes
+     *
+     * @param tpf time since the last update
+     */
+    public void update(float tpf) {
+        for (ParticleBatch batch : batches) {
+            batch.count = 0;
+        }
+
+        // Simulate
+        for (int i = 0; i < particleCount;) {
+            ParticleGroup group = groups[i];
+            age[i] += tpf;
+            if (group.killed || age[i] >= life[i]) {
+                removeParticle(i);
+                continue;
+            }
+
+            velocityY[i] -= group.gravity * tpf;
+            positionX[i] += velocityX[i] * tpf;
+            positionY[i] += velocityY[i] * tpf;
+            positionZ[i] += velocityZ[i] * tpf;
+
+            batches.get(group.batchIndex).count++;
+            i++;
+        }
+
+        // Write the meshes
+        for (ParticleBatch batch : batches) {
+            batch.begin();
+        }
+        for (int i = 0; i < particleCount; i++) {
+            ParticleGroup group = groups[i];
+            ParticleBatch batch = batches.get(group.batchIndex);
+            float lifeRatio = age[i] / life[i];
+            float size = startSize[i] + (endSize[i] - startSize[i]) * lifeRatio;
+            float alpha = 1f + (group.endAlpha - 1f) * lifeRatio;
+            int particleFrame = frame[i];
+            if (particleFrame < 0) {
+                particleFrame = Math.min((int) (lifeRatio * batch.frames), batch.frames - 1);
+            }
+            batch.put(positionX[i], positionY[i], positionZ[i], group.red, group.green, group.blue, alpha, size, particleFrame);
+        }
+        for (ParticleBatch batch : batches) {
+            batch.end();
+        }
+    }
+
+    private void removeParticle(int particle) {
+        groups[particle].aliveCount--;
+
+        // Keep the live ones packed, move the last one here
+        int last = --particleCount;
+        positionX[particle] = positionX[last];
+        positionY[particle] = positionY[last];
+        positionZ[particle] = positionZ[last];
+        velocityX[particle] = velocityX[last];
+        velocityY[particle] = velocityY[last];
+        velocityZ[particle] = velocityZ[last];
+        age[particle] = age[last];
+        life[particle] = life[last];
+        startSize[particle] = startSize[last];
+        endSize[particle] = endSize[last];
+        frame[particle] = frame[last];
+        groups[particle] = groups[last];
+        groups[last] = null;
+    }
+
+    /**
+     * Kills all the particles
+     */
+    public void clear() {
+        for (int i = 0; i < particleCount; i++) {
+            groups[i].aliveCount = 0;
+            groups[i] = null;
+        }
+        particleCount = 0;
+        update(0);
+    }
+
+    /**
+     * Get the number of live particles
+     *
+     * @return the particle count
+     */
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    private ParticleBatch getBatch(ArtResource resource) {
+        ParticleBatch batch = batchesByResource.get(resource.getName());
+        if (batch == null) {
+            Material material = AssetUtils.createParticleMaterial(resource, assetManager);
+            material.setBoolean("PointSprite", true);
+            material.setTransparent(true);
+            material.getAdditionalRenderState().setBlendMode(resource.getType() == ArtResource.ArtResourceType.ADDITIVE_ALPHA
+                    ? RenderState.BlendMode.Additive : RenderState.BlendMode.Alpha);
+            material.getAdditionalRenderState().setDepthWrite(false);
+
+            batch = new ParticleBatch(batches.size(), resource.getName(), material,
+                    Math.max(1, resource.getData(ArtResource.KEY_FRAMES)));
+            batches.add(batch);
+            batchesByResource.put(resource.getName(), batch);
+            node.attachChild(batch.geometry);
+        }
+        return batch;
+    }
+
+    /**
+     * A bunch of particles emitted together, i.e. an effect element
+     */
+    public static final class ParticleGroup {
+
+        private final float gravity;
+        private float red;
+        private float green;
+        private float blue;
+        private float endAlpha;
+        private int batchIndex;
+        private int aliveCount;
+        private boolean killed;
+
+        private ParticleGroup(float gravity) {
+            this.gravity = gravity;
+        }
+
+        /**
+         * Are there any particles of this group still alive
+         *
+         * @return true if the group is alive
+         */
+        public boolean isAlive() {
+            return aliveCount > 0 && !killed;
+        }
+
+        /**
+         * Kills the particles of this group on the next update
+         */
+        public void kill() {
+            killed = true;
+        }
+    }
+
+    /**
+     * The point sprite mesh of a single art resource
+     */
+    private static final class ParticleBatch {
+
+        private final int index;
+        private final int frames;
+        private final Mesh mesh;
+        private final Geometry geometry;
+        private int capacity;
+        private int count;
+        private FloatBuffer positions;
+        private FloatBuffer colors;
+        private FloatBuffer sizes;
+        private FloatBuffer texCoords;
+
+        private ParticleBatch(int index, String name, Material material, int frames) {
+            this.index = index;
+            this.frames = frames;
+
+            mesh = new Mesh();
+            mesh.setMode(Mesh.Mode.Points);
+            allocate(INITIAL_BATCH_CAPACITY);
+
+            geometry = new Geometry(name, mesh);
+            geometry.setMaterial(material);
+            geometry.setQueueBucket(RenderQueue.Bucket.Transparent);
+            geometry.setBatchHint(Spatial.BatchHint.Never);
+            geometry.setCullHint(Spatial.CullHint.Always);
+        }
+
+        private void allocate(int capacity) {
+            this.capacity = capacity;
+            positions = BufferUtils.createFloatBuffer(capacity * 3);
+            colors = BufferUtils.createFloatBuffer(capacity * 4);
+            sizes = BufferUtils.createFloatBuffer(capacity);
+            texCoords = BufferUtils.createFloatBuffer(capacity * 4);
+            mesh.setBuffer(VertexBuffer.Type.Position, 3, positions);
+            mesh.setBuffer(VertexBuffer.Type.Color, 4, colors);
+            mesh.setBuffer(VertexBuffer.Type.Size, 1, sizes);
+            mesh.setBuffer(VertexBuffer.Type.TexCoord, 4, texCoords);
+            for (VertexBuffer.Type type : new VertexBuffer.Type[]{VertexBuffer.Type.Position, VertexBuffer.Type.Color,
+                VertexBuffer.Type.Size, VertexBuffer.Type.TexCoord}) {
+                mesh.getBuffer(type).setUsage(VertexBuffer.Usage.Stream);
+            }
+        }
+
+        private void begin() {
+            if (count > capacity) {
+                allocate(Math.max(count, capacity * 2));
+            }
+            positions.clear();
+            colors.clear();
+            sizes.clear();
+            texCoords.clear();
+        }
+
+        private void put(float x, float y, float z, float red, float green, float blue, float alpha, float size, int frame) {
+            positions.put(x).put(y).put(z);
+            colors.put(red).put(green).put(blue).put(alpha);
+            sizes.put(size);
+            texCoords.put(frame / (float) frames).put(0f).put((frame + 1) / (float) frames).put(1f);
+        }
+
+        private void end() {
+            positions.flip();
+            colors.flip();
+            sizes.flip();
+            texCoords.flip();
+            mesh.getBuffer(VertexBuffer.Type.Position).updateData(positions);
+            mesh.getBuffer(VertexBuffer.Type.Color).updateData(colors);
+            mesh.getBuffer(VertexBuffer.Type.Size).updateData(sizes);
+            mesh.getBuffer(VertexBuffer.Type.TexCoord).updateData(texCoords);
+            mesh.updateCounts();
+
+            if (count > 0) {
+                mesh.updateBound();
+                geometry.updateModelBound();
+                geometry.setCullHint(Spatial.CullHint.Inherit);
+            } else {
+                geometry.setCullHint(Spatial.CullHint.Always);
+            }
+        }
+    }
+
+    /**
+     * Scales the point sprites by the camera projection, like the stock
+     * particle emitter does
+     */
+    private class PointSizeControl extends AbstractControl {
+
+        @Override
+        protected void controlUpdate(float tpf) {
+        }
+
+        @Override
+        protected void controlRender(RenderManager rm, ViewPort vp) {
+            Camera camera = vp.getCamera();
+            float quadratic = camera.getProjectionMatrix().m00 * camera.getWidth() * 0.5f;
+            for (ParticleBatch batch : batches) {
+                batch.geometry.getMaterial().setFloat("Quadratic", quadratic);
+            }
+        }
+    }
+
+}
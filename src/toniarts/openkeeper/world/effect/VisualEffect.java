@@ -56,6 +56,7 @@ public class VisualEffect {
 
     private final Effect effect;
     private final Map<EffectElement, Spatial> effectElements;
+    private final Map<EffectElement, ParticleEngine.ParticleGroup> particleGroups;
     private final List<VisualEffect> effects;
     private final Node effectNode;
     private final KwdFile kwdFile;
@@ -80,9 +81,11 @@ public class VisualEffect {
         if (effect.getFlags().contains(Effect.EffectFlag.GENERATE_EFFECT_ELEMENTS)) {
             effects = new ArrayList<>();
             effectElements = new HashMap<>(effect.getGenerateIds().size());
+            particleGroups = new HashMap<>(effect.getGenerateIds().size());
         } else {
             effects = new ArrayList<>(effect.getGenerateIds().size());
             effectElements = Collections.emptyMap();
+            particleGroups = Collections.emptyMap();
         }
 
         // Attach to scene graph
@@ -211,15 +214,19 @@ public class VisualEffect {
 
     private void addEffectElement(Integer id, Vector3f location) {
         EffectElement effectElement = kwdFile.getEffectElement(id);
-        Spatial emitter = loadElement(effectElement);
-        if (emitter != null) {
-            if (location != null) {
-                emitter.setLocalTranslation(location);
-            }
-            effectElements.put(effectElement, emitter);
-            effectNode.attachChild(emitter);
-            if (emitter instanceof ParticleEmitter) {
-                ((ParticleEmitter) emitter).emitAllParticles();
+        if (isParticleElement(effectElement)) {
+            emitParticles(effectElement, location);
+        } else {
+            Spatial emitter = loadElement(effectElement);
+            if (emitter != null) {
+                if (location != null) {
+                    emitter.setLocalTranslation(location);
+                }
+                effectElements.put(effectElement, emitter);
+                effectNode.attachChild(emitter);
+                if (emitter instanceof ParticleEmitter) {
+                    ((ParticleEmitter) emitter).emitAllParticles();
+                }
             }
         }
 
@@ -229,6 +236,35 @@ public class VisualEffect {
         }
     }
 
+    /**
+     * The sprite elements are drawn by the particle engine, if the effect
+     * manager is running. Otherwise no one would update the particles.
+     */
+    private boolean isParticleElement(EffectElement element) {
+        ArtResource resource = element.getArtResource();
+        if (resource == null || effect.getGenerationType() == Effect.GenerationType.NONE
+                || !effectManagerState.isInitialized()) {
+            return false;
+        }
+
+        switch (resource.getType()) {
+            case ALPHA:
+            case ADDITIVE_ALPHA:
+            case SPRITE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void emitParticles(EffectElement element, Vector3f location) {
+        Vector3f worldLocation = effectNode.getWorldTranslation().clone();
+        if (location != null) {
+            worldLocation.addLocal(location);
+        }
+        particleGroups.put(element, effectManagerState.getParticleEngine().emit(element, effect, worldLocation));
+    }
+
     private Spatial loadElement(EffectElement element) {
         ArtResource resource = element.getArtResource();
 
@@ -412,6 +448,22 @@ public class VisualEffect {
             }
         }
 
+        Iterator<Entry<EffectElement, ParticleEngine.ParticleGroup>> particleIter = particleGroups.entrySet().iterator();
+        while (particleIter.hasNext()) {
+            Entry<EffectElement, ParticleEngine.ParticleGroup> entry = particleIter.next();
+            if (!entry.getValue().isAlive()) {
+                particleIter.remove();
+
+                // Attach on death element
+                if (entry.getKey().getDeathElementId() != 0) {
+                    if (deathEffectElements == null) {
+                        deathEffectElements = new ArrayList<>();
+                    }
+                    deathEffectElements.add(entry.getKey().getDeathElementId());
+                }
+            }
+        }
+
         // Init the death elements
         if (deathEffectElements != null) {
             for (Integer id : deathEffectElements) {
@@ -420,14 +472,14 @@ public class VisualEffect {
         }
 
         // If the whole effect has died, create the death effect
-        if (effect.getFlags().contains(Effect.EffectFlag.GENERATE_EFFECT_ELEMENTS) && effectElements.isEmpty()) {
+        if (effect.getFlags().contains(Effect.EffectFlag.GENERATE_EFFECT_ELEMENTS) && effectElements.isEmpty() && particleGroups.isEmpty()) {
             if (effect.getDeathEffectId() != 0) {
                 addEffect(effect.getDeathEffectId(), null);
             }
         }
 
         // If no children at all, remove us
-        if (effectElements.isEmpty() && effects.isEmpty() && effectNode.getQuantity() == 0) {
+        if (effectElements.isEmpty() && particleGroups.isEmpty() && effects.isEmpty() && effectNode.getQuantity() == 0) {
 
             // If infinite, just restart
             if (infinite) {
@@ -446,6 +498,10 @@ public class VisualEffect {
     public void removeEffect() {
         effects.clear();
         effectElements.clear();
+        for (ParticleEngine.ParticleGroup particleGroup : particleGroups.values()) {
+            particleGroup.kill();
+        }
+        particleGroups.clear();
         infinite = false;
     }
 }